@@ -0,0 +1,66 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.service.CachingReportService;
+import com.jpmorgan.test1.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CachingReportService#generateReport(List)} when every settlement date is cached, so only the
+ * fingerprints are calculated, with {@link ReportService#generateReport(List)} recomputing the same report. With -prof
+ * gc, gc.alloc.rate.norm of the cached report should grow with the number of dates and lines, not of instructions.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CachingReportBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private ReportService reportService;
+    private CachingReportService cachingReportService;
+    private List<Instruction> instructions;
+
+    @Setup
+    public void setUp() {
+
+        reportService = new ReportService.Builder().withNumericMode(NumericMode.FIXED_POINT).withScale(FixedPoint.DEFAULT_SCALE).build();
+        cachingReportService = new CachingReportService(reportService);
+        instructions = Arrays.asList(new InstructionGenerator(29).generate(size));
+
+        //every following report hits
+        cachingReportService.generateReport(instructions);
+    }
+
+    @Benchmark
+    public List<String> cachedReport() {
+        return cachingReportService.generateReport(instructions);
+    }
+
+    @Benchmark
+    public List<String> recomputedReport() {
+        return reportService.generateReport(instructions);
+    }
+}
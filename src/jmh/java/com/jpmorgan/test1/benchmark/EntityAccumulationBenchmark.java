@@ -0,0 +1,92 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per instruction cost of adding instructions to a {@link DailyAggregate} whose entities were already seen.
+ * Run with -prof gc: in {@link NumericMode#FIXED_POINT} mode gc.alloc.rate.norm should be ~0 B/op, as the totals are
+ * updated in place.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityAccumulationBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    @Param({"FIXED_POINT", "BIG_DECIMAL"})
+    public NumericMode numericMode;
+
+    @Param({"100", "10000"})
+    public int entityCount;
+
+    private Instruction[] instructions;
+    private DailyAggregate dailyAggregate;
+
+    @Setup
+    public void setUp() {
+
+        Random random = new Random(11);
+        int day = EpochDays.of(2018, 6, 25);
+        instructions = new Instruction[INSTRUCTIONS];
+        dailyAggregate = new DailyAggregate(day, numericMode, FixedPoint.DEFAULT_SCALE);
+
+        //every trade is followed by its reversal, so the totals don't grow (and overflow) however long the benchmark runs
+        for (int i = 0; i < INSTRUCTIONS; i += 2) {
+            Instruction.Builder builder = new Instruction.Builder()
+                    .withEntity("entity" + random.nextInt(entityCount))
+                    .withOperation(random.nextBoolean() ? Operation.BUY : Operation.SELL)
+                    .withCurrency(Currency.USD)
+                    .withInstructionDay(day)
+                    .withFx(BigDecimal.valueOf(random.nextInt(20_000), 4))
+                    .withPrice(BigDecimal.valueOf(random.nextInt(100_000), 2));
+            long units = 1 + random.nextInt(1_000);
+
+            instructions[i] = builder.withUnits(units).build();
+            instructions[i + 1] = builder.withUnits(-units).build();
+        }
+
+        //every entity is seen once before measuring, so only the in place updates are measured
+        for (Instruction instruction : instructions) {
+            dailyAggregate.add(instruction);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public DailyAggregate add() {
+
+        for (Instruction instruction : instructions) {
+            dailyAggregate.add(instruction);
+        }
+
+        return dailyAggregate;
+    }
+}
@@ -0,0 +1,68 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.model.Instruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Instruction.Builder#build()}, and separately the build followed by the settlement date and the value in
+ * USD, which are only calculated when first read. The builders are generated up front, so only the construction is
+ * measured.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBuildBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+
+    private Instruction.Builder[] builders;
+
+    @Setup
+    public void setUp() {
+
+        InstructionGenerator generator = new InstructionGenerator(17);
+        builders = new Instruction.Builder[INSTRUCTIONS];
+
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            builders[i] = generator.next();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void build(Blackhole blackhole) {
+
+        for (Instruction.Builder builder : builders) {
+            blackhole.consume(builder.build());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void buildWithDerivedFields(Blackhole blackhole) {
+
+        for (Instruction.Builder builder : builders) {
+            Instruction instruction = builder.build();
+            blackhole.consume(instruction.getSettlementDay());
+            blackhole.consume(instruction.getValueInUSD());
+        }
+    }
+}
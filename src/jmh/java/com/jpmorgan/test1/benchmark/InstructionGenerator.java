@@ -0,0 +1,96 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.Operation;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates instructions with a realistic shape for the benchmarks: a few entities trade much more than the rest (Zipf
+ * distribution), most of the volume is in USD, EUR and GBP, and the instruction dates are spread over a month, so about
+ * 2/7 of them fall on a weekend and have to be moved to the next working day.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionGenerator {
+
+    private static final int ENTITIES = 1_000;
+    private static final int DAYS = 30;
+    private static final int FIRST_DAY = EpochDays.of(2018, 6, 1);
+
+    private static final Currency[] CURRENCIES = {Currency.USD, Currency.EUR, Currency.GBP, Currency.SGP, Currency.AED, Currency.SAR};
+    private static final double[] CURRENCY_WEIGHTS = {0.45, 0.25, 0.15, 0.07, 0.05, 0.03};
+    private static final double[] FX_RATES = {1.0, 1.17, 1.32, 0.73, 0.2723, 0.2666};
+
+    private final Random random;
+    private final String[] entities = new String[ENTITIES];
+    private final double[] entityCumulative = new double[ENTITIES];
+    private final double[] currencyCumulative = new double[CURRENCIES.length];
+
+    public InstructionGenerator(long seed) {
+
+        random = new Random(seed);
+
+        double sum = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            entities[i] = "entity" + i;
+            sum += 1.0 / (i + 1);
+            entityCumulative[i] = sum;
+        }
+        for (int i = 0; i < ENTITIES; i++) {
+            entityCumulative[i] /= sum;
+        }
+
+        sum = 0;
+        for (int i = 0; i < CURRENCIES.length; i++) {
+            sum += CURRENCY_WEIGHTS[i];
+            currencyCumulative[i] = sum;
+        }
+    }
+
+    /**
+     * @return a builder with all the fields of the next instruction set
+     */
+    public Instruction.Builder next() {
+
+        int currency = pick(currencyCumulative);
+        //prices are log-normal around 100, with 2 decimals
+        long unscaledPrice = Math.max(1, Math.round(Math.exp(random.nextGaussian()) * 10_000));
+        //the fx rate moves a bit around the reference rate, with 4 decimals
+        long unscaledFx = Math.round(FX_RATES[currency] * (1 + random.nextGaussian() * 0.01) * 10_000);
+
+        return new Instruction.Builder()
+                .withEntity(entities[pick(entityCumulative)])
+                .withOperation(random.nextBoolean() ? Operation.BUY : Operation.SELL)
+                .withCurrency(CURRENCIES[currency])
+                .withInstructionDay(FIRST_DAY + random.nextInt(DAYS))
+                .withFx(BigDecimal.valueOf(unscaledFx, 4))
+                .withPrice(BigDecimal.valueOf(unscaledPrice, 2))
+                .withUnits(1 + random.nextInt(random.nextInt(10) == 0 ? 100_000 : 1_000));
+    }
+
+    /**
+     * @return the given number of instructions
+     */
+    public Instruction[] generate(int count) {
+
+        Instruction[] instructions = new Instruction[count];
+
+        for (int i = 0; i < count; i++) {
+            instructions[i] = next().build();
+        }
+
+        return instructions;
+    }
+
+    private int pick(double[] cumulative) {
+
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
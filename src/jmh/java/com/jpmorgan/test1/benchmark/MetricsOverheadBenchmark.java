@@ -0,0 +1,119 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.metrics.Metrics;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the {@link Metrics} on the hottest instrumented paths: building an instruction, which times two
+ * stages per instruction, and writing a report, which counts every instruction and times every day and operation.
+ * With enabled=false this is the instrumented code as every other benchmark runs it, so comparing it with a build from
+ * before the instrumentation gives the cost of the disabled metrics, and comparing it with enabled=true gives their cost
+ * when they record.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    private static final int INSTRUCTIONS = 1024;
+    private static final int REPORT_INSTRUCTIONS = 100_000;
+
+    @Param({"false", "true"})
+    private boolean enabled;
+
+    private Instruction.Builder[] builders;
+    private List<Instruction> instructions;
+    private ReportService reportService;
+
+    @Setup
+    public void setUp() {
+
+        //no JFR events, they are only committed when a recording is running anyway
+        Metrics metrics = enabled ? new Metrics(true, false) : Metrics.disabled();
+        InstructionGenerator generator = new InstructionGenerator(17);
+
+        builders = new Instruction.Builder[INSTRUCTIONS];
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            builders[i] = generator.next().withMetrics(metrics);
+        }
+
+        instructions = Arrays.asList(generator.generate(REPORT_INSTRUCTIONS));
+        reportService = new ReportService.Builder()
+                .withNumericMode(NumericMode.FIXED_POINT)
+                .withScale(FixedPoint.DEFAULT_SCALE)
+                .withMetrics(metrics)
+                .build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void build(Blackhole blackhole) {
+
+        for (Instruction.Builder builder : builders) {
+            blackhole.consume(builder.build());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPORT_INSTRUCTIONS)
+    public void writeReport(Blackhole blackhole) throws IOException {
+
+        reportService.writeReport(instructions, new BlackholeAppendable(blackhole));
+    }
+
+    /**
+     * Discards the report, so only its generation is measured
+     */
+    private static class BlackholeAppendable implements Appendable {
+
+        private final Blackhole blackhole;
+
+        private BlackholeAppendable(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public Appendable append(CharSequence sequence) {
+            blackhole.consume(sequence);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence sequence, int start, int end) {
+            blackhole.consume(sequence);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            blackhole.consume(c);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.google.common.io.ByteStreams;
+import com.jpmorgan.test1.io.ChannelAppendable;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.service.ReportAggregator;
+import com.jpmorgan.test1.service.ReportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ReportService#generateReport} end to end, from the instructions to the report lines, both from a list of
+ * {@link Instruction}s and from the same instructions in a columnar {@link InstructionBatch}, as well as the rendering alone. With -prof gc,
+ * gc.alloc.rate.norm is the allocation per whole report; divide it by the size for the allocation per instruction.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ReportServiceBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"FIXED_POINT", "BIG_DECIMAL"})
+    public NumericMode numericMode;
+
+    private ReportService reportService;
+    private List<Instruction> instructions;
+    private InstructionBatch batch;
+    private ReportAggregator aggregator;
+    private ChannelAppendable sink;
+
+    @Setup
+    public void setUp() {
+
+        reportService = new ReportService.Builder().withNumericMode(numericMode).build();
+        Instruction[] generated = new InstructionGenerator(23).generate(size);
+        instructions = Arrays.asList(generated);
+        batch = InstructionBatch.allocate(size, FixedPoint.DEFAULT_SCALE);
+
+        for (Instruction instruction : generated) {
+            batch.append(instruction);
+        }
+
+        aggregator = new ReportAggregator(numericMode, FixedPoint.DEFAULT_SCALE);
+        aggregator.addAll(batch);
+        sink = new ChannelAppendable(Channels.newChannel(ByteStreams.nullOutputStream()));
+    }
+
+    @Benchmark
+    public List<String> generateReportFromList() {
+        return reportService.generateReport(instructions);
+    }
+
+    @Benchmark
+    public List<String> generateReportFromBatch() {
+        return reportService.generateReport(batch);
+    }
+
+    /**
+     * Only the rendering of the report, from already aggregated totals to a discarding channel
+     */
+    @Benchmark
+    public ChannelAppendable writeReport() throws IOException {
+
+        reportService.writeReport(aggregator, sink);
+        sink.flush();
+
+        return sink;
+    }
+}
@@ -0,0 +1,85 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.google.common.collect.Sets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of finding the trade ids sent again, over a feed where 1% of the trades are duplicates: a plain
+ * {@link Set}, as used by {@link com.jpmorgan.test1.service.InstructionValidator}, against a {@link BloomFilter} in
+ * front of the same set. An exact answer needs every new id in the set anyway, so the filter can only add its own
+ * hashing to every trade.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeIdDeduplicationBenchmark {
+
+    private static final int TRADES = 100_000;
+
+    private String[] tradeIds;
+    private Set<String> tradeIdSet;
+    private BloomFilter<CharSequence> tradeIdFilter;
+
+    @Setup
+    public void setUp() {
+
+        Random random = new Random(23);
+        tradeIds = new String[TRADES];
+
+        for (int i = 0; i < TRADES; i++) {
+            tradeIds[i] = "T" + (random.nextInt(100) == 0 && i > 0 ? random.nextInt(i) : i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newStores() {
+        tradeIdSet = Sets.newHashSetWithExpectedSize(TRADES);
+        tradeIdFilter = BloomFilter.create(Funnels.unencodedCharsFunnel(), TRADES, 0.01);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public void plainSet(Blackhole blackhole) {
+
+        for (String tradeId : tradeIds) {
+            blackhole.consume(tradeIdSet.add(tradeId));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRADES)
+    public void bloomFilterThenSet(Blackhole blackhole) {
+
+        for (String tradeId : tradeIds) {
+            //the set is only searched on a possible duplicate, but every new id still has to be added to it
+            boolean added = tradeIdFilter.put(tradeId) || !tradeIdSet.contains(tradeId);
+            if (added) {
+                tradeIdSet.add(tradeId);
+            }
+            blackhole.consume(added);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.jpmorgan.test1.benchmark;
+
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.service.InstructionValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link InstructionValidator#validate(Instruction.Builder)} over a feed where 1% of the trades are sent again
+ * and 1% have a missing field. Every invocation starts from an empty validator, so the duplicates are the same ones.
+ *
+ * @author Vlad Constantinescu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private static final int INSTRUCTIONS = 100_000;
+
+    private Instruction.Builder[] builders;
+    private InstructionValidator validator;
+
+    @Setup
+    public void setUp() {
+
+        InstructionGenerator generator = new InstructionGenerator(19);
+        Random random = new Random(23);
+        builders = new Instruction.Builder[INSTRUCTIONS];
+
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+
+            int percent = random.nextInt(100);
+
+            builders[i] = generator.next().withTradeId("T" + (percent == 0 && i > 0 ? random.nextInt(i) : i));
+
+            if (percent == 1) {
+                builders[i].withFx(null);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newValidator() {
+        validator = new InstructionValidator(INSTRUCTIONS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void validate(Blackhole blackhole) {
+
+        for (Instruction.Builder builder : builders) {
+            blackhole.consume(validator.validate(builder));
+        }
+    }
+}
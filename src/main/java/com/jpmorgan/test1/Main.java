@@ -1,13 +1,25 @@
 package com.jpmorgan.test1;
 
 import com.google.common.collect.Lists;
+import com.google.common.net.HostAndPort;
+import com.jpmorgan.test1.io.InstructionCsvParser;
+import com.jpmorgan.test1.io.InstructionSource;
 import com.jpmorgan.test1.model.Currency;
 import com.jpmorgan.test1.model.Instruction;
 import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.service.IngestionRuntime;
 import com.jpmorgan.test1.service.ReportService;
+import com.jpmorgan.test1.service.ShardCoordinator;
+import com.jpmorgan.test1.service.ShardWorker;
 import org.joda.time.DateTime;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
@@ -15,8 +27,39 @@ import java.util.List;
  */
 public class Main {
 
+    private static final String SOCKET_PREFIX = "tcp:";
+    private static final String WORKER = "worker";
+    private static final String COORDINATOR = "coordinator";
+    private static final long COORDINATOR_TIMEOUT_MILLIS = 60 * 60 * 1000;
+    private static final String WORKER_USAGE = "Usage: worker partition partitionCount (drop directory or tcp:host:port) CSV files...";
+    private static final String COORDINATOR_USAGE = "Usage: coordinator partitionCount (drop directory or tcp:port)";
 
-    public static void main(String[] args) {
+    /**
+     * Without arguments, prints the report of a few sample instructions.
+     * Otherwise every argument is an instruction source, either a CSV file or tcp:host:port, and all of them are drained
+     * at once into a single report.
+     * The sharded report is run with one JVM per worker and one for the coordinator:
+     * <pre>
+     * worker partition partitionCount (drop directory or tcp:host:port) CSV files...
+     * coordinator partitionCount (drop directory or tcp:port)
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            runWorker(args);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals(COORDINATOR)) {
+            runCoordinator(args);
+            return;
+        }
+
+        if (args.length > 0) {
+            ingest(args);
+            return;
+        }
 
         ReportService reportService = new ReportService();
 
@@ -62,10 +105,80 @@ public class Main {
 
         List<Instruction> instructions = Lists.newArrayList(i1, i2, i11, i3);
 
-        List<String> report = reportService.generateReport(instructions);
+        reportService.writeReport(instructions, System.out);
+
+
+    }
+
+    private static void ingest(String[] args) throws InterruptedException {
+
+        List<InstructionSource> sources = Lists.newArrayList();
+
+        for (String arg : args) {
+
+            if (arg.startsWith(SOCKET_PREFIX)) {
+                HostAndPort address = HostAndPort.fromString(arg.substring(SOCKET_PREFIX.length()));
+                sources.add(InstructionSource.socket(new InetSocketAddress(address.getHostText(), address.getPort())));
+            } else {
+                sources.add(InstructionSource.file(Paths.get(arg)));
+            }
+        }
+
+        IngestionRuntime runtime = new IngestionRuntime.Builder()
+                .withSkipHeader(true)
+                .withListener((source, instructionCount, error) -> {
+                    if (error == null) {
+                        System.err.println("Finished " + source.getName() + ": " + instructionCount + " instructions");
+                    } else {
+                        System.err.println("Failed " + source.getName() + " after " + instructionCount + " instructions: " + error);
+                    }
+                })
+                .build();
 
-        report.forEach(System.out::println);
+        runtime.run(sources).forEach(System.out::println);
+    }
+
+    private static void runWorker(String[] args) throws IOException {
+
+        if (args.length < 4) {
+            System.err.println(WORKER_USAGE);
+            return;
+        }
+
+        ShardWorker worker = new ShardWorker(new ReportService(), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+
+        for (int i = 4; i < args.length; i++) {
+            try (FileChannel channel = FileChannel.open(Paths.get(args[i]), StandardOpenOption.READ)) {
+                worker.addAll(new InstructionCsvParser(channel, ',', true));
+            }
+        }
+
+        if (args[3].startsWith(SOCKET_PREFIX)) {
+            HostAndPort address = HostAndPort.fromString(args[3].substring(SOCKET_PREFIX.length()));
+            worker.sendTo(new InetSocketAddress(address.getHostText(), address.getPort()));
+        } else {
+            worker.writeTo(Paths.get(args[3]));
+        }
+    }
+
+    private static void runCoordinator(String[] args) throws IOException, InterruptedException {
+
+        if (args.length != 3) {
+            System.err.println(COORDINATOR_USAGE);
+            return;
+        }
+
+        ReportService reportService = new ReportService();
+        ShardCoordinator coordinator = new ShardCoordinator(reportService, Integer.parseInt(args[1]));
 
+        if (args[2].startsWith(SOCKET_PREFIX)) {
+            try (ServerSocket server = new ServerSocket(Integer.parseInt(args[2].substring(SOCKET_PREFIX.length())))) {
+                coordinator.collect(server, COORDINATOR_TIMEOUT_MILLIS);
+            }
+        } else {
+            coordinator.collect(Paths.get(args[2]), COORDINATOR_TIMEOUT_MILLIS);
+        }
 
+        coordinator.writeReport(System.out);
     }
 }
@@ -0,0 +1,157 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link Appendable} which encodes the characters as UTF-8 straight into a reusable {@link ByteBuffer}, and writes the
+ * buffer to a channel (e.g. a {@link java.nio.channels.FileChannel}) whenever it is full.
+ * Unlike a {@link java.io.Writer} over a stream, appending a character doesn't allocate.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ChannelAppendable implements Appendable, Flushable, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final Metrics metrics;
+    private char highSurrogate;
+
+    public ChannelAppendable(WritableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * @param channel
+     *          the channel the bytes are written to
+     * @param buffer
+     *          the buffer the characters are encoded into, of at least 4 bytes, reused until the appendable is closed
+     */
+    public ChannelAppendable(WritableByteChannel channel, ByteBuffer buffer) {
+        this(channel, buffer, Metrics.disabled());
+    }
+
+    /**
+     * @param channel
+     *          the channel the bytes are written to
+     * @param buffer
+     *          the buffer the characters are encoded into, of at least 4 bytes, reused until the appendable is closed
+     * @param metrics
+     *          the {@link Metrics} counting the bytes written to the channel
+     */
+    public ChannelAppendable(WritableByteChannel channel, ByteBuffer buffer, Metrics metrics) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.metrics = metrics;
+        this.buffer.clear();
+    }
+
+    @Override
+    public Appendable append(CharSequence sequence) throws IOException {
+
+        return append(sequence, 0, sequence.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence sequence, int start, int end) throws IOException {
+
+        for (int i = start; i < end; i++) {
+            append(sequence.charAt(i));
+        }
+
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+
+        //room for the longest encoding, so a character is never split between two writes
+        if (buffer.remaining() < 4) {
+            drain();
+        }
+
+        //a high surrogate followed by anything but a low one is unpaired too
+        if (highSurrogate != 0 && !Character.isLowSurrogate(c)) {
+            replaceHighSurrogate();
+        }
+
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | c >> 6));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+            int codePoint = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            buffer.put((byte) (0xF0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        } else if (Character.isLowSurrogate(c)) {
+            //unpaired surrogate, replaced as the JDK encoders do
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | c >> 12));
+            buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel
+     */
+    @Override
+    public void flush() throws IOException {
+
+        drain();
+    }
+
+    /**
+     * Flushes the buffered bytes and closes the channel; a high surrogate still waiting for its low one is replaced
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            if (highSurrogate != 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                replaceHighSurrogate();
+            }
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Replaces the unpaired high surrogate as the JDK encoders do
+     */
+    private void replaceHighSurrogate() {
+
+        buffer.put((byte) '?');
+        highSurrogate = 0;
+    }
+
+    private void drain() throws IOException {
+
+        buffer.flip();
+        metrics.addBytesWritten(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
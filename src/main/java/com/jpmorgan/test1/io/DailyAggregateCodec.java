@@ -0,0 +1,173 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.CurrencyTotals;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.EntityTotals;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Binary form of a {@link DailyAggregate}, shared by the files holding them ({@link ReportSnapshot} and {@link ReportPartial}).
+ * It is written big-endian as
+ * <pre>
+ * settlement epoch day (int), for BUY and SELL: entity count (int), entity count x (flags (byte), entity
+ *              (modified UTF-8, absent if null), total (unscaled long at the scale, or if it doesn't fit: scale (int),
+ *              length (int) and bytes of the unscaled BigInteger)),
+ * for every currency, for BUY and SELL: flags (byte), total (same as the entity total)
+ * </pre>
+ * The daily totals aren't stored, as they are the sum of the entity totals; the per currency totals are, as an entity
+ * total mixes currencies.
+ *
+ * @author Vlad Constantinescu
+ */
+final class DailyAggregateCodec {
+
+    private static final Operation[] OPERATIONS = {Operation.BUY, Operation.SELL};
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final int NULL_ENTITY = 1;
+    private static final int BIG_TOTAL = 2;
+
+    private DailyAggregateCodec() {
+    }
+
+    /**
+     * @param out
+     *          where the aggregate is written
+     * @param dailyAggregate
+     *          the aggregate to be written
+     * @param scale
+     *          the scale of the unscaled totals
+     */
+    static void write(DataOutputStream out, DailyAggregate dailyAggregate, int scale) throws IOException {
+
+        out.writeInt(dailyAggregate.getSettlementDay());
+
+        for (Operation operation : OPERATIONS) {
+
+            EntityTotals totals = dailyAggregate.getTotalsByEntity(operation);
+            out.writeInt(totals.size());
+
+            for (int slot = 0; slot < totals.capacity(); slot++) {
+                if (totals.isUsed(slot)) {
+                    writeEntity(out, totals.getEntity(slot), totals.getTotal(slot), scale);
+                }
+            }
+        }
+
+        CurrencyTotals currencyTotals = dailyAggregate.getCurrencyTotals();
+
+        for (Currency currency : CURRENCIES) {
+            for (Operation operation : OPERATIONS) {
+                writeCurrencyTotal(out, currencyTotals.getTotal(currency, operation), scale);
+            }
+        }
+    }
+
+    /**
+     * @param in
+     *          where the aggregate is read from
+     * @param numericMode
+     *          how the restored aggregate accumulates the values added afterwards
+     * @param scale
+     *          the scale of the restored aggregate
+     * @param writtenScale
+     *          the scale the unscaled totals were written at
+     * @param dictionary
+     *          the {@link EntityDictionary} the entities are interned in
+     */
+    static DailyAggregate read(DataInputStream in, NumericMode numericMode, int scale, int writtenScale, EntityDictionary dictionary) throws IOException {
+
+        DailyAggregate dailyAggregate = new DailyAggregate(in.readInt(), numericMode, scale, 0, dictionary);
+
+        for (Operation operation : OPERATIONS) {
+
+            int entityCount = in.readInt();
+
+            for (int i = 0; i < entityCount; i++) {
+                readEntity(in, dailyAggregate, operation, writtenScale);
+            }
+        }
+
+        for (Currency currency : CURRENCIES) {
+            for (Operation operation : OPERATIONS) {
+                readCurrencyTotal(in, dailyAggregate.getCurrencyTotals(), currency, operation, writtenScale);
+            }
+        }
+
+        return dailyAggregate;
+    }
+
+    private static void writeEntity(DataOutputStream out, String entity, BigDecimal total, int scale) throws IOException {
+
+        long unscaledTotal = FixedPoint.toUnscaled(total, scale);
+        int flags = (entity == null ? NULL_ENTITY : 0) | (unscaledTotal == FixedPoint.OVERFLOW ? BIG_TOTAL : 0);
+
+        out.writeByte(flags);
+
+        if (entity != null) {
+            out.writeUTF(entity);
+        }
+
+        writeTotal(out, unscaledTotal, total);
+    }
+
+    private static void writeCurrencyTotal(DataOutputStream out, BigDecimal total, int scale) throws IOException {
+
+        long unscaledTotal = FixedPoint.toUnscaled(total, scale);
+
+        out.writeByte(unscaledTotal == FixedPoint.OVERFLOW ? BIG_TOTAL : 0);
+        writeTotal(out, unscaledTotal, total);
+    }
+
+    private static void writeTotal(DataOutputStream out, long unscaledTotal, BigDecimal total) throws IOException {
+
+        if (unscaledTotal != FixedPoint.OVERFLOW) {
+            out.writeLong(unscaledTotal);
+        } else {
+            byte[] unscaledBytes = total.unscaledValue().toByteArray();
+            out.writeInt(total.scale());
+            out.writeInt(unscaledBytes.length);
+            out.write(unscaledBytes);
+        }
+    }
+
+    private static void readEntity(DataInputStream in, DailyAggregate dailyAggregate, Operation operation, int writtenScale) throws IOException {
+
+        int flags = in.readByte();
+        String entity = (flags & NULL_ENTITY) != 0 ? null : in.readUTF();
+
+        if ((flags & BIG_TOTAL) == 0) {
+            dailyAggregate.restoreEntityTotal(entity, operation, in.readLong(), writtenScale, null);
+        } else {
+            dailyAggregate.restoreEntityTotal(entity, operation, FixedPoint.OVERFLOW, writtenScale, readBigTotal(in));
+        }
+    }
+
+    private static void readCurrencyTotal(DataInputStream in, CurrencyTotals currencyTotals, Currency currency, Operation operation,
+                                          int writtenScale) throws IOException {
+
+        if ((in.readByte() & BIG_TOTAL) == 0) {
+            currencyTotals.add(currency, operation, in.readLong(), writtenScale, null);
+        } else {
+            currencyTotals.add(currency, operation, FixedPoint.OVERFLOW, writtenScale, readBigTotal(in));
+        }
+    }
+
+    private static BigDecimal readBigTotal(DataInputStream in) throws IOException {
+
+        int totalScale = in.readInt();
+        byte[] unscaledBytes = new byte[in.readInt()];
+        in.readFully(unscaledBytes);
+
+        return new BigDecimal(new BigInteger(unscaledBytes), totalScale);
+    }
+}
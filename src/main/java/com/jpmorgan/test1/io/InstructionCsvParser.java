@@ -0,0 +1,552 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.model.SettlementCalendar;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses delimited text instructions straight from the bytes of a channel into {@link com.jpmorgan.test1.model.InstructionBatch}es.
+ * Every line holds the fields
+ * <pre>
+ * entity, BUY|SELL, fx, currency, instruction date (yyyy-MM-dd), settlement date (yyyy-MM-dd), units, price
+ * </pre>
+ * separated by a configurable delimiter (e.g. ',' for CSV or '\u0001' for FIX-style files).
+ * The input is read into a single reusable buffer and the numbers, dates, currencies and operations are decoded from its
+ * bytes, so no {@link String} or {@link java.math.BigDecimal} is created per line: an entity name is only decoded the first
+ * time it is seen, and a BigDecimal only when the valueInUSD doesn't fit in a long.
+ * As with {@link com.jpmorgan.test1.model.Instruction}, the settlement date is calculated from the instruction date by a
+ * {@link com.jpmorgan.test1.model.SettlementCalendar}, the settlement date field is only validated.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionCsvParser {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    //returned by nextLineEnd when the next line isn't buffered yet, the last read was short and the caller doesn't want to wait
+    private static final int WOULD_WAIT = -2;
+
+    private static final int FIELD_COUNT = 8;
+    private static final int ENTITY = 0;
+    private static final int OPERATION = 1;
+    private static final int FX = 2;
+    private static final int CURRENCY = 3;
+    private static final int INSTRUCTION_DATE = 4;
+    private static final int SETTLEMENT_DATE = 5;
+    private static final int UNITS = 6;
+    private static final int PRICE = 7;
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final byte[][] CURRENCY_NAMES = new byte[CURRENCIES.length][];
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final byte[][] OPERATION_NAMES = new byte[OPERATIONS.length][];
+
+    static {
+        for (Currency currency : CURRENCIES) {
+            CURRENCY_NAMES[currency.ordinal()] = currency.name().getBytes(StandardCharsets.US_ASCII);
+        }
+        for (Operation operation : OPERATIONS) {
+            OPERATION_NAMES[operation.ordinal()] = operation.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final byte delimiter;
+    private final ByteBuffer buffer;
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+    private final EntityTable entityTable = new EntityTable();
+    private final SettlementCalendar settlementCalendar;
+    private boolean skipHeader;
+    private boolean endOfInput;
+    //true if the last read didn't fill the buffer, i.e. the channel had nothing more to give at the time
+    private boolean shortRead;
+    private long lineNumber;
+
+    //scale of the last decimal returned by parseDecimal, kept in a field so parsing doesn't allocate
+    private int decimalScale;
+
+    /**
+     * @param channel
+     *          the channel the text is read from
+     * @param delimiter
+     *          the character separating the fields
+     * @param skipHeader
+     *          true if the first line holds the names of the fields
+     */
+    public InstructionCsvParser(ReadableByteChannel channel, char delimiter, boolean skipHeader) {
+        this(channel, delimiter, skipHeader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel
+     *          the channel the text is read from
+     * @param delimiter
+     *          the character separating the fields
+     * @param skipHeader
+     *          true if the first line holds the names of the fields
+     * @param bufferSize
+     *          the size of the read buffer, which has to hold at least the longest line
+     */
+    public InstructionCsvParser(ReadableByteChannel channel, char delimiter, boolean skipHeader, int bufferSize) {
+        this(channel, delimiter, skipHeader, bufferSize, SettlementCalendar.getDefault());
+    }
+
+    /**
+     * @param channel
+     *          the channel the text is read from
+     * @param delimiter
+     *          the character separating the fields
+     * @param skipHeader
+     *          true if the first line holds the names of the fields
+     * @param bufferSize
+     *          the size of the read buffer, which has to hold at least the longest line
+     * @param settlementCalendar
+     *          the calendar used to calculate the settlement dates
+     */
+    public InstructionCsvParser(ReadableByteChannel channel, char delimiter, boolean skipHeader, int bufferSize, SettlementCalendar settlementCalendar) {
+        this.settlementCalendar = settlementCalendar;
+        this.channel = channel;
+        this.delimiter = (byte) delimiter;
+        this.skipHeader = skipHeader;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Parses lines into the given batch until it is full or the input ends
+     *
+     * @param batch
+     *          the batch the parsed instructions are appended to
+     *
+     * @return false if the input ended, true if there may be more lines
+     */
+    public boolean fill(InstructionBatch batch) throws IOException {
+        return fill(batch, false);
+    }
+
+    /**
+     * Parses lines into the given batch until it is full, the input ends, or the lines already received are parsed and
+     * the channel had nothing more to give on the last read, so a slow source (e.g. a socket) hands back a partly filled
+     * batch instead of holding it while waiting for more input
+     *
+     * @param batch
+     *          the batch the parsed instructions are appended to
+     *
+     * @return false if the input ended, true if there may be more lines
+     */
+    public boolean fillAvailable(InstructionBatch batch) throws IOException {
+        return fill(batch, true);
+    }
+
+    /**
+     * Waits, reading as much input as needed, until a whole line is buffered or the input ends, without parsing it
+     *
+     * @return true if there is a line to be parsed, false if the input ended
+     */
+    public boolean awaitLine() throws IOException {
+        return nextLineEnd(false) >= 0;
+    }
+
+    private boolean fill(InstructionBatch batch, boolean stopWhenWaiting) throws IOException {
+
+        entityTable.bind(batch.getDictionary());
+        boolean consumed = false;
+
+        while (batch.size() < batch.capacity()) {
+
+            //only stops once a line was consumed, so every call makes progress
+            int lineEnd = nextLineEnd(stopWhenWaiting && consumed);
+
+            if (lineEnd == WOULD_WAIT) {
+                return true;
+            }
+
+            if (lineEnd < 0) {
+                return false;
+            }
+
+            consumed = true;
+
+            int lineStart = buffer.position();
+            buffer.position(lineEnd + 1);
+            lineNumber++;
+
+            if (skipHeader) {
+                skipHeader = false;
+                continue;
+            }
+
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            if (lineEnd > lineStart) {
+                parseLine(lineStart, lineEnd, batch);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of lines read so far
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Finds the end of the next line, reading more input if needed
+     *
+     * @param stopWhenWaiting
+     *          true to return {@link #WOULD_WAIT} instead of reading again after a short read
+     *
+     * @return the position of the '\n' ending the line (or the end of the input for the last line), -1 if there are no
+     *          more lines, or {@link #WOULD_WAIT}
+     */
+    private int nextLineEnd(boolean stopWhenWaiting) throws IOException {
+
+        int scanned = buffer.position();
+
+        while (true) {
+
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+
+            if (endOfInput) {
+                if (buffer.hasRemaining()) {
+                    //the last line without a trailing '\n', the position after it is still inside the buffer capacity
+                    if (buffer.limit() == buffer.capacity()) {
+                        buffer.compact().flip();
+                        if (buffer.limit() == buffer.capacity()) {
+                            throw new IOException("Line " + (lineNumber + 1) + " is longer than the buffer of " + buffer.capacity() + " bytes");
+                        }
+                    }
+                    buffer.limit(buffer.limit() + 1);
+                    buffer.put(buffer.limit() - 1, (byte) '\n');
+                    return buffer.limit() - 1;
+                }
+                return -1;
+            }
+
+            if (stopWhenWaiting && shortRead) {
+                return WOULD_WAIT;
+            }
+
+            scanned = buffer.remaining();
+            buffer.compact();
+
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Line " + (lineNumber + 1) + " is longer than the buffer of " + buffer.capacity() + " bytes");
+            }
+
+            endOfInput = channel.read(buffer) < 0;
+            shortRead = buffer.hasRemaining();
+            buffer.flip();
+        }
+    }
+
+    private void parseLine(int lineStart, int lineEnd, InstructionBatch batch) throws IOException {
+
+        int field = 0;
+        fieldStarts[0] = lineStart;
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer.get(i) == delimiter) {
+                if (field == FIELD_COUNT - 1) {
+                    throw malformed("too many fields");
+                }
+                fieldEnds[field++] = i;
+                fieldStarts[field] = i + 1;
+            }
+        }
+
+        fieldEnds[field] = lineEnd;
+
+        if (field != FIELD_COUNT - 1) {
+            throw malformed("expected " + FIELD_COUNT + " fields");
+        }
+
+        Operation operation = parseOperation();
+        Currency currency = parseCurrency();
+        int instructionDay = parseDate(INSTRUCTION_DATE);
+        parseDate(SETTLEMENT_DATE);
+
+        long unscaledFx = parseDecimal(FX);
+        int fxScale = decimalScale;
+        long units = parseDecimal(UNITS);
+        if (decimalScale != 0) {
+            throw malformed("the units have to be a whole number");
+        }
+        long unscaledPrice = parseDecimal(PRICE);
+        int priceScale = decimalScale;
+
+        long unscaledValue = FixedPoint.rescale(FixedPoint.multiply(FixedPoint.multiply(unscaledFx, units), unscaledPrice),
+                fxScale + priceScale, batch.getScale());
+        BigDecimal value = unscaledValue == FixedPoint.OVERFLOW
+                ? toBigDecimal(FX).multiply(toBigDecimal(UNITS)).multiply(toBigDecimal(PRICE))
+                : null;
+
+        batch.append(entityTable.intern(buffer, fieldStarts[ENTITY], fieldEnds[ENTITY]), operation, currency,
+                settlementCalendar.settlementDay(currency, instructionDay), unscaledValue, value);
+    }
+
+    private Operation parseOperation() throws IOException {
+
+        for (int i = 0; i < OPERATION_NAMES.length; i++) {
+            if (fieldEquals(OPERATION, OPERATION_NAMES[i])) {
+                return OPERATIONS[i];
+            }
+        }
+
+        throw malformed("unknown operation");
+    }
+
+    private Currency parseCurrency() throws IOException {
+
+        for (int i = 0; i < CURRENCY_NAMES.length; i++) {
+            if (fieldEquals(CURRENCY, CURRENCY_NAMES[i])) {
+                return CURRENCIES[i];
+            }
+        }
+
+        throw malformed("unknown currency");
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date
+     *
+     * @return the epoch day of the date
+     */
+    private int parseDate(int field) throws IOException {
+
+        int start = fieldStarts[field];
+
+        if (fieldEnds[field] - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+            throw malformed("dates have to be yyyy-MM-dd");
+        }
+
+        int year = parseDigits(start, start + 4);
+        int month = parseDigits(start + 5, start + 7);
+        int day = parseDigits(start + 8, start + 10);
+
+        if (month < 1 || month > 12 || day < 1 || day > EpochDays.lengthOfMonth(year, month)) {
+            throw malformed("invalid date");
+        }
+
+        return EpochDays.of(year, month, day);
+    }
+
+    private int parseDigits(int start, int end) throws IOException {
+
+        int result = 0;
+
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("invalid digit");
+            }
+            result = result * 10 + digit;
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a decimal number, setting {@link #decimalScale} to the number of decimals
+     *
+     * @return the unscaled value, or {@link FixedPoint#OVERFLOW} if it doesn't fit in a long
+     */
+    private long parseDecimal(int field) throws IOException {
+
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = start < end && buffer.get(start) == '-';
+        long unscaled = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean digits = false;
+
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+
+            byte b = buffer.get(i);
+
+            if (b == '.' && !point) {
+                point = true;
+                continue;
+            }
+
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("invalid number");
+            }
+
+            unscaled = FixedPoint.add(FixedPoint.multiply(unscaled, 10), digit);
+            digits = true;
+            if (point) {
+                scale++;
+            }
+        }
+
+        if (!digits) {
+            throw malformed("invalid number");
+        }
+
+        decimalScale = scale;
+
+        return negative && unscaled != FixedPoint.OVERFLOW ? -unscaled : unscaled;
+    }
+
+    /**
+     * Only used for the rare values which don't fit in a long
+     */
+    private BigDecimal toBigDecimal(int field) {
+
+        byte[] bytes = new byte[fieldEnds[field] - fieldStarts[field]];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(fieldStarts[field] + i);
+        }
+
+        return new BigDecimal(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private boolean fieldEquals(int field, byte[] expected) {
+
+        int start = fieldStarts[field];
+
+        if (fieldEnds[field] - start != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed instruction at line " + lineNumber + ": " + reason);
+    }
+
+    /**
+     * Open addressing table from the bytes of an entity name to its {@link EntityDictionary} id, so every name is decoded
+     * and interned only once per parser, as long as the batches share the dictionary and it isn't cleared
+     */
+    private static class EntityTable {
+
+        private EntityDictionary dictionary;
+        private int generation;
+        private byte[][] keys = new byte[1024][];
+        private int[] ids = new int[1024];
+        private int size;
+
+        /**
+         * Interns the names in the dictionary of the batch to be filled, forgetting the ids of another or a cleared one
+         */
+        void bind(EntityDictionary dictionary) {
+
+            if (dictionary != this.dictionary || dictionary.getGeneration() != generation) {
+                keys = new byte[1024][];
+                ids = new int[1024];
+                size = 0;
+                this.dictionary = dictionary;
+                this.generation = dictionary.getGeneration();
+            }
+        }
+
+        int intern(ByteBuffer buffer, int start, int end) {
+
+            int hash = hash(buffer, start, end);
+            int mask = keys.length - 1;
+
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+
+                if (keys[slot] == null) {
+                    byte[] key = new byte[end - start];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = buffer.get(start + i);
+                    }
+
+                    keys[slot] = key;
+                    ids[slot] = dictionary.intern(new String(key, StandardCharsets.UTF_8));
+                    int id = ids[slot];
+
+                    if (++size * 2 > keys.length) {
+                        resize();
+                    }
+
+                    return id;
+                }
+
+                if (matches(keys[slot], buffer, start, end)) {
+                    return ids[slot];
+                }
+            }
+        }
+
+        private void resize() {
+
+            byte[][] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new byte[oldKeys.length * 2][];
+            ids = new int[oldIds.length * 2];
+            int mask = keys.length - 1;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = hash(ByteBuffer.wrap(oldKeys[i]), 0, oldKeys[i].length) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+
+            if (key.length != end - start) {
+                return false;
+            }
+
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private static int hash(ByteBuffer buffer, int start, int end) {
+
+            //FNV-1a, then spread so the low bits used by the mask depend on all the bytes
+            int hash = 0x811C9DC5;
+
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ buffer.get(i)) * 0x01000193;
+            }
+
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.jpmorgan.test1.io;
+
+/**
+ * Constants of the fixed-width binary instruction file format, all values being big-endian:
+ * <pre>
+ * header  : magic (int), version (short), scale (short), record count (long), entity count (int), reserved (int), trailer offset (long)
+ * record  : valueInUSD unscaled at the file scale (long), entity id (int), settlement epoch day (int), operation ordinal (byte), currency ordinal (byte)
+ * trailer : entity count x entity name (modified UTF-8),
+ *           overflow count (int), overflow count x (record index (long), valueInUSD (modified UTF-8 of BigDecimal.toString))
+ * </pre>
+ * An entity id or ordinal of -1 means the field was null, and a value of Long.MIN_VALUE means the value didn't fit the scale and is
+ * stored in the trailer instead.
+ *
+ * @author Vlad Constantinescu
+ */
+final class InstructionFileFormat {
+
+    static final int MAGIC = 0x4A504D49;
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES + Byte.BYTES + Byte.BYTES;
+
+    static final int VALUE_OFFSET = 0;
+    static final int ENTITY_OFFSET = 8;
+    static final int SETTLEMENT_DAY_OFFSET = 12;
+    static final int OPERATION_OFFSET = 16;
+    static final int CURRENCY_OFFSET = 17;
+
+    static final int SCALE_POSITION = 6;
+    static final int RECORD_COUNT_POSITION = 8;
+    static final int ENTITY_COUNT_POSITION = 16;
+    static final int TRAILER_OFFSET_POSITION = 24;
+
+    static final byte NONE = -1;
+
+    private InstructionFileFormat() {
+    }
+}
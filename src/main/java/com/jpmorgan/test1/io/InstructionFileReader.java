@@ -0,0 +1,241 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.InstructionView;
+import com.jpmorgan.test1.model.Operation;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jpmorgan.test1.io.InstructionFileFormat.*;
+
+/**
+ * Reads a file written by {@link InstructionFileWriter} through memory mapping.
+ * The records aren't parsed up front: a {@link Cursor} moves over the mapped file and decodes a field only when its
+ * getter is called, so scanning a file doesn't allocate per record. Files larger than a single mapping are mapped in
+ * consecutive windows.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionFileReader implements Closeable {
+
+    //the largest number of records a single mapping can hold
+    private static final long WINDOW_RECORDS = Integer.MAX_VALUE / RECORD_BYTES;
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final FileChannel channel;
+    private final int scale;
+    private final long recordCount;
+    //the names of the entity ids of the file
+    private final String[] entities;
+    private final Map<Long, BigDecimal> overflowValues = new HashMap<>();
+
+    /**
+     * Opens the given file and reads its header and trailer
+     *
+     * @param path
+     *          the file to be read
+     */
+    public InstructionFileReader(Path path) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                throw new IOException(path + " is not an instruction file");
+            }
+
+            this.scale = header.getShort(SCALE_POSITION);
+            this.recordCount = header.getLong(RECORD_COUNT_POSITION);
+            this.entities = new String[header.getInt(ENTITY_COUNT_POSITION)];
+
+            long trailerOffset = header.getLong(TRAILER_OFFSET_POSITION);
+            readTrailer(channel.map(FileChannel.MapMode.READ_ONLY, trailerOffset, channel.size() - trailerOffset));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return recordCount;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return a new cursor positioned before the first record
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readTrailer(ByteBuffer trailerBuffer) throws IOException {
+
+        byte[] bytes = new byte[trailerBuffer.remaining()];
+        trailerBuffer.get(bytes);
+        DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = trailer.readUTF();
+        }
+
+        int overflowCount = trailer.readInt();
+
+        for (int i = 0; i < overflowCount; i++) {
+            overflowValues.put(trailer.readLong(), new BigDecimal(trailer.readUTF()));
+        }
+    }
+
+    /**
+     * Flyweight over the records of the file: {@link #next()} moves it to the following record, and the getters decode
+     * the fields of the current record straight from the mapped buffer
+     */
+    public class Cursor implements InstructionView {
+
+        private long index = -1;
+        private long windowStart;
+        private MappedByteBuffer window;
+        private int offset;
+        //the ids of the entity ids of the file in the last dictionary requested, mapped once per cursor
+        private EntityDictionary dictionary;
+        private int[] entityIds;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next record
+         *
+         * @return false if there are no more records
+         */
+        public boolean next() throws IOException {
+
+            if (index + 1 >= recordCount) {
+                return false;
+            }
+
+            index++;
+
+            if (window == null || index - windowStart >= WINDOW_RECORDS) {
+                windowStart = index;
+                long windowSize = Math.min(WINDOW_RECORDS, recordCount - index) * RECORD_BYTES;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + index * RECORD_BYTES, windowSize);
+            }
+
+            offset = (int) (index - windowStart) * RECORD_BYTES;
+
+            return true;
+        }
+
+        /**
+         * @return the position of the current record in the file
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the id of the entity in the given {@link EntityDictionary}, interning all the entities of the file
+         *          the first time the dictionary is requested
+         */
+        @Override
+        public int getEntityId(EntityDictionary dictionary) {
+
+            int fileEntityId = window.getInt(offset + ENTITY_OFFSET);
+
+            if (fileEntityId == NONE) {
+                return EntityDictionary.NONE;
+            }
+
+            if (dictionary != this.dictionary) {
+                entityIds = new int[entities.length];
+                for (int i = 0; i < entities.length; i++) {
+                    entityIds[i] = dictionary.intern(entities[i]);
+                }
+                this.dictionary = dictionary;
+            }
+
+            return entityIds[fileEntityId];
+        }
+
+        @Override
+        public String getEntity() {
+
+            int fileEntityId = window.getInt(offset + ENTITY_OFFSET);
+
+            return fileEntityId == NONE ? null : entities[fileEntityId];
+        }
+
+        @Override
+        public Operation getOperation() {
+
+            byte ordinal = window.get(offset + OPERATION_OFFSET);
+
+            return ordinal == NONE ? null : OPERATIONS[ordinal];
+        }
+
+        @Override
+        public Currency getCurrency() {
+
+            byte ordinal = window.get(offset + CURRENCY_OFFSET);
+
+            return ordinal == NONE ? null : CURRENCIES[ordinal];
+        }
+
+        @Override
+        public int getSettlementDay() {
+            return window.getInt(offset + SETTLEMENT_DAY_OFFSET);
+        }
+
+        /**
+         * @return the value in USD as an unscaled long at the file scale, or {@link FixedPoint#OVERFLOW} if it is only available through {@link #getValueInUSD()}
+         */
+        public long getUnscaledValueInUSD() {
+            return window.getLong(offset + VALUE_OFFSET);
+        }
+
+        @Override
+        public BigDecimal getValueInUSD() {
+
+            long unscaled = getUnscaledValueInUSD();
+
+            return unscaled == FixedPoint.OVERFLOW ? overflowValues.get(index) : FixedPoint.toBigDecimal(unscaled, scale);
+        }
+
+        @Override
+        public long getValueInUSD(int scale) {
+
+            long unscaled = getUnscaledValueInUSD();
+
+            if (unscaled == FixedPoint.OVERFLOW) {
+                return FixedPoint.toUnscaled(overflowValues.get(index), scale);
+            }
+
+            return FixedPoint.rescale(unscaled, InstructionFileReader.this.scale, scale);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.Operation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.jpmorgan.test1.io.InstructionFileFormat.*;
+
+/**
+ * Writes instructions to a file in the fixed-width binary format described in {@link InstructionFileFormat}.
+ * The entity names and the values which don't fit the scale are only known at the end, so they are written in a
+ * trailer when the writer is closed.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionFileWriter implements Closeable {
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final int scale;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private final Map<String, Integer> entityIdsByName = new HashMap<>();
+    private final List<String> entities = Lists.newArrayList();
+    private final Map<Long, BigDecimal> overflowValues = new HashMap<>();
+    private long recordCount;
+
+    /**
+     * Creates (or truncates) the given file
+     *
+     * @param path
+     *          the file to be written
+     * @param scale
+     *          the scale of the unscaled values
+     */
+    public InstructionFileWriter(Path path, int scale) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.scale = scale;
+
+        //the header is written again on close, when the counts are known
+        channel.position(HEADER_BYTES);
+    }
+
+    /**
+     * Writes the fields of the given instruction needed by the report
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be written
+     */
+    public void write(Instruction instruction) throws IOException {
+
+        long unscaledValue = instruction.getValueInUSD(scale);
+
+        write(instruction.getEntity(), instruction.getOperation(), instruction.getCurrency(), instruction.getSettlementDay(),
+                unscaledValue, instruction.getOverflowValueInUSD(unscaledValue));
+    }
+
+    /**
+     * Writes all the instructions of the given batch
+     *
+     * @param batch
+     *          the {@link com.jpmorgan.test1.model.InstructionBatch} to be written
+     */
+    public void write(InstructionBatch batch) throws IOException {
+
+        InstructionBatch.Cursor cursor = batch.cursor();
+
+        while (cursor.next()) {
+
+            long unscaledValue = cursor.getValueInUSD(scale);
+
+            write(cursor.getEntity(), cursor.getOperation(), cursor.getCurrency(), cursor.getSettlementDay(), unscaledValue,
+                    cursor.getOverflowValueInUSD(unscaledValue));
+        }
+    }
+
+    /**
+     * Writes an instruction
+     *
+     * @param entity
+     *          the entity of the instruction
+     * @param operation
+     *          the {@link Operation} of the instruction
+     * @param currency
+     *          the {@link Currency} of the instruction
+     * @param settlementDay
+     *          the settlement date as an epoch day
+     * @param unscaledValue
+     *          the value in USD as an unscaled long at the file scale, or {@link FixedPoint#OVERFLOW}
+     * @param value
+     *          the value in USD, only used when the unscaled value is {@link FixedPoint#OVERFLOW}
+     */
+    public void write(String entity, Operation operation, Currency currency, int settlementDay, long unscaledValue, BigDecimal value) throws IOException {
+
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+
+        if (unscaledValue == FixedPoint.OVERFLOW) {
+            overflowValues.put(recordCount, value);
+        }
+
+        buffer.putLong(unscaledValue);
+        buffer.putInt(intern(entity));
+        buffer.putInt(settlementDay);
+        buffer.put(operation == null ? NONE : (byte) operation.ordinal());
+        buffer.put(currency == null ? NONE : (byte) currency.ordinal());
+
+        recordCount++;
+    }
+
+    /**
+     * Writes the trailer and the header, then closes the file
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+
+            long trailerOffset = channel.position();
+            writeFully(ByteBuffer.wrap(trailer()));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) scale);
+            header.putLong(recordCount);
+            header.putInt(entities.size());
+            header.putInt(0);
+            header.putLong(trailerOffset);
+            header.flip();
+
+            channel.position(0);
+            writeFully(header);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private byte[] trailer() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream trailer = new DataOutputStream(bytes);
+
+        for (String entity : entities) {
+            trailer.writeUTF(entity);
+        }
+
+        trailer.writeInt(overflowValues.size());
+
+        for (Map.Entry<Long, BigDecimal> overflowValue : overflowValues.entrySet()) {
+            trailer.writeLong(overflowValue.getKey());
+            trailer.writeUTF(overflowValue.getValue().toString());
+        }
+
+        trailer.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private int intern(String entity) {
+
+        if (entity == null) {
+            return NONE;
+        }
+
+        Integer id = entityIdsByName.get(entity);
+
+        if (id == null) {
+            id = entities.size();
+            entities.add(entity);
+            entityIdsByName.put(entity, id);
+        }
+
+        return id;
+    }
+}
@@ -0,0 +1,472 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.Operation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.jpmorgan.test1.io.InstructionFileFormat.NONE;
+
+/**
+ * Append-only journal of the instructions which were ingested, stored in memory-mapped segment files of a fixed size
+ * in a directory. Every instruction gets a sequence number, starting from 0, and the segments are named after the
+ * sequence number of their first record, so they sort in order. All values are big-endian:
+ * <pre>
+ * segment header : magic (int), version (short), reserved (short), first sequence (long)
+ * record         : payload length (int), CRC32 of the payload (int), payload
+ * payload        : valueInUSD unscaled at the journal scale (long), settlement epoch day (int), operation ordinal (byte),
+ *                  currency ordinal (byte), entity length (short), entity (UTF-8)
+ *                  [, valueInUSD length (short), valueInUSD (BigDecimal.toString) if the value is Long.MIN_VALUE]
+ * </pre>
+ * The mapped segments are zero-filled, so a payload length of 0 marks the end of a segment. On opening, the last
+ * segment is scanned and the first record whose CRC doesn't match (a write torn by a crash) is taken as its end, so a
+ * journal is always recovered up to its last complete record. The records are only guaranteed to be on disk after
+ * {@link #force()}; without it they survive a crash of the process, but not of the machine.
+ * This class isn't thread-safe.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionJournal implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A504D4A;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int FIRST_SEQUENCE_POSITION = 8;
+    private static final int FRAME_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final int FIXED_PAYLOAD_BYTES = Long.BYTES + Integer.BYTES + Byte.BYTES + Byte.BYTES + Short.BYTES;
+    private static final int MAX_FRAME_BYTES = FRAME_HEADER_BYTES + FIXED_PAYLOAD_BYTES + 2 * (Short.BYTES + Short.MAX_VALUE);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int scale;
+    private final CRC32 crc = new CRC32();
+    private final List<Long> segmentSequences = Lists.newArrayList();
+    private MappedByteBuffer segment;
+    private long nextSequence;
+
+    /**
+     * Opens the journal in the given directory, creating it if needed, and recovers its end
+     *
+     * @param directory
+     *          the directory holding the segments
+     * @param segmentSize
+     *          the size of a segment file, which has to hold at least a record with the longest entity
+     * @param scale
+     *          the scale of the unscaled values
+     */
+    public InstructionJournal(Path directory, int segmentSize, int scale) throws IOException {
+
+        if (segmentSize < HEADER_BYTES + MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("The segments must hold at least " + (HEADER_BYTES + MAX_FRAME_BYTES) + " bytes");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.scale = scale;
+
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : segments) {
+                String name = path.getFileName().toString();
+                segmentSequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+
+        segmentSequences.sort(Long::compare);
+
+        if (segmentSequences.isEmpty()) {
+            openSegment(0);
+        } else {
+            recoverLastSegment();
+        }
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the sequence number the next appended instruction will get, i.e. the number of instructions in the journal
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Appends the fields of the given instruction needed by the report
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be appended
+     *
+     * @return the sequence number of the instruction
+     */
+    public long append(Instruction instruction) throws IOException {
+
+        long unscaledValue = instruction.getValueInUSD(scale);
+
+        return append(instruction.getEntity(), instruction.getOperation(), instruction.getCurrency(), instruction.getSettlementDay(),
+                unscaledValue, instruction.getOverflowValueInUSD(unscaledValue));
+    }
+
+    /**
+     * Appends a single record
+     *
+     * @param unscaledValue
+     *          the valueInUSD at the journal scale, or {@link FixedPoint#OVERFLOW} if it doesn't fit
+     * @param value
+     *          the valueInUSD; only used when the unscaled value is {@link FixedPoint#OVERFLOW}
+     *
+     * @return the sequence number of the record
+     */
+    public long append(String entity, Operation operation, Currency currency, int settlementDay, long unscaledValue, BigDecimal value) throws IOException {
+
+        byte[] entityBytes = entity == null ? null : entity.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = unscaledValue == FixedPoint.OVERFLOW ? value.toString().getBytes(StandardCharsets.US_ASCII) : null;
+
+        if ((entityBytes != null && entityBytes.length > Short.MAX_VALUE) || (valueBytes != null && valueBytes.length > Short.MAX_VALUE)) {
+            throw new IllegalArgumentException("The entity or the value is too long to be journaled");
+        }
+
+        int payloadLength = FIXED_PAYLOAD_BYTES + (entityBytes == null ? 0 : entityBytes.length)
+                + (valueBytes == null ? 0 : Short.BYTES + valueBytes.length);
+
+        //the remaining bytes of a segment stay zero, which marks its end
+        if (segment.remaining() < FRAME_HEADER_BYTES + payloadLength) {
+            openSegment(nextSequence);
+        }
+
+        int frameStart = segment.position();
+        segment.position(frameStart + FRAME_HEADER_BYTES);
+        segment.putLong(unscaledValue);
+        segment.putInt(settlementDay);
+        segment.put(operation == null ? NONE : (byte) operation.ordinal());
+        segment.put(currency == null ? NONE : (byte) currency.ordinal());
+        putBytes(entityBytes);
+        if (valueBytes != null) {
+            putBytes(valueBytes);
+        }
+
+        //the length is written last, so a record is never seen before its payload is complete
+        segment.putInt(frameStart + Integer.BYTES, crc(segment, frameStart + FRAME_HEADER_BYTES, payloadLength));
+        segment.putInt(frameStart, payloadLength);
+
+        return nextSequence++;
+    }
+
+    /**
+     * Flushes the appended records of the current segment to the disk
+     */
+    public void force() {
+        segment.force();
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence number lower than the given one, e.g. because they are
+     * covered by a snapshot
+     *
+     * @param sequence
+     *          the first sequence number which has to stay in the journal
+     */
+    public void deleteBefore(long sequence) throws IOException {
+
+        //a segment can only go if the next one starts at or before the sequence, the last one always stays
+        while (segmentSequences.size() > 1 && segmentSequences.get(1) <= sequence) {
+            Files.delete(segmentPath(segmentSequences.remove(0)));
+        }
+    }
+
+    /**
+     * @return a new cursor positioned before the record with the given sequence number
+     */
+    public Cursor cursor(long fromSequence) {
+        return new Cursor(fromSequence);
+    }
+
+    @Override
+    public void close() {
+
+        segment.force();
+        segment = null;
+    }
+
+    private void putBytes(byte[] bytes) {
+
+        if (bytes == null) {
+            segment.putShort(NONE);
+        } else {
+            segment.putShort((short) bytes.length);
+            segment.put(bytes);
+        }
+    }
+
+    private int crc(MappedByteBuffer buffer, int start, int length) {
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(start + length).position(start);
+
+        crc.reset();
+        crc.update(payload);
+
+        return (int) crc.getValue();
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+
+        if (segment != null) {
+            segment.force();
+        }
+
+        segment = map(firstSequence, FileChannel.MapMode.READ_WRITE);
+        segment.putInt(MAGIC);
+        segment.putShort(VERSION);
+        segment.putShort((short) 0);
+        segment.putLong(firstSequence);
+        segmentSequences.add(firstSequence);
+    }
+
+    /**
+     * Finds the end of the last segment, discarding a torn record and anything after it
+     */
+    private void recoverLastSegment() throws IOException {
+
+        long firstSequence = segmentSequences.get(segmentSequences.size() - 1);
+        segment = map(firstSequence, FileChannel.MapMode.READ_WRITE);
+
+        //the process died between creating the segment and writing its header
+        if (segment.getInt(0) == 0) {
+            segmentSequences.remove(segmentSequences.size() - 1);
+            segment = null;
+            openSegment(firstSequence);
+            nextSequence = firstSequence;
+            return;
+        }
+
+        checkHeader(segment, firstSequence);
+
+        int position = HEADER_BYTES;
+        long sequence = firstSequence;
+
+        for (int length = frameLength(segment, position); length > 0; length = frameLength(segment, position)) {
+            position += FRAME_HEADER_BYTES + length;
+            sequence++;
+        }
+
+        for (int i = position; i < segment.capacity(); i++) {
+            segment.put(i, (byte) 0);
+        }
+
+        segment.position(position);
+        nextSequence = sequence;
+    }
+
+    /**
+     * @return the payload length of the valid record at the given position, or 0 if there is none
+     */
+    private int frameLength(MappedByteBuffer buffer, int position) {
+
+        if (position + FRAME_HEADER_BYTES > buffer.capacity()) {
+            return 0;
+        }
+
+        int length = buffer.getInt(position);
+
+        if (length < FIXED_PAYLOAD_BYTES || position + FRAME_HEADER_BYTES + length > buffer.capacity()) {
+            return 0;
+        }
+
+        return crc(buffer, position + FRAME_HEADER_BYTES, length) == buffer.getInt(position + Integer.BYTES) ? length : 0;
+    }
+
+    private MappedByteBuffer map(long firstSequence, FileChannel.MapMode mode) throws IOException {
+
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+
+        //the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(segmentPath(firstSequence), options)) {
+            return channel.map(mode, 0, mode == FileChannel.MapMode.READ_ONLY ? channel.size() : segmentSize);
+        }
+    }
+
+    private void checkHeader(MappedByteBuffer buffer, long firstSequence) throws IOException {
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION
+                || buffer.getLong(FIRST_SEQUENCE_POSITION) != firstSequence) {
+            throw new IOException(segmentPath(firstSequence) + " is not a journal segment");
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Flyweight over the records of the journal: {@link #next()} moves it to the following record, and the getters
+     * decode the fields of the current record straight from the mapped segment.
+     * It sees the records appended before it was created.
+     */
+    public class Cursor {
+
+        private final long endSequence = nextSequence;
+        private long sequence;
+        private int segmentIndex = -1;
+        private MappedByteBuffer buffer;
+        private int position;
+        private int payloadLength;
+
+        private Cursor(long fromSequence) {
+            this.sequence = fromSequence - 1;
+        }
+
+        /**
+         * Moves to the next record
+         *
+         * @return false if there are no more records
+         */
+        public boolean next() throws IOException {
+
+            if (sequence + 1 >= endSequence) {
+                return false;
+            }
+
+            if (buffer == null) {
+                seek(sequence + 1);
+            } else {
+                position += FRAME_HEADER_BYTES + payloadLength;
+                payloadLength = frameLength(buffer, position);
+            }
+
+            //the end of a segment, continue with the next one
+            if (payloadLength == 0) {
+                if (segmentIndex + 1 >= segmentSequences.size() || segmentSequences.get(segmentIndex + 1) != sequence + 1) {
+                    throw new IOException("The journal is corrupted after the record " + sequence);
+                }
+                openSegment(segmentIndex + 1);
+                payloadLength = frameLength(buffer, position);
+                if (payloadLength == 0) {
+                    throw new IOException("The journal is corrupted after the record " + sequence);
+                }
+            }
+
+            sequence++;
+            return true;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getUnscaledValueInUSD() {
+            return buffer.getLong(position + FRAME_HEADER_BYTES);
+        }
+
+        public BigDecimal getValueInUSD() {
+
+            long unscaledValue = getUnscaledValueInUSD();
+
+            if (unscaledValue != FixedPoint.OVERFLOW) {
+                return FixedPoint.toBigDecimal(unscaledValue, scale);
+            }
+
+            int valueStart = position + FRAME_HEADER_BYTES + FIXED_PAYLOAD_BYTES + Math.max(0, entityLength());
+
+            return new BigDecimal(string(valueStart + Short.BYTES, buffer.getShort(valueStart)));
+        }
+
+        public int getSettlementDay() {
+            return buffer.getInt(position + FRAME_HEADER_BYTES + Long.BYTES);
+        }
+
+        public Operation getOperation() {
+
+            byte ordinal = buffer.get(position + FRAME_HEADER_BYTES + Long.BYTES + Integer.BYTES);
+
+            return ordinal == NONE ? null : OPERATIONS[ordinal];
+        }
+
+        public Currency getCurrency() {
+
+            byte ordinal = buffer.get(position + FRAME_HEADER_BYTES + Long.BYTES + Integer.BYTES + Byte.BYTES);
+
+            return ordinal == NONE ? null : CURRENCIES[ordinal];
+        }
+
+        public String getEntity() {
+
+            int length = entityLength();
+
+            return length == NONE ? null : string(position + FRAME_HEADER_BYTES + FIXED_PAYLOAD_BYTES, length);
+        }
+
+        private int entityLength() {
+            return buffer.getShort(position + FRAME_HEADER_BYTES + FIXED_PAYLOAD_BYTES - Short.BYTES);
+        }
+
+        private String string(int start, int length) {
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Positions the cursor before the record with the given sequence number, skipping the records before it
+         */
+        private void seek(long targetSequence) throws IOException {
+
+            int index = 0;
+            while (index + 1 < segmentSequences.size() && segmentSequences.get(index + 1) <= targetSequence) {
+                index++;
+            }
+
+            if (segmentSequences.get(index) > targetSequence) {
+                throw new IOException("The record " + targetSequence + " was deleted from the journal");
+            }
+
+            openSegment(index);
+
+            for (long skipped = segmentSequences.get(index); skipped < targetSequence; skipped++) {
+                position += FRAME_HEADER_BYTES + payloadLength;
+                payloadLength = frameLength(buffer, position);
+                if (payloadLength == 0) {
+                    throw new IOException("The journal is corrupted after the record " + skipped);
+                }
+            }
+        }
+
+        private void openSegment(int index) throws IOException {
+
+            segmentIndex = index;
+            buffer = map(segmentSequences.get(index), FileChannel.MapMode.READ_ONLY);
+            checkHeader(buffer, segmentSequences.get(index));
+            position = HEADER_BYTES;
+            payloadLength = frameLength(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.jpmorgan.test1.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A named feed of delimited text instructions, e.g. a file or a socket, in the format read by {@link InstructionCsvParser}
+ *
+ * @author Vlad Constantinescu
+ */
+public interface InstructionSource {
+
+    /**
+     * @return the name identifying the source in the logs and notifications
+     */
+    String getName();
+
+    /**
+     * Opens the channel the text is read from; it is closed by the caller once the source is drained
+     */
+    ReadableByteChannel open() throws IOException;
+
+    /**
+     * @return a source reading the given file
+     */
+    static InstructionSource file(Path path) {
+
+        return new InstructionSource() {
+
+            @Override
+            public String getName() {
+                return path.toString();
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                return FileChannel.open(path, StandardOpenOption.READ);
+            }
+        };
+    }
+
+    /**
+     * @return a source connecting to the given address and reading until the other end closes the connection
+     */
+    static InstructionSource socket(InetSocketAddress address) {
+
+        return new InstructionSource() {
+
+            @Override
+            public String getName() {
+                return address.getHostString() + ":" + address.getPort();
+            }
+
+            @Override
+            public ReadableByteChannel open() throws IOException {
+                return SocketChannel.open(address);
+            }
+        };
+    }
+}
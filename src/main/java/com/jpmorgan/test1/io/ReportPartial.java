@@ -0,0 +1,208 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.NumericMode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The per settlement date, per entity totals of one partition of the entities, aggregated by a worker node and merged by
+ * the coordinator into the full report. Every entity belongs to a single partition, so merging the partials of all the
+ * partitions gives exactly the totals of a single node. It is written big-endian as
+ * <pre>
+ * magic (int), version (short), partition (int), partition count (int), scale (int), day count (int),
+ * day count x daily aggregate (as written by {@link DailyAggregateCodec}),
+ * CRC32 of everything before (long)
+ * </pre>
+ *
+ * @author Vlad Constantinescu
+ */
+public class ReportPartial {
+
+    private static final int MAGIC = 0x4A504D50;
+    private static final short VERSION = 2;
+
+    private final int partition;
+    private final int partitionCount;
+    private final List<DailyAggregate> dailyAggregates;
+
+    /**
+     * @param partition
+     *          the partition of the entities, between 0 and partitionCount - 1
+     * @param partitionCount
+     *          the number of partitions
+     * @param dailyAggregates
+     *          the daily aggregates of the entities of the partition, in chronological order
+     */
+    public ReportPartial(int partition, int partitionCount, List<DailyAggregate> dailyAggregates) {
+
+        if (partition < 0 || partition >= partitionCount) {
+            throw new IllegalArgumentException("Partition " + partition + " is not between 0 and " + (partitionCount - 1));
+        }
+
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+        this.dailyAggregates = dailyAggregates;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return the daily aggregates in chronological order
+     */
+    public List<DailyAggregate> getDailyAggregates() {
+        return dailyAggregates;
+    }
+
+    /**
+     * @return the name of the file holding the partial of the given partition in a drop directory
+     */
+    public static String fileName(int partition) {
+        return "partial-" + partition + ".bin";
+    }
+
+    /**
+     * Writes the partial to a temporary file first and then moves it to {@link #fileName(int)} in the given directory,
+     * so a coordinator polling the directory never reads an incomplete partial
+     *
+     * @param directory
+     *          the drop directory
+     * @param scale
+     *          the scale of the unscaled totals
+     *
+     * @return the written file
+     */
+    public Path writeTo(Path directory, int scale) throws IOException {
+
+        Path path = directory.resolve(fileName(partition));
+        Path temporary = directory.resolve(fileName(partition) + ".tmp");
+
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            write(out, scale);
+        }
+
+        return Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the partial to the given stream, without closing it
+     *
+     * @param stream
+     *          where the partial is written, e.g. a file or a socket
+     * @param scale
+     *          the scale of the unscaled totals
+     */
+    public void write(OutputStream stream, int scale) throws IOException {
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(stream, crc)));
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(partition);
+        out.writeInt(partitionCount);
+        out.writeInt(scale);
+        out.writeInt(dailyAggregates.size());
+
+        for (DailyAggregate dailyAggregate : dailyAggregates) {
+            DailyAggregateCodec.write(out, dailyAggregate, scale);
+        }
+
+        out.flush();
+        //the checksum of all the bytes before it
+        out.writeLong(crc.getValue());
+        out.flush();
+    }
+
+    /**
+     * Reads a partial written by {@link #writeTo(Path, int)}
+     */
+    public static ReportPartial read(Path path, NumericMode numericMode, int scale) throws IOException {
+        return read(path, numericMode, scale, new EntityDictionary());
+    }
+
+    /**
+     * Reads a partial written by {@link #writeTo(Path, int)}, interning its entities in the given {@link EntityDictionary}
+     */
+    public static ReportPartial read(Path path, NumericMode numericMode, int scale, EntityDictionary dictionary) throws IOException {
+
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in, numericMode, scale, dictionary);
+        }
+    }
+
+    /**
+     * Reads a partial written by {@link #write(OutputStream, int)}, without closing the stream
+     *
+     * @param stream
+     *          where the partial is read from
+     * @param numericMode
+     *          how the restored aggregates accumulate the totals
+     * @param scale
+     *          the scale of the restored aggregates
+     */
+    public static ReportPartial read(InputStream stream, NumericMode numericMode, int scale) throws IOException {
+        return read(stream, numericMode, scale, new EntityDictionary());
+    }
+
+    /**
+     * Reads a partial written by {@link #write(OutputStream, int)}, without closing the stream
+     *
+     * @param stream
+     *          where the partial is read from
+     * @param numericMode
+     *          how the restored aggregates accumulate the totals
+     * @param scale
+     *          the scale of the restored aggregates
+     * @param dictionary
+     *          the {@link EntityDictionary} the entities are interned in, e.g. the one of the aggregator they are merged into
+     */
+    public static ReportPartial read(InputStream stream, NumericMode numericMode, int scale, EntityDictionary dictionary) throws IOException {
+
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(stream), crc));
+
+        if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+            throw new IOException("Not a report partial");
+        }
+
+        int partition = in.readInt();
+        int partitionCount = in.readInt();
+        int partialScale = in.readInt();
+        int dayCount = in.readInt();
+        List<DailyAggregate> dailyAggregates = Lists.newArrayListWithCapacity(dayCount);
+
+        for (int day = 0; day < dayCount; day++) {
+            dailyAggregates.add(DailyAggregateCodec.read(in, numericMode, scale, partialScale, dictionary));
+        }
+
+        long expectedCrc = crc.getValue();
+
+        if (in.readLong() != expectedCrc) {
+            throw new IOException("The partial of partition " + partition + " is corrupted");
+        }
+
+        return new ReportPartial(partition, partitionCount, dailyAggregates);
+    }
+}
@@ -0,0 +1,205 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time copy of the per settlement date, per entity totals, together with the sequence number of the first
+ * {@link InstructionJournal} record it doesn't include, so the state can be restored by reading the snapshot and only
+ * replaying the journal from that sequence number. The file is written big-endian as
+ * <pre>
+ * magic (int), version (short), sequence (long), scale (int), day count (int),
+ * day count x daily aggregate (as written by {@link DailyAggregateCodec}),
+ * CRC32 of everything before (long)
+ * </pre>
+ * The snapshots of version 2 hold the totals as text (modified UTF-8 of BigDecimal.toString, preceded by a boolean and
+ * the entity, empty if null) and no scale, and are still read, as the journal they cover may already be deleted. The
+ * snapshots of version 1 have no per currency totals, so they are rejected like a corrupted snapshot rather than
+ * restored with a breakdown disagreeing with the daily totals.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ReportSnapshot {
+
+    private static final int MAGIC = 0x4A504D53;
+    private static final short VERSION = 3;
+    private static final short TEXT_VERSION = 2;
+    private static final Operation[] OPERATIONS = {Operation.BUY, Operation.SELL};
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final long sequence;
+    private final List<DailyAggregate> dailyAggregates;
+
+    public ReportSnapshot(long sequence, List<DailyAggregate> dailyAggregates) {
+        this.sequence = sequence;
+        this.dailyAggregates = dailyAggregates;
+    }
+
+    /**
+     * @return the sequence number of the first journal record which isn't included in the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the daily aggregates in chronological order
+     */
+    public List<DailyAggregate> getDailyAggregates() {
+        return dailyAggregates;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, forced to the disk, and then moves it over the given one, so the
+     * file is either the previous snapshot or the complete new one, even if the process or the machine dies while writing
+     *
+     * @param path
+     *          the file to be written
+     * @param scale
+     *          the scale of the unscaled totals
+     */
+    public void write(Path path, int scale) throws IOException {
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc)))) {
+
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(scale);
+            out.writeInt(dailyAggregates.size());
+
+            for (DailyAggregate dailyAggregate : dailyAggregates) {
+                DailyAggregateCodec.write(out, dailyAggregate, scale);
+            }
+
+            out.flush();
+            //the checksum of all the bytes before it
+            out.writeLong(crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Path, int)}
+     *
+     * @param path
+     *          the file to be read
+     * @param numericMode
+     *          how the restored aggregates accumulate the values added afterwards
+     * @param scale
+     *          the scale of the restored aggregates
+     */
+    public static ReportSnapshot read(Path path, NumericMode numericMode, int scale) throws IOException {
+        return read(path, numericMode, scale, new EntityDictionary());
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Path, int)}
+     *
+     * @param path
+     *          the file to be read
+     * @param numericMode
+     *          how the restored aggregates accumulate the values added afterwards
+     * @param scale
+     *          the scale of the restored aggregates
+     * @param dictionary
+     *          the {@link EntityDictionary} the entities are interned in, e.g. the one of the aggregator they are restored into
+     */
+    public static ReportSnapshot read(Path path, NumericMode numericMode, int scale, EntityDictionary dictionary) throws IOException {
+
+        CRC32 crc = new CRC32();
+
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a report snapshot");
+            }
+
+            short version = in.readShort();
+
+            if (version != VERSION && version != TEXT_VERSION) {
+                throw new IOException(path + " is a report snapshot of version " + version + " instead of " + VERSION);
+            }
+
+            long sequence = in.readLong();
+            int snapshotScale = version == VERSION ? in.readInt() : 0;
+            int dayCount = in.readInt();
+            List<DailyAggregate> dailyAggregates = Lists.newArrayListWithCapacity(dayCount);
+
+            for (int day = 0; day < dayCount; day++) {
+                dailyAggregates.add(version == VERSION
+                        ? DailyAggregateCodec.read(in, numericMode, scale, snapshotScale, dictionary)
+                        : readText(in, numericMode, scale, dictionary));
+            }
+
+            long expectedCrc = crc.getValue();
+
+            if (in.readLong() != expectedCrc) {
+                throw new IOException(path + " is corrupted");
+            }
+
+            return new ReportSnapshot(sequence, dailyAggregates);
+        }
+    }
+
+    /**
+     * Reads a daily aggregate of a snapshot of version 2
+     */
+    private static DailyAggregate readText(DataInputStream in, NumericMode numericMode, int scale, EntityDictionary dictionary) throws IOException {
+
+        DailyAggregate dailyAggregate = new DailyAggregate(in.readInt(), numericMode, scale, 0, dictionary);
+
+        for (Operation operation : OPERATIONS) {
+
+            int entityCount = in.readInt();
+
+            for (int i = 0; i < entityCount; i++) {
+                boolean nullEntity = in.readBoolean();
+                String entity = in.readUTF();
+                BigDecimal total = new BigDecimal(in.readUTF());
+
+                dailyAggregate.restoreEntityTotal(nullEntity ? null : entity, operation, FixedPoint.toUnscaled(total, scale), scale, total);
+            }
+        }
+
+        for (Currency currency : CURRENCIES) {
+            for (Operation operation : OPERATIONS) {
+                BigDecimal total = new BigDecimal(in.readUTF());
+
+                dailyAggregate.getCurrencyTotals().add(currency, operation, FixedPoint.toUnscaled(total, scale), scale, total);
+            }
+        }
+
+        return dailyAggregate;
+    }
+}
@@ -0,0 +1,142 @@
+package com.jpmorgan.test1.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non negative long values (e.g. durations in nanoseconds), with the log-linear buckets of an HDR
+ * histogram: the values below 2^SUB_BUCKET_BITS have a bucket each, and above that every power of two is split into
+ * 2^(SUB_BUCKET_BITS - 1) buckets, so any recorded value is known within 1/128 of itself (under 1%).
+ * The counts are kept in a fixed array for the whole range of a long, so recording a value is a few shifts and one atomic
+ * increment, without allocating nor locking.
+ *
+ * @author Vlad Constantinescu
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    //the bucket of the highest long is the one of the 63rd bit
+    private static final int BUCKET_COUNT = Long.SIZE - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((BUCKET_COUNT + 1) * HALF_SUB_BUCKET_COUNT);
+
+    /**
+     * Records a value, clamping the negative ones (e.g. from a clock going backwards) to 0
+     */
+    public void record(long value) {
+
+        counts.incrementAndGet(index(Math.max(value, 0)));
+    }
+
+    /**
+     * @return a consistent enough copy of the counts, which is not affected by the values recorded afterwards
+     */
+    public Snapshot snapshot() {
+
+        long[] copy = new long[counts.length()];
+
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+
+        return new Snapshot(copy);
+    }
+
+    static int index(long value) {
+
+        int bucket = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> bucket);
+
+        return bucket * HALF_SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return the highest value which is recorded in the same bucket as the given index
+     */
+    static long highestValue(int index) {
+
+        int bucket = Math.max(0, index / HALF_SUB_BUCKET_COUNT - 1);
+        long subBucket = index - bucket * HALF_SUB_BUCKET_COUNT;
+
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    /**
+     * Immutable copy of the counts of a {@link Histogram}
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final double mean;
+
+        private Snapshot(long[] counts) {
+
+            long total = 0;
+            double sum = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                total += counts[i];
+                sum += (double) counts[i] * highestValue(i);
+            }
+
+            this.counts = counts;
+            this.count = total;
+            this.mean = total == 0 ? 0 : sum / total;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the approximate mean of the recorded values, or 0 if there is none
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * @return the approximate highest recorded value, or 0 if there is none
+         */
+        public long getMax() {
+            return getValueAtPercentile(100);
+        }
+
+        /**
+         * @param percentile
+         *          the percentile, between 0 and 100
+         *
+         * @return the value under which the given percentage of the recorded values are, within the precision of the
+         *          buckets, or 0 if there is no recorded value
+         */
+        public long getValueAtPercentile(double percentile) {
+
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+
+            return highestValue(counts.length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + Math.round(mean) + " p50=" + getValueAtPercentile(50) + " p99=" + getValueAtPercentile(99)
+                    + " p99.9=" + getValueAtPercentile(99.9) + " max=" + getMax();
+        }
+    }
+}
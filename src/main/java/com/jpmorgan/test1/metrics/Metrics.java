@@ -0,0 +1,293 @@
+package com.jpmorgan.test1.metrics;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Operation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead instrumentation of the ingestion and of the report generation: a {@link Histogram} of the time spent in
+ * every {@link Stage}, the number of instructions ingested per currency and operation, the number of entities of every
+ * settlement date and the number of bytes written.
+ * The instrumented code always calls it; when it is {@link #disabled()} every call is a branch on a final field, without
+ * reading the clock nor touching shared memory, so it costs close to nothing (see MetricsOverheadBenchmark), and
+ * disabled metrics don't even allocate their histograms and counters.
+ * The counters are {@link LongAdder}s, so the ingestion threads don't contend on them.
+ *
+ * @author Vlad Constantinescu
+ */
+public final class Metrics {
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final int COUNT_LENGTH = (CURRENCIES.length + 1) * (OPERATIONS.length + 1);
+    //after the constants it needs
+    private static final Metrics DISABLED = new Metrics(false, false);
+
+    private final boolean enabled;
+    //null unless the JFR events are committed
+    private final StageEvents stageEvents;
+    //null when disabled
+    private final Histogram[] stageTimes;
+    //indexed by currency and operation, with an extra row and column for the missing ones
+    private final LongAdder[] instructionCounts;
+    private final Histogram entitiesPerDay;
+    private final LongAdder bytesWritten;
+
+    /**
+     * Creates enabled metrics, which also commit JFR events if the JVM supports them
+     */
+    public Metrics() {
+        this(true, true);
+    }
+
+    /**
+     * @param enabled
+     *          false to create metrics which record nothing, same as {@link #disabled()}
+     * @param jfrEvents
+     *          true to commit a JFR event at the end of every stage which isn't per instruction
+     */
+    public Metrics(boolean enabled, boolean jfrEvents) {
+
+        this.enabled = enabled;
+        this.stageEvents = enabled && jfrEvents && StageEvents.isAvailable() ? new StageEvents() : null;
+
+        if (!enabled) {
+            this.stageTimes = null;
+            this.instructionCounts = null;
+            this.entitiesPerDay = null;
+            this.bytesWritten = null;
+            return;
+        }
+
+        this.stageTimes = new Histogram[STAGES.length];
+        this.instructionCounts = new LongAdder[COUNT_LENGTH];
+        this.entitiesPerDay = new Histogram();
+        this.bytesWritten = new LongAdder();
+
+        for (int i = 0; i < stageTimes.length; i++) {
+            stageTimes[i] = new Histogram();
+        }
+
+        for (int i = 0; i < instructionCounts.length; i++) {
+            instructionCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the metrics which record nothing, used by default
+     */
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a stage, and begins its JFR event if they are committed
+     *
+     * @return the start time to be given to {@link #stop(Stage, long)}, or 0 if disabled
+     */
+    public long start() {
+
+        if (!enabled) {
+            return 0;
+        }
+
+        if (stageEvents != null) {
+            stageEvents.begin();
+        }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Starts timing stages which are timed for every instruction, see {@link Stage#isPerInstruction()}, without a JFR event
+     *
+     * @return the start time to be given to {@link #stop(Stage, long)}, or 0 if disabled
+     */
+    public long startPerInstruction() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time spent in a stage since the given start time
+     *
+     * @param stage
+     *          the {@link Stage} which ended
+     * @param startTime
+     *          the time returned by {@link #start()} or by the previous {@link #stop(Stage, long)}
+     *
+     * @return the end time, to time the next stage without reading the clock again, or 0 if disabled
+     */
+    public long stop(Stage stage, long startTime) {
+
+        if (!enabled) {
+            return 0;
+        }
+
+        long endTime = System.nanoTime();
+        long elapsed = endTime - startTime;
+
+        stageTimes[stage.ordinal()].record(elapsed);
+
+        if (stageEvents != null && !stage.isPerInstruction()) {
+            stageEvents.end(stage);
+        }
+
+        return endTime;
+    }
+
+    /**
+     * Counts an ingested instruction
+     */
+    public void countInstruction(Currency currency, Operation operation) {
+
+        if (enabled) {
+            instructionCounts[countIndex(currency, operation)].increment();
+        }
+    }
+
+    /**
+     * Records the number of entities of a settlement date and operation, when its report is written
+     */
+    public void recordEntities(int entities) {
+
+        if (enabled) {
+            entitiesPerDay.record(entities);
+        }
+    }
+
+    /**
+     * Counts bytes written to an output
+     */
+    public void addBytesWritten(long bytes) {
+
+        if (enabled) {
+            bytesWritten.add(bytes);
+        }
+    }
+
+    /**
+     * @return a copy of the current values, which is not affected by the values recorded afterwards
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private static int countIndex(Currency currency, Operation operation) {
+
+        int row = currency == null ? CURRENCIES.length : currency.ordinal();
+        int column = operation == null ? OPERATIONS.length : operation.ordinal();
+
+        return row * (OPERATIONS.length + 1) + column;
+    }
+
+    /**
+     * Immutable copy of the values of {@link Metrics}
+     */
+    public static class Snapshot {
+
+        private final Map<Stage, Histogram.Snapshot> stageTimes = new EnumMap<>(Stage.class);
+        private final long[] instructionCounts;
+        private final Histogram.Snapshot entitiesPerDay;
+        private final long bytesWritten;
+
+        private Snapshot(Metrics metrics) {
+
+            instructionCounts = new long[COUNT_LENGTH];
+
+            if (!metrics.enabled) {
+                Histogram.Snapshot empty = new Histogram().snapshot();
+                for (Stage stage : STAGES) {
+                    stageTimes.put(stage, empty);
+                }
+                entitiesPerDay = empty;
+                bytesWritten = 0;
+                return;
+            }
+
+            for (Stage stage : STAGES) {
+                stageTimes.put(stage, metrics.stageTimes[stage.ordinal()].snapshot());
+            }
+
+            for (int i = 0; i < instructionCounts.length; i++) {
+                instructionCounts[i] = metrics.instructionCounts[i].sum();
+            }
+
+            entitiesPerDay = metrics.entitiesPerDay.snapshot();
+            bytesWritten = metrics.bytesWritten.sum();
+        }
+
+        /**
+         * @return the times spent in the given {@link Stage}, in nanoseconds
+         */
+        public Histogram.Snapshot getStageTimes(Stage stage) {
+            return stageTimes.get(stage);
+        }
+
+        /**
+         * @return the number of instructions ingested with the given currency and operation, which may be null
+         */
+        public long getInstructionCount(Currency currency, Operation operation) {
+            return instructionCounts[countIndex(currency, operation)];
+        }
+
+        /**
+         * @return the number of instructions ingested
+         */
+        public long getInstructionCount() {
+
+            long total = 0;
+
+            for (long count : instructionCounts) {
+                total += count;
+            }
+
+            return total;
+        }
+
+        /**
+         * @return the number of entities of every settlement date and operation whose report was written
+         */
+        public Histogram.Snapshot getEntitiesPerDay() {
+            return entitiesPerDay;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * @return the values formatted one per line, e.g. to be logged
+         */
+        @Override
+        public String toString() {
+
+            StringBuilder text = new StringBuilder();
+
+            for (Map.Entry<Stage, Histogram.Snapshot> entry : stageTimes.entrySet()) {
+                text.append(entry.getKey()).append(" ns: ").append(entry.getValue()).append('\n');
+            }
+
+            for (Currency currency : CURRENCIES) {
+                for (Operation operation : OPERATIONS) {
+                    long count = getInstructionCount(currency, operation);
+                    if (count > 0) {
+                        text.append(currency).append(' ').append(operation).append(" instructions: ").append(count).append('\n');
+                    }
+                }
+            }
+
+            text.append("Entities per day: ").append(entitiesPerDay).append('\n');
+            text.append("Bytes written: ").append(bytesWritten).append('\n');
+
+            return text.toString();
+        }
+    }
+}
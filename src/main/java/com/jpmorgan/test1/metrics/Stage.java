@@ -0,0 +1,43 @@
+package com.jpmorgan.test1.metrics;
+
+/**
+ * Enum used to define the stages which are timed by {@link Metrics}
+ *
+ * @author Vlad Constantinescu
+ */
+public enum Stage {
+
+    /**
+     * Calculation of the settlement date of an {@link com.jpmorgan.test1.model.Instruction}, when it is built
+     */
+    SETTLEMENT(true),
+    /**
+     * Calculation of the value in USD of an {@link com.jpmorgan.test1.model.Instruction}, when it is built
+     */
+    VALUATION(true),
+    /**
+     * Grouping a list, batch or file of instructions by settlement date and adding them to the daily aggregates
+     */
+    AGGREGATION(false),
+    /**
+     * Sorting the entities of a settlement date and operation
+     */
+    RANKING(false),
+    /**
+     * Formatting the report lines of a settlement date
+     */
+    FORMATTING(false);
+
+    private final boolean perInstruction;
+
+    Stage(boolean perInstruction) {
+        this.perInstruction = perInstruction;
+    }
+
+    /**
+     * @return true if the stage is timed for every instruction, so it is too fine grained to be a JFR event
+     */
+    public boolean isPerInstruction() {
+        return perInstruction;
+    }
+}
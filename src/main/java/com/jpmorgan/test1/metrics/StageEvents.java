@@ -0,0 +1,124 @@
+package com.jpmorgan.test1.metrics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JFR events of the stages which aren't per instruction, committed by {@link Metrics} so the stages show up in a flight
+ * recording next to the GC and the allocation events. Every event is timed with begin() and end(), so its JFR duration
+ * is the time spent in the stage.
+ * The event type is defined through jdk.jfr.EventFactory by reflection, as the code is compiled for Java 8 and not
+ * every Java 8 runtime has JFR; without it {@link #isAvailable()} is false and no event is created.
+ *
+ * @author Vlad Constantinescu
+ */
+final class StageEvents {
+
+    static final String NAME = "com.jpmorgan.test1.Stage";
+
+    private static final Object FACTORY;
+    private static final Method NEW_EVENT;
+    private static final Method BEGIN;
+    private static final Method END;
+    private static final Method SET;
+    private static final Method SHOULD_COMMIT;
+    private static final Method COMMIT;
+
+    static {
+
+        Object factory = null;
+        Method newEvent = null;
+        Method begin = null;
+        Method end = null;
+        Method set = null;
+        Method shouldCommit = null;
+        Method commit = null;
+
+        try {
+            Constructor<?> annotation = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            List<Object> annotations = Arrays.asList(
+                    annotation.newInstance(Class.forName("jdk.jfr.Name"), NAME),
+                    annotation.newInstance(Class.forName("jdk.jfr.Label"), "Report Stage"),
+                    annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] {"JPMorgan", "Report"}),
+                    annotation.newInstance(Class.forName("jdk.jfr.Description"), "A stage of the ingestion or of the report generation"),
+                    annotation.newInstance(Class.forName("jdk.jfr.StackTrace"), false));
+            Object stageField = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class)
+                    .newInstance(String.class, "stage", Collections.singletonList(annotation.newInstance(Class.forName("jdk.jfr.Label"), "Stage")));
+
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, Collections.singletonList(stageField));
+            newEvent = eventFactory.getMethod("newEvent");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            set = event.getMethod("set", int.class, Object.class);
+            shouldCommit = event.getMethod("shouldCommit");
+            commit = event.getMethod("commit");
+        } catch (ReflectiveOperationException e) {
+            //no JFR in this runtime
+            factory = null;
+        }
+
+        FACTORY = factory;
+        NEW_EVENT = newEvent;
+        BEGIN = begin;
+        END = end;
+        SET = set;
+        SHOULD_COMMIT = shouldCommit;
+        COMMIT = commit;
+    }
+
+    //the event of the stage running on every thread, begun when the previous stage ended
+    private final ThreadLocal<Object> current = new ThreadLocal<>();
+
+    /**
+     * @return true if the runtime supports JFR
+     */
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Begins the event of the stage starting on the current thread
+     */
+    void begin() {
+
+        Object event = invoke(NEW_EVENT, FACTORY);
+        invoke(BEGIN, event);
+        current.set(event);
+    }
+
+    /**
+     * Ends the event begun on the current thread and commits it for the given stage, then begins the event of the next one
+     */
+    void end(Stage stage) {
+
+        Object event = current.get();
+
+        if (event != null) {
+            invoke(END, event);
+            if ((Boolean) invoke(SHOULD_COMMIT, event)) {
+                invoke(SET, event, 0, stage.name());
+                invoke(COMMIT, event);
+            }
+        }
+
+        begin();
+    }
+
+    private static Object invoke(Method method, Object target, Object... arguments) {
+
+        try {
+            return method.invoke(target, arguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
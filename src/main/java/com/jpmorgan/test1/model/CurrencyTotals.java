@@ -0,0 +1,141 @@
+package com.jpmorgan.test1.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Mutable USD totals of a settlement date per {@link Currency} and {@link Operation} of the instructions.
+ * The cells are a dense primitive matrix indexed by the enum ordinals, so adding a value is an array update without
+ * any lookup or allocation; like in {@link MoneyAccumulator}, only the values which can't be represented at the scale
+ * (or which would overflow the long) are summed as {@link java.math.BigDecimal}, in cells allocated on the first overflow.
+ *
+ * @author Vlad Constantinescu
+ */
+public class CurrencyTotals {
+
+    private static final int CURRENCY_COUNT = Currency.values().length;
+    private static final int OPERATION_COUNT = Operation.values().length;
+
+    private final int scale;
+    //[currency][operation], currency major
+    private final long[] unscaledTotals = new long[CURRENCY_COUNT * OPERATION_COUNT];
+    private BigDecimal[] overflowTotals;
+
+    public CurrencyTotals(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Adds a value in USD to the total of the currency and operation; the values without one of them aren't broken down
+     *
+     * @param currency
+     *          the {@link Currency} of the instruction
+     * @param operation
+     *          the {@link Operation} of the instruction
+     * @param unscaledValue
+     *          the value in USD as an unscaled long, or {@link FixedPoint#OVERFLOW} if it isn't representable
+     * @param valueScale
+     *          the scale of the unscaled value
+     * @param value
+     *          the value in USD as a {@link java.math.BigDecimal}; may be null, unless the unscaled value is {@link FixedPoint#OVERFLOW}
+     */
+    public void add(Currency currency, Operation operation, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (currency == null || operation == null) {
+            return;
+        }
+
+        int cell = cell(currency, operation);
+        long sum = FixedPoint.add(unscaledTotals[cell], FixedPoint.rescale(unscaledValue, valueScale, scale));
+
+        if (sum != FixedPoint.OVERFLOW) {
+            unscaledTotals[cell] = sum;
+            return;
+        }
+
+        addOverflow(cell, value != null ? value : FixedPoint.toBigDecimal(unscaledValue, valueScale));
+    }
+
+    /**
+     * Adds the totals of another matrix to this one
+     *
+     * @param other
+     *          the matrix to be added, with the same scale
+     */
+    public void merge(CurrencyTotals other) {
+
+        for (int cell = 0; cell < unscaledTotals.length; cell++) {
+
+            long sum = FixedPoint.add(unscaledTotals[cell], other.unscaledTotals[cell]);
+
+            if (sum != FixedPoint.OVERFLOW) {
+                unscaledTotals[cell] = sum;
+            } else {
+                addOverflow(cell, FixedPoint.toBigDecimal(other.unscaledTotals[cell], other.scale));
+            }
+
+            if (other.overflowTotals != null && other.overflowTotals[cell] != null) {
+                addOverflow(cell, other.overflowTotals[cell]);
+            }
+        }
+    }
+
+    /**
+     * @return an independent copy of this matrix
+     */
+    public CurrencyTotals copy() {
+
+        CurrencyTotals copy = new CurrencyTotals(scale);
+        System.arraycopy(unscaledTotals, 0, copy.unscaledTotals, 0, unscaledTotals.length);
+        copy.overflowTotals = overflowTotals == null ? null : overflowTotals.clone();
+
+        return copy;
+    }
+
+    /**
+     * @return the total in USD of the instructions of the given currency and operation
+     */
+    public BigDecimal getTotal(Currency currency, Operation operation) {
+
+        int cell = cell(currency, operation);
+        BigDecimal overflow = overflowTotals == null ? null : overflowTotals[cell];
+
+        if (overflow == null) {
+            return FixedPoint.toBigDecimal(unscaledTotals[cell], scale);
+        }
+
+        return unscaledTotals[cell] == 0 ? overflow : overflow.add(FixedPoint.toBigDecimal(unscaledTotals[cell], scale));
+    }
+
+    /**
+     * Appends the total rounded half up to the given number of decimals, without allocating unless it overflowed
+     *
+     * @param out
+     *          where the total is appended
+     * @param decimals
+     *          the number of decimals to be appended
+     */
+    public void appendTotal(Currency currency, Operation operation, Appendable out, int decimals) throws IOException {
+
+        int cell = cell(currency, operation);
+
+        if (overflowTotals == null || overflowTotals[cell] == null) {
+            FixedPoint.append(out, unscaledTotals[cell], scale, decimals);
+        } else {
+            FixedPoint.append(out, getTotal(currency, operation), decimals);
+        }
+    }
+
+    private void addOverflow(int cell, BigDecimal value) {
+
+        if (overflowTotals == null) {
+            overflowTotals = new BigDecimal[unscaledTotals.length];
+        }
+
+        overflowTotals[cell] = overflowTotals[cell] == null ? value : overflowTotals[cell].add(value);
+    }
+
+    private static int cell(Currency currency, Operation operation) {
+        return currency.ordinal() * OPERATION_COUNT + operation.ordinal();
+    }
+}
@@ -0,0 +1,662 @@
+package com.jpmorgan.test1.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Model used to store the running incoming/outgoing totals and the per entity totals of a single settlement date.
+ * Its size depends only on the number of distinct entities settling in that day, not on the number of instructions.
+ * The per entity totals are updated in place in {@link EntityTotals}, and the {@link Ranking} objects are only created
+ * when the rankings are requested.
+ * In approximate mode the per entity totals are kept in a {@link SpaceSavingSketch} with a fixed number of counters
+ * instead, so a day with millions of entities takes a fixed amount of memory; the daily totals stay exact, while the
+ * totals of the ranked entities are overestimated by at most {@link #getErrorBound(Operation)}. The sketches are keyed
+ * by the entity names, so an approximate aggregate doesn't intern its entities in the dictionary either.
+ * The same pass also fills the exact USD totals per {@link Currency} and {@link Operation} in {@link CurrencyTotals}.
+ * The entities are kept as ids of the {@link EntityDictionary} of the aggregate, usually the one of the aggregator
+ * owning it; instructions and aggregates with ids of another dictionary are mapped by name.
+ *
+ * @author Vlad Constantinescu
+ */
+public class DailyAggregate {
+
+    private int settlementDay;
+    private NumericMode numericMode;
+    private int scale;
+    private EntityDictionary dictionary;
+    private MoneyAccumulator incomingValue;
+    private MoneyAccumulator outgoingValue;
+    private EntityTotals incomingByEntity;
+    private EntityTotals outgoingByEntity;
+    //only in approximate mode, where the per entity totals above are views of the sketches, created when requested
+    private SpaceSavingSketch incomingSketch;
+    private SpaceSavingSketch outgoingSketch;
+    //per currency notionals of every entity, indexed by the currency ordinal; only kept when valued through an FxRateTable
+    private EntityTotals[] incomingNotionals;
+    private EntityTotals[] outgoingNotionals;
+    private CurrencyTotals currencyTotals;
+
+    public DailyAggregate(int settlementDay) {
+        this(settlementDay, NumericMode.BIG_DECIMAL, FixedPoint.DEFAULT_SCALE);
+    }
+
+    public DailyAggregate(int settlementDay, NumericMode numericMode, int scale) {
+        this(settlementDay, numericMode, scale, 0);
+    }
+
+    /**
+     * @param sketchCapacity
+     *          the number of entities tracked per operation in approximate mode, or 0 to keep the exact total of every entity
+     */
+    public DailyAggregate(int settlementDay, NumericMode numericMode, int scale, int sketchCapacity) {
+        this(settlementDay, numericMode, scale, sketchCapacity, new EntityDictionary());
+    }
+
+    /**
+     * @param sketchCapacity
+     *          the number of entities tracked per operation in approximate mode, or 0 to keep the exact total of every entity
+     * @param dictionary
+     *          the {@link EntityDictionary} the entities are interned in, usually shared by all the days of an aggregator
+     */
+    public DailyAggregate(int settlementDay, NumericMode numericMode, int scale, int sketchCapacity, EntityDictionary dictionary) {
+
+        this.settlementDay = settlementDay;
+        this.numericMode = numericMode;
+        this.scale = scale;
+        this.dictionary = dictionary;
+        this.incomingValue = new MoneyAccumulator(scale);
+        this.outgoingValue = new MoneyAccumulator(scale);
+        this.currencyTotals = new CurrencyTotals(scale);
+
+        if (sketchCapacity > 0) {
+            this.incomingSketch = new SpaceSavingSketch(sketchCapacity, scale);
+            this.outgoingSketch = new SpaceSavingSketch(sketchCapacity, scale);
+        } else {
+            this.incomingByEntity = new EntityTotals(scale, dictionary);
+            this.outgoingByEntity = new EntityTotals(scale, dictionary);
+        }
+    }
+
+    /**
+     * Adds the valueInUSD of the given instruction to the daily total and to the total of its entity.
+     * Apart from the first instruction of an entity, this doesn't allocate in {@link NumericMode#FIXED_POINT} mode,
+     * as the BigDecimal value is only requested when the unscaled one doesn't fit.
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction}, or a cursor over a columnar store, to be added
+     */
+    public void add(InstructionView instruction) {
+
+        long unscaledValue = numericMode == NumericMode.FIXED_POINT ? instruction.getValueInUSD(scale) : FixedPoint.OVERFLOW;
+
+        add(instruction, unscaledValue, scale, unscaledValue == FixedPoint.OVERFLOW ? instruction.getValueInUSD() : null);
+    }
+
+    /**
+     * Adds an instruction whose value in USD was already decoded, e.g. by a cursor over a columnar store, resolving its
+     * entity by id if the aggregate is exact and by name if it is approximate
+     *
+     * @param instruction
+     *          the instruction to be added
+     * @param unscaledValue
+     *          the value in USD as an unscaled long, or {@link FixedPoint#OVERFLOW} if it isn't representable
+     * @param valueScale
+     *          the scale of the unscaled value
+     * @param value
+     *          the value in USD as a {@link java.math.BigDecimal}; may be null, unless the unscaled value is {@link FixedPoint#OVERFLOW}
+     */
+    public void add(InstructionView instruction, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (isApproximate()) {
+            add(instruction.getEntity(), instruction.getOperation(), instruction.getCurrency(), unscaledValue, valueScale, value);
+        } else {
+            add(instruction.getEntityId(dictionary), instruction.getOperation(), instruction.getCurrency(), unscaledValue, valueScale, value);
+        }
+    }
+
+    /**
+     * Adds the given instruction valued through the rate table instead of its own fx, i.e. at the rate of its currency
+     * effective in this settlement date. Its notional is also added to the per currency notionals of its entity, so the
+     * aggregate can be revalued when the rates are corrected.
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be added
+     * @param fxRates
+     *          the {@link FxRateTable} with the rates of this settlement date
+     *
+     * @throws IllegalStateException in approximate mode, where the per entity totals can't be revalued
+     */
+    public void add(Instruction instruction, FxRateTable fxRates) {
+
+        checkExact();
+
+        Currency currency = instruction.getCurrency();
+        long unscaledNotional = numericMode == NumericMode.FIXED_POINT ? instruction.getNotional(scale) : FixedPoint.OVERFLOW;
+        long unscaledValue = fxRates.getValueInUSD(currency, settlementDay, unscaledNotional, scale, scale);
+        BigDecimal notional = unscaledNotional == FixedPoint.OVERFLOW ? instruction.getNotional() : null;
+        BigDecimal value = null;
+
+        if (unscaledValue == FixedPoint.OVERFLOW) {
+            value = fxRates.getRate(currency, settlementDay).multiply(notional != null ? notional : instruction.getNotional());
+        }
+
+        int entityId = instruction.getEntityId(dictionary);
+        add(entityId, instruction.getOperation(), currency, unscaledValue, scale, value);
+        addNotional(entityId, instruction.getOperation(), currency, unscaledNotional, scale, notional);
+    }
+
+    /**
+     * Adds a notional, in its own currency, to the per currency notionals of the entity
+     *
+     * @param entityId
+     *          the id of the entity of the instruction in the {@link EntityDictionary} of the aggregate
+     * @param operation
+     *          the {@link Operation} of the instruction
+     * @param currency
+     *          the {@link Currency} of the notional
+     * @param unscaledNotional
+     *          the notional as an unscaled long, or {@link FixedPoint#OVERFLOW} if it isn't representable
+     * @param notionalScale
+     *          the scale of the unscaled notional
+     * @param notional
+     *          the notional as a {@link java.math.BigDecimal}; may be null, unless the unscaled notional is {@link FixedPoint#OVERFLOW}
+     */
+    public void addNotional(int entityId, Operation operation, Currency currency, long unscaledNotional, int notionalScale, BigDecimal notional) {
+
+        if (operation == null) {
+            return;
+        }
+
+        EntityTotals[] notionals = notionals(operation, true);
+
+        if (notionals[currency.ordinal()] == null) {
+            notionals[currency.ordinal()] = new EntityTotals(scale, dictionary);
+        }
+
+        EntityTotals totals = notionals[currency.ordinal()];
+
+        if (numericMode == NumericMode.FIXED_POINT && unscaledNotional != FixedPoint.OVERFLOW) {
+            totals.add(entityId, unscaledNotional, notionalScale);
+        } else {
+            totals.add(entityId, notional != null ? notional : FixedPoint.toBigDecimal(unscaledNotional, notionalScale));
+        }
+    }
+
+    /**
+     * Revalues the totals from the rates they were valued with to corrected rates, adding notional * (new rate - old rate)
+     * for every entity and currency whose rate changed in this settlement date. It costs O(entities * currencies),
+     * whatever the number of instructions, and the totals are exactly the ones of adding all the instructions again at
+     * the new rates.
+     *
+     * @param oldRates
+     *          the {@link FxRateTable} the totals were valued with
+     * @param newRates
+     *          the corrected {@link FxRateTable}
+     *
+     * @throws IllegalStateException in approximate mode
+     */
+    public void revalue(FxRateTable oldRates, FxRateTable newRates) {
+
+        checkExact();
+
+        for (Currency currency : Currency.values()) {
+
+            if (!hasNotionals(Operation.BUY, currency) && !hasNotionals(Operation.SELL, currency)) {
+                continue;
+            }
+
+            BigDecimal rateChange = newRates.getRate(currency, settlementDay).subtract(oldRates.getRate(currency, settlementDay));
+
+            if (rateChange.signum() != 0) {
+                revalue(Operation.BUY, currency, rateChange);
+                revalue(Operation.SELL, currency, rateChange);
+            }
+        }
+    }
+
+    /**
+     * Restores the total of an entity, e.g. from a partial or a snapshot, into the daily total and the total of the entity.
+     * An entity total mixes currencies, so it isn't added to the currency totals: the caller restores them as well,
+     * through {@link #getCurrencyTotals()}, so the breakdown agrees with the daily total.
+     *
+     * @param entity
+     *          the entity, interned in the {@link EntityDictionary} of the aggregate
+     * @param operation
+     *          the {@link Operation} of the total
+     * @param unscaledTotal
+     *          the total in USD as an unscaled long, or {@link FixedPoint#OVERFLOW} if it isn't representable
+     * @param totalScale
+     *          the scale of the unscaled total
+     * @param total
+     *          the total in USD as a {@link java.math.BigDecimal}; may be null, unless the unscaled total is {@link FixedPoint#OVERFLOW}
+     */
+    public void restoreEntityTotal(String entity, Operation operation, long unscaledTotal, int totalScale, BigDecimal total) {
+
+        if (isApproximate()) {
+            addToSketch(entity, operation, unscaledTotal, totalScale, total);
+        } else {
+            addToEntity(dictionary.intern(entity), operation, unscaledTotal, totalScale, total);
+        }
+    }
+
+    /**
+     * Adds a value in USD to the daily total, to the total of the entity and to the total of the currency, without
+     * needing an {@link Instruction} object
+     *
+     * @param entityId
+     *          the id of the entity of the instruction in the {@link EntityDictionary} of the aggregate
+     * @param operation
+     *          the {@link Operation} of the instruction
+     * @param currency
+     *          the {@link Currency} of the instruction; a malformed instruction without one isn't broken down per currency
+     * @param unscaledValue
+     *          the value in USD as an unscaled long, or {@link FixedPoint#OVERFLOW} if it isn't representable
+     * @param valueScale
+     *          the scale of the unscaled value
+     * @param value
+     *          the value in USD as a {@link java.math.BigDecimal}; may be null, unless the unscaled value is {@link FixedPoint#OVERFLOW}
+     */
+    public void add(int entityId, Operation operation, Currency currency, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (isApproximate()) {
+            add(dictionary.nameOf(entityId), operation, currency, unscaledValue, valueScale, value);
+            return;
+        }
+
+        //the currency totals are exact in both numeric modes
+        currencyTotals.add(currency, operation, unscaledValue, valueScale, value);
+        addToEntity(entityId, operation, unscaledValue, valueScale, value);
+    }
+
+    /**
+     * Same as {@link #add(int, Operation, Currency, long, int, BigDecimal)}, with the name of the entity, which is only
+     * interned if the aggregate is exact
+     *
+     * @param entity
+     *          the entity of the instruction
+     */
+    public void add(String entity, Operation operation, Currency currency, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (!isApproximate()) {
+            add(dictionary.intern(entity), operation, currency, unscaledValue, valueScale, value);
+            return;
+        }
+
+        currencyTotals.add(currency, operation, unscaledValue, valueScale, value);
+        addToSketch(entity, operation, unscaledValue, valueScale, value);
+    }
+
+    private void addToEntity(int entityId, Operation operation, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (operation == Operation.BUY) {
+            add(incomingValue, incomingByEntity, entityId, unscaledValue, valueScale, value);
+        }
+
+        if (operation == Operation.SELL) {
+            add(outgoingValue, outgoingByEntity, entityId, unscaledValue, valueScale, value);
+        }
+    }
+
+    private void addToSketch(String entity, Operation operation, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (operation == Operation.BUY) {
+            add(incomingValue, incomingSketch, entity, unscaledValue, valueScale, value);
+            incomingByEntity = null;
+        }
+
+        if (operation == Operation.SELL) {
+            add(outgoingValue, outgoingSketch, entity, unscaledValue, valueScale, value);
+            outgoingByEntity = null;
+        }
+    }
+
+    /**
+     * Merges the totals of another aggregate of the same settlement date into this one.
+     * The result is the same as if all the instructions of both aggregates had been added to this one.
+     *
+     * @param other
+     *          the aggregate to be merged, with the same {@link NumericMode} and scale; an approximate aggregate can
+     *          merge an exact one, but not the other way around
+     *
+     * @throws IllegalArgumentException if this aggregate is exact and the other one is approximate
+     */
+    public void merge(DailyAggregate other) {
+
+        if (!isApproximate() && other.isApproximate()) {
+            throw new IllegalArgumentException("An exact aggregate can't merge an approximate one");
+        }
+
+        incomingValue.add(other.incomingValue);
+        outgoingValue.add(other.outgoingValue);
+        currencyTotals.merge(other.currencyTotals);
+
+        if (isApproximate()) {
+            merge(incomingSketch, other, Operation.BUY);
+            merge(outgoingSketch, other, Operation.SELL);
+            incomingByEntity = null;
+            outgoingByEntity = null;
+        } else {
+            incomingByEntity.merge(other.incomingByEntity);
+            outgoingByEntity.merge(other.outgoingByEntity);
+        }
+
+        for (Operation operation : Operation.values()) {
+
+            EntityTotals[] otherNotionals = other.notionals(operation, false);
+
+            for (int currency = 0; otherNotionals != null && currency < otherNotionals.length; currency++) {
+                if (otherNotionals[currency] != null) {
+                    EntityTotals[] notionals = notionals(operation, true);
+                    if (notionals[currency] == null) {
+                        notionals[currency] = new EntityTotals(scale, dictionary);
+                    }
+                    notionals[currency].merge(otherNotionals[currency]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an independent copy of this aggregate, which won't be affected by instructions added afterwards
+     *
+     * @return the copy
+     */
+    public DailyAggregate copy() {
+
+        DailyAggregate copy = new DailyAggregate(settlementDay, numericMode, scale, 0, dictionary);
+        copy.incomingValue = incomingValue.copy();
+        copy.outgoingValue = outgoingValue.copy();
+        copy.currencyTotals = currencyTotals.copy();
+
+        if (isApproximate()) {
+            copy.incomingSketch = incomingSketch.copy();
+            copy.outgoingSketch = outgoingSketch.copy();
+            copy.incomingByEntity = null;
+            copy.outgoingByEntity = null;
+        } else {
+            copy.incomingByEntity = incomingByEntity.copy();
+            copy.outgoingByEntity = outgoingByEntity.copy();
+        }
+
+        copy.incomingNotionals = copy(incomingNotionals);
+        copy.outgoingNotionals = copy(outgoingNotionals);
+
+        return copy;
+    }
+
+    /**
+     * @return the settlement date as an epoch day
+     */
+    public int getSettlementDay() {
+        return settlementDay;
+    }
+
+    /**
+     * @return the {@link EntityDictionary} of the entity ids of the totals
+     */
+    public EntityDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public BigDecimal getIncomingValue() {
+        return incomingValue.getValue();
+    }
+
+    public BigDecimal getOutgoingValue() {
+        return outgoingValue.getValue();
+    }
+
+    /**
+     * @return the incoming {@link Ranking}s sorted in descending order based on their totalValue, then by entity
+     */
+    public List<Ranking> getIncomingRankings() {
+        return getRankings(Operation.BUY, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the outgoing {@link Ranking}s sorted in descending order based on their totalValue, then by entity
+     */
+    public List<Ranking> getOutgoingRankings() {
+        return getRankings(Operation.SELL, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Ranks only the best entities, using a bounded heap so a day with n entities costs O(n log topK) instead of O(n log n)
+     *
+     * @param operation
+     *          the {@link Operation} for which the entities are ranked
+     * @param topK
+     *          the maximum number of rankings to be returned
+     *
+     * @return the best topK {@link Ranking}s, sorted in the same order as the full ranking
+     */
+    public List<Ranking> getRankings(Operation operation, int topK) {
+        return getTotalsByEntity(operation).getRankings(topK);
+    }
+
+    /**
+     * Same as {@link #getRankings(Operation, int)}, but returns the slots of the best entities in
+     * {@link #getTotalsByEntity(Operation)} instead of creating {@link Ranking} objects
+     *
+     * @param operation
+     *          the {@link Operation} for which the entities are ranked
+     * @param topK
+     *          the maximum number of slots to be returned
+     *
+     * @return the slots of the best topK entities, in ranking order
+     */
+    public int[] getRankedSlots(Operation operation, int topK) {
+        return getTotalsByEntity(operation).getRankedSlots(topK);
+    }
+
+    /**
+     * Calculates the rank of a single entity, in O(n) without sorting
+     *
+     * @param operation
+     *          the {@link Operation} for which the entity is ranked
+     * @param entity
+     *          the entity
+     *
+     * @return the rank of the entity, starting from 1, or 0 if the entity has no instruction for that operation
+     */
+    public int getRank(Operation operation, String entity) {
+
+        EntityTotals totals = getTotalsByEntity(operation);
+        int entityId = totals.getDictionary().find(entity);
+
+        if (entity != null && entityId == EntityDictionary.NONE) {
+            return 0;
+        }
+
+        return totals.getRank(entityId);
+    }
+
+    /**
+     * @return the running total of the given {@link Operation}
+     */
+    public MoneyAccumulator getTotal(Operation operation) {
+        return operation == Operation.BUY ? incomingValue : outgoingValue;
+    }
+
+    /**
+     * @return the per entity totals of the given {@link Operation}; in approximate mode, the totals of the entities
+     *          tracked by the sketch, which must not be modified
+     */
+    public EntityTotals getTotalsByEntity(Operation operation) {
+
+        if (operation == Operation.BUY) {
+            if (incomingByEntity == null) {
+                incomingByEntity = incomingSketch.toEntityTotals();
+            }
+            return incomingByEntity;
+        }
+
+        if (outgoingByEntity == null) {
+            outgoingByEntity = outgoingSketch.toEntityTotals();
+        }
+        return outgoingByEntity;
+    }
+
+    /**
+     * @return the USD totals per currency and operation, which must not be modified, apart from restoring them
+     */
+    public CurrencyTotals getCurrencyTotals() {
+        return currencyTotals;
+    }
+
+    /**
+     * @return true if the per entity totals are kept in a {@link SpaceSavingSketch}
+     */
+    public boolean isApproximate() {
+        return incomingSketch != null;
+    }
+
+    /**
+     * @return the amount by which the per entity totals of the given {@link Operation} overestimate the real ones at most,
+     *          which is also the highest real total of an entity which isn't ranked; 0 if they are exact
+     */
+    public BigDecimal getErrorBound(Operation operation) {
+
+        if (!isApproximate()) {
+            return BigDecimal.ZERO;
+        }
+
+        return (operation == Operation.BUY ? incomingSketch : outgoingSketch).getErrorBound();
+    }
+
+    /**
+     * @return the per entity notionals of the given {@link Operation} in the given {@link Currency}, or null if there is none
+     */
+    public EntityTotals getNotionalsByEntity(Operation operation, Currency currency) {
+
+        EntityTotals[] notionals = notionals(operation, false);
+
+        return notionals == null ? null : notionals[currency.ordinal()];
+    }
+
+    private void checkExact() {
+
+        if (isApproximate()) {
+            throw new IllegalStateException("The totals of an approximate aggregate can't be valued through an fx rate table");
+        }
+    }
+
+    /**
+     * Merges the per entity totals of the operation of another aggregate, exact or approximate, into the sketch
+     */
+    private static void merge(SpaceSavingSketch sketch, DailyAggregate other, Operation operation) {
+
+        SpaceSavingSketch otherSketch = operation == Operation.BUY ? other.incomingSketch : other.outgoingSketch;
+
+        if (otherSketch != null) {
+            sketch.merge(otherSketch);
+            return;
+        }
+
+        EntityTotals otherTotals = other.getTotalsByEntity(operation);
+
+        for (int slot = 0; slot < otherTotals.capacity(); slot++) {
+
+            if (!otherTotals.isUsed(slot)) {
+                continue;
+            }
+
+            String entity = otherTotals.getEntity(slot);
+            long unscaledTotal = otherTotals.getUnscaledTotal(slot);
+
+            if (unscaledTotal != FixedPoint.OVERFLOW) {
+                sketch.add(entity, unscaledTotal, other.scale);
+            } else {
+                sketch.add(entity, otherTotals.getTotal(slot));
+            }
+        }
+    }
+
+    private boolean hasNotionals(Operation operation, Currency currency) {
+        return getNotionalsByEntity(operation, currency) != null;
+    }
+
+    private void revalue(Operation operation, Currency currency, BigDecimal rateChange) {
+
+        EntityTotals notionals = getNotionalsByEntity(operation, currency);
+
+        if (notionals == null) {
+            return;
+        }
+
+        int changeScale = Math.max(rateChange.scale(), 0);
+        long unscaledChange = FixedPoint.toUnscaled(rateChange, changeScale);
+        MoneyAccumulator total = getTotal(operation);
+        EntityTotals totalsByEntity = getTotalsByEntity(operation);
+
+        for (int slot = 0; slot < notionals.capacity(); slot++) {
+
+            if (!notionals.isUsed(slot)) {
+                continue;
+            }
+
+            long unscaledValue = FixedPoint.multiply(notionals.getUnscaledTotal(slot), unscaledChange);
+            BigDecimal value = unscaledValue == FixedPoint.OVERFLOW ? notionals.getTotal(slot).multiply(rateChange) : null;
+
+            add(total, totalsByEntity, notionals.getEntityId(slot), unscaledValue, scale + changeScale, value);
+            currencyTotals.add(currency, operation, unscaledValue, scale + changeScale, value);
+        }
+    }
+
+    /**
+     * @return the per currency notionals of the operation, created if requested
+     */
+    private EntityTotals[] notionals(Operation operation, boolean create) {
+
+        if (operation == Operation.BUY) {
+            if (incomingNotionals == null && create) {
+                incomingNotionals = new EntityTotals[Currency.values().length];
+            }
+            return incomingNotionals;
+        }
+
+        if (outgoingNotionals == null && create) {
+            outgoingNotionals = new EntityTotals[Currency.values().length];
+        }
+        return outgoingNotionals;
+    }
+
+    private static EntityTotals[] copy(EntityTotals[] notionals) {
+
+        if (notionals == null) {
+            return null;
+        }
+
+        EntityTotals[] copy = new EntityTotals[notionals.length];
+
+        for (int currency = 0; currency < notionals.length; currency++) {
+            copy[currency] = notionals[currency] == null ? null : notionals[currency].copy();
+        }
+
+        return copy;
+    }
+
+    private void add(MoneyAccumulator total, EntityTotals totalsByEntity, int entityId, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (numericMode == NumericMode.FIXED_POINT && unscaledValue != FixedPoint.OVERFLOW) {
+            total.add(unscaledValue, valueScale);
+            totalsByEntity.add(entityId, unscaledValue, valueScale);
+        } else {
+            BigDecimal bigValue = value != null ? value : FixedPoint.toBigDecimal(unscaledValue, valueScale);
+            total.add(bigValue);
+            totalsByEntity.add(entityId, bigValue);
+        }
+    }
+
+    private void add(MoneyAccumulator total, SpaceSavingSketch sketch, String entity, long unscaledValue, int valueScale, BigDecimal value) {
+
+        if (numericMode == NumericMode.FIXED_POINT && unscaledValue != FixedPoint.OVERFLOW) {
+            total.add(unscaledValue, valueScale);
+            sketch.add(entity, unscaledValue, valueScale);
+        } else {
+            BigDecimal bigValue = value != null ? value : FixedPoint.toBigDecimal(unscaledValue, valueScale);
+            total.add(bigValue);
+            sketch.add(entity, bigValue);
+        }
+    }
+}
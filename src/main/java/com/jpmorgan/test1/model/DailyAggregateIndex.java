@@ -0,0 +1,265 @@
+package com.jpmorgan.test1.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable index over the daily aggregates of a report, answering questions about a range of settlement dates (e.g. the
+ * last N business days) without going back to the instructions.
+ * The incoming and outgoing totals are kept as prefix sums over the days, so the total of any range is one subtraction
+ * after two binary searches. The rankings of a range are computed by merging the per entity totals of its days, so their
+ * cost depends on the number of entities settling in the range, not on the number of instructions.
+ *
+ * @author Vlad Constantinescu
+ */
+public class DailyAggregateIndex {
+
+    private final int scale;
+    private final SettlementCalendar calendar;
+    //the dictionary of the merged per entity totals: the one shared by the days, so merging them needs no mapping; null
+    //if they don't share one, or are approximate and so have a dictionary per view of their sketches
+    private final EntityDictionary dictionary;
+    private final DailyAggregate[] dailyAggregates;
+    private final int[] settlementDays;
+    //prefix sums: element i is the total of the first i days, as the unscaled and the BigDecimal parts of a MoneyAccumulator
+    private final long[] incomingUnscaled;
+    private final BigDecimal[] incomingOverflow;
+    private final long[] outgoingUnscaled;
+    private final BigDecimal[] outgoingOverflow;
+
+    public DailyAggregateIndex(List<DailyAggregate> dailyAggregates, int scale) {
+        this(dailyAggregates, scale, SettlementCalendar.getDefault());
+    }
+
+    /**
+     * @param dailyAggregates
+     *          the daily aggregates in chronological order, which mustn't change afterwards (e.g. a snapshot)
+     * @param scale
+     *          the scale of the daily aggregates
+     * @param calendar
+     *          the calendar defining the business days
+     */
+    public DailyAggregateIndex(List<DailyAggregate> dailyAggregates, int scale, SettlementCalendar calendar) {
+
+        int days = dailyAggregates.size();
+
+        this.scale = scale;
+        this.calendar = calendar;
+        this.dailyAggregates = dailyAggregates.toArray(new DailyAggregate[days]);
+        this.settlementDays = new int[days];
+        this.incomingUnscaled = new long[days + 1];
+        this.incomingOverflow = new BigDecimal[days + 1];
+        this.outgoingUnscaled = new long[days + 1];
+        this.outgoingOverflow = new BigDecimal[days + 1];
+        this.dictionary = sharedDictionary(this.dailyAggregates);
+
+        MoneyAccumulator incoming = new MoneyAccumulator(scale);
+        MoneyAccumulator outgoing = new MoneyAccumulator(scale);
+
+        for (int i = 0; i < days; i++) {
+
+            settlementDays[i] = this.dailyAggregates[i].getSettlementDay();
+
+            if (i > 0 && settlementDays[i] <= settlementDays[i - 1]) {
+                throw new IllegalArgumentException("The daily aggregates must be in chronological order");
+            }
+
+            incoming.add(this.dailyAggregates[i].getTotal(Operation.BUY));
+            outgoing.add(this.dailyAggregates[i].getTotal(Operation.SELL));
+
+            incomingUnscaled[i + 1] = incoming.getUnscaled();
+            incomingOverflow[i + 1] = incoming.getOverflow();
+            outgoingUnscaled[i + 1] = outgoing.getUnscaled();
+            outgoingOverflow[i + 1] = outgoing.getOverflow();
+        }
+    }
+
+    /**
+     * @return the settlement dates which have instructions, in chronological order
+     */
+    public int[] getSettlementDays() {
+        return settlementDays.clone();
+    }
+
+    /**
+     * @return the aggregate of the given settlement date, or null if no instruction settles in that date
+     */
+    public DailyAggregate getDailyAggregate(int settlementDay) {
+
+        int index = Arrays.binarySearch(settlementDays, settlementDay);
+
+        return index < 0 ? null : dailyAggregates[index];
+    }
+
+    /**
+     * Finds the start of the range covering the last business days, according to the default rules of the calendar (a
+     * Saturday and Sunday weekend, without holidays). The range also covers the non business days in between, as
+     * instructions in some currencies settle on a Sunday.
+     *
+     * @param asOfDay
+     *          the last day of the range, as an epoch day, which counts as a business day only if it is one
+     * @param businessDays
+     *          the number of business days of the range, at least 1
+     *
+     * @return the first day of the range, as an epoch day
+     */
+    public int startOfLastBusinessDays(int asOfDay, int businessDays) {
+
+        if (businessDays < 1) {
+            throw new IllegalArgumentException("The range must cover at least one business day");
+        }
+
+        int day = asOfDay;
+        int remaining = businessDays;
+
+        while (true) {
+
+            if (calendar.isWorkingDay(null, day) && --remaining == 0) {
+                return day;
+            }
+
+            day--;
+        }
+    }
+
+    /**
+     * Calculates the total of a range of settlement dates in O(log days)
+     *
+     * @param operation
+     *          the {@link Operation} to be totalled
+     * @param fromDay
+     *          the first settlement date of the range, as an epoch day, inclusive
+     * @param toDay
+     *          the last settlement date of the range, as an epoch day, inclusive
+     *
+     * @return the total value in USD of the instructions settling in the range
+     */
+    public BigDecimal getTotal(Operation operation, int fromDay, int toDay) {
+
+        int from = lowerBound(fromDay);
+        int to = Math.max(from, upperBound(toDay));
+
+        if (operation == Operation.BUY) {
+            return difference(incomingUnscaled, incomingOverflow, from, to);
+        }
+
+        return difference(outgoingUnscaled, outgoingOverflow, from, to);
+    }
+
+    /**
+     * Merges the per entity totals of the days of a range, in time proportional to the number of entities of these days
+     *
+     * @param operation
+     *          the {@link Operation} to be totalled
+     * @param fromDay
+     *          the first settlement date of the range, as an epoch day, inclusive
+     * @param toDay
+     *          the last settlement date of the range, as an epoch day, inclusive
+     *
+     * @return new totals of every entity over the range
+     */
+    public EntityTotals getTotalsByEntity(Operation operation, int fromDay, int toDay) {
+
+        EntityTotals totals = new EntityTotals(scale, dictionary != null ? dictionary : new EntityDictionary());
+
+        for (int i = lowerBound(fromDay); i < upperBound(toDay); i++) {
+            totals.merge(dailyAggregates[i].getTotalsByEntity(operation));
+        }
+
+        return totals;
+    }
+
+    /**
+     * Ranks the entities by their total over a range of settlement dates
+     *
+     * @param operation
+     *          the {@link Operation} for which the entities are ranked
+     * @param fromDay
+     *          the first settlement date of the range, as an epoch day, inclusive
+     * @param toDay
+     *          the last settlement date of the range, as an epoch day, inclusive
+     * @param topK
+     *          the maximum number of rankings to be returned
+     *
+     * @return the best topK {@link Ranking}s over the range, in the same order as the daily rankings
+     */
+    public List<Ranking> getRankings(Operation operation, int fromDay, int toDay, int topK) {
+        return getTotalsByEntity(operation, fromDay, toDay).getRankings(topK);
+    }
+
+    /**
+     * Calculates the rank of a single entity over a range of settlement dates
+     *
+     * @return the rank of the entity, starting from 1, or 0 if the entity has no instruction for that operation in the range
+     */
+    public int getRank(Operation operation, int fromDay, int toDay, String entity) {
+
+        EntityTotals totals = getTotalsByEntity(operation, fromDay, toDay);
+        int entityId = totals.getDictionary().find(entity);
+
+        if (entity != null && entityId == EntityDictionary.NONE) {
+            return 0;
+        }
+
+        return totals.getRank(entityId);
+    }
+
+    /**
+     * @return the {@link EntityDictionary} of the per entity totals of all the days, or null if they don't share it
+     */
+    private static EntityDictionary sharedDictionary(DailyAggregate[] dailyAggregates) {
+
+        EntityDictionary dictionary = dailyAggregates.length > 0 ? dailyAggregates[0].getDictionary() : null;
+
+        for (DailyAggregate dailyAggregate : dailyAggregates) {
+            if (dailyAggregate.isApproximate() || dailyAggregate.getDictionary() != dictionary) {
+                return null;
+            }
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * @return the index of the first day on or after the given one
+     */
+    private int lowerBound(int day) {
+
+        int index = Arrays.binarySearch(settlementDays, day);
+
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * @return the index of the first day after the given one
+     */
+    private int upperBound(int day) {
+
+        int index = Arrays.binarySearch(settlementDays, day);
+
+        return index < 0 ? -index - 1 : index + 1;
+    }
+
+    private BigDecimal difference(long[] unscaled, BigDecimal[] overflow, int from, int to) {
+
+        //the unscaled parts are never FixedPoint.OVERFLOW, so they can be negated
+        long unscaledDifference = FixedPoint.add(unscaled[to], -unscaled[from]);
+
+        if (unscaledDifference != FixedPoint.OVERFLOW && overflow[to] == null && overflow[from] == null) {
+            return FixedPoint.toBigDecimal(unscaledDifference, scale);
+        }
+
+        BigDecimal difference = FixedPoint.toBigDecimal(unscaled[to], scale).subtract(FixedPoint.toBigDecimal(unscaled[from], scale));
+
+        if (overflow[to] != null) {
+            difference = difference.add(overflow[to]);
+        }
+
+        if (overflow[from] != null) {
+            difference = difference.subtract(overflow[from]);
+        }
+
+        return difference;
+    }
+}
@@ -0,0 +1,115 @@
+package com.jpmorgan.test1.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the entity names into dense int ids, starting from 0, so the aggregation, the rankings and the columnar
+ * storage work on ints and every name is kept once on the heap, whatever the number of instructions.
+ * The lookups are lock-free, only the first occurrence of a name takes a lock, which suits feeds repeating a few thousand
+ * entities over millions of instructions.
+ * The ids are only meaningful within their dictionary: every service or aggregator owns one, shared by the batches and
+ * aggregates it creates so they can be merged by id, and whatever comes from another dictionary is mapped by name. The
+ * names are kept as long as the dictionary, i.e. its owner, or until it is {@link #clear() cleared}.
+ *
+ * @author Vlad Constantinescu
+ */
+public final class EntityDictionary {
+
+    /**
+     * The id of a null entity
+     */
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    //replaced by a larger copy under the lock; an id is only published in ids after its name is in the array
+    private volatile String[] names = new String[INITIAL_CAPACITY];
+    private int size;
+    //incremented by every clear, so the caches of ids can tell they are stale
+    private volatile int generation;
+
+    /**
+     * @return the id of the given entity, assigning a new one if it wasn't seen before
+     */
+    public int intern(String entity) {
+
+        if (entity == null) {
+            return NONE;
+        }
+
+        Integer id = ids.get(entity);
+
+        return id != null ? id : add(entity);
+    }
+
+    /**
+     * @return the id in this dictionary of the entity with the given id in another one, interning it if needed
+     */
+    public int intern(int id, EntityDictionary from) {
+        return from == this || id == NONE ? id : intern(from.nameOf(id));
+    }
+
+    /**
+     * @return the id of the given entity, or {@link #NONE} if it wasn't seen before (or is null)
+     */
+    public int find(String entity) {
+
+        Integer id = entity == null ? null : ids.get(entity);
+
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * @return the name of the entity with the given id, or null for {@link #NONE}
+     */
+    public String nameOf(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * @return the number of interned entities
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of times the dictionary was cleared, which a cache of its ids compares to tell whether they are stale
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Forgets all the entities, so their names can be collected; the ids assigned before are reused, so nothing holding
+     * them may be used afterwards, apart from the caches checking {@link #getGeneration()}
+     */
+    public synchronized void clear() {
+
+        ids.clear();
+        names = new String[INITIAL_CAPACITY];
+        size = 0;
+        generation++;
+    }
+
+    private synchronized int add(String entity) {
+
+        //another thread may have added it since the lock-free lookup
+        Integer id = ids.get(entity);
+
+        if (id != null) {
+            return id;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+
+        names[size] = entity;
+        ids.put(entity, size);
+
+        return size++;
+    }
+}
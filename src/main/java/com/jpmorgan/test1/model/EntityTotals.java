@@ -0,0 +1,439 @@
+package com.jpmorgan.test1.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Open addressing map from an entity id of its {@link EntityDictionary} to its running total, used instead of a
+ * {@code Map<String, MoneyAccumulator>}.
+ * The totals are primitive unscaled longs stored in place next to the keys, so adding a value to an entity which was
+ * already seen is a single probe sequence and doesn't allocate. Only the totals which overflow the long (or values which
+ * aren't representable at the scale) are kept as {@link java.math.BigDecimal}s, in an array created on the first overflow.
+ * A slot is addressed by its index, which stays valid until the next entity is added.
+ *
+ * @author Vlad Constantinescu
+ */
+public class EntityTotals {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int scale;
+    private final EntityDictionary dictionary;
+    private int[] entityIds = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private long[] unscaledTotals = new long[INITIAL_CAPACITY];
+    private BigDecimal[] overflowTotals;
+    private int size;
+
+    /**
+     * @param dictionary
+     *          the {@link EntityDictionary} of the entity ids
+     */
+    public EntityTotals(int scale, EntityDictionary dictionary) {
+        this.scale = scale;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Adds a fixed-point value to the total of the entity, without allocating unless the entity is new or the total overflows
+     *
+     * @param entityId
+     *          the id of the entity, which may be {@link EntityDictionary#NONE}
+     * @param unscaledValue
+     *          the value as an unscaled long
+     * @param valueScale
+     *          the scale of the unscaled value
+     */
+    public void add(int entityId, long unscaledValue, int valueScale) {
+
+        int slot = slot(entityId);
+        long sum = FixedPoint.add(unscaledTotals[slot], FixedPoint.rescale(unscaledValue, valueScale, scale));
+
+        if (sum != FixedPoint.OVERFLOW) {
+            unscaledTotals[slot] = sum;
+        } else {
+            addOverflow(slot, FixedPoint.toBigDecimal(unscaledValue, valueScale));
+        }
+    }
+
+    /**
+     * Adds a {@link java.math.BigDecimal} value to the total of the entity
+     *
+     * @param entityId
+     *          the id of the entity, which may be {@link EntityDictionary#NONE}
+     * @param value
+     *          the value to be added
+     */
+    public void add(int entityId, BigDecimal value) {
+
+        addOverflow(slot(entityId), value);
+    }
+
+    /**
+     * Adds all the totals of another map, with the same scale, to this one, mapping its entities by name if it uses another
+     * {@link EntityDictionary}
+     *
+     * @param other
+     *          the totals to be merged
+     */
+    public void merge(EntityTotals other) {
+
+        for (int otherSlot = 0; otherSlot < other.capacity(); otherSlot++) {
+
+            if (!other.isUsed(otherSlot)) {
+                continue;
+            }
+
+            int entityId = dictionary.intern(other.entityIds[otherSlot], other.dictionary);
+            add(entityId, other.unscaledTotals[otherSlot], other.scale);
+
+            if (other.overflowTotals != null && other.overflowTotals[otherSlot] != null) {
+                add(entityId, other.overflowTotals[otherSlot]);
+            }
+        }
+    }
+
+    /**
+     * @return an independent copy of these totals
+     */
+    public EntityTotals copy() {
+
+        EntityTotals copy = new EntityTotals(scale, dictionary);
+        copy.entityIds = entityIds.clone();
+        copy.used = used.clone();
+        copy.unscaledTotals = unscaledTotals.clone();
+        copy.overflowTotals = overflowTotals == null ? null : overflowTotals.clone();
+        copy.size = size;
+
+        return copy;
+    }
+
+    /**
+     * @return the number of entities
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, to iterate over them together with {@link #isUsed(int)}
+     */
+    public int capacity() {
+        return entityIds.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    public EntityDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getEntityId(int slot) {
+        return entityIds[slot];
+    }
+
+    /**
+     * @return the name of the entity in the given slot, resolved through the {@link EntityDictionary}
+     */
+    public String getEntity(int slot) {
+        return dictionary.nameOf(entityIds[slot]);
+    }
+
+    /**
+     * @return the slot of the entity, or -1 if the entity has no total
+     */
+    public int find(int entityId) {
+
+        int mask = entityIds.length - 1;
+
+        for (int slot = hash(entityId) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (entityIds[slot] == entityId) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the total of the entity in the given slot
+     */
+    public BigDecimal getTotal(int slot) {
+
+        BigDecimal overflow = overflowTotals == null ? null : overflowTotals[slot];
+
+        if (overflow == null) {
+            return FixedPoint.toBigDecimal(unscaledTotals[slot], scale);
+        }
+
+        return unscaledTotals[slot] == 0 ? overflow : overflow.add(FixedPoint.toBigDecimal(unscaledTotals[slot], scale));
+    }
+
+    /**
+     * @return the total of the entity in the given slot as an unscaled long, or {@link FixedPoint#OVERFLOW} if it overflowed
+     */
+    long getUnscaledTotal(int slot) {
+        return overflowTotals == null || overflowTotals[slot] == null ? unscaledTotals[slot] : FixedPoint.OVERFLOW;
+    }
+
+    /**
+     * Appends the total of the entity in the given slot rounded half up to the given number of decimals, without
+     * allocating unless it overflowed
+     */
+    public void appendTotal(int slot, Appendable out, int decimals) throws IOException {
+
+        if (overflowTotals == null || overflowTotals[slot] == null) {
+            FixedPoint.append(out, unscaledTotals[slot], scale, decimals);
+        } else {
+            FixedPoint.append(out, getTotal(slot), decimals);
+        }
+    }
+
+    /**
+     * Compares the totals of two slots, without allocating unless one of them overflowed
+     */
+    public int compareTotals(int slot, int otherSlot) {
+
+        if (overflowTotals == null || (overflowTotals[slot] == null && overflowTotals[otherSlot] == null)) {
+            return Long.compare(unscaledTotals[slot], unscaledTotals[otherSlot]);
+        }
+
+        return getTotal(slot).compareTo(getTotal(otherSlot));
+    }
+
+    /**
+     * Ranks only the best entities, using a bounded heap of slots so n entities cost O(n log topK) instead of O(n log n),
+     * and then sorts the heap in place, so neither the slots nor the totals are boxed
+     *
+     * @param topK
+     *          the maximum number of slots to be returned
+     *
+     * @return the slots of the best topK entities, descending by total and then by entity name
+     */
+    public int[] getRankedSlots(int topK) {
+
+        //heap with the worst of the best topK found so far at the root
+        int[] best = new int[Math.max(0, Math.min(topK, size))];
+        int bestSize = 0;
+
+        for (int slot = 0; slot < capacity(); slot++) {
+
+            if (!isUsed(slot)) {
+                continue;
+            }
+
+            if (bestSize < best.length) {
+                best[bestSize] = slot;
+                siftUp(best, bestSize++);
+            } else if (bestSize > 0 && compareRanking(slot, best[0]) < 0) {
+                best[0] = slot;
+                siftDown(best, 0, bestSize);
+            }
+        }
+
+        //heapsort: the worst is moved to the end, so the slots end up best first
+        for (int end = bestSize - 1; end > 0; end--) {
+            int worst = best[0];
+            best[0] = best[end];
+            best[end] = worst;
+            siftDown(best, 0, end);
+        }
+
+        return best;
+    }
+
+    /**
+     * @return the best topK {@link Ranking}s, in the order of {@link #getRankedSlots(int)}
+     */
+    public List<Ranking> getRankings(int topK) {
+
+        return IntStream.of(getRankedSlots(topK))
+                .mapToObj(slot -> new Ranking(getEntity(slot), getTotal(slot)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Calculates the rank of a single entity, in O(n) without sorting
+     *
+     * @return the rank of the entity, starting from 1, or 0 if the entity has no total
+     */
+    public int getRank(int entityId) {
+
+        int target = find(entityId);
+
+        if (target < 0) {
+            return 0;
+        }
+
+        int rank = 1;
+
+        for (int slot = 0; slot < capacity(); slot++) {
+            if (isUsed(slot) && compareRanking(slot, target) < 0) {
+                rank++;
+            }
+        }
+
+        return rank;
+    }
+
+    private void addOverflow(int slot, BigDecimal value) {
+
+        if (overflowTotals == null) {
+            overflowTotals = new BigDecimal[entityIds.length];
+        }
+
+        overflowTotals[slot] = overflowTotals[slot] == null ? value : overflowTotals[slot].add(value);
+    }
+
+    /**
+     * Descending by total, ties broken by entity name so the order doesn't depend on how the totals were built nor on
+     * the order the ids were assigned
+     *
+     * @return a negative number if the entity of the slot ranks before the one of the other slot
+     */
+    private int compareRanking(int slot, int otherSlot) {
+
+        int byTotal = compareTotals(otherSlot, slot);
+
+        if (byTotal != 0) {
+            return byTotal;
+        }
+
+        //the name is only resolved for ties, and the entity without a name (EntityDictionary.NONE) comes first
+        String entity = getEntity(slot);
+        String otherEntity = getEntity(otherSlot);
+
+        if (entity == null || otherEntity == null) {
+            return entity == null ? (otherEntity == null ? 0 : -1) : 1;
+        }
+
+        return entity.compareTo(otherEntity);
+    }
+
+    /**
+     * Moves the slot at the given position of the heap towards the root while it ranks after its parent
+     */
+    private void siftUp(int[] heap, int position) {
+
+        int slot = heap[position];
+
+        while (position > 0) {
+
+            int parent = (position - 1) / 2;
+
+            if (compareRanking(heap[parent], slot) >= 0) {
+                break;
+            }
+
+            heap[position] = heap[parent];
+            position = parent;
+        }
+
+        heap[position] = slot;
+    }
+
+    /**
+     * Moves the slot at the given position of the heap towards the leaves while one of its children ranks after it
+     */
+    private void siftDown(int[] heap, int position, int heapSize) {
+
+        int slot = heap[position];
+
+        while (true) {
+
+            int child = 2 * position + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+
+            if (child + 1 < heapSize && compareRanking(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+
+            if (compareRanking(slot, heap[child]) >= 0) {
+                break;
+            }
+
+            heap[position] = heap[child];
+            position = child;
+        }
+
+        heap[position] = slot;
+    }
+
+    /**
+     * Finds the slot of the entity, inserting it if needed
+     */
+    private int slot(int entityId) {
+
+        int mask = entityIds.length - 1;
+        int slot = hash(entityId) & mask;
+
+        while (used[slot]) {
+            if (entityIds[slot] == entityId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        //keep the load factor under 1/2, so the probe sequences stay short
+        if ((size + 1) * 2 > entityIds.length) {
+            resize();
+            return slot(entityId);
+        }
+
+        used[slot] = true;
+        entityIds[slot] = entityId;
+        size++;
+
+        return slot;
+    }
+
+    private void resize() {
+
+        int[] oldEntityIds = entityIds;
+        boolean[] oldUsed = used;
+        long[] oldUnscaledTotals = unscaledTotals;
+        BigDecimal[] oldOverflowTotals = overflowTotals;
+        int capacity = oldEntityIds.length * 2;
+        int mask = capacity - 1;
+
+        entityIds = new int[capacity];
+        used = new boolean[capacity];
+        unscaledTotals = new long[capacity];
+        overflowTotals = oldOverflowTotals == null ? null : new BigDecimal[capacity];
+
+        for (int oldSlot = 0; oldSlot < oldEntityIds.length; oldSlot++) {
+
+            if (!oldUsed[oldSlot]) {
+                continue;
+            }
+
+            int slot = hash(oldEntityIds[oldSlot]) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+
+            used[slot] = true;
+            entityIds[slot] = oldEntityIds[oldSlot];
+            unscaledTotals[slot] = oldUnscaledTotals[oldSlot];
+            if (oldOverflowTotals != null) {
+                overflowTotals[slot] = oldOverflowTotals[oldSlot];
+            }
+        }
+    }
+
+    static int hash(int entityId) {
+
+        //spread the bits, as the ids are dense and would otherwise fill consecutive slots
+        int hash = entityId * 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+}
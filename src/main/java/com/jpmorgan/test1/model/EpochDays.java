@@ -0,0 +1,89 @@
+package com.jpmorgan.test1.model;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Helper used to convert between {@link org.joda.time.DateTime}s and epoch days (the number of days since 1970-01-01),
+ * which is the primitive representation of a date in the columnar and binary formats
+ *
+ * @author Vlad Constantinescu
+ */
+public final class EpochDays {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private EpochDays() {
+    }
+
+    /**
+     * @return the epoch day of the local date of the given date time
+     */
+    public static int toEpochDay(DateTime dateTime) {
+        return of(dateTime.getYear(), dateTime.getMonthOfYear(), dateTime.getDayOfMonth());
+    }
+
+    /**
+     * Calculates the epoch day of a date without allocating
+     *
+     * @param year
+     *          the year
+     * @param month
+     *          the month of the year, from 1 to 12
+     * @param dayOfMonth
+     *          the day of the month, from 1 to 31
+     *
+     * @return the epoch day
+     */
+    public static int of(int year, int month, int dayOfMonth) {
+
+        //days from the civil calendar, counting years from March so the leap day is the last day of the year
+        int marchYear = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(marchYear, 400);
+        int yearOfEra = marchYear - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the number of days of the month, from 28 to 31, without allocating
+     */
+    public static int lengthOfMonth(int year, int month) {
+
+        if (month == 2) {
+            boolean leapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leapYear ? 29 : 28;
+        }
+
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return the ISO day of the week of the given epoch day, from 1 (Monday) to 7 (Sunday)
+     */
+    public static int dayOfWeek(int epochDay) {
+
+        //1970-01-01 was a Thursday
+        return Math.floorMod(epochDay + 3, 7) + 1;
+    }
+
+    /**
+     * @return the start of the given epoch day in UTC, like the epoch day arithmetic, so the date doesn't depend on the host
+     */
+    public static DateTime toDateTime(int epochDay) {
+        return new DateTime(epochDay * MILLIS_PER_DAY, DateTimeZone.UTC);
+    }
+
+    /**
+     * @return the given epoch day formatted as yyyy-MM-dd
+     */
+    public static String format(int epochDay) {
+        return DATE_FORMAT.format(LocalDate.ofEpochDay(epochDay));
+    }
+}
@@ -0,0 +1,234 @@
+package com.jpmorgan.test1.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Helper used for the fixed-point money arithmetic, where a value is stored as an unscaled long together with a scale
+ * (e.g. 100.25 at scale 4 is stored as 1002500).
+ * None of the operations throw on overflow, they return {@link #OVERFLOW} instead, so the callers can fall back to
+ * {@link java.math.BigDecimal} without paying for an exception.
+ *
+ * @author Vlad Constantinescu
+ */
+public final class FixedPoint {
+
+    /**
+     * The scale used when none is configured: enough for a 6 decimals fx multiplied with a 2 decimals price
+     */
+    public static final int DEFAULT_SCALE = 8;
+
+    /**
+     * Marker for a value which doesn't fit in a long at the requested scale
+     */
+    public static final long OVERFLOW = Long.MIN_VALUE;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Converts the given value to an unscaled long at the given scale
+     *
+     * @param value
+     *          the value to be converted
+     * @param scale
+     *          the scale of the result
+     *
+     * @return the unscaled value, or {@link #OVERFLOW} if the value can't be represented exactly
+     */
+    public static long toUnscaled(BigDecimal value, int scale) {
+
+        BigDecimal scaled = value;
+
+        if (scaled.scale() > scale) {
+            //only trailing zeros can be dropped without changing the value
+            scaled = scaled.stripTrailingZeros();
+            if (scaled.scale() > scale) {
+                return OVERFLOW;
+            }
+        }
+
+        BigInteger unscaled = scaled.setScale(scale).unscaledValue();
+
+        return unscaled.bitLength() < Long.SIZE ? unscaled.longValue() : OVERFLOW;
+    }
+
+    /**
+     * @return the {@link java.math.BigDecimal} with the given unscaled value and scale
+     */
+    public static BigDecimal toBigDecimal(long unscaled, int scale) {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    /**
+     * @return the sum of the two values, or {@link #OVERFLOW} if any of them is {@link #OVERFLOW} or the sum overflows
+     */
+    public static long add(long a, long b) {
+
+        if (a == OVERFLOW || b == OVERFLOW) {
+            return OVERFLOW;
+        }
+
+        long result = a + b;
+
+        //same check as Math.addExact: overflow only if both operands have a different sign than the result
+        if (((a ^ result) & (b ^ result)) < 0) {
+            return OVERFLOW;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the product of the two values, or {@link #OVERFLOW} if any of them is {@link #OVERFLOW} or the product overflows
+     */
+    public static long multiply(long a, long b) {
+
+        if (a == OVERFLOW || b == OVERFLOW) {
+            return OVERFLOW;
+        }
+
+        long result = a * b;
+
+        //same check as Math.multiplyExact, only dividing when one of the operands doesn't fit in 31 bits
+        if (((Math.abs(a) | Math.abs(b)) >>> 31 != 0) && (b != 0 && result / b != a)) {
+            return OVERFLOW;
+        }
+
+        return result;
+    }
+
+    /**
+     * Changes the scale of an unscaled value
+     *
+     * @param unscaled
+     *          the unscaled value
+     * @param fromScale
+     *          the current scale
+     * @param toScale
+     *          the requested scale
+     *
+     * @return the unscaled value at the requested scale, or {@link #OVERFLOW} if it can't be represented exactly
+     */
+    public static long rescale(long unscaled, int fromScale, int toScale) {
+
+        if (unscaled == OVERFLOW) {
+            return OVERFLOW;
+        }
+
+        int difference = toScale - fromScale;
+
+        if (difference == 0) {
+            return unscaled;
+        }
+
+        if (Math.abs(difference) >= POWERS_OF_TEN.length) {
+            return unscaled == 0 ? 0 : OVERFLOW;
+        }
+
+        if (difference > 0) {
+            return multiply(unscaled, POWERS_OF_TEN[difference]);
+        }
+
+        long divisor = POWERS_OF_TEN[-difference];
+
+        //dropping digits is only allowed if they are all zeros
+        return unscaled % divisor == 0 ? unscaled / divisor : OVERFLOW;
+    }
+
+    /**
+     * Appends the value rounded half up to the given number of decimals, in plain notation (e.g. -1002500 at scale 4 with
+     * 2 decimals is appended as -100.25). Unlike {@link String#format}, it doesn't go through a double, so the digits are exact,
+     * and it doesn't allocate.
+     *
+     * @param out
+     *          where the value is appended
+     * @param unscaled
+     *          the unscaled value
+     * @param scale
+     *          the scale of the unscaled value
+     * @param decimals
+     *          the number of decimals to be appended, at most 18
+     */
+    public static void append(Appendable out, long unscaled, int scale, int decimals) throws IOException {
+
+        int dropped = scale - decimals;
+
+        if (unscaled == OVERFLOW || scale < 0 || dropped >= POWERS_OF_TEN.length) {
+            append(out, toBigDecimal(unscaled, scale), decimals);
+            return;
+        }
+
+        long magnitude = Math.abs(unscaled);
+        int fractionDigits = Math.min(scale, decimals);
+
+        if (dropped > 0) {
+            long divisor = POWERS_OF_TEN[dropped];
+            long remainder = magnitude % divisor;
+            magnitude = magnitude / divisor + (remainder * 2 >= divisor ? 1 : 0);
+        }
+
+        if (unscaled < 0 && magnitude != 0) {
+            out.append('-');
+        }
+
+        appendDigits(out, magnitude / POWERS_OF_TEN[fractionDigits], 1);
+
+        if (decimals > 0) {
+            out.append('.');
+            if (fractionDigits > 0) {
+                appendDigits(out, magnitude % POWERS_OF_TEN[fractionDigits], fractionDigits);
+            }
+            for (int i = fractionDigits; i < decimals; i++) {
+                out.append('0');
+            }
+        }
+    }
+
+    /**
+     * Appends the value rounded half up to the given number of decimals, in plain notation
+     *
+     * @param out
+     *          where the value is appended
+     * @param value
+     *          the value to be appended
+     * @param decimals
+     *          the number of decimals to be appended
+     */
+    public static void append(Appendable out, BigDecimal value, int decimals) throws IOException {
+
+        BigDecimal rounded = value.setScale(decimals, RoundingMode.HALF_UP);
+
+        if (rounded.unscaledValue().bitLength() < Long.SIZE && decimals < POWERS_OF_TEN.length) {
+            append(out, rounded.unscaledValue().longValue(), decimals, decimals);
+        } else {
+            out.append(rounded.toPlainString());
+        }
+    }
+
+    /**
+     * Appends a non negative number, left padded with zeros to the given number of digits
+     */
+    private static void appendDigits(Appendable out, long value, int minDigits) throws IOException {
+
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+
+        for (int digit = Math.max(digits, minDigits) - 1; digit >= 0; digit--) {
+            out.append(digit >= POWERS_OF_TEN.length ? '0' : (char) ('0' + value / POWERS_OF_TEN[digit] % 10));
+        }
+    }
+}
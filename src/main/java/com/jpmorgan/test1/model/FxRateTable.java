@@ -0,0 +1,168 @@
+package com.jpmorgan.test1.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable table of the USD rates of every {@link Currency}, used instead of the fx of every instruction.
+ * A rate is effective from its day until the next rate of the same currency, so a table can hold a single rate per
+ * currency or a rate per day. A correction is a new table, built from the current one, and the aggregates valued with
+ * the current one are revalued incrementally (see {@link DailyAggregate#revalue(FxRateTable, FxRateTable)}).
+ * Every rate is also kept as an unscaled long, so the USD values are calculated without allocating.
+ *
+ * @author Vlad Constantinescu
+ */
+public class FxRateTable {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    //for every currency, the days from which the rates are effective in ascending order, and the rates
+    private final int[][] days = new int[CURRENCIES.length][];
+    private final BigDecimal[][] rates = new BigDecimal[CURRENCIES.length][];
+    private final long[][] unscaledRates = new long[CURRENCIES.length][];
+    private final int[][] rateScales = new int[CURRENCIES.length][];
+    private final Map<Currency, TreeMap<Integer, BigDecimal>> ratesByCurrency;
+
+    private FxRateTable(Builder builder) {
+
+        this.ratesByCurrency = copy(builder.ratesByCurrency);
+
+        for (Currency currency : CURRENCIES) {
+
+            TreeMap<Integer, BigDecimal> currencyRates = ratesByCurrency.get(currency);
+            int row = currency.ordinal();
+            int size = currencyRates == null ? 0 : currencyRates.size();
+
+            days[row] = new int[size];
+            rates[row] = new BigDecimal[size];
+            unscaledRates[row] = new long[size];
+            rateScales[row] = new int[size];
+
+            if (currencyRates == null) {
+                continue;
+            }
+
+            int i = 0;
+            for (Map.Entry<Integer, BigDecimal> entry : currencyRates.entrySet()) {
+                days[row][i] = entry.getKey();
+                rates[row][i] = entry.getValue();
+                rateScales[row][i] = Math.max(entry.getValue().scale(), 0);
+                unscaledRates[row][i] = FixedPoint.toUnscaled(entry.getValue(), rateScales[row][i]);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the rate of the currency effective in the given day
+     *
+     * @throws IllegalArgumentException if there is no such rate
+     */
+    public BigDecimal getRate(Currency currency, int day) {
+
+        int index = index(currency, day);
+
+        return rates[currency.ordinal()][index];
+    }
+
+    /**
+     * Values a notional in USD at the rate of its currency effective in the given day, without allocating
+     *
+     * @param currency
+     *          the {@link Currency} of the notional
+     * @param day
+     *          the day of the rate, as an epoch day
+     * @param unscaledNotional
+     *          the notional as an unscaled long, or {@link FixedPoint#OVERFLOW}
+     * @param notionalScale
+     *          the scale of the unscaled notional
+     * @param scale
+     *          the scale of the result
+     *
+     * @return the unscaled value in USD, or {@link FixedPoint#OVERFLOW} if it can't be represented exactly at the given scale
+     *
+     * @throws IllegalArgumentException if there is no rate for the currency in that day
+     */
+    public long getValueInUSD(Currency currency, int day, long unscaledNotional, int notionalScale, int scale) {
+
+        int index = index(currency, day);
+        int row = currency.ordinal();
+
+        return FixedPoint.rescale(FixedPoint.multiply(unscaledNotional, unscaledRates[row][index]), notionalScale + rateScales[row][index], scale);
+    }
+
+    private int index(Currency currency, int day) {
+
+        if (currency != null) {
+
+            int[] currencyDays = days[currency.ordinal()];
+            int index = Arrays.binarySearch(currencyDays, day);
+
+            //the rate effective in a day is the last one starting on or before it
+            index = index < 0 ? -index - 2 : index;
+
+            if (index >= 0) {
+                return index;
+            }
+        }
+
+        throw new IllegalArgumentException("No fx rate for " + currency + " on " + EpochDays.format(day));
+    }
+
+    private static Map<Currency, TreeMap<Integer, BigDecimal>> copy(Map<Currency, TreeMap<Integer, BigDecimal>> ratesByCurrency) {
+
+        Map<Currency, TreeMap<Integer, BigDecimal>> copy = new EnumMap<>(Currency.class);
+
+        for (Map.Entry<Currency, TreeMap<Integer, BigDecimal>> entry : ratesByCurrency.entrySet()) {
+            copy.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+        }
+
+        return copy;
+    }
+
+    /**
+     * Builder for a new table, or for a corrected copy of an existing one
+     */
+    public static class Builder {
+
+        private final Map<Currency, TreeMap<Integer, BigDecimal>> ratesByCurrency;
+
+        public Builder() {
+            this.ratesByCurrency = new EnumMap<>(Currency.class);
+        }
+
+        /**
+         * Starts from all the rates of an existing table, e.g. to correct some of them
+         */
+        public Builder(FxRateTable table) {
+            this.ratesByCurrency = copy(table.ratesByCurrency);
+        }
+
+        /**
+         * Sets the rate of a currency from the given day, replacing the one starting in the same day if any
+         *
+         * @param currency
+         *          the {@link Currency}
+         * @param fromDay
+         *          the first day the rate is effective, as an epoch day
+         * @param rate
+         *          the value in USD of one unit of the currency
+         */
+        public Builder withRate(Currency currency, int fromDay, BigDecimal rate) {
+
+            if (currency == null || rate == null) {
+                throw new IllegalArgumentException("The currency and the rate are mandatory");
+            }
+
+            ratesByCurrency.computeIfAbsent(currency, key -> new TreeMap<>()).put(fromDay, rate);
+            return this;
+        }
+
+        public FxRateTable build() {
+            return new FxRateTable(this);
+        }
+    }
+}
@@ -1,53 +1,96 @@
 package com.jpmorgan.test1.model;
 
+import com.jpmorgan.test1.metrics.Metrics;
+import com.jpmorgan.test1.metrics.Stage;
 import org.joda.time.DateTime;
 
 import java.math.BigDecimal;
-import java.time.DayOfWeek;
 
 /**
- * Model class used to store an Instruction
+ * Model class used to store an Instruction.
+ * The settlement date and the {@link java.math.BigDecimal} value in USD are only calculated when first requested and
+ * then kept, so an instruction filtered out, or only used through {@link #getValueInUSD(int)}, never calculates them.
+ * Both are immutable values, so an instruction can be shared between threads: at worst two threads calculate the same value.
  *
  * @author Vlad Constantinescu
  */
-public class Instruction {
+public class Instruction implements InstructionView {
 
+    //settlementDay before it is calculated, which no instruction date can settle on
+    private static final int UNKNOWN_DAY = Integer.MIN_VALUE;
+
+    //the id given by the feed, used to drop the trades sent again; null if the feed has none
+    private String tradeId;
+    //the name as given, which the aggregates map to an id of their own EntityDictionary
     private String entity;
     private Operation operation;
     private Currency currency;
-    private DateTime instructionDate;
-    private DateTime settlementDate;
+    private int instructionDay;
+    //false if built without an instruction date, so the default epoch day isn't taken for a real one
+    private boolean instructionDateSet;
+    private int settlementDay = UNKNOWN_DAY;
     private long units;
     private BigDecimal fx;
     private BigDecimal price;
     private BigDecimal valueInUSD;
+    private long unscaledFx;
+    private int fxScale;
+    private long unscaledPrice;
+    private int priceScale;
+    private SettlementCalendar settlementCalendar;
 
     public Instruction(Builder builder) {
+        this.tradeId = builder.tradeId;
         this.entity = builder.entity;
         this.operation = builder.operation;
         this.currency = builder.currency;
-        this.instructionDate = builder.instructionDate;
+        this.instructionDay = builder.instructionDay;
+        this.instructionDateSet = builder.instructionDateSet;
         this.units = builder.units;
         this.fx = builder.fx;
         this.price = builder.price;
+        this.settlementCalendar = builder.settlementCalendar;
+
+        //the metrics are only used while building, so they don't take space in every instruction
+        Metrics metrics = builder.metrics;
+
+        if (!metrics.isEnabled()) {
+            calculateFixedPointValues();
+            return;
+        }
+
+        //the derived values are calculated upfront when timed, so the stages are measured
+        long startTime = metrics.startPerInstruction();
 
         calculateSettlementDate();
+        startTime = metrics.stop(Stage.SETTLEMENT, startTime);
         calculateValueInUSD();
+        calculateFixedPointValues();
+        metrics.stop(Stage.VALUATION, startTime);
     }
 
     /**
      * Using Builder pattern for an easier time creating Instructions.
-     * To be noted that the Builder doesn't have SettlementDate or ValueInUSD fields, which will be calculated when creating the actual Instruction object
+     * To be noted that the Builder doesn't have SettlementDate or ValueInUSD fields, which will be calculated by the actual Instruction object
      */
     public static class Builder {
 
+        private String tradeId;
         private String entity;
         private Operation operation;
         private Currency currency;
-        private DateTime instructionDate;
+        private int instructionDay;
+        private boolean instructionDateSet;
         private long units;
         private BigDecimal fx;
         private BigDecimal price;
+        private SettlementCalendar settlementCalendar = SettlementCalendar.getDefault();
+        private Metrics metrics = Metrics.disabled();
+
+        public Builder withTradeId(String tradeId) {
+            this.tradeId = tradeId;
+            return this;
+        }
 
         public Builder withEntity(String entity) {
             this.entity = entity;
@@ -64,8 +107,18 @@ public class Instruction {
             return this;
         }
 
+        /**
+         * Only the local date of the given date time is kept, as an epoch day
+         */
         public Builder withInstructionDate(DateTime instructionDate){
-            this.instructionDate = new DateTime(instructionDate);
+            this.instructionDay = EpochDays.toEpochDay(instructionDate);
+            this.instructionDateSet = true;
+            return this;
+        }
+
+        public Builder withInstructionDay(int instructionDay){
+            this.instructionDay = instructionDay;
+            this.instructionDateSet = true;
             return this;
         }
 
@@ -84,101 +137,149 @@ public class Instruction {
             return this;
         }
 
+        public Builder withSettlementCalendar(SettlementCalendar settlementCalendar) {
+            this.settlementCalendar = settlementCalendar;
+            return this;
+        }
+
+        /**
+         * The metrics timing the calculation of the settlement date and of the value in USD
+         */
+        public Builder withMetrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Checks the fields without building the instruction, so a malformed one is rejected without an exception
+         *
+         * @return {@link ValidationCode#VALID}, or the first problem found
+         */
+        public ValidationCode validate() {
+            return Instruction.validate(entity, operation, currency, instructionDateSet, units, fx, price);
+        }
+
+        /**
+         * Builds the instruction without validating it; a null fx or price makes it throw a {@link NullPointerException}
+         */
         public Instruction build(){
             return new Instruction(this);
         }
 
+        public String getTradeId() {
+            return tradeId;
+        }
+
     }
 
+    /**
+     * @return the id given by the feed, or null
+     */
+    public String getTradeId() {
+        return tradeId;
+    }
+
+    /**
+     * Checks the fields of an instruction built without validation
+     *
+     * @return {@link ValidationCode#VALID}, or the first problem found
+     */
+    public ValidationCode validate() {
+        return validate(entity, operation, currency, instructionDateSet, units, fx, price);
+    }
+
+    @Override
     public String getEntity() {
         return entity;
     }
 
+    @Override
     public Operation getOperation() {
         return operation;
     }
 
-    public DateTime getSettlementDate() {
-        return settlementDate;
+    @Override
+    public Currency getCurrency() {
+        return currency;
     }
 
-    public BigDecimal getValueInUSD() {
-        return valueInUSD;
+    /**
+     * @return the settlement date at the start of the day; {@link #getSettlementDay()} should be preferred as it doesn't allocate
+     */
+    @Override
+    public DateTime getSettlementDate() {
+        return EpochDays.toDateTime(getSettlementDay());
     }
 
     /**
-     * Calculates the settlement date based on the business rules
+     * @return the settlement date as an epoch day, calculated on the first call
      */
-    private void calculateSettlementDate(){
+    @Override
+    public int getSettlementDay() {
 
-        if (isWorkingDay(instructionDate)){
+        if (settlementDay == UNKNOWN_DAY) {
+            calculateSettlementDate();
+        }
 
-            settlementDate = new DateTime(instructionDate);
-        } else {
+        return settlementDay;
+    }
+
+    /**
+     * @return the value in USD, calculated on the first call
+     */
+    @Override
+    public BigDecimal getValueInUSD() {
 
-            settlementDate = nextWorkingDay(instructionDate);
+        if (valueInUSD == null) {
+            calculateValueInUSD();
         }
+
+        return valueInUSD;
     }
 
     /**
-     * Checks if the instructionDate parameter is a working day
+     * Calculates the valueInUSD as an unscaled long, without allocating.
+     * The result has exactly the same value as {@link #getValueInUSD()} whenever it isn't {@link FixedPoint#OVERFLOW}.
      *
-     * @param instructionDate
-     *          the date to be verified
+     * @param scale
+     *          the scale of the result
      *
-     * @return true if it is considered working day, false otherwise
+     * @return the unscaled valueInUSD, or {@link FixedPoint#OVERFLOW} if it can't be represented exactly at the given scale
      */
-    private boolean isWorkingDay(DateTime instructionDate) {
-
-        DayOfWeek dayOfWeek = DayOfWeek.of(instructionDate.getDayOfWeek());
-
-        if (currency == Currency.AED || currency == Currency.SAR){
+    @Override
+    public long getValueInUSD(int scale) {
 
-            if (dayOfWeek == DayOfWeek.FRIDAY || dayOfWeek == DayOfWeek.SATURDAY){
-                return false;
-            }
-        } else {
+        long unscaled = FixedPoint.multiply(FixedPoint.multiply(unscaledFx, units), unscaledPrice);
 
-            if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
-                return false;
-            }
-        }
+        return FixedPoint.rescale(unscaled, fxScale + priceScale, scale);
+    }
 
-        return true;
+    /**
+     * @return the notional of the instruction in its own currency, price * units
+     */
+    public BigDecimal getNotional() {
+        return price.multiply(BigDecimal.valueOf(units));
     }
 
     /**
-     * Calculate the next working day based on the given parameter.
-     * Note: this works correctly even for days that aren't during the weekend
+     * Calculates the notional as an unscaled long, without allocating
      *
-     * @param instructionDate
-     *          the date from which the next working day is being calculated
+     * @param scale
+     *          the scale of the result
      *
-     * @return the date of the next working date
+     * @return the unscaled notional, or {@link FixedPoint#OVERFLOW} if it can't be represented exactly at the given scale
      */
-    private DateTime nextWorkingDay(DateTime instructionDate) {
-
-        DayOfWeek dayOfWeek = DayOfWeek.of(instructionDate.getDayOfWeek());
-        int offset = 0;
+    public long getNotional(int scale) {
 
-        if (currency == Currency.AED || currency == Currency.SAR) {
-            if (dayOfWeek == DayOfWeek.FRIDAY) {
-                offset = 2;
-            }
-            if (dayOfWeek == DayOfWeek.SATURDAY) {
-                offset = 1;
-            }
-        } else {
+        return FixedPoint.rescale(FixedPoint.multiply(unscaledPrice, units), priceScale, scale);
+    }
 
-            if (dayOfWeek == DayOfWeek.SATURDAY) {
-                offset = 2;
-            }
-            if (dayOfWeek == DayOfWeek.SUNDAY) {
-                offset = 1;
-            }
-        }
+    /**
+     * Calculates the settlement date based on the business rules, which are precomputed by the {@link SettlementCalendar}
+     */
+    private void calculateSettlementDate(){
 
-        return new DateTime(instructionDate).plusDays(offset);
+        settlementDay = settlementCalendar.settlementDay(currency, instructionDay);
     }
 
     /**
@@ -189,4 +290,56 @@ public class Instruction {
         valueInUSD = fx.multiply(BigDecimal.valueOf(units)).multiply(price);
     }
 
+    /**
+     * Keeps the fx and the price as unscaled longs at their own scale, so the valueInUSD can be calculated for any scale without BigDecimal
+     */
+    private void calculateFixedPointValues() {
+
+        fxScale = Math.max(fx.scale(), 0);
+        unscaledFx = FixedPoint.toUnscaled(fx, fxScale);
+        priceScale = Math.max(price.scale(), 0);
+        unscaledPrice = FixedPoint.toUnscaled(price, priceScale);
+    }
+
+    private static ValidationCode validate(String entity, Operation operation, Currency currency, boolean instructionDateSet, long units,
+                                           BigDecimal fx, BigDecimal price) {
+
+        if (entity == null) {
+            return ValidationCode.MISSING_ENTITY;
+        }
+
+        if (operation == null) {
+            return ValidationCode.MISSING_OPERATION;
+        }
+
+        if (currency == null) {
+            return ValidationCode.MISSING_CURRENCY;
+        }
+
+        if (!instructionDateSet) {
+            return ValidationCode.MISSING_INSTRUCTION_DATE;
+        }
+
+        if (fx == null) {
+            return ValidationCode.MISSING_FX;
+        }
+
+        if (price == null) {
+            return ValidationCode.MISSING_PRICE;
+        }
+
+        if (fx.signum() <= 0) {
+            return ValidationCode.NON_POSITIVE_FX;
+        }
+
+        if (price.signum() < 0) {
+            return ValidationCode.NEGATIVE_PRICE;
+        }
+
+        if (units < 0) {
+            return ValidationCode.NEGATIVE_UNITS;
+        }
+
+        return ValidationCode.VALID;
+    }
 }
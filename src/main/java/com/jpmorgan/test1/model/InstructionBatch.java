@@ -0,0 +1,363 @@
+package com.jpmorgan.test1.model;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar store for a batch of instructions, holding only the fields needed by the report.
+ * Every instruction takes {@value #BYTES_PER_INSTRUCTION} bytes: the id of the entity in the {@link EntityDictionary} of the batch, the operation and
+ * currency ordinals, the settlement date as an epoch day and the valueInUSD as an unscaled long.
+ * The columns are slices of a single {@link java.nio.ByteBuffer}, which can be on heap, direct or memory-mapped.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionBatch {
+
+    public static final int BYTES_PER_INSTRUCTION = Integer.BYTES + Byte.BYTES + Byte.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final byte NONE = -1;
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final int capacity;
+    private final int scale;
+    private final EntityDictionary dictionary;
+    private final IntBuffer entityIds;
+    private final ByteBuffer operations;
+    private final ByteBuffer currencies;
+    private final IntBuffer settlementDays;
+    private final LongBuffer values;
+
+    //values which can't be represented at the batch scale, expected to be very rare
+    private final Map<Integer, BigDecimal> overflowValues = new HashMap<>();
+    private int size;
+
+    /**
+     * Creates a batch over the given storage, which needs at least {@link #bytesRequired(int)} bytes
+     *
+     * @param storage
+     *          the buffer holding the columns, e.g. a {@link java.nio.MappedByteBuffer}
+     * @param capacity
+     *          the maximum number of instructions
+     * @param scale
+     *          the scale of the unscaled values
+     */
+    public InstructionBatch(ByteBuffer storage, int capacity, int scale) {
+        this(storage, capacity, scale, new EntityDictionary());
+    }
+
+    /**
+     * Same as {@link #InstructionBatch(ByteBuffer, int, int)}, interning the entities in the given dictionary, e.g. the
+     * one of the aggregator the batch is added to, so the ids are added as they are
+     *
+     * @param dictionary
+     *          the {@link EntityDictionary} of the entity ids
+     */
+    public InstructionBatch(ByteBuffer storage, int capacity, int scale, EntityDictionary dictionary) {
+
+        if (storage.remaining() < bytesRequired(capacity)) {
+            throw new IllegalArgumentException("The storage needs " + bytesRequired(capacity) + " bytes for " + capacity + " instructions");
+        }
+
+        this.capacity = capacity;
+        this.scale = scale;
+        this.dictionary = dictionary;
+
+        ByteBuffer columns = storage.slice().order(ByteOrder.nativeOrder());
+        this.values = column(columns, Long.BYTES).asLongBuffer();
+        this.entityIds = column(columns, Integer.BYTES).asIntBuffer();
+        this.settlementDays = column(columns, Integer.BYTES).asIntBuffer();
+        this.operations = column(columns, Byte.BYTES);
+        this.currencies = column(columns, Byte.BYTES);
+    }
+
+    /**
+     * @return a batch stored on the heap
+     */
+    public static InstructionBatch allocate(int capacity, int scale) {
+        return new InstructionBatch(ByteBuffer.allocate(bytesRequired(capacity)), capacity, scale);
+    }
+
+    /**
+     * @return a batch stored on the heap, with the ids of the given {@link EntityDictionary}
+     */
+    public static InstructionBatch allocate(int capacity, int scale, EntityDictionary dictionary) {
+        return new InstructionBatch(ByteBuffer.allocate(bytesRequired(capacity)), capacity, scale, dictionary);
+    }
+
+    /**
+     * @return a batch stored outside of the heap
+     */
+    public static InstructionBatch allocateDirect(int capacity, int scale) {
+        return new InstructionBatch(ByteBuffer.allocateDirect(bytesRequired(capacity)), capacity, scale);
+    }
+
+    /**
+     * @return a batch stored outside of the heap, with the ids of the given {@link EntityDictionary}
+     */
+    public static InstructionBatch allocateDirect(int capacity, int scale, EntityDictionary dictionary) {
+        return new InstructionBatch(ByteBuffer.allocateDirect(bytesRequired(capacity)), capacity, scale, dictionary);
+    }
+
+    /**
+     * @return the number of bytes needed to store the given number of instructions, which can't be more than a single buffer can hold
+     */
+    public static int bytesRequired(int capacity) {
+        return Math.toIntExact((long) capacity * BYTES_PER_INSTRUCTION);
+    }
+
+    /**
+     * Appends the fields of the given instruction needed by the report
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be appended
+     */
+    public void append(Instruction instruction) {
+
+        long unscaledValue = instruction.getValueInUSD(scale);
+
+        append(instruction.getEntityId(dictionary), instruction.getOperation(), instruction.getCurrency(), instruction.getSettlementDay(),
+                unscaledValue, instruction.getOverflowValueInUSD(unscaledValue));
+    }
+
+    /**
+     * Appends an instruction
+     *
+     * @param entity
+     *          the entity of the instruction
+     * @param operation
+     *          the {@link Operation} of the instruction
+     * @param currency
+     *          the {@link Currency} of the instruction
+     * @param settlementDay
+     *          the settlement date as an epoch day
+     * @param unscaledValue
+     *          the value in USD as an unscaled long at the batch scale, or {@link FixedPoint#OVERFLOW}
+     * @param value
+     *          the value in USD, only used when the unscaled value is {@link FixedPoint#OVERFLOW}
+     */
+    public void append(String entity, Operation operation, Currency currency, int settlementDay, long unscaledValue, BigDecimal value) {
+
+        append(dictionary.intern(entity), operation, currency, settlementDay, unscaledValue, value);
+    }
+
+    /**
+     * Same as {@link #append(String, Operation, Currency, int, long, BigDecimal)}, with the entity already interned
+     *
+     * @param entityId
+     *          the id of the entity in the {@link EntityDictionary} of the batch
+     */
+    public void append(int entityId, Operation operation, Currency currency, int settlementDay, long unscaledValue, BigDecimal value) {
+
+        if (size == capacity) {
+            throw new IllegalStateException("The batch is full");
+        }
+
+        entityIds.put(size, entityId);
+        operations.put(size, operation == null ? NONE : (byte) operation.ordinal());
+        currencies.put(size, currency == null ? NONE : (byte) currency.ordinal());
+        settlementDays.put(size, settlementDay);
+        values.put(size, unscaledValue);
+
+        if (unscaledValue == FixedPoint.OVERFLOW) {
+            overflowValues.put(size, value);
+        }
+
+        size++;
+    }
+
+    /**
+     * Removes all the instructions, so the storage can be reused
+     */
+    public void clear() {
+
+        size = 0;
+        overflowValues.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the {@link EntityDictionary} of the entity ids
+     */
+    public EntityDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the id of the entity in the {@link EntityDictionary} of the batch
+     */
+    public int getEntityId(int index) {
+        return entityIds.get(index);
+    }
+
+    public String getEntity(int index) {
+        return dictionary.nameOf(entityIds.get(index));
+    }
+
+    public Operation getOperation(int index) {
+
+        byte ordinal = operations.get(index);
+
+        return ordinal == NONE ? null : OPERATIONS[ordinal];
+    }
+
+    public Currency getCurrency(int index) {
+
+        byte ordinal = currencies.get(index);
+
+        return ordinal == NONE ? null : CURRENCIES[ordinal];
+    }
+
+    public int getSettlementDay(int index) {
+        return settlementDays.get(index);
+    }
+
+    /**
+     * @return the value in USD as an unscaled long at the batch scale, or {@link FixedPoint#OVERFLOW} if it is only available through {@link #getValueInUSD(int)}
+     */
+    public long getUnscaledValueInUSD(int index) {
+        return values.get(index);
+    }
+
+    public BigDecimal getValueInUSD(int index) {
+
+        long unscaled = values.get(index);
+
+        return unscaled == FixedPoint.OVERFLOW ? overflowValues.get(index) : FixedPoint.toBigDecimal(unscaled, scale);
+    }
+
+    /**
+     * @return a cursor positioned before the first instruction
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private ByteBuffer column(ByteBuffer columns, int bytesPerInstruction) {
+
+        ByteBuffer column = columns.slice().order(ByteOrder.nativeOrder());
+        column.limit(capacity * bytesPerInstruction);
+        columns.position(columns.position() + capacity * bytesPerInstruction);
+
+        return column;
+    }
+
+    /**
+     * Flyweight {@link InstructionView} over the instructions of the batch: a single object is moved from one instruction
+     * to the next, reading the columns in place, so a batch can be aggregated without allocating an object per instruction.
+     * The cursor sees the instruction it is positioned on, so it must not be kept after moving it or clearing the batch.
+     */
+    public class Cursor implements InstructionView {
+
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves the cursor to the next instruction
+         *
+         * @return false if there are no more instructions
+         */
+        public boolean next() {
+
+            if (index + 1 >= size) {
+                return false;
+            }
+
+            index++;
+            return true;
+        }
+
+        /**
+         * Moves the cursor to the instruction at the given index
+         *
+         * @return this cursor
+         */
+        public Cursor moveTo(int index) {
+
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " is not between 0 and " + (size - 1));
+            }
+
+            this.index = index;
+            return this;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the value in USD as an unscaled long at the batch scale, or {@link FixedPoint#OVERFLOW} if it is only available through {@link #getValueInUSD()}
+         */
+        public long getUnscaledValueInUSD() {
+            return values.get(index);
+        }
+
+        /**
+         * @return the id of the entity in the {@link EntityDictionary} of the batch
+         */
+        public int getEntityId() {
+            return InstructionBatch.this.getEntityId(index);
+        }
+
+        @Override
+        public int getEntityId(EntityDictionary dictionary) {
+            return dictionary.intern(getEntityId(), InstructionBatch.this.dictionary);
+        }
+
+        @Override
+        public String getEntity() {
+            return InstructionBatch.this.getEntity(index);
+        }
+
+        @Override
+        public Operation getOperation() {
+            return InstructionBatch.this.getOperation(index);
+        }
+
+        @Override
+        public Currency getCurrency() {
+            return InstructionBatch.this.getCurrency(index);
+        }
+
+        @Override
+        public int getSettlementDay() {
+            return InstructionBatch.this.getSettlementDay(index);
+        }
+
+        @Override
+        public long getValueInUSD(int scale) {
+
+            long unscaled = values.get(index);
+
+            if (unscaled == FixedPoint.OVERFLOW) {
+                return FixedPoint.toUnscaled(overflowValues.get(index), scale);
+            }
+
+            return FixedPoint.rescale(unscaled, InstructionBatch.this.scale, scale);
+        }
+
+        @Override
+        public BigDecimal getValueInUSD() {
+            return InstructionBatch.this.getValueInUSD(index);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jpmorgan.test1.model;
+
+import org.joda.time.DateTime;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only view of the fields of an instruction needed by the report, implemented by {@link Instruction} and by the
+ * flyweight cursors over the columnar stores, so an instruction can be aggregated without being materialized
+ *
+ * @author Vlad Constantinescu
+ */
+public interface InstructionView {
+
+    /**
+     * @return the entity, or null if there is none
+     */
+    String getEntity();
+
+    /**
+     * @param dictionary
+     *          the {@link EntityDictionary} of the aggregate the instruction is added to
+     *
+     * @return the id of the entity in the given dictionary, interned if it wasn't seen before, or
+     *          {@link EntityDictionary#NONE} if there is no entity
+     */
+    default int getEntityId(EntityDictionary dictionary) {
+        return dictionary.intern(getEntity());
+    }
+
+    Operation getOperation();
+
+    Currency getCurrency();
+
+    /**
+     * @return the settlement date as an epoch day
+     */
+    int getSettlementDay();
+
+    /**
+     * @return the settlement date at the start of the day; {@link #getSettlementDay()} should be preferred as it doesn't allocate
+     */
+    default DateTime getSettlementDate() {
+        return EpochDays.toDateTime(getSettlementDay());
+    }
+
+    /**
+     * @param scale
+     *          the scale of the result
+     *
+     * @return the unscaled valueInUSD, or {@link FixedPoint#OVERFLOW} if it can't be represented exactly at the given scale
+     */
+    long getValueInUSD(int scale);
+
+    BigDecimal getValueInUSD();
+
+    /**
+     * For the stores keeping the value as an unscaled long, which only need the BigDecimal value when it doesn't fit, so
+     * it is only calculated for those values
+     *
+     * @param unscaledValue
+     *          the result of {@link #getValueInUSD(int)} at the scale of the store
+     *
+     * @return the valueInUSD if the unscaled value is {@link FixedPoint#OVERFLOW}, otherwise null
+     */
+    default BigDecimal getOverflowValueInUSD(long unscaledValue) {
+        return unscaledValue == FixedPoint.OVERFLOW ? getValueInUSD() : null;
+    }
+}
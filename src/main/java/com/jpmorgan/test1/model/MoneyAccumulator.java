@@ -0,0 +1,158 @@
+package com.jpmorgan.test1.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Mutable running total of USD values.
+ * Values are summed as an unscaled long at a fixed scale, and only the ones which can't be represented that way (or which
+ * would overflow the long) are summed as {@link java.math.BigDecimal}, so adding a value doesn't allocate on the common path.
+ *
+ * @author Vlad Constantinescu
+ */
+public class MoneyAccumulator implements Comparable<MoneyAccumulator> {
+
+    private final int scale;
+    private long unscaled;
+    private BigDecimal overflow;
+
+    public MoneyAccumulator(int scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Adds a fixed-point value to the total, without allocating unless the total overflows
+     *
+     * @param unscaledValue
+     *          the value as an unscaled long
+     * @param valueScale
+     *          the scale of the unscaled value
+     */
+    public void add(long unscaledValue, int valueScale) {
+
+        long sum = FixedPoint.add(unscaled, FixedPoint.rescale(unscaledValue, valueScale, scale));
+
+        if (sum != FixedPoint.OVERFLOW) {
+            unscaled = sum;
+            return;
+        }
+
+        add(FixedPoint.toBigDecimal(unscaledValue, valueScale));
+    }
+
+    /**
+     * Adds a {@link java.math.BigDecimal} value to the total
+     *
+     * @param value
+     *          the value to be added
+     */
+    public void add(BigDecimal value) {
+
+        overflow = overflow == null ? value : overflow.add(value);
+    }
+
+    /**
+     * Adds the total of another accumulator to this one
+     *
+     * @param other
+     *          the accumulator to be added, with the same scale
+     */
+    public void add(MoneyAccumulator other) {
+
+        long sum = FixedPoint.add(unscaled, other.unscaled);
+
+        if (sum != FixedPoint.OVERFLOW) {
+            unscaled = sum;
+        } else {
+            add(FixedPoint.toBigDecimal(other.unscaled, other.scale));
+        }
+
+        if (other.overflow != null) {
+            add(other.overflow);
+        }
+    }
+
+    /**
+     * Replaces the total with the total of another accumulator, without allocating
+     *
+     * @param other
+     *          the accumulator to be copied, with the same scale
+     */
+    void set(MoneyAccumulator other) {
+
+        unscaled = other.unscaled;
+        overflow = other.overflow;
+    }
+
+    /**
+     * @return an independent copy of this accumulator
+     */
+    public MoneyAccumulator copy() {
+
+        MoneyAccumulator copy = new MoneyAccumulator(scale);
+        copy.unscaled = unscaled;
+        copy.overflow = overflow;
+
+        return copy;
+    }
+
+    /**
+     * @return the total value
+     */
+    public BigDecimal getValue() {
+
+        if (overflow == null) {
+            return FixedPoint.toBigDecimal(unscaled, scale);
+        }
+
+        if (unscaled == 0) {
+            return overflow;
+        }
+
+        return overflow.add(FixedPoint.toBigDecimal(unscaled, scale));
+    }
+
+    /**
+     * @return the part of the total summed as an unscaled long
+     */
+    long getUnscaled() {
+        return unscaled;
+    }
+
+    /**
+     * @return the part of the total summed as a {@link java.math.BigDecimal}, or null if there is none
+     */
+    BigDecimal getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Appends the total rounded half up to the given number of decimals, without allocating unless it overflowed
+     *
+     * @param out
+     *          where the total is appended
+     * @param decimals
+     *          the number of decimals to be appended
+     */
+    public void appendTo(Appendable out, int decimals) throws IOException {
+
+        if (overflow == null) {
+            FixedPoint.append(out, unscaled, scale, decimals);
+        } else {
+            FixedPoint.append(out, getValue(), decimals);
+        }
+    }
+
+    /**
+     * Compares the totals, without allocating when both of them are fixed-point values of the same scale
+     */
+    @Override
+    public int compareTo(MoneyAccumulator other) {
+
+        if (overflow == null && other.overflow == null && scale == other.scale) {
+            return Long.compare(unscaled, other.unscaled);
+        }
+
+        return getValue().compareTo(other.getValue());
+    }
+}
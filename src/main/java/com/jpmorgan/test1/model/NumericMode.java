@@ -0,0 +1,19 @@
+package com.jpmorgan.test1.model;
+
+/**
+ * Enum used to define how the USD values are accumulated when generating the report
+ *
+ * @author Vlad Constantinescu
+ */
+public enum NumericMode {
+
+    /**
+     * every value and total is a {@link java.math.BigDecimal}
+     */
+    BIG_DECIMAL,
+
+    /**
+     * values and totals are kept as scaled longs, falling back to {@link java.math.BigDecimal} only on overflow
+     */
+    FIXED_POINT
+}
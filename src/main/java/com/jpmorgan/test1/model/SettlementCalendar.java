@@ -0,0 +1,218 @@
+package com.jpmorgan.test1.model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Calendar used to calculate settlement dates based on the business rules: an instruction settles on its instruction date
+ * if that is a working day for its currency, otherwise on the next working day.
+ * The weekend is Friday and Saturday for AED and SAR and Saturday and Sunday for the other currencies, and every currency
+ * can also have its own holidays.
+ * For every currency and every day of a configurable range the settlement date is precomputed in an int table, so the
+ * settlement of an instruction costs one array lookup. Days outside the range are calculated when needed.
+ *
+ * @author Vlad Constantinescu
+ */
+public class SettlementCalendar {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    //instructions without a currency use the default weekend and no holidays
+    private static final int NO_CURRENCY = CURRENCIES.length;
+
+    private static final SettlementCalendar DEFAULT = new Builder().build();
+
+    private final int firstDay;
+    private final int dayCount;
+    private final int[] settlementDays;
+    private final Set<Integer>[] holidays;
+
+    private SettlementCalendar(Builder builder) {
+
+        this.firstDay = builder.firstDay;
+        this.dayCount = builder.lastDay - builder.firstDay + 1;
+        this.holidays = Builder.newHolidays();
+        this.settlementDays = new int[(NO_CURRENCY + 1) * dayCount];
+
+        for (int row = 0; row <= NO_CURRENCY; row++) {
+
+            holidays[row].addAll(builder.holidays[row]);
+
+            //walking backwards, the settlement of a non working day is the settlement of the day after it
+            int nextSettlementDay = calculateSettlementDay(row, firstDay + dayCount);
+
+            for (int offset = dayCount - 1; offset >= 0; offset--) {
+
+                int day = firstDay + offset;
+
+                if (isWorkingDay(row, day)) {
+                    nextSettlementDay = day;
+                }
+
+                settlementDays[row * dayCount + offset] = nextSettlementDay;
+            }
+        }
+    }
+
+    /**
+     * @return the calendar with the weekend rules only, covering the years 2000 to 2050
+     */
+    public static SettlementCalendar getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Calculates the settlement date of an instruction
+     *
+     * @param currency
+     *          the {@link Currency} of the instruction
+     * @param instructionDay
+     *          the instruction date as an epoch day
+     *
+     * @return the settlement date as an epoch day
+     */
+    public int settlementDay(Currency currency, int instructionDay) {
+
+        int row = row(currency);
+        int offset = instructionDay - firstDay;
+
+        if (offset >= 0 && offset < dayCount) {
+            return settlementDays[row * dayCount + offset];
+        }
+
+        return calculateSettlementDay(row, instructionDay);
+    }
+
+    /**
+     * Checks if the given day is a working day for the given currency
+     *
+     * @param currency
+     *          the {@link Currency} for which the day is verified
+     * @param day
+     *          the day as an epoch day
+     *
+     * @return true if it is considered working day, false otherwise
+     */
+    public boolean isWorkingDay(Currency currency, int day) {
+        return isWorkingDay(row(currency), day);
+    }
+
+    private int calculateSettlementDay(int row, int day) {
+
+        int settlementDay = day;
+
+        while (!isWorkingDay(row, settlementDay)) {
+            settlementDay++;
+        }
+
+        return settlementDay;
+    }
+
+    private boolean isWorkingDay(int row, int day) {
+
+        DayOfWeek dayOfWeek = DayOfWeek.of(EpochDays.dayOfWeek(day));
+
+        if (row == Currency.AED.ordinal() || row == Currency.SAR.ordinal()) {
+
+            if (dayOfWeek == DayOfWeek.FRIDAY || dayOfWeek == DayOfWeek.SATURDAY) {
+                return false;
+            }
+        } else {
+
+            if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
+                return false;
+            }
+        }
+
+        return !holidays[row].contains(day);
+    }
+
+    private static int row(Currency currency) {
+        return currency == null ? NO_CURRENCY : currency.ordinal();
+    }
+
+    /**
+     * Builder for a {@link SettlementCalendar} with a custom range or holidays
+     */
+    public static class Builder {
+
+        private int firstDay = EpochDays.of(2000, 1, 1);
+        private int lastDay = EpochDays.of(2050, 12, 31);
+        private Set<Integer>[] holidays = newHolidays();
+
+        /**
+         * @param firstDay
+         *          the first precomputed day, as an epoch day
+         * @param lastDay
+         *          the last precomputed day, as an epoch day
+         */
+        public Builder withRange(int firstDay, int lastDay) {
+
+            if (lastDay < firstDay) {
+                throw new IllegalArgumentException("The last day can't be before the first day");
+            }
+
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            return this;
+        }
+
+        public Builder withHoliday(Currency currency, int day) {
+            this.holidays[currency.ordinal()].add(day);
+            return this;
+        }
+
+        /**
+         * Loads holidays from a text file with a "CURRENCY,yyyy-MM-dd" line for every holiday.
+         * Empty lines and lines starting with '#' are ignored.
+         *
+         * @param file
+         *          the holidays file
+         */
+        public Builder withHolidays(Path file) throws IOException {
+
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+            for (int i = 0; i < lines.size(); i++) {
+
+                String line = lines.get(i).trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split(",");
+
+                try {
+                    withHoliday(Currency.valueOf(fields[0].trim()), (int) LocalDate.parse(fields[1].trim()).toEpochDay());
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid holiday at line " + (i + 1) + " of " + file + ": " + line, e);
+                }
+            }
+
+            return this;
+        }
+
+        public SettlementCalendar build() {
+            return new SettlementCalendar(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Set<Integer>[] newHolidays() {
+
+            Set<Integer>[] holidays = (Set<Integer>[]) new Set<?>[NO_CURRENCY + 1];
+
+            for (int row = 0; row < holidays.length; row++) {
+                holidays[row] = new HashSet<>();
+            }
+
+            return holidays;
+        }
+    }
+}
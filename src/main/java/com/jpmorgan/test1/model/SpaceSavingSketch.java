@@ -0,0 +1,397 @@
+package com.jpmorgan.test1.model;
+
+import com.google.common.collect.Lists;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Weighted Space-Saving sketch of the per entity totals, used instead of {@link EntityTotals} when a day has too many
+ * entities to keep a total for each of them. It keeps a fixed number of counters: an entity which isn't tracked takes
+ * the counter with the smallest total, and inherits that total as its error. So every tracked total overestimates the
+ * real one by at most its error, and an entity which isn't tracked has a real total of at most the smallest tracked one.
+ * With k counters the errors are at most 1/k of the total of the day, whatever the number of entities.
+ * The counters are keyed by the entity names rather than by {@link EntityDictionary} ids, so the sketch only ever holds
+ * the names of its k counters and nothing grows with the number of entities seen.
+ * The smallest counter is found with a min-heap and the counter of an entity with an open addressing table, so adding
+ * a value costs O(log k) and doesn't allocate. Sketches of different partitions or nodes can be merged, with the same
+ * bound on the merged total.
+ *
+ * @author Vlad Constantinescu
+ */
+public class SpaceSavingSketch {
+
+    private final int capacity;
+    private final int scale;
+    private int size;
+    private final String[] entities;
+    private final MoneyAccumulator[] counts;
+    private final MoneyAccumulator[] errors;
+    //min-heap of the counters on their count, and the position of every counter in it
+    private final int[] heap;
+    private final int[] heapPositions;
+    //open addressing table from the entity name to its counter + 1, 0 being an empty slot
+    private final int[] table;
+    private final MoneyAccumulator maxError;
+
+    /**
+     * @param capacity
+     *          the number of counters, which bounds the errors to 1/capacity of the total
+     * @param scale
+     *          the scale of the totals
+     */
+    public SpaceSavingSketch(int capacity, int scale) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The sketch must have at least one counter");
+        }
+
+        this.capacity = capacity;
+        this.scale = scale;
+        this.entities = new String[capacity];
+        this.counts = new MoneyAccumulator[capacity];
+        this.errors = new MoneyAccumulator[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        //load factor under 1/2, so the probe sequences stay short
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        this.maxError = new MoneyAccumulator(scale);
+    }
+
+    /**
+     * Adds a non negative fixed-point value to the total of the entity, without allocating unless the total overflows
+     */
+    public void add(String entity, long unscaledValue, int valueScale) {
+
+        int counter = counter(entity);
+
+        counts[counter].add(unscaledValue, valueScale);
+        siftDown(heapPositions[counter]);
+    }
+
+    /**
+     * Adds a non negative {@link java.math.BigDecimal} value to the total of the entity
+     */
+    public void add(String entity, BigDecimal value) {
+
+        int counter = counter(entity);
+
+        counts[counter].add(value);
+        siftDown(heapPositions[counter]);
+    }
+
+    /**
+     * Merges another sketch, with the same capacity and scale, into this one. Every entity tracked by any of them is
+     * given the sum of its totals, or the smallest total of a sketch which doesn't track it, and the largest totals are kept.
+     *
+     * @param other
+     *          the sketch to be merged
+     */
+    public void merge(SpaceSavingSketch other) {
+
+        MoneyAccumulator thisMin = minCount();
+        MoneyAccumulator otherMin = other.minCount();
+        List<String> mergedEntities = Lists.newArrayList();
+        List<MoneyAccumulator> mergedCounts = Lists.newArrayList();
+        List<MoneyAccumulator> mergedErrors = Lists.newArrayList();
+
+        for (int counter = 0; counter < size; counter++) {
+
+            int otherCounter = other.find(entities[counter]);
+
+            mergedEntities.add(entities[counter]);
+            mergedCounts.add(sum(counts[counter], otherCounter < 0 ? otherMin : other.counts[otherCounter]));
+            mergedErrors.add(sum(errors[counter], otherCounter < 0 ? otherMin : other.errors[otherCounter]));
+        }
+
+        for (int otherCounter = 0; otherCounter < other.size; otherCounter++) {
+
+            if (find(other.entities[otherCounter]) < 0) {
+                mergedEntities.add(other.entities[otherCounter]);
+                mergedCounts.add(sum(thisMin, other.counts[otherCounter]));
+                mergedErrors.add(sum(thisMin, other.errors[otherCounter]));
+            }
+        }
+
+        //the largest totals, ties broken by the entity name so the result doesn't depend on the order of the counters
+        Comparator<String> byEntity = Comparator.nullsFirst(Comparator.naturalOrder());
+        Integer[] order = new Integer[mergedEntities.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> {
+            int byCount = mergedCounts.get(j).compareTo(mergedCounts.get(i));
+            return byCount != 0 ? byCount : byEntity.compare(mergedEntities.get(i), mergedEntities.get(j));
+        });
+
+        clear();
+
+        for (int i = 0; i < Math.min(order.length, capacity); i++) {
+
+            int counter = counter(mergedEntities.get(order[i]));
+
+            counts[counter].set(mergedCounts.get(order[i]));
+            errors[counter].set(mergedErrors.get(order[i]));
+            siftDown(heapPositions[counter]);
+            updateMaxError(errors[counter]);
+        }
+
+        updateMaxError(other.maxError);
+    }
+
+    /**
+     * @return an independent copy of this sketch
+     */
+    public SpaceSavingSketch copy() {
+
+        SpaceSavingSketch copy = new SpaceSavingSketch(capacity, scale);
+
+        for (int counter = 0; counter < size; counter++) {
+            copy.counts[counter] = counts[counter].copy();
+            copy.errors[counter] = errors[counter].copy();
+        }
+
+        System.arraycopy(entities, 0, copy.entities, 0, size);
+        System.arraycopy(heap, 0, copy.heap, 0, size);
+        System.arraycopy(heapPositions, 0, copy.heapPositions, 0, size);
+        System.arraycopy(table, 0, copy.table, 0, table.length);
+        copy.size = size;
+        copy.maxError.set(maxError);
+
+        return copy;
+    }
+
+    /**
+     * @return the number of tracked entities
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of counters
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the guaranteed bound of the sketch, 0 while a counter is free: every tracked total overestimates the real
+     *          total of its entity by at most this amount, and an entity which isn't tracked has a real total of at most this amount
+     */
+    public BigDecimal getErrorBound() {
+
+        MoneyAccumulator minCount = minCount();
+
+        return (minCount.compareTo(maxError) > 0 ? minCount : maxError).getValue();
+    }
+
+    /**
+     * @return the error of the total of the entity, or null if the entity isn't tracked
+     */
+    public BigDecimal getError(String entity) {
+
+        int counter = find(entity);
+
+        return counter < 0 ? null : errors[counter].getValue();
+    }
+
+    /**
+     * Creates the per entity totals of the tracked entities, so they can be ranked and formatted as the exact ones
+     *
+     * @return new {@link EntityTotals} with at most capacity entities, interned in a new {@link EntityDictionary} of their own
+     */
+    public EntityTotals toEntityTotals() {
+
+        EntityDictionary dictionary = new EntityDictionary();
+        EntityTotals totals = new EntityTotals(scale, dictionary);
+
+        for (int counter = 0; counter < size; counter++) {
+
+            int entityId = dictionary.intern(entities[counter]);
+            totals.add(entityId, counts[counter].getUnscaled(), scale);
+
+            if (counts[counter].getOverflow() != null) {
+                totals.add(entityId, counts[counter].getOverflow());
+            }
+        }
+
+        return totals;
+    }
+
+    /**
+     * Finds the counter of the entity, taking a new or the smallest one if it isn't tracked
+     */
+    private int counter(String entity) {
+
+        int counter = find(entity);
+
+        if (counter >= 0) {
+            return counter;
+        }
+
+        if (size < capacity) {
+            counter = size;
+            counts[counter] = new MoneyAccumulator(scale);
+            errors[counter] = new MoneyAccumulator(scale);
+            heap[size] = counter;
+            heapPositions[counter] = size;
+            size++;
+            siftUp(heapPositions[counter]);
+        } else {
+            //the new entity may have had at most the smallest total, which becomes its error
+            counter = heap[0];
+            remove(entities[counter]);
+            errors[counter].set(counts[counter]);
+            updateMaxError(errors[counter]);
+        }
+
+        entities[counter] = entity;
+        insert(entity, counter);
+
+        return counter;
+    }
+
+    private MoneyAccumulator minCount() {
+
+        //while there is a free counter, an entity which isn't tracked has a total of 0
+        return size < capacity ? new MoneyAccumulator(scale) : counts[heap[0]];
+    }
+
+    private MoneyAccumulator sum(MoneyAccumulator a, MoneyAccumulator b) {
+
+        MoneyAccumulator sum = a.copy();
+        sum.add(b);
+
+        return sum;
+    }
+
+    private void updateMaxError(MoneyAccumulator error) {
+
+        if (error.compareTo(maxError) > 0) {
+            maxError.set(error);
+        }
+    }
+
+    private void clear() {
+
+        size = 0;
+        Arrays.fill(entities, null);
+        Arrays.fill(table, 0);
+    }
+
+    private void siftUp(int position) {
+
+        int counter = heap[position];
+
+        while (position > 0) {
+
+            int parent = (position - 1) / 2;
+
+            if (counts[heap[parent]].compareTo(counts[counter]) <= 0) {
+                break;
+            }
+
+            move(heap[parent], position);
+            position = parent;
+        }
+
+        move(counter, position);
+    }
+
+    private void siftDown(int position) {
+
+        int counter = heap[position];
+
+        while (true) {
+
+            int child = 2 * position + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && counts[heap[child + 1]].compareTo(counts[heap[child]]) < 0) {
+                child++;
+            }
+
+            if (counts[counter].compareTo(counts[heap[child]]) <= 0) {
+                break;
+            }
+
+            move(heap[child], position);
+            position = child;
+        }
+
+        move(counter, position);
+    }
+
+    private void move(int counter, int position) {
+
+        heap[position] = counter;
+        heapPositions[counter] = position;
+    }
+
+    private int find(String entity) {
+
+        int mask = table.length - 1;
+
+        for (int slot = hash(entity) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (Objects.equals(entities[table[slot] - 1], entity)) {
+                return table[slot] - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(String entity, int counter) {
+
+        int mask = table.length - 1;
+        int slot = hash(entity) & mask;
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = counter + 1;
+    }
+
+    /**
+     * Removes the entity from the table, shifting back the entries after it so the probe sequences stay unbroken
+     */
+    private void remove(String entity) {
+
+        int mask = table.length - 1;
+        int slot = hash(entity) & mask;
+
+        while (!Objects.equals(entities[table[slot] - 1], entity)) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = 0;
+
+        for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+
+            int home = hash(entities[table[next] - 1]) & mask;
+
+            //the entry can fill the hole only if the hole is between its home slot and its current slot
+            boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+
+            if (movable) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    private static int hash(String entity) {
+
+        //String.hashCode is cached in the string, so this is as cheap as hashing an id
+        return EntityTotals.hash(Objects.hashCode(entity));
+    }
+}
@@ -0,0 +1,23 @@
+package com.jpmorgan.test1.model;
+
+/**
+ * Enum used to define why an instruction is rejected at ingest, or that it is accepted
+ *
+ * @author Vlad Constantinescu
+ */
+public enum ValidationCode {
+
+    VALID,
+    MISSING_ENTITY,
+    MISSING_OPERATION,
+    MISSING_CURRENCY,
+    //neither withInstructionDate nor withInstructionDay was called, which would settle on the epoch
+    MISSING_INSTRUCTION_DATE,
+    MISSING_FX,
+    MISSING_PRICE,
+    NON_POSITIVE_FX,
+    NEGATIVE_PRICE,
+    NEGATIVE_UNITS,
+    //the trade id was already accepted, e.g. a trade sent again after a reconnection
+    DUPLICATE;
+}
@@ -0,0 +1,338 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.DailyAggregateIndex;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Caching layer in front of {@link ReportService} for callers generating the report again and again over mostly the
+ * same instructions, e.g. dashboards where only the latest settlement dates change.
+ * The report is generated per settlement date: the aggregate and the rendered lines of every date are cached, keyed by a
+ * fingerprint of the instructions of that date, so only the dates whose instructions changed are aggregated, ranked
+ * and formatted again. The fingerprint is a 128 bit hash which doesn't depend on the order of the instructions; it is
+ * mixed from the primitive fields of every instruction into arrays indexed by the settlement epoch day, so checking the
+ * cache allocates nothing per instruction, and only the dates which missed are grouped for generating.
+ * The cache is bounded by the total number of cached lines, which grows with the number of entities of the cached dates,
+ * and evicts the least recently used dates first. The entities are fingerprinted by their id in a dictionary of the
+ * service, which keeps the names seen until {@link #invalidateAll()}.
+ *
+ * @author Vlad Constantinescu
+ */
+public class CachingReportService {
+
+    public static final long DEFAULT_MAXIMUM_LINES = 1_000_000;
+
+    //the seeds of the two independent halves of the fingerprint
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private final ReportService reportService;
+    private final Cache<DayKey, DayResult> cache;
+    //only for the fingerprints, the cached aggregates have their own
+    private final EntityDictionary dictionary = new EntityDictionary();
+
+    public CachingReportService(ReportService reportService) {
+        this(reportService, DEFAULT_MAXIMUM_LINES);
+    }
+
+    /**
+     * @param reportService
+     *          the service defining how the values are accumulated and how the report is formatted
+     * @param maximumLines
+     *          the maximum number of report lines to be cached, together with the aggregates of their dates
+     */
+    public CachingReportService(ReportService reportService, long maximumLines) {
+        this.reportService = reportService;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumLines)
+                .weigher((DayKey key, DayResult result) -> result.lines.size())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Same as {@link ReportService#generateReport(List)}, only generating the settlement dates whose instructions changed
+     *
+     * @param instructions
+     *      the list of instructions for which the report has to be generated
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateReport(List<Instruction> instructions) {
+
+        List<String> report = Lists.newArrayList();
+
+        for (DayResult result : results(instructions)) {
+            report.addAll(result.lines);
+        }
+
+        return report;
+    }
+
+    /**
+     * Same as {@link ReportService#writeReport(List, Appendable)}, only generating the settlement dates whose instructions changed
+     *
+     * @param instructions
+     *      the list of instructions for which the report has to be generated
+     * @param out
+     *      where the report is written
+     */
+    public void writeReport(List<Instruction> instructions, Appendable out) throws IOException {
+
+        for (DayResult result : results(instructions)) {
+            for (String line : result.lines) {
+                out.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Indexes the daily aggregates of the instructions for range queries, from copies of the cached aggregates
+     *
+     * @param instructions
+     *      the list of instructions to be indexed
+     *
+     * @return the {@link DailyAggregateIndex} of their settlement dates
+     */
+    public DailyAggregateIndex index(List<Instruction> instructions) {
+
+        List<DailyAggregate> dailyAggregates = Lists.newArrayList();
+
+        for (DayResult result : results(instructions)) {
+            dailyAggregates.add(result.dailyAggregate.copy());
+        }
+
+        return new DailyAggregateIndex(dailyAggregates, reportService.getScale());
+    }
+
+    /**
+     * @return the hits, misses and evictions of the cache, counted per settlement date
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of cached settlement dates
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Empties the cache, and forgets the entities seen so far
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        dictionary.clear();
+    }
+
+    private List<DayResult> results(List<Instruction> instructions) {
+
+        if (instructions.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+
+        for (Instruction instruction : instructions) {
+            firstDay = Math.min(firstDay, instruction.getSettlementDay());
+            lastDay = Math.max(lastDay, instruction.getSettlementDay());
+        }
+
+        //fingerprints of the days indexed by settlement day - firstDay, summed so the order doesn't matter
+        int days = lastDay - firstDay + 1;
+        int[] counts = new int[days];
+        long[] highs = new long[days];
+        long[] lows = new long[days];
+
+        boolean byNotional = reportService.getFxRateTable() != null;
+        int scale = reportService.getScale();
+
+        for (Instruction instruction : instructions) {
+
+            int index = instruction.getSettlementDay() - firstDay;
+            long value = fingerprintValue(instruction, byNotional, scale);
+
+            counts[index]++;
+            highs[index] += hash(HIGH_SEED, instruction, value);
+            lows[index] += hash(LOW_SEED, instruction, value);
+        }
+
+        DayKey[] keys = new DayKey[days];
+        DayResult[] results = new DayResult[days];
+        boolean missed = false;
+
+        for (int index = 0; index < days; index++) {
+            if (counts[index] > 0) {
+                keys[index] = new DayKey(firstDay + index, counts[index], highs[index], lows[index]);
+                results[index] = cache.getIfPresent(keys[index]);
+                missed |= results[index] == null;
+            }
+        }
+
+        if (missed) {
+            generateMissed(instructions, firstDay, keys, results);
+        }
+
+        List<DayResult> dayResults = Lists.newArrayList();
+
+        for (DayResult result : results) {
+            if (result != null) {
+                dayResults.add(result);
+            }
+        }
+
+        return dayResults;
+    }
+
+    /**
+     * Groups the instructions of the days which aren't cached, then generates and caches their results
+     */
+    private void generateMissed(List<Instruction> instructions, int firstDay, DayKey[] keys, DayResult[] results) {
+
+        List<Instruction>[] missedInstructions = newDayLists(results.length);
+
+        for (Instruction instruction : instructions) {
+
+            int index = instruction.getSettlementDay() - firstDay;
+
+            if (results[index] == null) {
+                if (missedInstructions[index] == null) {
+                    missedInstructions[index] = Lists.newArrayList();
+                }
+                missedInstructions[index].add(instruction);
+            }
+        }
+
+        for (int index = 0; index < results.length; index++) {
+            if (missedInstructions[index] != null) {
+                results[index] = generate(missedInstructions[index]);
+                cache.put(keys[index], results[index]);
+            }
+        }
+    }
+
+    //generic arrays can't be created, but the array never leaves this class
+    @SuppressWarnings("unchecked")
+    private static List<Instruction>[] newDayLists(int length) {
+        return (List<Instruction>[]) new List<?>[length];
+    }
+
+    private DayResult generate(List<Instruction> dayInstructions) {
+
+        ReportAggregator aggregator = new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), reportService.getFxRateTable(),
+                reportService.getMetrics(), reportService.getSketchCapacity());
+        aggregator.addAll(dayInstructions);
+
+        //the aggregator isn't used anymore, so its aggregate is kept without a copy
+        return new DayResult(aggregator.getDailyAggregates().get(0), reportService.generateReport(aggregator));
+    }
+
+    /**
+     * @return the value in USD of the instruction, or its notional when the instructions are valued through the fx rate
+     * table, as an unscaled long; the values which overflow it are reduced to the hash of their BigDecimal
+     */
+    private static long fingerprintValue(Instruction instruction, boolean byNotional, int scale) {
+
+        long unscaledValue = byNotional ? instruction.getNotional(scale) : instruction.getValueInUSD(scale);
+
+        if (unscaledValue != FixedPoint.OVERFLOW) {
+            return unscaledValue;
+        }
+
+        BigDecimal value = byNotional ? instruction.getNotional() : instruction.getValueInUSD();
+
+        return mix(FixedPoint.OVERFLOW ^ ((long) value.scale() << 32 | value.unscaledValue().hashCode() & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Hashes the instruction on what the report depends on
+     */
+    private long hash(long seed, Instruction instruction, long value) {
+
+        int operation = instruction.getOperation() == null ? -1 : instruction.getOperation().ordinal();
+        int currency = instruction.getCurrency() == null ? -1 : instruction.getCurrency().ordinal();
+
+        long hash = mix(seed ^ instruction.getEntityId(dictionary));
+        hash = mix(hash ^ ((long) operation << 32 | currency & 0xFFFFFFFFL));
+
+        return mix(hash ^ value);
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3, spreading every bit of the input over the whole result
+     */
+    private static long mix(long hash) {
+
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB93FE53AE63BL;
+
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Settlement date and fingerprint of its instructions
+     */
+    private static class DayKey {
+
+        private final int settlementDay;
+        private final int count;
+        private final long high;
+        private final long low;
+
+        private DayKey(int settlementDay, int count, long high, long low) {
+            this.settlementDay = settlementDay;
+            this.count = count;
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof DayKey)) {
+                return false;
+            }
+
+            DayKey other = (DayKey) o;
+
+            return settlementDay == other.settlementDay && count == other.count && high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(settlementDay, count, high, low);
+        }
+    }
+
+    /**
+     * Aggregate and rendered lines of a settlement date, never modified once cached
+     */
+    private static class DayResult {
+
+        private final DailyAggregate dailyAggregate;
+        private final List<String> lines;
+
+        private DayResult(DailyAggregate dailyAggregate, List<String> lines) {
+            this.dailyAggregate = dailyAggregate;
+            this.lines = lines;
+        }
+    }
+}
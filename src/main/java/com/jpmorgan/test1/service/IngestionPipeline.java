@@ -0,0 +1,131 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.io.InstructionCsvParser;
+import com.jpmorgan.test1.model.InstructionBatch;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parsing and the aggregation of text instructions on separate threads.
+ * The parser thread fills {@link com.jpmorgan.test1.model.InstructionBatch}es and hands them to the aggregating thread
+ * through a bounded queue, so the parser can't get more than a few batches ahead. The aggregated batches are given back
+ * to the parser to be reused, so the batches are only allocated once per run.
+ *
+ * @author Vlad Constantinescu
+ */
+public class IngestionPipeline {
+
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    //marks the end of the input in the queue of parsed batches
+    private static final InstructionBatch END = InstructionBatch.allocate(0, 0);
+
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int scale;
+
+    public IngestionPipeline(int scale) {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY, scale);
+    }
+
+    /**
+     * @param batchSize
+     *          the number of instructions of a batch
+     * @param queueCapacity
+     *          the maximum number of parsed batches waiting to be aggregated
+     * @param scale
+     *          the scale of the values in the batches
+     */
+    public IngestionPipeline(int batchSize, int queueCapacity, int scale) {
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.scale = scale;
+    }
+
+    /**
+     * Parses all the input of the given parser on a separate thread, while aggregating the parsed batches on the calling thread
+     *
+     * @param parser
+     *          the parser of the input
+     * @param aggregator
+     *          the aggregator the instructions are added to
+     */
+    public void run(InstructionCsvParser parser, ReportAggregator aggregator) throws IOException, InterruptedException {
+
+        BlockingQueue<InstructionBatch> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        //one more free batch than the queue can hold, so the parser can fill a batch while the queue is full
+        BlockingQueue<InstructionBatch> free = new ArrayBlockingQueue<>(queueCapacity + 2);
+
+        for (int i = 0; i < queueCapacity + 2; i++) {
+            free.add(InstructionBatch.allocateDirect(batchSize, scale, aggregator.newBatchDictionary()));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "instruction-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Future<?> parsing = executor.submit(() -> {
+                boolean more = true;
+
+                while (more) {
+                    InstructionBatch batch = free.take();
+                    more = parser.fill(batch);
+                    parsed.put(batch);
+                }
+
+                parsed.put(END);
+                return null;
+            });
+
+            for (InstructionBatch batch = take(parsed, parsing); batch != END; batch = take(parsed, parsing)) {
+                aggregator.addAll(batch);
+                batch.clear();
+                //the batches of an approximate aggregator have their own dictionary, so the names aren't kept once added
+                if (batch.getDictionary() != aggregator.getDictionary()) {
+                    batch.getDictionary().clear();
+                }
+                free.put(batch);
+            }
+
+            parsing.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("The parsing failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes the next parsed batch, failing fast if the parser stopped because of an error
+     */
+    private static InstructionBatch take(BlockingQueue<InstructionBatch> parsed, Future<?> parsing) throws InterruptedException, ExecutionException {
+
+        InstructionBatch batch = parsed.poll();
+
+        while (batch == null) {
+            if (parsing.isDone()) {
+                //the parser either failed, or put the END marker before finishing
+                parsing.get();
+                batch = parsed.poll();
+                return batch == null ? END : batch;
+            }
+            batch = parsed.poll(10, TimeUnit.MILLISECONDS);
+        }
+
+        return batch;
+    }
+}
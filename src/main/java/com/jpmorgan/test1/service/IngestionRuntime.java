@@ -0,0 +1,320 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.InstructionCsvParser;
+import com.jpmorgan.test1.io.InstructionSource;
+import com.jpmorgan.test1.model.InstructionBatch;
+
+import java.lang.reflect.Method;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingests many {@link InstructionSource}s at once, with one thread per source, and aggregates them into a single report.
+ * Every source thread parses its input into {@link com.jpmorgan.test1.model.InstructionBatch}es taken from a shared, fixed
+ * size pool, and the aggregating thread (the caller) gives them back once aggregated. When the aggregation falls behind
+ * the pool runs out, so the source threads block, and stop reading their files or sockets, instead of buffering without
+ * bound: that is the backpressure.
+ * A source only takes a batch once a whole line has arrived, and hands it back partly filled when it has parsed what it
+ * received and the channel has nothing more for now, so slow sources (e.g. sockets) don't hold the pool while waiting.
+ * The source threads are virtual threads when the JVM supports them (Java 21 or later), so a process can drain thousands
+ * of sources which spend most of their time waiting for input; on older JVMs they are daemon platform threads.
+ *
+ * @author Vlad Constantinescu
+ */
+public class IngestionRuntime {
+
+    public static final int DEFAULT_BATCH_SIZE = 4 * 1024;
+    public static final int DEFAULT_POOL_SIZE = 64;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Notified on the aggregating thread when all the instructions of a source have been aggregated
+     */
+    public interface Listener {
+
+        /**
+         * @param source
+         *          the source which finished
+         * @param instructionCount
+         *          the number of instructions of the source which were aggregated
+         * @param error
+         *          the exception or error which stopped the source early, or null if it was drained
+         */
+        void onSourceCompleted(InstructionSource source, long instructionCount, Throwable error);
+    }
+
+    private final ReportService reportService;
+    private final int batchSize;
+    private final int poolSize;
+    private final int bufferSize;
+    private final char delimiter;
+    private final boolean skipHeader;
+    private final Listener listener;
+    private final ThreadFactory threadFactory;
+
+    public IngestionRuntime(Builder builder) {
+        this.reportService = builder.reportService;
+        this.batchSize = builder.batchSize;
+        this.poolSize = builder.poolSize;
+        this.bufferSize = builder.bufferSize;
+        this.delimiter = builder.delimiter;
+        this.skipHeader = builder.skipHeader;
+        this.listener = builder.listener;
+        this.threadFactory = newThreadFactory();
+    }
+
+    /**
+     * Builder used to configure the runtime
+     */
+    public static class Builder {
+
+        private ReportService reportService = new ReportService();
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int poolSize = DEFAULT_POOL_SIZE;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private char delimiter = ',';
+        private boolean skipHeader;
+        private Listener listener = (source, instructionCount, error) -> { };
+
+        /**
+         * The service defining how the values are accumulated and how the report is formatted
+         */
+        public Builder withReportService(ReportService reportService) {
+            this.reportService = reportService;
+            return this;
+        }
+
+        /**
+         * The number of instructions of a batch
+         */
+        public Builder withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * The number of batches shared by all the sources, which bounds the instructions parsed but not yet aggregated
+         */
+        public Builder withPoolSize(int poolSize) {
+
+            if (poolSize < 1) {
+                throw new IllegalArgumentException("The pool must hold at least one batch");
+            }
+
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * The size of the read buffer of every source, which has to hold at least the longest line
+         */
+        public Builder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder withDelimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * Whether the first line of every source holds the names of the fields
+         */
+        public Builder withSkipHeader(boolean skipHeader) {
+            this.skipHeader = skipHeader;
+            return this;
+        }
+
+        public Builder withListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public IngestionRuntime build() {
+            return new IngestionRuntime(this);
+        }
+    }
+
+    /**
+     * Drains all the given sources and aggregates their instructions on the calling thread.
+     * A source which fails is reported to the {@link Listener} and doesn't stop the others; the instructions it parsed
+     * before failing stay in the aggregator.
+     *
+     * @param sources
+     *          the sources to be drained
+     * @param aggregator
+     *          the aggregator the instructions are added to
+     */
+    public void run(List<InstructionSource> sources, ReportAggregator aggregator) throws InterruptedException {
+
+        BlockingQueue<InstructionBatch> free = new ArrayBlockingQueue<>(poolSize);
+        //never full: it holds at most every batch of the pool, plus the completion of every source
+        BlockingQueue<Delivery> delivered = new LinkedBlockingQueue<>();
+        List<Thread> threads = Lists.newArrayList();
+        long[] instructionCounts = new long[sources.size()];
+
+        for (int i = 0; i < poolSize; i++) {
+            free.add(InstructionBatch.allocateDirect(batchSize, reportService.getScale(), aggregator.newBatchDictionary()));
+        }
+
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                Thread thread = threadFactory.newThread(new SourceTask(i, sources.get(i), free, delivered));
+                threads.add(thread);
+                thread.start();
+            }
+
+            for (int remaining = sources.size(); remaining > 0; ) {
+
+                Delivery delivery = delivered.take();
+
+                if (delivery.batch != null) {
+                    aggregator.addAll(delivery.batch);
+                    instructionCounts[delivery.source] += delivery.batch.size();
+                    delivery.batch.clear();
+                    //the batches of an approximate aggregator have their own dictionary, so the names aren't kept once added
+                    if (delivery.batch.getDictionary() != aggregator.getDictionary()) {
+                        delivery.batch.getDictionary().clear();
+                    }
+                    free.put(delivery.batch);
+                }
+
+                if (delivery.last) {
+                    remaining--;
+                    listener.onSourceCompleted(sources.get(delivery.source), instructionCounts[delivery.source], delivery.error);
+                }
+            }
+        } finally {
+            //only does something if the aggregation stopped early
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    /**
+     * Drains all the given sources and generates the consolidated report once all of them have finished
+     *
+     * @param sources
+     *          the sources to be drained
+     *
+     * @return the report as a list of strings, formatted by the {@link ReportService} of the runtime
+     */
+    public List<String> run(List<InstructionSource> sources) throws InterruptedException {
+
+        ReportAggregator aggregator = new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), null, reportService.getMetrics(),
+                reportService.getSketchCapacity());
+
+        run(sources, aggregator);
+
+        return reportService.generateReport(aggregator);
+    }
+
+    /**
+     * @return true if the source threads are virtual threads
+     */
+    public boolean isVirtual() {
+        return !(threadFactory instanceof PlatformThreadFactory);
+    }
+
+    /**
+     * Uses Thread.ofVirtual() through reflection, as the code is compiled for Java 8
+     */
+    private static ThreadFactory newThreadFactory() {
+
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+
+            return (ThreadFactory) factory.invoke(name.invoke(builder, "ingest-", 0L));
+        } catch (ReflectiveOperationException e) {
+            return new PlatformThreadFactory();
+        }
+    }
+
+    /**
+     * Reads a source on its own thread
+     */
+    private class SourceTask implements Runnable {
+
+        private final int index;
+        private final InstructionSource source;
+        private final BlockingQueue<InstructionBatch> free;
+        private final BlockingQueue<Delivery> delivered;
+
+        private SourceTask(int index, InstructionSource source, BlockingQueue<InstructionBatch> free, BlockingQueue<Delivery> delivered) {
+            this.index = index;
+            this.source = source;
+            this.free = free;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void run() {
+
+            Throwable error = null;
+
+            try (ReadableByteChannel channel = source.open()) {
+
+                InstructionCsvParser parser = new InstructionCsvParser(channel, delimiter, skipHeader, bufferSize);
+                boolean more = true;
+
+                //waits for input without holding a batch
+                while (more && parser.awaitLine()) {
+                    InstructionBatch batch = free.take();
+                    try {
+                        more = parser.fillAvailable(batch);
+                    } finally {
+                        //a partly filled batch is aggregated even if the parsing failed, so it goes back to the pool
+                        delivered.add(new Delivery(index, batch, false, null));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            } catch (Exception | Error e) {
+                //the listener gets it, so it isn't rethrown to the uncaught exception handler of the thread
+                error = e;
+            } finally {
+                delivered.add(new Delivery(index, null, true, error));
+            }
+        }
+    }
+
+    /**
+     * A parsed batch, or the completion of a source
+     */
+    private static class Delivery {
+
+        private final int source;
+        private final InstructionBatch batch;
+        private final boolean last;
+        private final Throwable error;
+
+        private Delivery(int source, InstructionBatch batch, boolean last, Throwable error) {
+            this.source = source;
+            this.batch = batch;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private static class PlatformThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, "ingest-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
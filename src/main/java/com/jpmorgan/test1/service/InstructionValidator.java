@@ -0,0 +1,101 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.ValidationCode;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ingest stage rejecting the malformed instructions and the trades sent again, e.g. by a feed after a reconnection,
+ * before they reach the aggregation. Every rejection is a {@link ValidationCode} returned to the caller and counted,
+ * not an exception, so a bad instruction costs about as much as a good one.
+ * The trade ids already accepted are remembered in a hash set, which finds a duplicate and remembers a new id with the
+ * same lookup. A bloom filter in front of it can't save that lookup, as an exact answer needs every new id in the set
+ * anyway, and only adds its own hashing (see TradeIdDeduplicationBenchmark).
+ * It is meant to be used by a single ingesting thread.
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionValidator {
+
+    private static final ValidationCode[] CODES = ValidationCode.values();
+
+    private final Set<String> tradeIds;
+    private final long[] counts = new long[CODES.length];
+
+    /**
+     * @param expectedTrades
+     *          the number of trade ids the set is sized for, so it isn't rehashed while they are accepted
+     */
+    public InstructionValidator(long expectedTrades) {
+        this.tradeIds = Sets.newHashSetWithExpectedSize((int) Math.min(expectedTrades, Integer.MAX_VALUE / 2));
+    }
+
+    /**
+     * Validates the fields of an instruction which isn't built yet, then checks its trade id, which is remembered if
+     * the instruction is accepted
+     *
+     * @return {@link ValidationCode#VALID} if the instruction can be built and aggregated, or why it is rejected
+     */
+    public ValidationCode validate(Instruction.Builder builder) {
+        return count(checkTradeId(builder.validate(), builder.getTradeId()));
+    }
+
+    /**
+     * Same as {@link #validate(Instruction.Builder)} for an instruction built without validation
+     */
+    public ValidationCode validate(Instruction instruction) {
+        return count(checkTradeId(instruction.validate(), instruction.getTradeId()));
+    }
+
+    /**
+     * Builds the instruction only if it is accepted
+     *
+     * @return the instruction, or null if it is rejected
+     */
+    public Instruction build(Instruction.Builder builder) {
+        return validate(builder) == ValidationCode.VALID ? builder.build() : null;
+    }
+
+    /**
+     * @return the accepted instructions, in the same order
+     */
+    public List<Instruction> filter(List<Instruction> instructions) {
+
+        List<Instruction> accepted = Lists.newArrayListWithCapacity(instructions.size());
+
+        for (Instruction instruction : instructions) {
+            if (validate(instruction) == ValidationCode.VALID) {
+                accepted.add(instruction);
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * @return the number of instructions validated with the given code
+     */
+    public long getCount(ValidationCode code) {
+        return counts[code.ordinal()];
+    }
+
+    private ValidationCode checkTradeId(ValidationCode code, String tradeId) {
+
+        //only the accepted trades are remembered, so a trade rejected as malformed can be sent again once corrected
+        if (code != ValidationCode.VALID || tradeId == null) {
+            return code;
+        }
+
+        return tradeIds.add(tradeId) ? code : ValidationCode.DUPLICATE;
+    }
+
+    private ValidationCode count(ValidationCode code) {
+
+        counts[code.ordinal()]++;
+        return code;
+    }
+}
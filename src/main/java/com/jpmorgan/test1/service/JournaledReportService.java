@@ -0,0 +1,207 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.InstructionJournal;
+import com.jpmorgan.test1.io.ReportSnapshot;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.Instruction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Report service which survives a restart: every instruction is appended to an {@link InstructionJournal} before being
+ * aggregated, and every snapshotInterval instructions the aggregates are written to a {@link ReportSnapshot}.
+ * On opening, the latest valid snapshot is loaded and only the journal records after it are replayed, so the recovery
+ * time is bounded by the snapshot interval instead of growing with the whole day. The journal is forced to the disk
+ * before every snapshot, so a snapshot never covers records lost in a crash of the machine; one which still claims more
+ * than the recovered journal holds is rejected like a corrupted one. The journal segments covered by the
+ * previous snapshot are deleted, the last two snapshots are kept in case the latest one is corrupted.
+ * This class isn't thread-safe.
+ *
+ * @author Vlad Constantinescu
+ */
+public class JournaledReportService implements Closeable {
+
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 1_000_000;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int KEPT_SNAPSHOTS = 2;
+
+    private final Path directory;
+    private final ReportService reportService;
+    private final long snapshotInterval;
+    private final InstructionJournal journal;
+    private final ReportAggregator aggregator;
+    private long snapshotSequence;
+    private long replayedCount;
+
+    public JournaledReportService(Path directory, ReportService reportService) throws IOException {
+        this(directory, reportService, InstructionJournal.DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Opens the journal and the snapshots in the given directory and recovers the aggregates
+     *
+     * @param directory
+     *          the directory holding the journal segments and the snapshots
+     * @param reportService
+     *          the service defining how the values are accumulated and how the report is formatted; it can't have an
+     *          fx rate table, as the journal only stores the value in USD of every instruction
+     * @param segmentSize
+     *          the size of a journal segment file
+     * @param snapshotInterval
+     *          the number of instructions after which a snapshot is taken
+     *
+     * @throws IllegalArgumentException if the report service values the instructions through an fx rate table
+     */
+    public JournaledReportService(Path directory, ReportService reportService, int segmentSize, long snapshotInterval) throws IOException {
+
+        if (reportService.getFxRateTable() != null) {
+            throw new IllegalArgumentException("The journaled report can't be valued through an fx rate table, as the journal only stores the value in USD");
+        }
+
+        this.directory = directory;
+        this.reportService = reportService;
+        this.snapshotInterval = snapshotInterval;
+        this.journal = new InstructionJournal(directory, segmentSize, reportService.getScale());
+        this.aggregator = new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), null, reportService.getMetrics());
+
+        ReportSnapshot snapshot = readLatestSnapshot();
+
+        if (snapshot != null) {
+            snapshot.getDailyAggregates().forEach(aggregator::merge);
+            snapshotSequence = snapshot.getSequence();
+        }
+
+        aggregator.addAll(journal, snapshotSequence);
+        replayedCount = journal.getNextSequence() - snapshotSequence;
+    }
+
+    /**
+     * Journals and aggregates a single instruction, taking a snapshot if the interval has passed
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be added
+     */
+    public void add(Instruction instruction) throws IOException {
+
+        journal.append(instruction);
+        aggregator.add(instruction);
+
+        if (journal.getNextSequence() - snapshotSequence >= snapshotInterval) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Writes a snapshot of all the instructions added so far and deletes what is no longer needed for the recovery
+     */
+    public void snapshot() throws IOException {
+
+        long sequence = journal.getNextSequence();
+
+        //the records covered by the snapshot must be on the disk before it
+        journal.force();
+        new ReportSnapshot(sequence, aggregator.snapshot()).write(snapshotPath(sequence), reportService.getScale());
+        snapshotSequence = sequence;
+
+        List<Long> sequences = snapshotSequences();
+
+        for (int i = 0; i < sequences.size() - KEPT_SNAPSHOTS; i++) {
+            Files.delete(snapshotPath(sequences.get(i)));
+        }
+
+        //the oldest kept snapshot must still be recoverable
+        journal.deleteBefore(sequences.get(Math.max(0, sequences.size() - KEPT_SNAPSHOTS)));
+    }
+
+    /**
+     * Flushes the journaled instructions to the disk, so they also survive a crash of the machine
+     */
+    public void force() {
+        journal.force();
+    }
+
+    /**
+     * @return the number of journal records replayed on opening, i.e. the ones after the latest snapshot
+     */
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * @return the number of instructions added since the journal was created
+     */
+    public long getInstructionCount() {
+        return journal.getNextSequence();
+    }
+
+    /**
+     * @return the report of all the instructions added so far, including the ones before the restart
+     */
+    public List<String> generateReport() {
+        return reportService.generateReport(aggregator);
+    }
+
+    /**
+     * @return a copy of the aggregate of the given settlement date, or null if no instruction settles in that date
+     */
+    public DailyAggregate snapshot(int settlementDay) {
+        return aggregator.snapshot(settlementDay);
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    /**
+     * @return the latest snapshot which can be read and doesn't cover more than the journal holds, or null if there is none
+     */
+    private ReportSnapshot readLatestSnapshot() throws IOException {
+
+        List<Long> sequences = snapshotSequences();
+
+        for (int i = sequences.size() - 1; i >= 0; i--) {
+            try {
+                ReportSnapshot snapshot = ReportSnapshot.read(snapshotPath(sequences.get(i)), reportService.getNumericMode(), reportService.getScale(),
+                        aggregator.getDictionary());
+
+                //otherwise the records it claims would be appended again and skipped by the next recovery
+                if (snapshot.getSequence() <= journal.getNextSequence()) {
+                    return snapshot;
+                }
+            } catch (IOException | RuntimeException e) {
+                //fall back to the previous snapshot, which replays more of the journal
+            }
+        }
+
+        return null;
+    }
+
+    private List<Long> snapshotSequences() throws IOException {
+
+        List<Long> sequences = Lists.newArrayList();
+
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path path : snapshots) {
+                String name = path.getFileName().toString();
+                sequences.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())));
+            }
+        }
+
+        sequences.sort(Long::compare);
+
+        return sequences;
+    }
+
+    private Path snapshotPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+}
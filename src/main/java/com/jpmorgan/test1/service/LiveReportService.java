@@ -0,0 +1,239 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.DailyAggregateIndex;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FxRateTable;
+import com.jpmorgan.test1.model.Instruction;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe service which accepts {@link com.jpmorgan.test1.model.Instruction}s from many producer threads while the
+ * report is generated, with the same totals and rankings as {@link ReportService}.
+ * Every producer thread is assigned one of several stripes, each one with its own {@link ReportAggregator} of the
+ * instructions added since the last report (the delta), so producers on different stripes never wait for each other.
+ * To generate a report, the deltas of all the stripes are swapped with empty ones at once, holding the locks of all the
+ * stripes (always taken in the same order), and merged into the aggregator of all the previous instructions. A producer
+ * only ever takes the lock of its own stripe. The report is then a consistent point-in-time view: it contains every
+ * instruction added before the swap and none added after, and the producers are only held for the swap itself, not for
+ * the merge or the formatting.
+ *
+ * @author Vlad Constantinescu
+ */
+public class LiveReportService {
+
+    private final ReportService reportService;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Stripe> threadStripe;
+    //shared by the deltas and merged, so the deltas are merged by id
+    private final EntityDictionary dictionary = new EntityDictionary();
+    //guarded by itself
+    private final ReportAggregator merged;
+    //the rates of the deltas created from now on; only changed holding the lock of merged
+    private volatile FxRateTable fxRates;
+
+    public LiveReportService() {
+        this(new ReportService(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param reportService
+     *          the service defining how the values are accumulated and how the report is formatted
+     * @param stripeCount
+     *          the number of stripes, usually the number of producer threads
+     */
+    public LiveReportService(ReportService reportService, int stripeCount) {
+
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("There must be at least one stripe");
+        }
+
+        this.reportService = reportService;
+        this.fxRates = reportService.getFxRateTable();
+        this.stripes = new Stripe[stripeCount];
+        this.merged = newAggregator();
+
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(newAggregator());
+        }
+
+        //round robin, so the producers are spread evenly whatever their thread ids
+        this.threadStripe = ThreadLocal.withInitial(() -> stripes[Math.floorMod(nextStripe.getAndIncrement(), stripes.length)]);
+    }
+
+    /**
+     * Adds a single instruction, from any thread
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be added
+     */
+    public void add(Instruction instruction) {
+
+        Stripe stripe = threadStripe.get();
+
+        synchronized (stripe) {
+            stripe.delta.add(instruction);
+        }
+    }
+
+    /**
+     * Adds several instructions, from any thread. The report sees either all of them or none of them.
+     *
+     * @param instructions
+     *          the instructions to be added
+     */
+    public void addAll(Iterable<Instruction> instructions) {
+
+        Stripe stripe = threadStripe.get();
+
+        synchronized (stripe) {
+            stripe.delta.addAll(instructions);
+        }
+    }
+
+    /**
+     * Generates the report of all the instructions added so far
+     *
+     * @return the report as a list of strings, formatted as by {@link ReportService#generateReport(ReportAggregator)}
+     */
+    public List<String> generateReport() {
+        return reportService.generateDailyReports(mergedSnapshot());
+    }
+
+    /**
+     * Writes the report of all the instructions added so far straight to the given sink
+     *
+     * @param out
+     *          where the report is written
+     */
+    public void writeReport(Appendable out) throws IOException {
+        reportService.writeDailyReports(mergedSnapshot(), out);
+    }
+
+    /**
+     * Copies the merged aggregates, so the report is formatted, or written to a slow sink, without holding the lock of
+     * merged
+     */
+    private List<DailyAggregate> mergedSnapshot() {
+
+        synchronized (merged) {
+            mergeDeltas();
+            return merged.snapshot();
+        }
+    }
+
+    /**
+     * Takes a snapshot of a single settlement date, e.g. the current one
+     *
+     * @param settlementDay
+     *          the settlement date as an epoch day
+     *
+     * @return a copy of the totals and rankings of all the instructions added so far settling in that date, or null if there is none
+     */
+    public DailyAggregate snapshot(int settlementDay) {
+
+        synchronized (merged) {
+            mergeDeltas();
+            return merged.snapshot(settlementDay);
+        }
+    }
+
+    /**
+     * Takes a snapshot of all the settlement dates, indexed for queries over date ranges, e.g. the last N business days.
+     * The index can be queried many times, concurrently, while more instructions are added.
+     *
+     * @return the {@link DailyAggregateIndex} of all the instructions added so far
+     */
+    public DailyAggregateIndex index() {
+
+        synchronized (merged) {
+            mergeDeltas();
+            return merged.index();
+        }
+    }
+
+    /**
+     * Applies corrected fx rates to all the instructions added so far, without adding them again, and values the
+     * instructions added afterwards with the corrected rates. The producers are only held for the swap of the deltas.
+     *
+     * @param newRates
+     *          the corrected {@link FxRateTable}
+     *
+     * @throws IllegalStateException if the {@link ReportService} values the instructions with their own fx
+     */
+    public void revalue(FxRateTable newRates) {
+
+        synchronized (merged) {
+
+            if (fxRates == null) {
+                throw new IllegalStateException("Only the aggregates valued through an fx rate table can be revalued");
+            }
+
+            //the deltas swapped out were valued with the old rates, the ones swapped in will be valued with the new ones
+            fxRates = newRates;
+            mergeDeltas();
+            merged.revalue(newRates);
+        }
+    }
+
+    /**
+     * Swaps the deltas of all the stripes with empty ones and merges them. Must be called holding the lock of merged.
+     */
+    private void mergeDeltas() {
+
+        ReportAggregator[] deltas = new ReportAggregator[stripes.length];
+        ReportAggregator[] empty = new ReportAggregator[stripes.length];
+
+        //allocated before taking the locks of the stripes, so the producers are held as little as possible
+        for (int i = 0; i < stripes.length; i++) {
+            empty[i] = newAggregator();
+        }
+
+        swapDeltas(0, deltas, empty);
+
+        for (ReportAggregator delta : deltas) {
+            merged.merge(delta);
+        }
+    }
+
+    /**
+     * Takes the locks of the stripes from the given one on, in order, and swaps all the deltas once it holds all of them,
+     * so the report is a point-in-time view: an instruction added after another one, on a stripe swapped earlier, can't be
+     * in the report without it
+     */
+    private void swapDeltas(int stripe, ReportAggregator[] deltas, ReportAggregator[] empty) {
+
+        if (stripe == stripes.length) {
+            for (int i = 0; i < stripes.length; i++) {
+                deltas[i] = stripes[i].delta;
+                stripes[i].delta = empty[i];
+            }
+            return;
+        }
+
+        synchronized (stripes[stripe]) {
+            swapDeltas(stripe + 1, deltas, empty);
+        }
+    }
+
+    private ReportAggregator newAggregator() {
+        return new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), fxRates, reportService.getMetrics(),
+                reportService.getSketchCapacity(), dictionary);
+    }
+
+    /**
+     * The delta of the producers assigned to it, guarded by its own lock
+     */
+    private static class Stripe {
+
+        private ReportAggregator delta;
+
+        private Stripe(ReportAggregator delta) {
+            this.delta = delta;
+        }
+    }
+}
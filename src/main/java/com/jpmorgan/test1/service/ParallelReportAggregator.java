@@ -0,0 +1,239 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FxRateTable;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates a list of {@link com.jpmorgan.test1.model.Instruction}s using a {@link java.util.concurrent.ForkJoinPool}.
+ * Every settlement date is aggregated by its own task, and a day with more instructions than the split threshold is
+ * partitioned again by the entity name, so every entity is aggregated by a single task. The tasks of a call share one
+ * {@link EntityDictionary}, so their aggregates are merged by id.
+ * The partial {@link com.jpmorgan.test1.model.DailyAggregate}s are then merged, which gives exactly the same totals and
+ * rankings as the sequential {@link ReportAggregator}.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ParallelReportAggregator {
+
+    public static final int DEFAULT_SPLIT_THRESHOLD = 100_000;
+
+    private final ForkJoinPool pool;
+    private final NumericMode numericMode;
+    private final int scale;
+    private final FxRateTable fxRates;
+    private final int splitThreshold;
+
+    /**
+     * @param pool
+     *          the pool running the aggregation tasks
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param splitThreshold
+     *          the number of instructions of a day above which the day is partitioned by entity
+     */
+    public ParallelReportAggregator(ForkJoinPool pool, NumericMode numericMode, int scale, int splitThreshold) {
+        this(pool, numericMode, scale, null, splitThreshold);
+    }
+
+    /**
+     * @param pool
+     *          the pool running the aggregation tasks
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param fxRates
+     *          the {@link FxRateTable} the instructions are valued with instead of their own fx, or null to use their fx
+     * @param splitThreshold
+     *          the number of instructions of a day above which the day is partitioned by entity
+     */
+    public ParallelReportAggregator(ForkJoinPool pool, NumericMode numericMode, int scale, FxRateTable fxRates, int splitThreshold) {
+        this.pool = pool;
+        this.numericMode = numericMode;
+        this.scale = scale;
+        this.fxRates = fxRates;
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Aggregates the given instructions in parallel
+     *
+     * @param instructions
+     *          the instructions to be aggregated
+     *
+     * @return the daily aggregates in chronological order
+     */
+    public List<DailyAggregate> aggregate(List<Instruction> instructions) {
+
+        return pool.invoke(new ReportTask(instructions));
+    }
+
+    /**
+     * Partitions the instructions by settlement date and aggregates every day in its own task
+     */
+    private class ReportTask extends RecursiveTask<List<DailyAggregate>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Instruction> instructions;
+        private final EntityDictionary dictionary = new EntityDictionary();
+
+        ReportTask(List<Instruction> instructions) {
+            this.instructions = instructions;
+        }
+
+        @Override
+        protected List<DailyAggregate> compute() {
+
+            if (instructions.isEmpty()) {
+                return Lists.newArrayList();
+            }
+
+            IntSummaryStatistics settlementDays = instructions.parallelStream().mapToInt(Instruction::getSettlementDay).summaryStatistics();
+            int firstDay = settlementDays.getMin();
+
+            //buckets indexed by day, which are already in chronological order as in the sequential aggregator
+            DayBuckets instructionsByDay = instructions.parallelStream().collect(
+                    () -> new DayBuckets(firstDay, settlementDays.getMax()), DayBuckets::add, DayBuckets::addAll);
+
+            List<DailyTask> dailyTasks = Lists.newArrayList();
+
+            for (int i = 0; i < instructionsByDay.buckets.length; i++) {
+                if (instructionsByDay.buckets[i] != null) {
+                    dailyTasks.add(new DailyTask(firstDay + i, instructionsByDay.buckets[i], dictionary));
+                }
+            }
+
+            invokeAll(dailyTasks);
+
+            return dailyTasks.stream().map(DailyTask::join).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Aggregates a single settlement date, partitioning it by entity if it is too large
+     */
+    private class DailyTask extends RecursiveTask<DailyAggregate> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int settlementDay;
+        private final List<Instruction> dailyInstructions;
+        private final EntityDictionary dictionary;
+        private final boolean split;
+
+        DailyTask(int settlementDay, List<Instruction> dailyInstructions, EntityDictionary dictionary) {
+            this(settlementDay, dailyInstructions, dictionary, true);
+        }
+
+        private DailyTask(int settlementDay, List<Instruction> dailyInstructions, EntityDictionary dictionary, boolean split) {
+            this.settlementDay = settlementDay;
+            this.dailyInstructions = dailyInstructions;
+            this.dictionary = dictionary;
+            this.split = split;
+        }
+
+        @Override
+        protected DailyAggregate compute() {
+
+            DailyAggregate dailyAggregate = new DailyAggregate(settlementDay, numericMode, scale, 0, dictionary);
+
+            if (!split || dailyInstructions.size() <= splitThreshold) {
+                for (Instruction instruction : dailyInstructions) {
+                    if (fxRates == null) {
+                        dailyAggregate.add(instruction);
+                    } else {
+                        dailyAggregate.add(instruction, fxRates);
+                    }
+                }
+                return dailyAggregate;
+            }
+
+            List<DailyTask> partitionTasks = Lists.newArrayList();
+
+            for (List<Instruction> partition : partitionByEntity()) {
+                partitionTasks.add(new DailyTask(settlementDay, partition, dictionary, false));
+            }
+
+            invokeAll(partitionTasks);
+
+            for (DailyTask partitionTask : partitionTasks) {
+                dailyAggregate.merge(partitionTask.join());
+            }
+
+            return dailyAggregate;
+        }
+
+        private List<List<Instruction>> partitionByEntity() {
+
+            int partitionCount = Math.max(2, Math.min(getPool().getParallelism(), dailyInstructions.size() / splitThreshold + 1));
+            List<List<Instruction>> partitions = Lists.newArrayListWithCapacity(partitionCount);
+
+            for (int i = 0; i < partitionCount; i++) {
+                partitions.add(Lists.newArrayList());
+            }
+
+            for (Instruction instruction : dailyInstructions) {
+                partitions.get(ShardWorker.partitionOf(instruction.getEntity(), partitionCount)).add(instruction);
+            }
+
+            return partitions;
+        }
+    }
+
+    /**
+     * Instructions grouped in lists indexed by their settlement day
+     */
+    private static class DayBuckets {
+
+        private final int firstDay;
+        private final List<Instruction>[] buckets;
+
+        DayBuckets(int firstDay, int lastDay) {
+            this.firstDay = firstDay;
+            this.buckets = newBuckets(lastDay - firstDay + 1);
+        }
+
+        //generic arrays can't be created, but the array never leaves this class
+        @SuppressWarnings("unchecked")
+        private static List<Instruction>[] newBuckets(int length) {
+            return (List<Instruction>[]) new List<?>[length];
+        }
+
+        void add(Instruction instruction) {
+
+            int index = instruction.getSettlementDay() - firstDay;
+
+            if (buckets[index] == null) {
+                buckets[index] = Lists.newArrayList();
+            }
+
+            buckets[index].add(instruction);
+        }
+
+        void addAll(DayBuckets other) {
+
+            for (int i = 0; i < buckets.length; i++) {
+                if (other.buckets[i] != null) {
+                    if (buckets[i] == null) {
+                        buckets[i] = other.buckets[i];
+                    } else {
+                        buckets[i].addAll(other.buckets[i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.InstructionFileReader;
+import com.jpmorgan.test1.io.InstructionJournal;
+import com.jpmorgan.test1.metrics.Metrics;
+import com.jpmorgan.test1.metrics.Stage;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.DailyAggregateIndex;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.FxRateTable;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.NumericMode;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Incremental aggregator which accepts {@link com.jpmorgan.test1.model.Instruction}s one at a time or in batches and
+ * keeps the per settlement date totals and rankings up to date, so a report can be generated at any moment without
+ * holding the instructions in memory.
+ * The daily aggregates are kept in an array indexed by the settlement epoch day, so they are found with a single lookup
+ * and are already in chronological order.
+ * The entities of all the days are interned in the {@link EntityDictionary} of the aggregator, which lives as long as it
+ * does, so the ids of a service don't leak into the others. An approximate aggregator doesn't intern them at all, so its
+ * memory doesn't grow with the number of entities.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ReportAggregator {
+
+    private static final int INITIAL_DAYS = 32;
+
+    private final NumericMode numericMode;
+    private final int scale;
+    //null if the instructions are valued with their own fx
+    private FxRateTable fxRates;
+    private final Metrics metrics;
+    //0 if the per entity totals are exact
+    private final int sketchCapacity;
+    private final EntityDictionary dictionary;
+    //aggregatesByDay[i] is the aggregate of the epoch day firstDay + i
+    private DailyAggregate[] aggregatesByDay = new DailyAggregate[0];
+    private int firstDay;
+
+    public ReportAggregator() {
+        this(NumericMode.BIG_DECIMAL, FixedPoint.DEFAULT_SCALE);
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     */
+    public ReportAggregator(NumericMode numericMode, int scale) {
+        this(numericMode, scale, null);
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param fxRates
+     *          the {@link FxRateTable} the instructions are valued with instead of their own fx, or null to use their fx
+     */
+    public ReportAggregator(NumericMode numericMode, int scale, FxRateTable fxRates) {
+        this(numericMode, scale, fxRates, Metrics.disabled());
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param fxRates
+     *          the {@link FxRateTable} the instructions are valued with instead of their own fx, or null to use their fx
+     * @param metrics
+     *          the {@link Metrics} counting the instructions and timing their aggregation
+     */
+    public ReportAggregator(NumericMode numericMode, int scale, FxRateTable fxRates, Metrics metrics) {
+        this(numericMode, scale, fxRates, metrics, 0);
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param fxRates
+     *          the {@link FxRateTable} the instructions are valued with instead of their own fx, or null to use their fx
+     * @param metrics
+     *          the {@link Metrics} counting the instructions and timing their aggregation
+     * @param sketchCapacity
+     *          the number of entities tracked per day and operation in approximate mode, or 0 to keep the exact total
+     *          of every entity (see {@link com.jpmorgan.test1.model.SpaceSavingSketch})
+     *
+     * @throws IllegalArgumentException if the aggregator is approximate and has an fx rate table
+     */
+    public ReportAggregator(NumericMode numericMode, int scale, FxRateTable fxRates, Metrics metrics, int sketchCapacity) {
+        this(numericMode, scale, fxRates, metrics, sketchCapacity, new EntityDictionary());
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     * @param fxRates
+     *          the {@link FxRateTable} the instructions are valued with instead of their own fx, or null to use their fx
+     * @param metrics
+     *          the {@link Metrics} counting the instructions and timing their aggregation
+     * @param sketchCapacity
+     *          the number of entities tracked per day and operation in approximate mode, or 0 to keep the exact total
+     *          of every entity (see {@link com.jpmorgan.test1.model.SpaceSavingSketch})
+     * @param dictionary
+     *          the {@link EntityDictionary} the entities are interned in, e.g. the one of the batches to be added
+     *
+     * @throws IllegalArgumentException if the aggregator is approximate and has an fx rate table
+     */
+    public ReportAggregator(NumericMode numericMode, int scale, FxRateTable fxRates, Metrics metrics, int sketchCapacity,
+                            EntityDictionary dictionary) {
+
+        if (fxRates != null && sketchCapacity > 0) {
+            throw new IllegalArgumentException("The totals of an approximate aggregator can't be valued through an fx rate table");
+        }
+
+        this.numericMode = numericMode;
+        this.scale = scale;
+        this.fxRates = fxRates;
+        this.metrics = metrics;
+        this.sketchCapacity = sketchCapacity;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Adds a single instruction to the aggregate of its settlement date
+     *
+     * @param instruction
+     *          the {@link com.jpmorgan.test1.model.Instruction} to be added
+     */
+    public void add(Instruction instruction) {
+
+        DailyAggregate dailyAggregate = dailyAggregate(instruction.getSettlementDay());
+
+        metrics.countInstruction(instruction.getCurrency(), instruction.getOperation());
+
+        if (fxRates == null) {
+            dailyAggregate.add(instruction);
+        } else {
+            dailyAggregate.add(instruction, fxRates);
+        }
+    }
+
+    /**
+     * Adds a batch of instructions
+     *
+     * @param instructions
+     *          the instructions to be added
+     */
+    public void addAll(Iterable<Instruction> instructions) {
+
+        long startTime = metrics.start();
+
+        for (Instruction instruction : instructions) {
+            add(instruction);
+        }
+
+        metrics.stop(Stage.AGGREGATION, startTime);
+    }
+
+    /**
+     * Adds all the instructions of a columnar batch, without materializing {@link com.jpmorgan.test1.model.Instruction} objects
+     *
+     * @param batch
+     *          the {@link com.jpmorgan.test1.model.InstructionBatch} to be added
+     */
+    public void addAll(InstructionBatch batch) {
+
+        checkOwnFx();
+
+        InstructionBatch.Cursor cursor = batch.cursor();
+        long startTime = metrics.start();
+
+        while (cursor.next()) {
+
+            long unscaledValue = cursor.getUnscaledValueInUSD();
+
+            metrics.countInstruction(cursor.getCurrency(), cursor.getOperation());
+
+            dailyAggregate(cursor.getSettlementDay()).add(cursor, unscaledValue, batch.getScale(), cursor.getOverflowValueInUSD(unscaledValue));
+        }
+
+        metrics.stop(Stage.AGGREGATION, startTime);
+    }
+
+    /**
+     * Adds all the records of a binary instruction file, decoding them straight from the mapped file
+     *
+     * @param reader
+     *          the {@link com.jpmorgan.test1.io.InstructionFileReader} of the file to be added
+     */
+    public void addAll(InstructionFileReader reader) throws IOException {
+
+        checkOwnFx();
+
+        InstructionFileReader.Cursor cursor = reader.cursor();
+        long startTime = metrics.start();
+
+        while (cursor.next()) {
+
+            long unscaledValue = cursor.getUnscaledValueInUSD();
+
+            metrics.countInstruction(cursor.getCurrency(), cursor.getOperation());
+
+            dailyAggregate(cursor.getSettlementDay()).add(cursor, unscaledValue, reader.getScale(), cursor.getOverflowValueInUSD(unscaledValue));
+        }
+
+        metrics.stop(Stage.AGGREGATION, startTime);
+    }
+
+    /**
+     * Adds the records of a journal, from the given sequence number to its end, decoding them straight from the mapped segments
+     *
+     * @param journal
+     *          the {@link com.jpmorgan.test1.io.InstructionJournal} to be replayed
+     * @param fromSequence
+     *          the sequence number of the first record to be added
+     */
+    public void addAll(InstructionJournal journal, long fromSequence) throws IOException {
+
+        checkOwnFx();
+
+        InstructionJournal.Cursor cursor = journal.cursor(fromSequence);
+        long startTime = metrics.start();
+
+        while (cursor.next()) {
+
+            long unscaledValue = cursor.getUnscaledValueInUSD();
+
+            metrics.countInstruction(cursor.getCurrency(), cursor.getOperation());
+
+            dailyAggregate(cursor.getSettlementDay()).add(cursor.getEntity(), cursor.getOperation(), cursor.getCurrency(), unscaledValue, journal.getScale(),
+                    unscaledValue == FixedPoint.OVERFLOW ? cursor.getValueInUSD() : null);
+        }
+
+        metrics.stop(Stage.AGGREGATION, startTime);
+    }
+
+    /**
+     * Adds the totals of a daily aggregate to the aggregate of the same settlement date
+     *
+     * @param dailyAggregate
+     *          the aggregate to be merged, with the same {@link NumericMode} and scale
+     */
+    public void merge(DailyAggregate dailyAggregate) {
+
+        dailyAggregate(dailyAggregate.getSettlementDay()).merge(dailyAggregate);
+    }
+
+    /**
+     * Adds all the totals of another aggregator to this one.
+     * The result is the same as if all the instructions of both aggregators had been added to this one.
+     *
+     * @param other
+     *          the aggregator to be merged, with the same {@link NumericMode} and scale
+     */
+    public void merge(ReportAggregator other) {
+
+        for (DailyAggregate dailyAggregate : other.aggregatesByDay) {
+            if (dailyAggregate != null) {
+                merge(dailyAggregate);
+            }
+        }
+    }
+
+    /**
+     * Applies corrected fx rates to everything aggregated so far, in O(days * entities * currencies) instead of adding
+     * all the instructions again. The instructions added afterwards are valued with the corrected rates.
+     *
+     * @param newRates
+     *          the corrected {@link FxRateTable}, with a rate for every currency and settlement date already aggregated
+     *
+     * @throws IllegalStateException if the aggregator values the instructions with their own fx
+     */
+    public void revalue(FxRateTable newRates) {
+
+        if (fxRates == null) {
+            throw new IllegalStateException("Only the aggregates valued through an fx rate table can be revalued");
+        }
+
+        for (DailyAggregate dailyAggregate : aggregatesByDay) {
+            if (dailyAggregate != null) {
+                dailyAggregate.revalue(fxRates, newRates);
+            }
+        }
+
+        fxRates = newRates;
+    }
+
+    /**
+     * @return the {@link FxRateTable} the instructions are valued with, or null if they are valued with their own fx
+     */
+    public FxRateTable getFxRateTable() {
+        return fxRates;
+    }
+
+    /**
+     * @return the {@link EntityDictionary} the entities are interned in
+     */
+    public EntityDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return the dictionary of a batch to be filled and added to this aggregator: its own if it is exact, so the ids of
+     *          the batch are added as they are, or a new one if it is approximate, to be cleared once the batch is added
+     *          so the names aren't kept
+     */
+    public EntityDictionary newBatchDictionary() {
+        return sketchCapacity > 0 ? new EntityDictionary() : dictionary;
+    }
+
+    /**
+     * Takes a snapshot of the current state of a single settlement date
+     *
+     * @param settlementDay
+     *          the settlement date as an epoch day
+     *
+     * @return a copy of the aggregate of that date, or null if no instruction settles in that date
+     */
+    public DailyAggregate snapshot(int settlementDay) {
+
+        int index = settlementDay - firstDay;
+
+        if (index < 0 || index >= aggregatesByDay.length || aggregatesByDay[index] == null) {
+            return null;
+        }
+
+        return aggregatesByDay[index].copy();
+    }
+
+    /**
+     * The daily aggregates of the aggregator themselves, not copies, so they change when more instructions are added: only
+     * for an aggregator which isn't added to anymore, or while the additions are excluded, otherwise see {@link #snapshot()}
+     *
+     * @return the daily aggregates in chronological order
+     */
+    public List<DailyAggregate> getDailyAggregates() {
+
+        List<DailyAggregate> dailyAggregates = Lists.newArrayList();
+
+        for (DailyAggregate dailyAggregate : aggregatesByDay) {
+            if (dailyAggregate != null) {
+                dailyAggregates.add(dailyAggregate);
+            }
+        }
+
+        return dailyAggregates;
+    }
+
+    /**
+     * Takes a snapshot of the current state, which won't change when more instructions are added
+     *
+     * @return the daily aggregates in chronological order
+     */
+    public List<DailyAggregate> snapshot() {
+
+        List<DailyAggregate> snapshot = Lists.newArrayList();
+
+        for (DailyAggregate dailyAggregate : aggregatesByDay) {
+            if (dailyAggregate != null) {
+                snapshot.add(dailyAggregate.copy());
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Takes a snapshot of the current state, indexed for queries over ranges of settlement dates
+     *
+     * @return the {@link DailyAggregateIndex} of the snapshot
+     */
+    public DailyAggregateIndex index() {
+        return new DailyAggregateIndex(snapshot(), scale);
+    }
+
+    /**
+     * The columnar inputs only carry the value in USD, which was calculated with the fx of every instruction
+     */
+    private void checkOwnFx() {
+
+        if (fxRates != null) {
+            throw new IllegalStateException("The instructions can't be valued through an fx rate table, as only their value in USD is stored");
+        }
+    }
+
+    private DailyAggregate dailyAggregate(int settlementDay) {
+
+        int index = settlementDay - firstDay;
+
+        if (index < 0 || index >= aggregatesByDay.length) {
+            index = grow(settlementDay);
+        }
+
+        DailyAggregate dailyAggregate = aggregatesByDay[index];
+
+        if (dailyAggregate == null) {
+            dailyAggregate = new DailyAggregate(settlementDay, numericMode, scale, sketchCapacity, dictionary);
+            aggregatesByDay[index] = dailyAggregate;
+        }
+
+        return dailyAggregate;
+    }
+
+    /**
+     * Grows the array so it also covers the given day, doubling it to keep the number of copies low
+     *
+     * @return the index of the given day
+     */
+    private int grow(int settlementDay) {
+
+        if (aggregatesByDay.length == 0) {
+            aggregatesByDay = new DailyAggregate[INITIAL_DAYS];
+            firstDay = settlementDay - INITIAL_DAYS / 2;
+            return settlementDay - firstDay;
+        }
+
+        int lastDay = firstDay + aggregatesByDay.length - 1;
+        int length = aggregatesByDay.length;
+
+        while (settlementDay < lastDay - length + 1 || settlementDay > firstDay + length - 1) {
+            length *= 2;
+        }
+
+        //grow towards the day which is outside of the array
+        int newFirstDay = settlementDay < firstDay ? lastDay - length + 1 : firstDay;
+        DailyAggregate[] newAggregatesByDay = new DailyAggregate[length];
+        System.arraycopy(aggregatesByDay, 0, newAggregatesByDay, firstDay - newFirstDay, aggregatesByDay.length);
+
+        aggregatesByDay = newAggregatesByDay;
+        firstDay = newFirstDay;
+
+        return settlementDay - firstDay;
+    }
+}
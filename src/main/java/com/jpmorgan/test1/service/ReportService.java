@@ -1,14 +1,28 @@
 package com.jpmorgan.test1.service;
 
 import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.InstructionCsvParser;
+import com.jpmorgan.test1.io.InstructionFileReader;
+import com.jpmorgan.test1.metrics.Metrics;
+import com.jpmorgan.test1.metrics.Stage;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.CurrencyTotals;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EntityTotals;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.FxRateTable;
 import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.NumericMode;
 import com.jpmorgan.test1.model.Operation;
-import com.jpmorgan.test1.model.Ranking;
-import org.joda.time.DateTime;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Service used to generate the daily text incoming/outgoing report
@@ -18,9 +32,211 @@ import java.util.stream.Collectors;
 
 public class ReportService {
 
-    private static final String TOTAL_INCOMING = "Total incoming value: %f";
-    private static final String TOTAL_OUTGOING = "Total outgoing value: %f";
-    private static final String DAILY_RANK = "%s is rank %d (total %f)";
+    private static final String PROCESSING_DATE = "Processing date: ";
+    private static final String TOTAL_INCOMING = "Total incoming value: ";
+    private static final String TOTAL_OUTGOING = "Total outgoing value: ";
+    private static final String RANK = " is rank ";
+    private static final String RANK_TOTAL = " (total ";
+    private static final String APPROXIMATE = "Approximate rankings, entity totals overestimated by at most ";
+    private static final String TOTAL_INCOMING_IN = "Total incoming value in ";
+    private static final String TOTAL_OUTGOING_IN = "Total outgoing value in ";
+    private static final String INCOMING = "Incoming value";
+    private static final String OUTGOING = "Outgoing value";
+    private static final String IN = " in ";
+    private static final String BY_CURRENCY = " by currency: ";
+    private static final String CURRENCY_TOTAL = ": ";
+    private static final String CURRENCY_SEPARATOR = ", ";
+    private static final int DECIMALS = 6;
+
+    private static final int ALL_RANKINGS = Integer.MAX_VALUE;
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final NumericMode numericMode;
+    private final int scale;
+    private final int topK;
+    private final FxRateTable fxRates;
+    private final Metrics metrics;
+    private final int sketchCapacity;
+    private final boolean currencyBreakdown;
+    private final FxRateTable reportingRates;
+    private final List<Currency> reportingCurrencies;
+
+    public ReportService() {
+        this(new Builder());
+    }
+
+    /**
+     * @param numericMode
+     *          how the USD values are accumulated
+     * @param scale
+     *          the scale of the totals in {@link NumericMode#FIXED_POINT} mode
+     */
+    public ReportService(NumericMode numericMode, int scale) {
+        this(new Builder().withNumericMode(numericMode).withScale(scale));
+    }
+
+    public ReportService(Builder builder) {
+        this.numericMode = builder.numericMode;
+        this.scale = builder.scale;
+        this.topK = builder.topK;
+        this.fxRates = builder.fxRates;
+        this.metrics = builder.metrics;
+        this.sketchCapacity = builder.sketchCapacity;
+        this.currencyBreakdown = builder.currencyBreakdown;
+        this.reportingRates = builder.reportingRates;
+        this.reportingCurrencies = builder.reportingCurrencies;
+    }
+
+    /**
+     * Builder used to configure the way the report is generated
+     */
+    public static class Builder {
+
+        private NumericMode numericMode = NumericMode.BIG_DECIMAL;
+        private int scale = FixedPoint.DEFAULT_SCALE;
+        private int topK = ALL_RANKINGS;
+        private FxRateTable fxRates;
+        private Metrics metrics = Metrics.disabled();
+        private int sketchCapacity;
+        private boolean currencyBreakdown;
+        private FxRateTable reportingRates;
+        private List<Currency> reportingCurrencies = Lists.newArrayList();
+
+        public Builder withNumericMode(NumericMode numericMode) {
+            this.numericMode = numericMode;
+            return this;
+        }
+
+        public Builder withScale(int scale) {
+            this.scale = scale;
+            return this;
+        }
+
+        /**
+         * Only the best topK entities of every day and operation are ranked in the report, the totals stay exact
+         */
+        public Builder withTopK(int topK) {
+
+            if (topK < 0) {
+                throw new IllegalArgumentException("topK can't be negative");
+            }
+
+            this.topK = topK;
+            return this;
+        }
+
+        /**
+         * The {@link Instruction}s are valued at the rates of the table instead of their own fx, so the aggregates can be
+         * revalued when the rates are corrected. The columnar inputs only store the value in USD, so they keep their own fx.
+         */
+        public Builder withFxRateTable(FxRateTable fxRates) {
+            this.fxRates = fxRates;
+            return this;
+        }
+
+        /**
+         * The metrics timing the aggregation, the ranking and the formatting, and counting the instructions
+         */
+        public Builder withMetrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * The per entity totals of every day and operation are kept in a sketch of the given number of counters instead
+         * of exactly, so the memory doesn't grow with the number of entities. The totals stay exact, the rankings are
+         * the ones of the heavy hitters, and every total is followed by the bound of the overestimation of the entity
+         * totals of that day. It can't be combined with an fx rate table, and the parallel report stays exact.
+         */
+        public Builder withApproximateRanking(int counters) {
+
+            if (counters < 1) {
+                throw new IllegalArgumentException("The sketch must have at least one counter");
+            }
+
+            this.sketchCapacity = counters;
+            return this;
+        }
+
+        /**
+         * Every total is followed by the totals of the instructions of every {@link Currency}, in USD, which are filled
+         * in the same pass as the entity totals
+         */
+        public Builder withCurrencyBreakdown() {
+            this.currencyBreakdown = true;
+            return this;
+        }
+
+        /**
+         * Every total, and its breakdown per currency if requested, is also converted into each of the given reporting
+         * currencies, at their USD rate of the settlement date in the table. All the views are rendered from the same
+         * aggregates, so adding a reporting currency only costs a division per total.
+         *
+         * @param rates
+         *          the table with the USD rates of the reporting currencies, e.g. 1.14 for EUR
+         * @param currencies
+         *          the reporting currencies, in the order of the report
+         */
+        public Builder withReportingCurrencies(FxRateTable rates, Currency... currencies) {
+
+            if (rates == null || currencies.length == 0) {
+                throw new IllegalArgumentException("The reporting currencies need a rate table and at least one currency");
+            }
+
+            this.reportingRates = rates;
+            this.reportingCurrencies = Lists.newArrayList(Arrays.asList(currencies));
+            return this;
+        }
+
+        public ReportService build() {
+
+            if (fxRates != null && sketchCapacity > 0) {
+                throw new IllegalArgumentException("The approximate rankings can't be combined with an fx rate table");
+            }
+
+            return new ReportService(this);
+        }
+    }
+
+    public NumericMode getNumericMode() {
+        return numericMode;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the {@link FxRateTable} the instructions are valued with, or null if they are valued with their own fx
+     */
+    public FxRateTable getFxRateTable() {
+        return fxRates;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of counters of the sketches of the per entity totals, or 0 if they are exact
+     */
+    public int getSketchCapacity() {
+        return sketchCapacity;
+    }
+
+    /**
+     * @return true if every total is broken down per currency
+     */
+    public boolean isCurrencyBreakdown() {
+        return currencyBreakdown;
+    }
+
+    /**
+     * @return the currencies the totals are also converted into, empty if they are only reported in USD
+     */
+    public List<Currency> getReportingCurrencies() {
+        return reportingCurrencies;
+    }
 
     /**
      * For a given list of {@link com.jpmorgan.test1.model.Instruction}s it generates the report per days
@@ -32,116 +248,306 @@ public class ReportService {
      */
     public List<String> generateReport(List<Instruction> instructions) {
 
-        List<String> report = Lists.newArrayList();
+        ReportAggregator aggregator = new ReportAggregator(numericMode, scale, fxRates, metrics, sketchCapacity);
+        aggregator.addAll(instructions);
 
-        //partition the instructions based on their settlementDate
-        Map<DateTime, List<Instruction>> instructionsBySettlementDate = instructions.stream().collect(Collectors.groupingBy(Instruction::getSettlementDate));
-        //sort the partition keys so the report would be in chronological order
-        SortedSet<DateTime> keys = new TreeSet<>(instructionsBySettlementDate.keySet());
+        return generateReport(aggregator);
+    }
 
-        for (DateTime key : keys) {
-            report.add("Processing date: " + key.toString("YYYY-MM-dd"));
-            List<Instruction> dailyInstructions = instructionsBySettlementDate.get(key);
+    /**
+     * Generates the report per days straight from a columnar {@link com.jpmorgan.test1.model.InstructionBatch},
+     * without materializing {@link com.jpmorgan.test1.model.Instruction} objects
+     *
+     * @param batch
+     *      the batch of instructions for which the report has to be generated
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateReport(InstructionBatch batch) {
 
-            report.addAll(generateDailyReport(dailyInstructions));
-        }
+        //the ids of the batch are added as they are
+        ReportAggregator aggregator = new ReportAggregator(numericMode, scale, null, metrics, sketchCapacity, batch.getDictionary());
+        aggregator.addAll(batch);
 
-        return report;
+        return generateReport(aggregator);
     }
 
     /**
-     * For a list of reports it calculates the total incoming and outgoing values, as well as ranking each entity based on its total value
+     * Generates the report per days straight from a memory-mapped binary instruction file
+     *
+     * @param reader
+     *      the reader of the file for which the report has to be generated
      *
-     * @param dailyInstructions
-     *          the list containing the instructions on which the report will be generated
+     * @return the report as a list of strings
      */
-    private List<String> generateDailyReport(List<Instruction> dailyInstructions) {
+    public List<String> generateReport(InstructionFileReader reader) throws IOException {
 
-        BigDecimal incomingValue = BigDecimal.ZERO;
-        BigDecimal outgoingValue = BigDecimal.ZERO;
-        Map<String, Ranking> incomingRanking = new HashMap<>();
-        Map<String, Ranking> outgoingRanking = new HashMap<>();
+        ReportAggregator aggregator = new ReportAggregator(numericMode, scale, null, metrics, sketchCapacity);
+        aggregator.addAll(reader);
 
-        for (Instruction ins : dailyInstructions) {
+        return generateReport(aggregator);
+    }
 
-            if (ins.getOperation() == Operation.BUY) {
-                incomingValue = processInstruction(ins, incomingRanking, incomingValue);
-            }
+    /**
+     * Generates the report per days for delimited text instructions, parsing them on a separate thread while they are aggregated
+     *
+     * @param parser
+     *      the parser of the text instructions
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateReport(InstructionCsvParser parser) throws IOException, InterruptedException {
 
-            if (ins.getOperation() == Operation.SELL) {
-                outgoingValue = processInstruction(ins, outgoingRanking, outgoingValue);
-            }
+        ReportAggregator aggregator = new ReportAggregator(numericMode, scale, null, metrics, sketchCapacity);
+        new IngestionPipeline(scale).run(parser, aggregator);
+
+        return generateReport(aggregator);
+    }
+
+    /**
+     * Generates the report per days for the current state of the given {@link ReportAggregator}, straight from its daily
+     * aggregates, so no instructions may be added to it meanwhile. More instructions can be added to the aggregator
+     * afterwards and the report generated again.
+     *
+     * @param aggregator
+     *      the aggregator holding the per settlement date totals
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateReport(ReportAggregator aggregator) {
+
+        return generateDailyReports(aggregator.getDailyAggregates());
+    }
+
+    /**
+     * Same as {@link #generateReport(List)}, but the instructions are aggregated in parallel, partitioned by settlement date and entity.
+     * The report is identical to the sequential one.
+     *
+     * @param instructions
+     *      the list of instructions for which the report has to be generated
+     * @param pool
+     *      the pool running the aggregation
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateParallelReport(List<Instruction> instructions, ForkJoinPool pool) {
+
+        ParallelReportAggregator aggregator = new ParallelReportAggregator(pool, numericMode, scale, fxRates, ParallelReportAggregator.DEFAULT_SPLIT_THRESHOLD);
+
+        return generateDailyReports(aggregator.aggregate(instructions));
+    }
+
+    /**
+     * Writes the report for the given list of {@link com.jpmorgan.test1.model.Instruction}s straight to the given sink,
+     * one line at a time, without building the lines as strings. The lines are the same as the ones of
+     * {@link #generateReport(List)}, each one followed by a new line character.
+     *
+     * @param instructions
+     *      the list of instructions for which the report has to be generated
+     * @param out
+     *      where the report is written, e.g. a {@link java.io.Writer} or a {@link com.jpmorgan.test1.io.ChannelAppendable}
+     */
+    public void writeReport(List<Instruction> instructions, Appendable out) throws IOException {
+
+        ReportAggregator aggregator = new ReportAggregator(numericMode, scale, fxRates, metrics, sketchCapacity);
+        aggregator.addAll(instructions);
+
+        writeReport(aggregator, out);
+    }
+
+    /**
+     * Writes the report for the current state of the given {@link ReportAggregator} straight to the given sink, from its
+     * daily aggregates, so no instructions may be added to it meanwhile
+     *
+     * @param aggregator
+     *      the aggregator holding the per settlement date totals
+     * @param out
+     *      where the report is written
+     */
+    public void writeReport(ReportAggregator aggregator, Appendable out) throws IOException {
+
+        writeDailyReports(aggregator.getDailyAggregates(), out);
+    }
+
+    /**
+     * Formats the report for the given daily aggregates, e.g. a {@link ReportAggregator#snapshot()}
+     *
+     * @param dailyAggregates
+     *      the daily aggregates in chronological order
+     *
+     * @return the report as a list of strings
+     */
+    public List<String> generateDailyReports(List<DailyAggregate> dailyAggregates) {
+
+        LineCollector report = new LineCollector();
+
+        try {
+            writeDailyReports(dailyAggregates, report);
+        } catch (IOException e) {
+            //the collector doesn't throw
+            throw new IllegalStateException(e);
         }
 
-        //extract and sort in descending order based on totalValue for each Instruction entity
-        List<Ranking> orderedIncoming = incomingRanking.values().stream().sorted(Collections.reverseOrder()).collect(Collectors.toList());
-        List<Ranking> orderedOutgoing = outgoingRanking.values().stream().sorted(Collections.reverseOrder()).collect(Collectors.toList());
+        return report.lines;
+    }
+
+    /**
+     * Writes the report for the given daily aggregates straight to the given sink
+     *
+     * @param dailyAggregates
+     *      the daily aggregates in chronological order
+     * @param out
+     *      where the report is written
+     */
+    public void writeDailyReports(List<DailyAggregate> dailyAggregates, Appendable out) throws IOException {
+
+        for (DailyAggregate dailyAggregate : dailyAggregates) {
+            out.append(PROCESSING_DATE).append(EpochDays.format(dailyAggregate.getSettlementDay())).append('\n');
 
-        List<String> report = Lists.newArrayList();
+            writeDailyReport(dailyAggregate, out);
+        }
+    }
 
-        report.addAll(formatReport(incomingValue, orderedIncoming, Operation.BUY));
-        report.addAll(formatReport(outgoingValue, orderedOutgoing, Operation.SELL));
+    /**
+     * For a daily aggregate it writes the total incoming and outgoing values, as well as the ranking of each entity (or of the topK entities) based on its total value
+     *
+     * @param dailyAggregate
+     *          the aggregate containing the totals on which the report will be generated
+     * @param out
+     *          where the report is written
+     */
+    private void writeDailyReport(DailyAggregate dailyAggregate, Appendable out) throws IOException {
 
-        return report;
+        writeReport(dailyAggregate, Operation.BUY, out);
+        writeReport(dailyAggregate, Operation.SELL, out);
     }
 
     /**
-     * Prints at the console the total daily value and the rankings for that day
-     * @param value
-     *          the total daily value
-     * @param rankings
-     *          the ordered rankings list
+     * Writes the total daily value and the rankings for that day
+     *
+     * @param dailyAggregate
+     *          the aggregate containing the totals
      * @param operation
      *          the type of {@link com.jpmorgan.test1.model.Operation}
+     * @param out
+     *          where the report is written
      */
-    private List<String> formatReport(BigDecimal value, List<Ranking> rankings, Operation operation) {
+    private void writeReport(DailyAggregate dailyAggregate, Operation operation, Appendable out) throws IOException {
+
+        EntityTotals totals = dailyAggregate.getTotalsByEntity(operation);
+        long startTime = metrics.start();
+        int[] rankedSlots = dailyAggregate.getRankedSlots(operation, topK);
 
-        List<String> report = Lists.newArrayList();
+        startTime = metrics.stop(Stage.RANKING, startTime);
 
-        switch (operation) {
-            case BUY:
-                report.add(String.format(TOTAL_INCOMING, value.doubleValue()));
-                break;
+        out.append(operation == Operation.BUY ? TOTAL_INCOMING : TOTAL_OUTGOING);
+        dailyAggregate.getTotal(operation).appendTo(out, DECIMALS);
+        out.append('\n');
 
-            case SELL:
-                report.add(String.format(TOTAL_OUTGOING, value.doubleValue()));
-                break;
+        writeCurrencyViews(dailyAggregate, operation, out);
+
+        if (dailyAggregate.isApproximate()) {
+            out.append(APPROXIMATE);
+            FixedPoint.append(out, dailyAggregate.getErrorBound(operation), DECIMALS);
+            out.append('\n');
         }
 
-        for (int rank = 0; rank < rankings.size(); rank ++) {
+        for (int rank = 0; rank < rankedSlots.length; rank++) {
 
-            report.add(String.format(DAILY_RANK, rankings.get(rank).getEntity(), rank+1, rankings.get(rank).getTotalValue().doubleValue()));
+            out.append(String.valueOf(totals.getEntity(rankedSlots[rank]))).append(RANK);
+            //an integer is a fixed-point value with scale 0
+            FixedPoint.append(out, rank + 1, 0, 0);
+            out.append(RANK_TOTAL);
+            totals.appendTotal(rankedSlots[rank], out, DECIMALS);
+            out.append(')').append('\n');
         }
 
-        return report;
+        metrics.stop(Stage.FORMATTING, startTime);
+        metrics.recordEntities(totals.size());
     }
 
     /**
-     * Processes the given Instructions, adding it's valueIsUSD to the totalValue, as well as inserting (or updating) the rankingMap
-     *
-     * @param instruction
-     *          the {@link com.jpmorgan.test1.model.Instruction} to be processed
-     * @param rankingMap
-     *          the map containing the {@link Ranking} objects calculated based on the previously processed Instructions
-     * @param totalValue
-     *          the current totalValue
-     *
-     * @return the new totalValue
+     * Writes the breakdown per currency of the total, and the total and its breakdown in every reporting currency
      */
-    private BigDecimal processInstruction(Instruction instruction, Map<String, Ranking> rankingMap, BigDecimal totalValue) {
+    private void writeCurrencyViews(DailyAggregate dailyAggregate, Operation operation, Appendable out) throws IOException {
+
+        CurrencyTotals currencyTotals = dailyAggregate.getCurrencyTotals();
+        String operationValue = operation == Operation.BUY ? INCOMING : OUTGOING;
 
-        BigDecimal currentValue = BigDecimal.ZERO;
+        if (currencyBreakdown) {
+            out.append(operationValue).append(BY_CURRENCY);
 
-        //this is used in case in the same day we have more than 1 instruction for the same entity (e.g. we have 2 BUY operations for FOO entity)
-        if (rankingMap.containsKey(instruction.getEntity())) {
-            currentValue = rankingMap.get(instruction.getEntity()).getTotalValue();
+            for (Currency currency : CURRENCIES) {
+                out.append(currency == CURRENCIES[0] ? "" : CURRENCY_SEPARATOR).append(currency.name()).append(' ');
+                currencyTotals.appendTotal(currency, operation, out, DECIMALS);
+            }
+
+            out.append('\n');
         }
 
-        //put or update the rankingMap with the new Ranking
-        rankingMap.put(instruction.getEntity(), new Ranking(instruction.getEntity(), instruction.getValueInUSD().add(currentValue)));
+        for (Currency reportingCurrency : reportingCurrencies) {
+
+            BigDecimal rate = reportingRates.getRate(reportingCurrency, dailyAggregate.getSettlementDay());
+
+            out.append(operation == Operation.BUY ? TOTAL_INCOMING_IN : TOTAL_OUTGOING_IN).append(reportingCurrency.name()).append(CURRENCY_TOTAL);
+            FixedPoint.append(out, convert(dailyAggregate.getTotal(operation).getValue(), rate), DECIMALS);
+            out.append('\n');
+
+            if (currencyBreakdown) {
+                out.append(operationValue).append(IN).append(reportingCurrency.name()).append(BY_CURRENCY);
+
+                for (Currency currency : CURRENCIES) {
+                    out.append(currency == CURRENCIES[0] ? "" : CURRENCY_SEPARATOR).append(currency.name()).append(' ');
+                    FixedPoint.append(out, convert(currencyTotals.getTotal(currency, operation), rate), DECIMALS);
+                }
+
+                out.append('\n');
+            }
+        }
+    }
 
-        //return the newTotalValue
-        return totalValue.add(instruction.getValueInUSD());
+    /**
+     * Converts a USD value into the currency whose USD rate is given, rounded half up to the decimals of the report like the USD totals
+     */
+    private static BigDecimal convert(BigDecimal valueInUSD, BigDecimal rate) {
+        return valueInUSD.divide(rate, DECIMALS, RoundingMode.HALF_UP);
     }
 
+    /**
+     * Collects the appended characters as a list of lines, for the {@link List} based API
+     */
+    private static class LineCollector implements Appendable {
+
+        private final List<String> lines = Lists.newArrayList();
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public Appendable append(CharSequence sequence) {
+
+            return append(sequence, 0, sequence.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence sequence, int start, int end) {
+
+            for (int i = start; i < end; i++) {
+                append(sequence.charAt(i));
+            }
+
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+
+            if (c == '\n') {
+                lines.add(line.toString());
+                line.setLength(0);
+            } else {
+                line.append(c);
+            }
+
+            return this;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.io.ReportPartial;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Coordinator of the sharded report: merges the {@link ReportPartial}s of all the {@link ShardWorker}s into the full
+ * report. As every entity is aggregated by a single worker, the merged totals and rankings, and so the report, are
+ * exactly the ones of a single node.
+ * The partials are either dropped in a directory or sent to a socket the coordinator listens on; each partition must
+ * be received exactly once.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ShardCoordinator {
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final ReportService reportService;
+    private final int partitionCount;
+    private final ReportAggregator aggregator;
+    private final BitSet received = new BitSet();
+
+    /**
+     * @param reportService
+     *          the service defining how the values are accumulated and how the report is formatted, the same as the workers'
+     * @param partitionCount
+     *          the number of workers
+     */
+    public ShardCoordinator(ReportService reportService, int partitionCount) {
+
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("There must be at least one partition");
+        }
+
+        this.reportService = reportService;
+        this.partitionCount = partitionCount;
+        this.aggregator = new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), null, reportService.getMetrics());
+    }
+
+    /**
+     * Merges the partial of a worker
+     *
+     * @throws IllegalArgumentException if the partial is of another partitioning or its partition was already received
+     */
+    public synchronized void accept(ReportPartial partial) {
+
+        if (partial.getPartitionCount() != partitionCount) {
+            throw new IllegalArgumentException("The partial is one of " + partial.getPartitionCount() + " partitions instead of " + partitionCount);
+        }
+
+        if (received.get(partial.getPartition())) {
+            throw new IllegalArgumentException("The partial of partition " + partial.getPartition() + " was already received");
+        }
+
+        partial.getDailyAggregates().forEach(aggregator::merge);
+        received.set(partial.getPartition());
+    }
+
+    /**
+     * @return true once the partials of all the partitions were received
+     */
+    public synchronized boolean isComplete() {
+        return received.cardinality() == partitionCount;
+    }
+
+    /**
+     * Polls the drop directory until the partials of all the partitions are there, and merges them
+     *
+     * @param directory
+     *          where the workers drop their partials with {@link ShardWorker#writeTo(Path)}
+     * @param timeoutMillis
+     *          how long to wait for all the partials
+     *
+     * @throws IOException if a partial can't be read, or if not all of them were dropped in time
+     */
+    public void collect(Path directory, long timeoutMillis) throws IOException, InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        while (!isComplete()) {
+
+            for (int partition = 0; partition < partitionCount; partition++) {
+
+                Path path = directory.resolve(ReportPartial.fileName(partition));
+
+                if (!isReceived(partition) && Files.exists(path)) {
+                    accept(ReportPartial.read(path, reportService.getNumericMode(), reportService.getScale(), aggregator.getDictionary()));
+                }
+            }
+
+            if (isComplete()) {
+                return;
+            }
+
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IOException("Timed out waiting for the partials of partitions " + missing());
+            }
+
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Accepts the connections of the workers until the partials of all the partitions are received, and merges them
+     *
+     * @param server
+     *          the socket the workers send their partials to with {@link ShardWorker#sendTo(java.net.InetSocketAddress)}
+     * @param timeoutMillis
+     *          how long to wait for all the partials
+     *
+     * @throws IOException if a partial can't be read, or if not all of them were sent in time
+     */
+    public void collect(ServerSocket server, long timeoutMillis) throws IOException {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        while (!isComplete()) {
+
+            int remaining = (int) Math.min(Integer.MAX_VALUE, deadline - System.currentTimeMillis());
+
+            if (remaining <= 0) {
+                throw new IOException("Timed out waiting for the partials of partitions " + missing());
+            }
+
+            server.setSoTimeout(remaining);
+
+            try (Socket socket = server.accept();
+                 InputStream in = socket.getInputStream()) {
+
+                socket.setSoTimeout(remaining);
+                accept(ReportPartial.read(in, reportService.getNumericMode(), reportService.getScale(), aggregator.getDictionary()));
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Timed out waiting for the partials of partitions " + missing(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the report of all the partitions, the same as the one of a single node
+     *
+     * @throws IllegalStateException if not all the partials were received
+     */
+    public List<String> generateReport() {
+
+        checkComplete();
+
+        return reportService.generateReport(aggregator);
+    }
+
+    /**
+     * Writes the report of all the partitions straight to the given sink
+     *
+     * @throws IllegalStateException if not all the partials were received
+     */
+    public void writeReport(Appendable out) throws IOException {
+
+        checkComplete();
+
+        reportService.writeReport(aggregator, out);
+    }
+
+    private synchronized boolean isReceived(int partition) {
+        return received.get(partition);
+    }
+
+    private synchronized BitSet missing() {
+
+        BitSet missing = new BitSet();
+        missing.set(0, partitionCount);
+        missing.andNot(received);
+
+        return missing;
+    }
+
+    private void checkComplete() {
+
+        if (!isComplete()) {
+            throw new IllegalStateException("Missing the partials of partitions " + missing());
+        }
+    }
+}
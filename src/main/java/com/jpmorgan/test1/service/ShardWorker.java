@@ -0,0 +1,173 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.io.InstructionCsvParser;
+import com.jpmorgan.test1.io.ReportPartial;
+import com.jpmorgan.test1.model.EntityDictionary;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Worker node of the sharded report: aggregates only the instructions whose entity belongs to its partition, and hands
+ * the result to the {@link ShardCoordinator} as a {@link ReportPartial}, through a drop directory or a socket.
+ * The entities are partitioned on the hash of their name, which is the same in every JVM, so all the workers can read
+ * the same input and each one keeps its own share of it. Only the entities of its own partition are interned in the
+ * dictionary of the worker: the others are filtered on their name, without being kept.
+ *
+ * @author Vlad Constantinescu
+ */
+public class ShardWorker {
+
+    private final ReportService reportService;
+    private final int partition;
+    private final int partitionCount;
+    private final ReportAggregator aggregator;
+    private InstructionBatch ownBatch;
+
+    /**
+     * @param reportService
+     *          the service defining how the values are accumulated
+     * @param partition
+     *          the partition of this worker, between 0 and partitionCount - 1
+     * @param partitionCount
+     *          the number of workers
+     */
+    public ShardWorker(ReportService reportService, int partition, int partitionCount) {
+
+        if (partition < 0 || partition >= partitionCount) {
+            throw new IllegalArgumentException("Partition " + partition + " is not between 0 and " + (partitionCount - 1));
+        }
+
+        this.reportService = reportService;
+        this.partition = partition;
+        this.partitionCount = partitionCount;
+        this.aggregator = new ReportAggregator(reportService.getNumericMode(), reportService.getScale(), reportService.getFxRateTable(),
+                reportService.getMetrics());
+    }
+
+    /**
+     * @return the partition of the entity, the same in every JVM
+     */
+    public static int partitionOf(String entity, int partitionCount) {
+
+        if (entity == null) {
+            return 0;
+        }
+
+        //String.hashCode is specified, so it doesn't depend on the JVM
+        int hash = entity.hashCode();
+
+        return Math.floorMod(hash ^ (hash >>> 16), partitionCount);
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * Adds the instruction if its entity belongs to this partition
+     *
+     * @return true if the instruction was added
+     */
+    public boolean add(Instruction instruction) {
+
+        if (partitionOf(instruction.getEntity(), partitionCount) != partition) {
+            return false;
+        }
+
+        aggregator.add(instruction);
+        return true;
+    }
+
+    /**
+     * Adds the instructions whose entity belongs to this partition
+     */
+    public void addAll(List<Instruction> instructions) {
+
+        for (Instruction instruction : instructions) {
+            add(instruction);
+        }
+    }
+
+    /**
+     * Adds the instructions of the batch whose entity belongs to this partition, valued with their own fx
+     */
+    public void addAll(InstructionBatch batch) {
+
+        EntityDictionary dictionary = aggregator.getDictionary();
+
+        if (ownBatch == null || ownBatch.capacity() < batch.size() || ownBatch.getScale() != batch.getScale()) {
+            ownBatch = InstructionBatch.allocate(batch.capacity(), batch.getScale(), dictionary);
+        }
+
+        ownBatch.clear();
+
+        for (int i = 0; i < batch.size(); i++) {
+
+            if (partitionOf(batch.getEntity(i), partitionCount) == partition) {
+
+                long unscaledValue = batch.getUnscaledValueInUSD(i);
+
+                ownBatch.append(dictionary.intern(batch.getEntityId(i), batch.getDictionary()), batch.getOperation(i), batch.getCurrency(i), batch.getSettlementDay(i), unscaledValue,
+                        unscaledValue == FixedPoint.OVERFLOW ? batch.getValueInUSD(i) : null);
+            }
+        }
+
+        aggregator.addAll(ownBatch);
+    }
+
+    /**
+     * Parses all the delimited text instructions of the parser, keeping the ones of this partition
+     */
+    public void addAll(InstructionCsvParser parser) throws IOException {
+
+        //the entities of the other partitions are only kept while their batch is filtered
+        InstructionBatch batch = InstructionBatch.allocate(IngestionRuntime.DEFAULT_BATCH_SIZE, reportService.getScale());
+        boolean more;
+
+        do {
+            batch.clear();
+            batch.getDictionary().clear();
+            more = parser.fill(batch);
+            addAll(batch);
+        } while (more);
+    }
+
+    /**
+     * @return the partial of the instructions added so far
+     */
+    public ReportPartial toPartial() {
+        return new ReportPartial(partition, partitionCount, aggregator.snapshot());
+    }
+
+    /**
+     * Drops the partial in the directory polled by the coordinator
+     *
+     * @return the written file
+     */
+    public Path writeTo(Path directory) throws IOException {
+        return toPartial().writeTo(directory, reportService.getScale());
+    }
+
+    /**
+     * Sends the partial to the coordinator listening on the given address
+     */
+    public void sendTo(InetSocketAddress address) throws IOException {
+
+        try (Socket socket = new Socket()) {
+
+            socket.connect(address);
+
+            OutputStream out = socket.getOutputStream();
+            toPartial().write(out, reportService.getScale());
+            socket.shutdownOutput();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.jpmorgan.test1.helper;
 
+import com.google.common.collect.Lists;
 import com.jpmorgan.test1.model.Currency;
 import com.jpmorgan.test1.model.Instruction;
 import com.jpmorgan.test1.model.Operation;
 import org.joda.time.DateTime;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 /**
  * @author Vlad Constantinescu
@@ -47,4 +52,92 @@ public class InstructionHelper {
                 .withUnits(units)
                 .build();
     }
+
+    /**
+     * Seeded generator of random instructions, so a test sees the same instructions on every run. The entity, the
+     * operation, the currency and the instruction date are drawn uniformly, the fx, the price and the units as configured.
+     */
+    public static class RandomInstructions {
+
+        private final Random random;
+        private int entityCount = 50;
+        //0 if every instruction has an entity
+        private int nullEntityOneIn;
+        private Currency[] currencies = {Currency.USD};
+        private DateTime firstDate = new DateTime(2018, 6, 1, 0, 0);
+        private int days = 1;
+        private Function<Random, BigDecimal> fx = random -> BigDecimal.ONE;
+        private Function<Random, BigDecimal> price = random -> BigDecimal.valueOf(random.nextInt(10_000), 2);
+        private ToLongFunction<Random> units = random -> 1 + random.nextInt(100);
+
+        public RandomInstructions(long seed) {
+            this.random = new Random(seed);
+        }
+
+        /**
+         * The entities are named E0 to E(entityCount - 1)
+         */
+        public RandomInstructions withEntities(int entityCount) {
+            this.entityCount = entityCount;
+            return this;
+        }
+
+        /**
+         * On average one instruction in the given number has a null entity
+         */
+        public RandomInstructions withNullEntities(int oneIn) {
+            this.nullEntityOneIn = oneIn;
+            return this;
+        }
+
+        public RandomInstructions withCurrencies(Currency... currencies) {
+            this.currencies = currencies;
+            return this;
+        }
+
+        /**
+         * The instruction dates are between firstDate and firstDate + days - 1
+         */
+        public RandomInstructions withDates(DateTime firstDate, int days) {
+            this.firstDate = firstDate;
+            this.days = days;
+            return this;
+        }
+
+        public RandomInstructions withFx(Function<Random, BigDecimal> fx) {
+            this.fx = fx;
+            return this;
+        }
+
+        public RandomInstructions withPrice(Function<Random, BigDecimal> price) {
+            this.price = price;
+            return this;
+        }
+
+        public RandomInstructions withUnits(ToLongFunction<Random> units) {
+            this.units = units;
+            return this;
+        }
+
+        public Instruction next() {
+
+            String entity = nullEntityOneIn > 0 && random.nextInt(nullEntityOneIn) == 0 ? null : "E" + random.nextInt(entityCount);
+            Operation operation = random.nextBoolean() ? Operation.BUY : Operation.SELL;
+            Currency currency = currencies[random.nextInt(currencies.length)];
+            DateTime instructionDate = firstDate.plusDays(random.nextInt(days));
+
+            return generateInstruction(entity, operation, currency, instructionDate, fx.apply(random), price.apply(random), units.applyAsLong(random));
+        }
+
+        public List<Instruction> next(int count) {
+
+            List<Instruction> instructions = Lists.newArrayListWithCapacity(count);
+
+            for (int i = 0; i < count; i++) {
+                instructions.add(next());
+            }
+
+            return instructions;
+        }
+    }
 }
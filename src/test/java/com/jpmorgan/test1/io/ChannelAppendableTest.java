@@ -0,0 +1,53 @@
+package com.jpmorgan.test1.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.io.ChannelAppendable}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ChannelAppendableTest {
+
+    @Test
+    public void givenTextLongerThanBufferWhenAppendThenWrittenAsUtf8() throws IOException {
+
+        //setup
+        String text = "Processing date: 2018-06-24\nZ\u00fcrich \u20ac \ud83d\udcb0 is rank 1 (total 0.500000)\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        //execute
+        try (ChannelAppendable out = new ChannelAppendable(Channels.newChannel(bytes), ByteBuffer.allocate(8))) {
+            out.append(text, 0, 10).append(text.substring(10));
+        }
+
+        //verify
+        assertEquals(text, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void givenUnpairedSurrogatesWhenAppendThenReplacedAsJdkEncoder() throws IOException {
+
+        //setup
+        //a high surrogate before a letter, before another high surrogate, a lone low surrogate, and a high one at the end
+        String text = "a\ud83db\ud83d\ud83d\udcb0c\udcb0d\ud83d";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        //execute
+        try (ChannelAppendable out = new ChannelAppendable(Channels.newChannel(bytes), ByteBuffer.allocate(4))) {
+            out.append(text);
+        }
+
+        //verify
+        assertEquals("a?b?\ud83d\udcb0c?d?", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,248 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.metrics.Metrics;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.service.IngestionPipeline;
+import com.jpmorgan.test1.service.ReportAggregator;
+import com.jpmorgan.test1.service.ReportService;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.io.InstructionCsvParser}
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionCsvParserTest {
+
+    private static final String CSV = "entity,operation,fx,currency,instructionDate,settlementDate,units,price\r\n"
+            + "foo,BUY,0.5,SGP,2016-01-02,2016-01-04,200,100.25\r\n"
+            + "bar,SELL,0.22,AED,2016-01-05,2016-01-05,450,150.5\n"
+            + "\n"
+            + "foo,BUY,0.5,SGP,2016-01-02,2016-01-04,100,100.25\n"
+            + "boo,BUY,0.5,SGP,2016-01-03,2016-01-04,15,100.25";
+
+    @Test
+    public void givenCsvWhenFillThenBatchCorrect() throws IOException {
+
+        //setup
+        InstructionCsvParser parser = new InstructionCsvParser(channel(CSV), ',', true, 80);
+        InstructionBatch batch = InstructionBatch.allocate(10, 4);
+
+        //execute
+        boolean more = parser.fill(batch);
+
+        //verify
+        assertFalse(more);
+        assertEquals(4, batch.size());
+        assertEquals("foo", batch.getEntity(0));
+        assertEquals(Operation.BUY, batch.getOperation(0));
+        assertEquals(Currency.SGP, batch.getCurrency(0));
+        //Saturday settles on Monday
+        assertEquals(EpochDays.toEpochDay(new DateTime("2016-01-04")), batch.getSettlementDay(0));
+        assertEquals(100250000L, batch.getUnscaledValueInUSD(0));
+        assertEquals("bar", batch.getEntity(1));
+        assertEquals(Operation.SELL, batch.getOperation(1));
+        assertEquals(0, new BigDecimal("14899.5").compareTo(batch.getValueInUSD(1)));
+        assertEquals(batch.getEntityId(0), batch.getEntityId(2));
+        assertEquals("boo", batch.getEntity(3));
+    }
+
+    @Test
+    public void givenCsvWhenGenerateReportThenReportSameAsForInstructions() throws IOException, InterruptedException {
+
+        //setup
+        ReportService service = new ReportService();
+        List<Instruction> instructions = Lists.newArrayList(
+                generateInstruction("foo", Operation.BUY, Currency.SGP, new DateTime("2016-01-02"), new BigDecimal("0.5"), new BigDecimal("100.25"), 200),
+                generateInstruction("bar", Operation.SELL, Currency.AED, new DateTime("2016-01-05"), new BigDecimal("0.22"), new BigDecimal("150.5"), 450),
+                generateInstruction("foo", Operation.BUY, Currency.SGP, new DateTime("2016-01-02"), new BigDecimal("0.5"), new BigDecimal("100.25"), 100),
+                generateInstruction("boo", Operation.BUY, Currency.SGP, new DateTime("2016-01-03"), new BigDecimal("0.5"), new BigDecimal("100.25"), 15));
+
+        //execute
+        List<String> report = service.generateReport(new InstructionCsvParser(channel(CSV), ',', true));
+
+        //verify
+        assertEquals(service.generateReport(instructions), report);
+    }
+
+    @Test
+    public void givenManyLinesWhenRunPipelineWithSmallBatchesThenAllAggregated() throws IOException, InterruptedException {
+
+        //setup
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            csv.append("E").append(i % 7).append("|SELL|1|USD|2018-06-22|2018-06-22|").append(i).append("|0.01\n");
+        }
+        ReportAggregator aggregator = new ReportAggregator();
+
+        //execute
+        new IngestionPipeline(16, 2, FixedPoint.DEFAULT_SCALE).run(new InstructionCsvParser(channel(csv.toString()), '|', false, 128), aggregator);
+
+        //verify
+        // 0.01 * (0 + 1 + ... + 999)
+        assertEquals(0, new BigDecimal("4995").compareTo(aggregator.snapshot().get(0).getOutgoingValue()));
+        assertEquals(7, aggregator.snapshot().get(0).getOutgoingRankings().size());
+    }
+
+    @Test
+    public void givenApproximateAggregatorWhenEntitiesGrowThenMemoryFlat() throws IOException, InterruptedException {
+
+        //setup
+        ReportAggregator aggregator = new ReportAggregator(NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE, null, Metrics.disabled(), 10);
+        int[] dictionarySizes = new int[2];
+        int[] trackedEntities = new int[2];
+        int entities = 100;
+
+        //execute
+        for (int round = 0; round < 2; round++, entities *= 100) {
+
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < entities; i++) {
+                csv.append("E").append(round).append('-').append(i).append("|SELL|1|USD|2018-06-22|2018-06-22|").append(1 + i % 13).append("|0.01\n");
+            }
+
+            new IngestionPipeline(64, 2, FixedPoint.DEFAULT_SCALE).run(new InstructionCsvParser(channel(csv.toString()), '|', false, 128), aggregator);
+
+            dictionarySizes[round] = aggregator.getDictionary().size();
+            trackedEntities[round] = aggregator.snapshot().get(0).getOutgoingRankings().size();
+        }
+
+        //verify
+        //nothing is kept per entity, whether there are 100 or 10,000 of them
+        assertEquals(0, dictionarySizes[0]);
+        assertEquals(0, dictionarySizes[1]);
+        assertEquals(10, trackedEntities[0]);
+        assertEquals(10, trackedEntities[1]);
+    }
+
+    @Test
+    public void givenClearedDictionaryWhenFillThenEntitiesInternedAgain() throws IOException {
+
+        //setup
+        InstructionBatch batch = InstructionBatch.allocate(1, 4);
+        InstructionCsvParser parser = new InstructionCsvParser(channel("foo,BUY,0.5,SGP,2016-01-04,2016-01-04,200,100.25\n"
+                + "bar,BUY,0.5,SGP,2016-01-04,2016-01-04,200,100.25\n"
+                + "foo,BUY,0.5,SGP,2016-01-04,2016-01-04,200,100.25\n"), ',', false);
+        parser.fill(batch);
+        batch.clear();
+        batch.getDictionary().clear();
+        parser.fill(batch);
+        batch.clear();
+        batch.getDictionary().clear();
+
+        //execute
+        parser.fill(batch);
+
+        //verify
+        assertEquals("foo", batch.getEntity(0));
+        assertEquals(1, batch.getDictionary().size());
+    }
+
+    @Test
+    public void givenShortReadWhenFillAvailableThenPartlyFilledBatchReturned() throws IOException {
+
+        //setup
+        //every read returns a single chunk, as a socket returns what has arrived so far
+        Iterator<String> chunks = Lists.newArrayList("foo,BUY,0.5,SGP,2016-01-04,2016-01-04,200,100.25\nbar,BUY,0.5,SGP,",
+                "2016-01-04,2016-01-04,200,100.25\n").iterator();
+        ReadableByteChannel channel = new ReadableByteChannel() {
+
+            @Override
+            public int read(ByteBuffer buffer) {
+
+                if (!chunks.hasNext()) {
+                    return -1;
+                }
+
+                byte[] bytes = chunks.next().getBytes(StandardCharsets.UTF_8);
+                buffer.put(bytes);
+                return bytes.length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        InstructionCsvParser parser = new InstructionCsvParser(channel, ',', false, 256);
+        InstructionBatch batch = InstructionBatch.allocate(10, 4);
+
+        //execute
+        boolean more = parser.fillAvailable(batch);
+
+        //verify
+        assertTrue(more);
+        assertEquals(1, batch.size());
+        assertEquals("foo", batch.getEntity(0));
+        assertTrue(parser.awaitLine());
+        assertTrue(parser.fillAvailable(batch));
+        assertEquals(2, batch.size());
+        assertEquals("bar", batch.getEntity(1));
+        assertFalse(parser.awaitLine());
+    }
+
+    @Test(expected = IOException.class)
+    public void givenUnknownCurrencyWhenRunPipelineThenException() throws IOException, InterruptedException {
+
+        InstructionCsvParser parser = new InstructionCsvParser(channel("foo,BUY,0.5,XXX,2016-01-02,2016-01-04,200,100.25\n"), ',', false);
+
+        new IngestionPipeline(FixedPoint.DEFAULT_SCALE).run(parser, new ReportAggregator());
+    }
+
+    @Test
+    public void givenDayAfterEndOfMonthWhenFillThenException() throws IOException {
+
+        //setup
+        //2016 is a leap year, 2018 isn't
+        InstructionBatch batch = InstructionBatch.allocate(10, 4);
+        new InstructionCsvParser(channel("foo,BUY,0.5,SGP,2016-02-29,2016-02-29,200,100.25\n"), ',', false).fill(batch);
+
+        for (String date : new String[] {"2018-02-29", "2018-02-30", "2018-04-31"}) {
+
+            InstructionCsvParser parser = new InstructionCsvParser(channel("foo,BUY,0.5,SGP," + date + ",2018-03-01,200,100.25\n"), ',', false);
+
+            //execute
+            try {
+                parser.fill(batch);
+                throw new AssertionError(date + " should have been rejected");
+            } catch (IOException e) {
+
+                //verify
+                assertTrue(e.getMessage().contains("invalid date"));
+            }
+        }
+
+        assertEquals(1, batch.size());
+    }
+
+    private static ReadableByteChannel channel(String text) {
+        return Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
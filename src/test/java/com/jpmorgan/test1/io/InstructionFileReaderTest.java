@@ -0,0 +1,112 @@
+package com.jpmorgan.test1.io;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.service.ReportService;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.io.InstructionFileReader} and {@link com.jpmorgan.test1.io.InstructionFileWriter}
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Instruction> instructions = Lists.newArrayList(
+            generateInstruction("BUY_E", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 100),
+            generateInstruction("SEL_E", Operation.SELL, Currency.USD, new DateTime("2018-06-22"), new BigDecimal("0.22"), new BigDecimal("150.5"), 450),
+            generateInstruction(null, Operation.BUY, Currency.SGP, new DateTime("2018-06-23"), BigDecimal.ONE, new BigDecimal("0.000000001"), 3));
+
+    @Test
+    public void givenWrittenFileWhenReadThenRecordsCorrect() throws IOException {
+
+        //setup
+        Path file = write(instructions);
+
+        //execute
+        try (InstructionFileReader reader = new InstructionFileReader(file)) {
+            InstructionFileReader.Cursor cursor = reader.cursor();
+
+            //verify
+            assertEquals(3, reader.size());
+            assertEquals(FixedPoint.DEFAULT_SCALE, reader.getScale());
+
+            assertTrue(cursor.next());
+            assertEquals("BUY_E", cursor.getEntity());
+            assertEquals(Operation.BUY, cursor.getOperation());
+            assertEquals(Currency.AED, cursor.getCurrency());
+            assertEquals(EpochDays.toEpochDay(new DateTime("2018-06-24")), cursor.getSettlementDay());
+            assertEquals(0, new BigDecimal("7500").compareTo(cursor.getValueInUSD()));
+
+            assertTrue(cursor.next());
+            assertEquals("SEL_E", cursor.getEntity());
+            assertEquals(1489950000000L, cursor.getUnscaledValueInUSD());
+
+            assertTrue(cursor.next());
+            assertNull(cursor.getEntity());
+            assertEquals(FixedPoint.OVERFLOW, cursor.getUnscaledValueInUSD());
+            assertEquals(new BigDecimal("0.000000003"), cursor.getValueInUSD());
+
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void givenWrittenFileWhenGenerateReportThenReportSameAsForInstructions() throws IOException {
+
+        //setup
+        ReportService service = new ReportService();
+        Path file = write(instructions);
+
+        //execute
+        try (InstructionFileReader reader = new InstructionFileReader(file)) {
+
+            //verify
+            assertEquals(service.generateReport(instructions), service.generateReport(reader));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void givenOtherFileWhenOpenThenException() throws IOException {
+
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[64]);
+
+        new InstructionFileReader(file).close();
+    }
+
+    private Path write(List<Instruction> instructions) throws IOException {
+
+        Path file = folder.newFile().toPath();
+
+        try (InstructionFileWriter writer = new InstructionFileWriter(file, FixedPoint.DEFAULT_SCALE)) {
+            for (Instruction instruction : instructions) {
+                writer.write(instruction);
+            }
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,118 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Operation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.io.InstructionJournal}
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionJournalTest {
+
+    //the smallest segment holding a record with the longest entity, so a few thousand records span several segments
+    private static final int SEGMENT_SIZE = 70_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenRecordsOverSeveralSegmentsWhenReopenAndReadFromMiddleThenRecordsCorrect() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+
+        try (InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, 2)) {
+            for (int i = 0; i < 5_000; i++) {
+                journal.append("E" + i, i % 2 == 0 ? Operation.BUY : Operation.SELL, Currency.GBP, 17_000 + i % 7, i, null);
+            }
+            journal.append(null, null, null, 17_000, FixedPoint.OVERFLOW, new BigDecimal("1E+30"));
+        }
+
+        //execute
+        try (InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, 2)) {
+            InstructionJournal.Cursor cursor = journal.cursor(4_321);
+
+            //verify
+            assertTrue(segments(directory).size() > 1);
+            assertEquals(5_001, journal.getNextSequence());
+
+            for (int i = 4_321; i < 5_000; i++) {
+                assertTrue(cursor.next());
+                assertEquals(i, cursor.getSequence());
+                assertEquals("E" + i, cursor.getEntity());
+                assertEquals(i % 2 == 0 ? Operation.BUY : Operation.SELL, cursor.getOperation());
+                assertEquals(Currency.GBP, cursor.getCurrency());
+                assertEquals(17_000 + i % 7, cursor.getSettlementDay());
+                assertEquals(BigDecimal.valueOf(i, 2), cursor.getValueInUSD());
+            }
+
+            assertTrue(cursor.next());
+            assertNull(cursor.getEntity());
+            assertNull(cursor.getOperation());
+            assertEquals(new BigDecimal("1E+30"), cursor.getValueInUSD());
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void givenTornLastRecordWhenReopenThenRecoveredUpToPreviousRecordAndAppendContinues() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+
+        try (InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, 2)) {
+            journal.append("first", Operation.BUY, Currency.USD, 17_000, 100, null);
+            journal.append("second", Operation.BUY, Currency.USD, 17_000, 200, null);
+        }
+
+        //flip a byte in the payload of the second record, as if the process died while writing it
+        try (RandomAccessFile file = new RandomAccessFile(segments(directory).get(0).toFile(), "rw")) {
+            file.seek(16 + 8 + 18 + "first".length() + 8 + 2);
+            file.write(0x7F);
+        }
+
+        //execute
+        try (InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, 2)) {
+            assertEquals(1, journal.getNextSequence());
+            journal.append("third", Operation.SELL, Currency.USD, 17_001, 300, null);
+        }
+
+        //verify
+        try (InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, 2)) {
+            InstructionJournal.Cursor cursor = journal.cursor(0);
+
+            assertTrue(cursor.next());
+            assertEquals("first", cursor.getEntity());
+            assertTrue(cursor.next());
+            assertEquals("third", cursor.getEntity());
+            assertEquals(1, cursor.getSequence());
+            assertFalse(cursor.next());
+        }
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg")).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.jpmorgan.test1.io;
+
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.service.ReportAggregator;
+import com.jpmorgan.test1.service.ReportService;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.io.ReportSnapshot}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ReportSnapshotTest {
+
+    private static final Currency[] CURRENCIES = {Currency.USD, Currency.EUR, Currency.SGP};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenSnapshotWhenReadThenCurrencyTotalsAddUpToDailyTotals() throws IOException {
+
+        //setup
+        Path path = folder.getRoot().toPath().resolve("snapshot");
+        new ReportSnapshot(42, aggregate(53).snapshot()).write(path, FixedPoint.DEFAULT_SCALE);
+
+        //execute
+        ReportSnapshot snapshot = ReportSnapshot.read(path, NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+
+        //verify
+        assertEquals(42, snapshot.getSequence());
+        for (DailyAggregate dailyAggregate : snapshot.getDailyAggregates()) {
+            for (Operation operation : Operation.values()) {
+                BigDecimal breakdown = BigDecimal.ZERO;
+                for (Currency currency : Currency.values()) {
+                    breakdown = breakdown.add(dailyAggregate.getCurrencyTotals().getTotal(currency, operation));
+                }
+                assertEquals(0, dailyAggregate.getTotal(operation).getValue().compareTo(breakdown));
+            }
+        }
+    }
+
+    @Test
+    public void givenOverflowingTotalsWhenReadThenReportSameAsBeforeWrite() throws IOException {
+
+        //setup
+        Path path = folder.getRoot().toPath().resolve("snapshot");
+        ReportAggregator aggregator = aggregate(61);
+        aggregator.add(generateInstruction("E1", Operation.BUY, Currency.EUR, new DateTime(2018, 6, 4, 0, 0), BigDecimal.ONE,
+                new BigDecimal("1E+20"), 1000));
+        ReportService reportService = new ReportService();
+        new ReportSnapshot(42, aggregator.snapshot()).write(path, FixedPoint.DEFAULT_SCALE);
+
+        //execute
+        ReportSnapshot snapshot = ReportSnapshot.read(path, NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+
+        //verify
+        assertEquals(reportService.generateReport(aggregator), reportService.generateDailyReports(snapshot.getDailyAggregates()));
+    }
+
+    @Test
+    public void givenSnapshotOfVersionTwoWhenReadThenTotalsRestored() throws IOException {
+
+        //setup
+        //the totals as text and no scale, as written before the binary totals
+        Path path = folder.getRoot().toPath().resolve("snapshot");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(Files.newOutputStream(path), crc))) {
+            out.writeInt(0x4A504D53);
+            out.writeShort(2);
+            out.writeLong(42);
+            out.writeInt(1);
+            out.writeInt(EpochDays.of(2018, 6, 4));
+            out.writeInt(1);
+            out.writeBoolean(false);
+            out.writeUTF("E1");
+            out.writeUTF("10.5");
+            out.writeInt(0);
+            for (Currency currency : Currency.values()) {
+                out.writeUTF(currency == Currency.USD ? "10.5" : "0");
+                out.writeUTF("0");
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+
+        //execute
+        ReportSnapshot snapshot = ReportSnapshot.read(path, NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+
+        //verify
+        assertEquals(42, snapshot.getSequence());
+        DailyAggregate dailyAggregate = snapshot.getDailyAggregates().get(0);
+        assertEquals(0, new BigDecimal("10.5").compareTo(dailyAggregate.getTotal(Operation.BUY).getValue()));
+        assertEquals(0, new BigDecimal("10.5").compareTo(dailyAggregate.getCurrencyTotals().getTotal(Currency.USD, Operation.BUY)));
+        assertEquals(1, dailyAggregate.getRank(Operation.BUY, "E1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void givenSnapshotOfVersionOneWhenReadThenException() throws IOException {
+
+        //setup
+        Path path = folder.getRoot().toPath().resolve("snapshot");
+        new ReportSnapshot(42, aggregate(59).snapshot()).write(path, FixedPoint.DEFAULT_SCALE);
+        //the version follows the magic
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(4);
+            file.writeShort(1);
+        }
+
+        //execute
+        ReportSnapshot.read(path, NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+    }
+
+    private static ReportAggregator aggregate(long seed) {
+
+        ReportAggregator aggregator = new ReportAggregator(NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+        aggregator.addAll(new RandomInstructions(seed)
+                .withEntities(10)
+                .withCurrencies(CURRENCIES)
+                .withDates(new DateTime(2018, 6, 4, 0, 0), 5)
+                .next(200));
+
+        return aggregator;
+    }
+}
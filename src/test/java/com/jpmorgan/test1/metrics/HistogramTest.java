@@ -0,0 +1,75 @@
+package com.jpmorgan.test1.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.metrics.Histogram}
+ *
+ * @author Vlad Constantinescu
+ */
+public class HistogramTest {
+
+    @Test
+    public void givenValuesThenPercentilesWithinOnePercent() {
+
+        //setup
+        Histogram histogram = new Histogram();
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+
+        //execute
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        //verify
+        Arrays.sort(values);
+        assertEquals(values.length, snapshot.getCount());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + expected + " vs " + actual, actual >= expected && actual <= expected + expected / 100);
+        }
+    }
+
+    @Test
+    public void givenEveryBucketThenIndexAndHighestValueConsistent() {
+
+        for (int shift = 0; shift < 63; shift++) {
+
+            //setup
+            long value = 1L << shift;
+
+            for (long candidate : new long[]{value - 1, value, value + value / 3}) {
+
+                //execute
+                int index = Histogram.index(candidate);
+
+                //verify
+                assertTrue(Histogram.highestValue(index) >= candidate);
+                assertTrue(index == 0 || Histogram.highestValue(index - 1) < candidate);
+            }
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void givenNoValueThenZeros() {
+
+        //execute
+        Histogram.Snapshot snapshot = new Histogram().snapshot();
+
+        //verify
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+    }
+}
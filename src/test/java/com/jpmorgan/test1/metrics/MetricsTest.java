@@ -0,0 +1,131 @@
+package com.jpmorgan.test1.metrics;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.ChannelAppendable;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.service.ReportService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.metrics.Metrics}
+ *
+ * @author Vlad Constantinescu
+ */
+public class MetricsTest {
+
+    @Test
+    public void givenReportWrittenThenEveryStageAndCounterRecorded() throws Exception {
+
+        //setup
+        Metrics metrics = new Metrics(true, false);
+        List<Instruction> instructions = generateInstructions(metrics);
+        ReportService service = new ReportService.Builder().withMetrics(metrics).build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        //execute
+        try (ChannelAppendable out = new ChannelAppendable(Channels.newChannel(bytes), ByteBuffer.allocate(64), metrics)) {
+            service.writeReport(instructions, out);
+        }
+        Metrics.Snapshot snapshot = metrics.snapshot();
+
+        //verify
+        assertEquals(3, snapshot.getStageTimes(Stage.SETTLEMENT).getCount());
+        assertEquals(3, snapshot.getStageTimes(Stage.VALUATION).getCount());
+        assertEquals(1, snapshot.getStageTimes(Stage.AGGREGATION).getCount());
+        //two settlement dates, two operations each
+        assertEquals(4, snapshot.getStageTimes(Stage.RANKING).getCount());
+        assertEquals(4, snapshot.getStageTimes(Stage.FORMATTING).getCount());
+        assertEquals(2, snapshot.getInstructionCount(Currency.AED, Operation.BUY));
+        assertEquals(1, snapshot.getInstructionCount(Currency.USD, Operation.SELL));
+        assertEquals(3, snapshot.getInstructionCount());
+        assertEquals(2, snapshot.getEntitiesPerDay().getMax());
+        assertEquals(bytes.size(), snapshot.getBytesWritten());
+    }
+
+    @Test
+    public void givenDisabledThenNothingRecorded() {
+
+        //setup
+        Metrics metrics = Metrics.disabled();
+        ReportService service = new ReportService.Builder().withMetrics(metrics).build();
+
+        //execute
+        service.generateReport(generateInstructions(metrics));
+        Metrics.Snapshot snapshot = metrics.snapshot();
+
+        //verify
+        assertEquals(0, metrics.start());
+        assertEquals(0, snapshot.getInstructionCount());
+        for (Stage stage : Stage.values()) {
+            assertEquals(0, snapshot.getStageTimes(stage).getCount());
+        }
+    }
+
+    @Test
+    public void givenRecordingThenStageEventsCommitted() throws Exception {
+
+        //setup
+        Metrics metrics = new Metrics();
+        ReportService service = new ReportService.Builder().withMetrics(metrics).build();
+        Path file = Files.createTempFile("metrics", ".jfr");
+        List<RecordedEvent> events;
+
+        //execute
+        try (Recording recording = new Recording()) {
+            recording.enable(StageEvents.NAME);
+            recording.start();
+            service.generateReport(generateInstructions(metrics));
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        //verify
+        assertEquals(1 + 4 + 4, events.size());
+        //timed with begin and end, so the duration of the event is the time spent in the stage
+        assertTrue(events.stream().allMatch(event -> !event.getDuration().isNegative()));
+        assertTrue(events.stream().anyMatch(event -> !event.getDuration().isZero()));
+        assertEquals(4, events.stream().filter(event -> Stage.RANKING.name().equals(event.getString("stage"))).count());
+    }
+
+    private static List<Instruction> generateInstructions(Metrics metrics) {
+
+        return Lists.newArrayList(
+                instruction("BUY_1", Operation.BUY, Currency.AED, "2018-06-21", metrics),
+                instruction("BUY_2", Operation.BUY, Currency.AED, "2018-06-21", metrics),
+                instruction("SEL_1", Operation.SELL, Currency.USD, "2018-06-22", metrics));
+    }
+
+    private static Instruction instruction(String entity, Operation operation, Currency currency, String date, Metrics metrics) {
+
+        return new Instruction.Builder()
+                .withEntity(entity)
+                .withOperation(operation)
+                .withCurrency(currency)
+                .withInstructionDate(new DateTime(date))
+                .withFx(BigDecimal.ONE)
+                .withPrice(BigDecimal.TEN)
+                .withUnits(10)
+                .withMetrics(metrics)
+                .build();
+    }
+}
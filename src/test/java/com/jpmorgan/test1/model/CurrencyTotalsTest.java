@@ -0,0 +1,65 @@
+package com.jpmorgan.test1.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.CurrencyTotals}
+ *
+ * @author Vlad Constantinescu
+ */
+public class CurrencyTotalsTest {
+
+    @Test
+    public void givenValuesWhenAddThenSummedPerCurrencyAndOperation() throws IOException {
+
+        //setup
+        CurrencyTotals currencyTotals = new CurrencyTotals(2);
+
+        //execute
+        currencyTotals.add(Currency.EUR, Operation.BUY, 150, 2, null);
+        currencyTotals.add(Currency.EUR, Operation.BUY, 25, 1, null);
+        currencyTotals.add(Currency.EUR, Operation.SELL, 7, 0, null);
+        //too many decimals for the scale
+        currencyTotals.add(Currency.GBP, Operation.BUY, 1, 3, null);
+        //no currency, so not broken down
+        currencyTotals.add(null, Operation.BUY, 100, 0, null);
+
+        //verify
+        assertEquals(0, new BigDecimal("4").compareTo(currencyTotals.getTotal(Currency.EUR, Operation.BUY)));
+        assertEquals(0, new BigDecimal("7").compareTo(currencyTotals.getTotal(Currency.EUR, Operation.SELL)));
+        assertEquals(new BigDecimal("0.001"), currencyTotals.getTotal(Currency.GBP, Operation.BUY));
+        assertEquals(0, BigDecimal.ZERO.compareTo(currencyTotals.getTotal(Currency.USD, Operation.BUY)));
+
+        StringBuilder out = new StringBuilder();
+        currencyTotals.appendTotal(Currency.EUR, Operation.BUY, out, 3);
+        currencyTotals.appendTotal(Currency.GBP, Operation.BUY, out.append(' '), 3);
+        assertEquals("4.000 0.001", out.toString());
+    }
+
+    @Test
+    public void givenTotalsWhenMergeThenSameAsAddingAllValues() {
+
+        //setup
+        CurrencyTotals currencyTotals = new CurrencyTotals(2);
+        CurrencyTotals other = new CurrencyTotals(2);
+        currencyTotals.add(Currency.AED, Operation.SELL, Long.MAX_VALUE - 10, 2, null);
+        other.add(Currency.AED, Operation.SELL, 20, 2, null);
+        other.add(Currency.SGP, Operation.BUY, 5, 2, null);
+        CurrencyTotals copy = currencyTotals.copy();
+
+        //execute
+        currencyTotals.merge(other);
+
+        //verify
+        //the sum doesn't fit in a long
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.TEN).movePointLeft(2), currencyTotals.getTotal(Currency.AED, Operation.SELL));
+        assertEquals(new BigDecimal("0.05"), currencyTotals.getTotal(Currency.SGP, Operation.BUY));
+        //the copy isn't affected
+        assertEquals(0, BigDecimal.ZERO.compareTo(copy.getTotal(Currency.SGP, Operation.BUY)));
+    }
+}
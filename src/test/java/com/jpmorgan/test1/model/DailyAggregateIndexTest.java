@@ -0,0 +1,115 @@
+package com.jpmorgan.test1.model;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.DailyAggregateIndex}
+ *
+ * @author Vlad Constantinescu
+ */
+public class DailyAggregateIndexTest {
+
+    private static final int FIRST_DAY = EpochDays.of(2018, 6, 1);
+    private static final int DAYS = 20;
+
+    @Test
+    public void givenRangesThenSameAsAggregatingTheirInstructions() {
+
+        for (NumericMode numericMode : NumericMode.values()) {
+
+            //setup
+            List<Instruction> instructions = generateInstructions();
+            DailyAggregateIndex index = new DailyAggregateIndex(aggregate(instructions, numericMode, FIRST_DAY, FIRST_DAY + DAYS + 3), 2);
+
+            for (int fromDay = FIRST_DAY - 1; fromDay < FIRST_DAY + DAYS + 3; fromDay += 3) {
+                for (int toDay = fromDay - 1; toDay < FIRST_DAY + DAYS + 3; toDay += 4) {
+
+                    //execute
+                    DailyAggregate expected = new DailyAggregate(fromDay, numericMode, 2);
+                    for (DailyAggregate dailyAggregate : aggregate(instructions, numericMode, fromDay, toDay)) {
+                        expected.merge(dailyAggregate);
+                    }
+
+                    //verify
+                    assertEquals(0, expected.getIncomingValue().compareTo(index.getTotal(Operation.BUY, fromDay, toDay)));
+                    assertEquals(0, expected.getOutgoingValue().compareTo(index.getTotal(Operation.SELL, fromDay, toDay)));
+                    assertRankingsEqual(expected.getRankings(Operation.BUY, 10), index.getRankings(Operation.BUY, fromDay, toDay, 10));
+                    assertRankingsEqual(expected.getOutgoingRankings(), index.getRankings(Operation.SELL, fromDay, toDay, Integer.MAX_VALUE));
+                    assertEquals(expected.getRank(Operation.BUY, "E7"), index.getRank(Operation.BUY, fromDay, toDay, "E7"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void givenAsOfDayThenRangeCoversLastBusinessDays() {
+
+        //setup
+        DailyAggregateIndex index = new DailyAggregateIndex(Lists.newArrayList(), 2);
+        int monday = EpochDays.of(2018, 6, 25);
+        int sunday = EpochDays.of(2018, 6, 24);
+
+        //verify
+        assertEquals(monday, index.startOfLastBusinessDays(monday, 1));
+        assertEquals(EpochDays.of(2018, 6, 21), index.startOfLastBusinessDays(monday, 3));
+        assertEquals(EpochDays.of(2018, 6, 22), index.startOfLastBusinessDays(sunday, 1));
+        assertEquals(0, BigDecimal.ZERO.compareTo(index.getTotal(Operation.BUY, monday - 10, monday)));
+        assertNull(index.getDailyAggregate(monday));
+    }
+
+    private static List<Instruction> generateInstructions() {
+
+        return new RandomInstructions(11)
+                .withEntities(40)
+                .withCurrencies(Currency.values())
+                .withDates(new DateTime(2018, 6, 1, 0, 0), DAYS)
+                .withFx(random -> BigDecimal.valueOf(random.nextInt(200), 2))
+                .next(3_000);
+    }
+
+    /**
+     * @return the daily aggregates of the instructions settling between the given days, in chronological order
+     */
+    private static List<DailyAggregate> aggregate(List<Instruction> instructions, NumericMode numericMode, int fromDay, int toDay) {
+
+        List<DailyAggregate> dailyAggregates = Lists.newArrayList();
+
+        for (int day = fromDay; day <= toDay; day++) {
+
+            DailyAggregate dailyAggregate = new DailyAggregate(day, numericMode, 2);
+            boolean any = false;
+
+            for (Instruction instruction : instructions) {
+                if (instruction.getSettlementDay() == day) {
+                    dailyAggregate.add(instruction);
+                    any = true;
+                }
+            }
+
+            if (any) {
+                dailyAggregates.add(dailyAggregate);
+            }
+        }
+
+        return dailyAggregates;
+    }
+
+    private static void assertRankingsEqual(List<Ranking> expected, List<Ranking> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.get(rank).getEntity(), actual.get(rank).getEntity());
+            assertEquals(0, expected.get(rank).getTotalValue().compareTo(actual.get(rank).getTotalValue()));
+        }
+    }
+}
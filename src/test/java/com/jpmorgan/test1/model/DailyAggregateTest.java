@@ -0,0 +1,98 @@
+package com.jpmorgan.test1.model;
+
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.DailyAggregate}
+ *
+ * @author Vlad Constantinescu
+ */
+public class DailyAggregateTest {
+
+    private DailyAggregate dailyAggregate;
+
+    @Before
+    public void setUp() {
+
+        dailyAggregate = new DailyAggregate(EpochDays.of(2018, 6, 22), NumericMode.FIXED_POINT, 2);
+        //few distinct values, so there are ties broken by the entity
+        new RandomInstructions(3)
+                .withEntities(300)
+                .withDates(new DateTime("2018-06-22"), 1)
+                .withPrice(random -> BigDecimal.valueOf(random.nextInt(5)))
+                .withUnits(random -> 1)
+                .next(2_000)
+                .forEach(dailyAggregate::add);
+    }
+
+    @Test
+    public void givenTopKThenSameAsBeginningOfFullRanking() {
+
+        for (int topK : new int[]{0, 1, 20, 100, 1000}) {
+
+            //execute
+            List<Ranking> incoming = dailyAggregate.getRankings(Operation.BUY, topK);
+            List<Ranking> outgoing = dailyAggregate.getRankings(Operation.SELL, topK);
+
+            //verify
+            assertRankingsEqual(dailyAggregate.getIncomingRankings().subList(0, Math.min(topK, dailyAggregate.getIncomingRankings().size())), incoming);
+            assertRankingsEqual(dailyAggregate.getOutgoingRankings().subList(0, Math.min(topK, dailyAggregate.getOutgoingRankings().size())), outgoing);
+        }
+    }
+
+    @Test
+    public void givenEntityThenRankSameAsPositionInFullRanking() {
+
+        //setup
+        List<Ranking> rankings = dailyAggregate.getIncomingRankings();
+
+        //verify
+        for (int i = 0; i < rankings.size(); i++) {
+            assertEquals(i + 1, dailyAggregate.getRank(Operation.BUY, rankings.get(i).getEntity()));
+        }
+        assertEquals(0, dailyAggregate.getRank(Operation.BUY, "unknown"));
+    }
+
+    @Test
+    public void givenApproximateWithEnoughCountersWhenMergeExactThenSameRankings() {
+
+        //setup
+        DailyAggregate approximate = new DailyAggregate(EpochDays.of(2018, 6, 22), NumericMode.FIXED_POINT, 2, 1_000);
+
+        //execute
+        approximate.merge(dailyAggregate);
+
+        //verify
+        assertTrue(approximate.isApproximate());
+        assertEquals(0, BigDecimal.ZERO.compareTo(approximate.getErrorBound(Operation.BUY)));
+        assertEquals(dailyAggregate.getIncomingValue(), approximate.getIncomingValue());
+        assertRankingsEqual(dailyAggregate.getIncomingRankings(), approximate.getIncomingRankings());
+        assertRankingsEqual(dailyAggregate.getOutgoingRankings(), approximate.copy().getOutgoingRankings());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenExactWhenMergeApproximateThenException() {
+
+        //execute
+        dailyAggregate.merge(new DailyAggregate(EpochDays.of(2018, 6, 22), NumericMode.FIXED_POINT, 2, 10));
+    }
+
+    private static void assertRankingsEqual(List<Ranking> expected, List<Ranking> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.get(rank).getEntity(), actual.get(rank).getEntity());
+            assertEquals(expected.get(rank).getTotalValue(), actual.get(rank).getTotalValue());
+        }
+    }
+}
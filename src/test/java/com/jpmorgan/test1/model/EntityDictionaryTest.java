@@ -0,0 +1,116 @@
+package com.jpmorgan.test1.model;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.EntityDictionary}
+ *
+ * @author Vlad Constantinescu
+ */
+public class EntityDictionaryTest {
+
+    private final EntityDictionary dictionary = new EntityDictionary();
+
+    @Test
+    public void givenEntityWhenInternThenSameIdAndName() {
+
+        //setup
+        String entity = "dictionary-" + System.nanoTime();
+
+        //execute
+        int notFound = dictionary.find(entity);
+        int id = dictionary.intern(entity);
+
+        //verify
+        assertEquals(EntityDictionary.NONE, notFound);
+        assertEquals(id, dictionary.intern(new String(entity)));
+        assertEquals(id, dictionary.find(entity));
+        assertEquals(entity, dictionary.nameOf(id));
+        assertEquals(EntityDictionary.NONE, dictionary.intern(null));
+        assertNull(dictionary.nameOf(EntityDictionary.NONE));
+    }
+
+    @Test
+    public void givenConcurrentInternsThenOneIdPerEntity() throws Exception {
+
+        //setup
+        String prefix = "concurrent-" + System.nanoTime() + "-";
+        int entities = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        int[][] ids = new int[4][entities];
+
+        //execute
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                int[] threadIds = ids[t];
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < entities; i++) {
+                        threadIds[i] = dictionary.intern(prefix + i);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //verify
+        Set<Integer> distinct = new HashSet<>();
+        for (int i = 0; i < entities; i++) {
+            for (int t = 1; t < ids.length; t++) {
+                assertEquals(ids[0][i], ids[t][i]);
+            }
+            assertEquals(prefix + i, dictionary.nameOf(ids[0][i]));
+            assertTrue(distinct.add(ids[0][i]));
+        }
+        assertEquals(entities, dictionary.size());
+    }
+
+    @Test
+    public void givenIdOfAnotherDictionaryWhenInternThenMappedByName() {
+
+        //setup
+        EntityDictionary other = new EntityDictionary();
+        other.intern("foo");
+        int otherId = other.intern("bar");
+
+        //execute
+        int id = dictionary.intern(otherId, other);
+
+        //verify
+        assertEquals(0, id);
+        assertEquals("bar", dictionary.nameOf(id));
+        assertEquals(otherId, other.intern(otherId, other));
+        assertEquals(EntityDictionary.NONE, dictionary.intern(EntityDictionary.NONE, other));
+    }
+
+    @Test
+    public void givenClearedDictionaryThenEntitiesForgotten() {
+
+        //setup
+        dictionary.intern("foo");
+        dictionary.intern("bar");
+
+        //execute
+        dictionary.clear();
+
+        //verify
+        assertEquals(0, dictionary.size());
+        assertEquals(EntityDictionary.NONE, dictionary.find("foo"));
+        assertEquals(0, dictionary.intern("bar"));
+    }
+}
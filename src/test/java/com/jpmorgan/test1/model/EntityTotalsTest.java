@@ -0,0 +1,127 @@
+package com.jpmorgan.test1.model;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.EntityTotals}
+ *
+ * @author Vlad Constantinescu
+ */
+public class EntityTotalsTest {
+
+    private final EntityDictionary dictionary = new EntityDictionary();
+
+    @Test
+    public void givenManyEntitiesThenTotalsSameAsHashMap() {
+
+        //setup
+        EntityTotals entityTotals = new EntityTotals(2, dictionary);
+        Map<Integer, BigDecimal> expected = new HashMap<>();
+        Random random = new Random(5);
+
+        //execute
+        for (int i = 0; i < 10_000; i++) {
+            int entityId = random.nextInt(50) == 0 ? EntityDictionary.NONE : random.nextInt(1_000);
+            long unscaledValue = random.nextInt(100_000);
+
+            entityTotals.add(entityId, unscaledValue, 2);
+            expected.merge(entityId, BigDecimal.valueOf(unscaledValue, 2), BigDecimal::add);
+        }
+
+        //verify
+        assertEquals(expected.size(), entityTotals.size());
+        for (Map.Entry<Integer, BigDecimal> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), entityTotals.getTotal(entityTotals.find(entry.getKey())));
+        }
+        assertEquals(-1, entityTotals.find(1_000));
+    }
+
+    @Test
+    public void givenOverflowingTotalThenFallsBackToBigDecimal() {
+
+        //setup
+        EntityTotals entityTotals = new EntityTotals(0, dictionary);
+        EntityTotals other = new EntityTotals(0, dictionary);
+
+        //execute
+        entityTotals.add(1, Long.MAX_VALUE, 0);
+        entityTotals.add(1, Long.MAX_VALUE, 0);
+        entityTotals.add(2, 1, 0);
+        other.add(1, 2, 0);
+        other.add(2, new BigDecimal("0.5"));
+        entityTotals.merge(other);
+
+        //verify
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2)).add(BigDecimal.valueOf(2)),
+                entityTotals.getTotal(entityTotals.find(1)));
+        assertEquals(new BigDecimal("1.5"), entityTotals.getTotal(entityTotals.find(2)));
+        assertEquals(1, entityTotals.compareTotals(entityTotals.find(1), entityTotals.find(2)));
+    }
+
+    @Test
+    public void givenTotalsOfAnotherDictionaryWhenMergeThenMappedByName() {
+
+        //setup
+        EntityDictionary otherDictionary = new EntityDictionary();
+        EntityTotals entityTotals = new EntityTotals(2, dictionary);
+        EntityTotals other = new EntityTotals(2, otherDictionary);
+        entityTotals.add(dictionary.intern("foo"), 100, 2);
+        other.add(otherDictionary.intern("bar"), 200, 2);
+        other.add(otherDictionary.intern("foo"), 300, 2);
+
+        //execute
+        entityTotals.merge(other);
+
+        //verify
+        assertEquals(2, entityTotals.size());
+        assertEquals(new BigDecimal("4.00"), entityTotals.getTotal(entityTotals.find(dictionary.find("foo"))));
+        assertEquals(new BigDecimal("2.00"), entityTotals.getTotal(entityTotals.find(dictionary.find("bar"))));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void givenTiedTotalsWhenGetRankedSlotsThenSameOrderAsSortingByTotalAndName() {
+
+        //setup
+        EntityTotals entityTotals = new EntityTotals(0, dictionary);
+        Random random = new Random(11);
+
+        for (int i = 0; i < 500; i++) {
+            //few distinct totals, so most of the entities are tied
+            entityTotals.add(dictionary.intern("E" + random.nextInt(200)), random.nextInt(5), 0);
+        }
+        entityTotals.add(EntityDictionary.NONE, 4, 0);
+
+        List<String> expected = Lists.newArrayList();
+        for (int slot = 0; slot < entityTotals.capacity(); slot++) {
+            if (entityTotals.isUsed(slot)) {
+                expected.add(entityTotals.getEntity(slot));
+            }
+        }
+        expected.sort(Comparator.comparing((String entity) -> entityTotals.getTotal(entityTotals.find(dictionary.find(entity)))).reversed()
+                .thenComparing(Comparator.nullsFirst(Comparator.<String>naturalOrder())));
+
+        for (int topK : new int[] {0, 1, 7, expected.size(), expected.size() + 1}) {
+
+            //execute
+            int[] slots = entityTotals.getRankedSlots(topK);
+
+            //verify
+            assertEquals(Math.min(topK, expected.size()), slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                assertEquals(expected.get(i), entityTotals.getEntity(slots[i]));
+                assertEquals(i + 1, entityTotals.getRank(entityTotals.getEntityId(slots[i])));
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.jpmorgan.test1.model;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.EpochDays}
+ *
+ * @author Vlad Constantinescu
+ */
+public class EpochDaysTest {
+
+    @Test
+    public void givenEpochDayWhenToDateTimeThenStartOfDayInUTCWhateverTheDefaultZone() {
+
+        //setup
+        DateTimeZone defaultZone = DateTimeZone.getDefault();
+        int epochDay = EpochDays.of(2018, 6, 24);
+
+        try {
+            //a negative offset, where the start of the day in UTC is the previous day
+            DateTimeZone.setDefault(DateTimeZone.forID("America/New_York"));
+
+            //execute
+            DateTime dateTime = EpochDays.toDateTime(epochDay);
+
+            //verify
+            assertEquals(DateTimeZone.UTC, dateTime.getZone());
+            assertEquals("2018-06-24", dateTime.toString("yyyy-MM-dd"));
+            assertEquals(epochDay, EpochDays.toEpochDay(dateTime));
+            assertEquals("2018-06-24", EpochDays.format(epochDay));
+        } finally {
+            DateTimeZone.setDefault(defaultZone);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.jpmorgan.test1.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.FixedPoint}
+ *
+ * @author Vlad Constantinescu
+ */
+public class FixedPointTest {
+
+    @Test
+    public void givenValueWithLowerScaleThenUnscaledCorrect() {
+
+        assertEquals(1002500L, FixedPoint.toUnscaled(new BigDecimal("100.25"), 4));
+        assertEquals(1500L, FixedPoint.toUnscaled(new BigDecimal("1.500000"), 3));
+        assertEquals(100L, FixedPoint.toUnscaled(new BigDecimal("1E+2"), 0));
+    }
+
+    @Test
+    public void givenValueNotRepresentableThenOverflow() {
+
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.toUnscaled(new BigDecimal("0.125"), 2));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.toUnscaled(new BigDecimal("92233720368547758.08"), 2));
+    }
+
+    @Test
+    public void givenOverflowingOperandsThenOverflow() {
+
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.add(Long.MAX_VALUE, 1));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.multiply(Long.MAX_VALUE / 2, 3));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.multiply(FixedPoint.OVERFLOW, 0));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.rescale(Long.MAX_VALUE / 10, 0, 2));
+        assertEquals(FixedPoint.OVERFLOW, FixedPoint.rescale(125, 3, 2));
+        assertEquals(-6L, FixedPoint.multiply(-2, 3));
+        assertEquals(12L, FixedPoint.rescale(1200, 4, 2));
+    }
+
+    @Test
+    public void givenInstructionThenFixedPointValueEqualToBigDecimalValue() {
+
+        //setup
+        Instruction instruction = generateInstruction(new BigDecimal("0.22"), new BigDecimal("150.5"), 450);
+
+        //execute
+        long unscaled = instruction.getValueInUSD(FixedPoint.DEFAULT_SCALE);
+
+        //verify
+        assertEquals(instruction.getValueInUSD().setScale(FixedPoint.DEFAULT_SCALE), FixedPoint.toBigDecimal(unscaled, FixedPoint.DEFAULT_SCALE));
+        assertEquals(FixedPoint.OVERFLOW, instruction.getValueInUSD(0));
+    }
+
+    @Test
+    public void givenValuesWhenAppendThenRoundedHalfUp() throws IOException {
+
+        assertEquals("100.25", append(1002500, 4, 2));
+        assertEquals("-100.25", append(-1002500, 4, 2));
+        assertEquals("0.13", append(125, 3, 2));
+        assertEquals("-0.13", append(-125, 3, 2));
+        assertEquals("0.00", append(-4, 3, 2));
+        assertEquals("12.500000", append(125, 1, 6));
+        assertEquals("7.000", append(7, 0, 3));
+        assertEquals("7", append(7, 0, 0));
+        assertEquals("9223372036854775807.0", append(Long.MAX_VALUE, 0, 1));
+        assertEquals("1", append(5, 19, 18).substring(19));
+    }
+
+    @Test
+    public void givenRandomValuesWhenAppendThenSameAsBigDecimal() throws IOException {
+
+        Random random = new Random(13);
+
+        for (int i = 0; i < 10_000; i++) {
+
+            //setup
+            long unscaled = random.nextLong() >> random.nextInt(64);
+            int scale = random.nextInt(12);
+            int decimals = random.nextInt(10);
+
+            //verify
+            assertEquals(BigDecimal.valueOf(unscaled, scale).setScale(decimals, RoundingMode.HALF_UP).toPlainString(), append(unscaled, scale, decimals));
+        }
+    }
+
+    private static String append(long unscaled, int scale, int decimals) throws IOException {
+
+        StringBuilder out = new StringBuilder();
+        FixedPoint.append(out, unscaled, scale, decimals);
+
+        return out.toString();
+    }
+}
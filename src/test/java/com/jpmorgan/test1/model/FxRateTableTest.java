@@ -0,0 +1,71 @@
+package com.jpmorgan.test1.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.FxRateTable}
+ *
+ * @author Vlad Constantinescu
+ */
+public class FxRateTableTest {
+
+    private static final int DAY = EpochDays.of(2018, 6, 1);
+
+    private final FxRateTable rates = new FxRateTable.Builder()
+            .withRate(Currency.EUR, DAY, new BigDecimal("1.17"))
+            .withRate(Currency.EUR, DAY + 3, new BigDecimal("1.1725"))
+            .withRate(Currency.USD, DAY - 100, BigDecimal.ONE)
+            .build();
+
+    @Test
+    public void givenDayThenRateEffectiveInThatDay() {
+
+        //verify
+        assertEquals(new BigDecimal("1.17"), rates.getRate(Currency.EUR, DAY));
+        assertEquals(new BigDecimal("1.17"), rates.getRate(Currency.EUR, DAY + 2));
+        assertEquals(new BigDecimal("1.1725"), rates.getRate(Currency.EUR, DAY + 3));
+        assertEquals(new BigDecimal("1.1725"), rates.getRate(Currency.EUR, DAY + 300));
+        assertEquals(BigDecimal.ONE, rates.getRate(Currency.USD, DAY));
+    }
+
+    @Test
+    public void givenNotionalThenValueInUSDSameAsBigDecimal() {
+
+        //execute
+        long unscaledValue = rates.getValueInUSD(Currency.EUR, DAY + 3, 12_345, 2, 6);
+
+        //verify
+        assertEquals(new BigDecimal("123.45").multiply(new BigDecimal("1.1725")), FixedPoint.toBigDecimal(unscaledValue, 6));
+        assertEquals(FixedPoint.OVERFLOW, rates.getValueInUSD(Currency.EUR, DAY + 3, 12_345, 2, 3));
+        assertEquals(FixedPoint.OVERFLOW, rates.getValueInUSD(Currency.EUR, DAY + 3, FixedPoint.OVERFLOW, 2, 6));
+    }
+
+    @Test
+    public void givenCorrectionThenOriginalTableUnchanged() {
+
+        //execute
+        FxRateTable corrected = new FxRateTable.Builder(rates).withRate(Currency.EUR, DAY + 3, new BigDecimal("1.18")).build();
+
+        //verify
+        assertEquals(new BigDecimal("1.18"), corrected.getRate(Currency.EUR, DAY + 3));
+        assertEquals(new BigDecimal("1.1725"), rates.getRate(Currency.EUR, DAY + 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenDayBeforeFirstRateThenException() {
+
+        //execute
+        rates.getRate(Currency.EUR, DAY - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenCurrencyWithoutRatesThenException() {
+
+        //execute
+        rates.getValueInUSD(Currency.GBP, DAY, 100, 2, 6);
+    }
+}
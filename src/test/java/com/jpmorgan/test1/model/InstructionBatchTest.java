@@ -0,0 +1,85 @@
+package com.jpmorgan.test1.model;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.InstructionBatch}
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionBatchTest {
+
+    @Test
+    public void givenAppendedInstructionsThenColumnsCorrect() {
+
+        //setup
+        InstructionBatch batch = InstructionBatch.allocateDirect(3, 4);
+
+        //execute
+        batch.append(generateInstruction("foo", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), new BigDecimal("0.22"), new BigDecimal("150.5"), 450));
+        batch.append(generateInstruction("bar", Operation.SELL, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, new BigDecimal("0.00001"), 1));
+        batch.append(generateInstruction("foo", null, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, BigDecimal.ONE, 1));
+
+        //verify
+        assertEquals(3, batch.size());
+        assertEquals("foo", batch.getEntity(0));
+        assertEquals(batch.getEntityId(0), batch.getEntityId(2));
+        assertEquals(Operation.BUY, batch.getOperation(0));
+        assertNull(batch.getOperation(2));
+        assertEquals(Currency.AED, batch.getCurrency(0));
+        //AED Friday settles on Sunday
+        assertEquals(EpochDays.toEpochDay(new DateTime("2018-06-24")), batch.getSettlementDay(0));
+        assertEquals(148995000L, batch.getUnscaledValueInUSD(0));
+        assertEquals(0, new BigDecimal("14899.5").compareTo(batch.getValueInUSD(0)));
+        //too many decimals for the batch scale
+        assertEquals(FixedPoint.OVERFLOW, batch.getUnscaledValueInUSD(1));
+        assertEquals(new BigDecimal("0.00001"), batch.getValueInUSD(1));
+    }
+
+    @Test
+    public void givenBatchWhenCursorThenSameFieldsAsInstructions() {
+
+        //setup
+        InstructionBatch batch = InstructionBatch.allocate(2, 4);
+        Instruction foo = generateInstruction("foo", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), new BigDecimal("0.22"), new BigDecimal("150.5"), 450);
+        Instruction bar = generateInstruction("bar", Operation.SELL, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, new BigDecimal("0.00001"), 1);
+        batch.append(foo);
+        batch.append(bar);
+
+        //execute
+        InstructionBatch.Cursor cursor = batch.cursor();
+
+        //verify
+        for (Instruction instruction : new Instruction[] {foo, bar}) {
+            cursor.next();
+            assertEquals(instruction.getEntity(), cursor.getEntity());
+            assertEquals(instruction.getOperation(), cursor.getOperation());
+            assertEquals(instruction.getCurrency(), cursor.getCurrency());
+            assertEquals(instruction.getSettlementDate(), cursor.getSettlementDate());
+            assertEquals(0, instruction.getValueInUSD().compareTo(cursor.getValueInUSD()));
+            assertEquals(instruction.getValueInUSD(6), cursor.getValueInUSD(6));
+        }
+
+        assertFalse(cursor.next());
+        //the value which overflows the batch scale fits at a larger one
+        assertEquals(10L, cursor.moveTo(1).getValueInUSD(6));
+        assertEquals(1489950L, cursor.moveTo(0).getValueInUSD(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenFullBatchWhenAppendThenException() {
+
+        InstructionBatch batch = InstructionBatch.allocate(1, 4);
+
+        batch.append(generateInstruction(BigDecimal.ONE, BigDecimal.ONE, 1));
+        batch.append(generateInstruction(BigDecimal.ONE, BigDecimal.ONE, 1));
+    }
+}
@@ -1,5 +1,6 @@
 package com.jpmorgan.test1.model;
 
+import com.jpmorgan.test1.metrics.Metrics;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
@@ -59,4 +60,79 @@ public class InstructionTest {
         assertEquals(result, instruction.getValueInUSD().doubleValue(), 0);
     }
 
+    @Test
+    public void givenMalformedBuilderWhenValidateThenCodeInsteadOfException() {
+
+        //setup
+        Instruction.Builder builder = new Instruction.Builder()
+                .withEntity("foo")
+                .withOperation(Operation.BUY)
+                .withCurrency(Currency.SGP)
+                .withInstructionDate(new DateTime("2018-06-22"))
+                .withUnits(100)
+                .withPrice(BigDecimal.TEN)
+                .withFx(BigDecimal.ONE);
+
+        //verify
+        assertEquals(ValidationCode.VALID, builder.validate());
+        assertEquals(ValidationCode.NEGATIVE_UNITS, builder.withUnits(-1).validate());
+        assertEquals(ValidationCode.NEGATIVE_PRICE, builder.withPrice(BigDecimal.ONE.negate()).validate());
+        assertEquals(ValidationCode.NON_POSITIVE_FX, builder.withFx(BigDecimal.ZERO).validate());
+        assertEquals(ValidationCode.MISSING_PRICE, builder.withPrice(null).validate());
+        assertEquals(ValidationCode.MISSING_FX, builder.withFx(null).validate());
+        assertEquals(ValidationCode.MISSING_CURRENCY, builder.withCurrency(null).validate());
+        assertEquals(ValidationCode.MISSING_OPERATION, builder.withOperation(null).validate());
+        assertEquals(ValidationCode.MISSING_ENTITY, builder.withEntity(null).validate());
+        assertEquals(ValidationCode.MISSING_ENTITY, generateInstruction(null, Operation.BUY, Currency.USD, new DateTime("2018-06-22"),
+                BigDecimal.ONE, BigDecimal.ONE, 1).validate());
+    }
+
+    @Test
+    public void givenNoInstructionDateWhenValidateThenMissingInstructionDate() {
+
+        //setup
+        Instruction.Builder builder = new Instruction.Builder()
+                .withEntity("foo")
+                .withOperation(Operation.BUY)
+                .withCurrency(Currency.SGP)
+                .withUnits(100)
+                .withPrice(BigDecimal.TEN)
+                .withFx(BigDecimal.ONE);
+
+        //execute
+        ValidationCode builderCode = builder.validate();
+        ValidationCode instructionCode = builder.build().validate();
+
+        //verify
+        assertEquals(ValidationCode.MISSING_INSTRUCTION_DATE, builderCode);
+        assertEquals(ValidationCode.MISSING_INSTRUCTION_DATE, instructionCode);
+        assertEquals(ValidationCode.VALID, builder.withInstructionDay(0).validate());
+    }
+
+    @Test
+    public void givenTimedAndUntimedInstructionsThenSameDerivedValues() {
+
+        //setup
+        Instruction.Builder builder = new Instruction.Builder()
+                .withEntity("foo")
+                .withOperation(Operation.BUY)
+                .withCurrency(Currency.AED)
+                .withInstructionDate(new DateTime("2018-06-22"))
+                .withFx(new BigDecimal("0.22"))
+                .withPrice(new BigDecimal("150.5"))
+                .withUnits(450);
+
+        //execute
+        //calculated on first use
+        Instruction lazy = builder.build();
+        //calculated when built, so the stages are timed
+        Instruction timed = builder.withMetrics(new Metrics()).build();
+
+        //verify
+        assertEquals(timed.getSettlementDay(), lazy.getSettlementDay());
+        assertEquals(EpochDays.toEpochDay(new DateTime("2018-06-24")), lazy.getSettlementDay());
+        assertEquals(timed.getValueInUSD(), lazy.getValueInUSD());
+        assertEquals(0, new BigDecimal("14899.5").compareTo(lazy.getValueInUSD()));
+        assertEquals(148995L, lazy.getValueInUSD(1));
+    }
 }
@@ -0,0 +1,103 @@
+package com.jpmorgan.test1.model;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.SettlementCalendar}
+ *
+ * @author Vlad Constantinescu
+ */
+public class SettlementCalendarTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenWeekendDaysThenSettlementOnNextWorkingDay() {
+
+        //setup
+        SettlementCalendar calendar = SettlementCalendar.getDefault();
+        int friday = EpochDays.of(2018, 6, 22);
+
+        //verify
+        assertEquals(friday + 2, calendar.settlementDay(Currency.AED, friday));
+        assertEquals(friday + 2, calendar.settlementDay(Currency.SAR, friday + 1));
+        assertEquals(friday + 2, calendar.settlementDay(Currency.AED, friday + 2));
+        assertEquals(friday, calendar.settlementDay(Currency.USD, friday));
+        assertEquals(friday + 3, calendar.settlementDay(Currency.EUR, friday + 1));
+        assertEquals(friday + 3, calendar.settlementDay(null, friday + 2));
+    }
+
+    @Test
+    public void givenDaysOutsideRangeThenSettlementCalculated() {
+
+        //setup
+        int saturday = EpochDays.of(2018, 6, 23);
+        SettlementCalendar calendar = new SettlementCalendar.Builder().withRange(saturday - 10, saturday - 1).build();
+
+        //verify
+        assertEquals(saturday + 2, calendar.settlementDay(Currency.GBP, saturday));
+        assertEquals(saturday + 1, calendar.settlementDay(Currency.AED, saturday));
+        //the last precomputed day is a Friday, which for AED settles after the range
+        assertEquals(saturday + 1, calendar.settlementDay(Currency.AED, saturday - 1));
+    }
+
+    @Test
+    public void givenHolidaysFileThenSettlementSkipsHolidays() throws IOException {
+
+        //setup
+        Path file = folder.newFile().toPath();
+        Files.write(file, Arrays.asList("# currency,date", "GBP,2018-06-25", "", "GBP,2018-06-26", "AED,2018-06-24"), StandardCharsets.UTF_8);
+        SettlementCalendar calendar = new SettlementCalendar.Builder().withHolidays(file).build();
+        int saturday = EpochDays.of(2018, 6, 23);
+
+        //verify
+        assertFalse(calendar.isWorkingDay(Currency.GBP, saturday + 2));
+        assertTrue(calendar.isWorkingDay(Currency.USD, saturday + 2));
+        assertEquals(saturday + 4, calendar.settlementDay(Currency.GBP, saturday));
+        assertEquals(saturday + 2, calendar.settlementDay(Currency.USD, saturday));
+        assertEquals(saturday + 2, calendar.settlementDay(Currency.AED, saturday - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void givenInvalidHolidaysFileThenException() throws IOException {
+
+        Path file = folder.newFile().toPath();
+        Files.write(file, Arrays.asList("XXX,2018-06-25"), StandardCharsets.UTF_8);
+
+        new SettlementCalendar.Builder().withHolidays(file);
+    }
+
+    @Test
+    public void givenInstructionWithHolidayCalendarThenSettlementDateCorrect() {
+
+        //setup
+        SettlementCalendar calendar = new SettlementCalendar.Builder().withHoliday(Currency.EUR, EpochDays.of(2018, 6, 25)).build();
+
+        //execute
+        Instruction instruction = new Instruction.Builder()
+                .withCurrency(Currency.EUR)
+                .withInstructionDate(new DateTime("2018-06-23"))
+                .withFx(BigDecimal.ONE)
+                .withPrice(BigDecimal.ONE)
+                .withSettlementCalendar(calendar)
+                .build();
+
+        //verify
+        assertEquals("2018-06-26", instruction.getSettlementDate().toString("yyyy-MM-dd"));
+    }
+}
@@ -0,0 +1,186 @@
+package com.jpmorgan.test1.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.model.SpaceSavingSketch}
+ *
+ * @author Vlad Constantinescu
+ */
+public class SpaceSavingSketchTest {
+
+    private static final int ENTITIES = 2_000;
+    private static final int CAPACITY = 50;
+
+    private final EntityDictionary dictionary = new EntityDictionary();
+
+    @Test
+    public void givenFewerEntitiesThanCountersThenTotalsExact() {
+
+        //setup
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY, 2);
+        EntityTotals expected = new EntityTotals(2, dictionary);
+        Random random = new Random(5);
+
+        //execute
+        for (int i = 0; i < 5_000; i++) {
+
+            String entity = "E" + random.nextInt(CAPACITY - 10);
+            long unscaledValue = random.nextInt(10_000);
+
+            sketch.add(entity, unscaledValue, 2);
+            expected.add(dictionary.intern(entity), unscaledValue, 2);
+        }
+
+        //verify
+        assertEquals(CAPACITY - 10, sketch.size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(sketch.getErrorBound()));
+        assertTotalsEqual(expected, sketch.toEntityTotals());
+    }
+
+    @Test
+    public void givenSkewedStreamThenHeavyHittersTrackedWithinBound() {
+
+        //setup
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY, 2);
+        EntityTotals expected = new EntityTotals(2, dictionary);
+
+        //execute
+        add(new Random(7), 100_000, sketch, expected);
+
+        //verify
+        assertWithinBound(expected, sketch);
+    }
+
+    @Test
+    public void givenPartitionsWhenMergeThenSameGuaranteeAsSingleSketch() {
+
+        //setup
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY, 2);
+        SpaceSavingSketch other = new SpaceSavingSketch(CAPACITY, 2);
+        EntityTotals expected = new EntityTotals(2, dictionary);
+        add(new Random(13), 50_000, sketch, expected);
+        add(new Random(17), 50_000, other, expected);
+        SpaceSavingSketch copy = sketch.copy();
+
+        //execute
+        sketch.merge(other);
+
+        //verify
+        assertWithinBound(expected, sketch);
+        assertTrue(copy.getErrorBound().compareTo(sketch.getErrorBound()) <= 0);
+    }
+
+    @Test
+    public void givenBigDecimalValuesThenSameAsFixedPoint() {
+
+        //setup
+        SpaceSavingSketch sketch = new SpaceSavingSketch(3, 2);
+        SpaceSavingSketch bigSketch = new SpaceSavingSketch(3, 2);
+        Random random = new Random(19);
+
+        //execute
+        for (int i = 0; i < 1_000; i++) {
+
+            String entity = "E" + random.nextInt(10);
+            long unscaledValue = random.nextInt(1_000);
+
+            sketch.add(entity, unscaledValue, 2);
+            bigSketch.add(entity, BigDecimal.valueOf(unscaledValue, 2));
+        }
+
+        //verify
+        assertTotalsEqual(sketch.toEntityTotals(), bigSketch.toEntityTotals());
+        assertEquals(0, sketch.getErrorBound().compareTo(bigSketch.getErrorBound()));
+    }
+
+    /**
+     * Adds a stream where the entity of rank r has a weight proportional to 1/r, as a few counterparties usually make
+     * most of the volume
+     */
+    private void add(Random random, int count, SpaceSavingSketch sketch, EntityTotals expected) {
+
+        double[] cumulative = new double[ENTITIES];
+        double sum = 0;
+
+        for (int rank = 0; rank < ENTITIES; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+
+        for (int i = 0; i < count; i++) {
+
+            double point = random.nextDouble() * sum;
+            int entityId = 0;
+
+            while (cumulative[entityId] < point) {
+                entityId++;
+            }
+
+            long unscaledValue = 1 + random.nextInt(10_000);
+
+            sketch.add("E" + entityId, unscaledValue, 2);
+            expected.add(dictionary.intern("E" + entityId), unscaledValue, 2);
+        }
+    }
+
+    private static void assertWithinBound(EntityTotals expected, SpaceSavingSketch sketch) {
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int slot = 0; slot < expected.capacity(); slot++) {
+            if (expected.isUsed(slot)) {
+                total = total.add(expected.getTotal(slot));
+            }
+        }
+
+        BigDecimal bound = sketch.getErrorBound();
+        EntityTotals approximate = sketch.toEntityTotals();
+
+        assertEquals(CAPACITY, sketch.size());
+        assertTrue(bound.signum() > 0);
+        assertTrue(bound.multiply(BigDecimal.valueOf(CAPACITY)).compareTo(total) <= 0);
+
+        for (int slot = 0; slot < expected.capacity(); slot++) {
+
+            if (!expected.isUsed(slot)) {
+                continue;
+            }
+
+            String entity = expected.getEntity(slot);
+            BigDecimal trueTotal = expected.getTotal(slot);
+            int approximateSlot = approximate.find(approximate.getDictionary().find(entity));
+
+            if (approximateSlot < 0) {
+                //an entity which isn't tracked can't be a heavy hitter
+                assertTrue(trueTotal.compareTo(bound) <= 0);
+                assertNull(sketch.getError(entity));
+                continue;
+            }
+
+            BigDecimal estimate = approximate.getTotal(approximateSlot);
+
+            assertTrue(estimate.compareTo(trueTotal) >= 0);
+            assertTrue(estimate.subtract(sketch.getError(entity)).compareTo(trueTotal) <= 0);
+            assertTrue(sketch.getError(entity).compareTo(bound) <= 0);
+        }
+    }
+
+    private static void assertTotalsEqual(EntityTotals expected, EntityTotals actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int slot = 0; slot < expected.capacity(); slot++) {
+            if (expected.isUsed(slot)) {
+                int actualSlot = actual.find(actual.getDictionary().find(expected.getEntity(slot)));
+                assertEquals(0, expected.getTotal(slot).compareTo(actual.getTotal(actualSlot)));
+            }
+        }
+    }
+}
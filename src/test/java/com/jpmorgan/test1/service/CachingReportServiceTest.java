@@ -0,0 +1,146 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.CachingReportService}
+ *
+ * @author Vlad Constantinescu
+ */
+public class CachingReportServiceTest {
+
+    private static final int DAYS = 10;
+
+    private final ReportService reportService = new ReportService(NumericMode.FIXED_POINT, 2);
+
+    @Test
+    public void givenSameInstructionsWhenGenerateReportAgainThenEveryDayHit() {
+
+        //setup
+        CachingReportService service = new CachingReportService(reportService);
+        List<Instruction> instructions = generateInstructions(29);
+        List<String> first = service.generateReport(instructions);
+
+        //execute
+        List<String> second = service.generateReport(instructions);
+
+        //verify
+        assertEquals(reportService.generateReport(instructions), first);
+        assertEquals(first, second);
+        assertEquals(settlementDays(instructions), service.getStats().missCount());
+        assertEquals(settlementDays(instructions), service.getStats().hitCount());
+    }
+
+    @Test
+    public void givenReorderedInstructionsWhenGenerateReportThenEveryDayHit() {
+
+        //setup
+        CachingReportService service = new CachingReportService(reportService);
+        List<Instruction> instructions = generateInstructions(31);
+        service.generateReport(instructions);
+        List<Instruction> reordered = Lists.newArrayList(instructions);
+        Collections.shuffle(reordered, new Random(37));
+
+        //execute
+        List<String> report = service.generateReport(reordered);
+
+        //verify
+        assertEquals(reportService.generateReport(reordered), report);
+        assertEquals(settlementDays(instructions), service.getStats().hitCount());
+    }
+
+    @Test
+    public void givenInstructionAddedToOneDayWhenGenerateReportThenOnlyThatDayGenerated() throws IOException {
+
+        //setup
+        CachingReportService service = new CachingReportService(reportService);
+        List<Instruction> instructions = generateInstructions(41);
+        service.generateReport(instructions);
+        long days = settlementDays(instructions);
+        instructions.add(generateInstruction("E1", Operation.BUY, Currency.USD, new DateTime(2018, 6, 4, 0, 0), BigDecimal.ONE, BigDecimal.TEN, 1));
+        StringWriter out = new StringWriter();
+
+        //execute
+        service.writeReport(instructions, out);
+
+        //verify
+        assertEquals(String.join("\n", reportService.generateReport(instructions)) + "\n", out.toString());
+        assertEquals(days + 1, service.getStats().missCount());
+        assertEquals(days - 1, service.getStats().hitCount());
+    }
+
+    @Test
+    public void givenMoreLinesThanMaximumThenLeastRecentlyUsedDaysEvicted() {
+
+        //setup
+        CachingReportService service = new CachingReportService(reportService, 100);
+        List<Instruction> instructions = generateInstructions(43);
+
+        //execute
+        List<String> report = service.generateReport(instructions);
+
+        //verify
+        assertEquals(reportService.generateReport(instructions), report);
+        assertTrue(service.getStats().evictionCount() > 0);
+        assertTrue(service.size() < settlementDays(instructions));
+    }
+
+    @Test
+    public void givenCachedDaysWhenIndexThenSameTotalsAsInstructions() {
+
+        //setup
+        CachingReportService service = new CachingReportService(reportService);
+        List<Instruction> instructions = generateInstructions(47);
+        service.generateReport(instructions);
+        int firstDay = instructions.stream().mapToInt(Instruction::getSettlementDay).min().getAsInt();
+
+        //execute
+        BigDecimal total = service.index(instructions).getTotal(Operation.SELL, firstDay, firstDay + 2 * DAYS);
+
+        //verify
+        BigDecimal expected = BigDecimal.ZERO;
+        for (Instruction instruction : instructions) {
+            if (instruction.getOperation() == Operation.SELL) {
+                expected = expected.add(instruction.getValueInUSD());
+            }
+        }
+        assertEquals(0, expected.compareTo(total));
+        assertEquals(settlementDays(instructions), service.getStats().hitCount());
+    }
+
+    /**
+     * @return the number of distinct settlement dates, as the weekend instructions settle on the following Monday
+     */
+    private static long settlementDays(List<Instruction> instructions) {
+        return instructions.stream().mapToInt(Instruction::getSettlementDay).distinct().count();
+    }
+
+    /**
+     * @return instructions of up to DAYS different instruction dates
+     */
+    private static List<Instruction> generateInstructions(long seed) {
+
+        return new RandomInstructions(seed)
+                .withEntities(20)
+                .withDates(new DateTime(2018, 6, 4, 0, 0), DAYS)
+                .next(1_000);
+    }
+}
@@ -0,0 +1,252 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.io.InstructionSource;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.IngestionRuntime}
+ *
+ * @author Vlad Constantinescu
+ */
+public class IngestionRuntimeTest {
+
+    private static final String HEADER = "entity,operation,fx,currency,instructionDate,settlementDate,units,price\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenFileAndSocketSourcesWhenRunThenReportSameAsAllInstructionsAndEverySourceCompleted() throws Exception {
+
+        //setup
+        ReportService reportService = new ReportService(NumericMode.FIXED_POINT, 6);
+        List<Instruction> all = Lists.newArrayList();
+        List<InstructionSource> sources = Lists.newArrayList();
+        Random random = new Random(29);
+
+        for (int i = 0; i < 3; i++) {
+            Path file = folder.newFile("instructions" + i + ".csv").toPath();
+            Files.write(file, csv(random, 500, all).getBytes(StandardCharsets.UTF_8));
+            sources.add(InstructionSource.file(file));
+        }
+
+        String socketCsv = csv(random, 700, all);
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread serverThread = new Thread(() -> {
+            try (SocketChannel client = server.accept()) {
+                ByteBuffer bytes = ByteBuffer.wrap(socketCsv.getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    client.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serverThread.start();
+        sources.add(InstructionSource.socket((InetSocketAddress) server.getLocalAddress()));
+
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        //a small pool and small batches, so the sources have to wait for the aggregation
+        IngestionRuntime runtime = new IngestionRuntime.Builder()
+                .withReportService(reportService)
+                .withBatchSize(16)
+                .withPoolSize(2)
+                .withBufferSize(256)
+                .withSkipHeader(true)
+                .withListener((source, instructionCount, error) -> {
+                    assertNull(error);
+                    counts.put(source.getName(), instructionCount);
+                })
+                .build();
+
+        //execute
+        List<String> report = runtime.run(sources);
+
+        //verify
+        serverThread.join();
+        server.close();
+        assertEquals(reportService.generateReport(all), report);
+        assertEquals(4, counts.size());
+        assertEquals(700L, (long) counts.get(sources.get(3).getName()));
+        assertEquals(500L, (long) counts.get(sources.get(0).getName()));
+    }
+
+    @Test(timeout = 30_000)
+    public void givenSlowSocketSourceAndPoolOfOneBatchWhenRunThenOtherSourcesNotBlocked() throws Exception {
+
+        //setup
+        List<Instruction> all = Lists.newArrayList();
+        Random random = new Random(37);
+        Path file = folder.newFile("fast.csv").toPath();
+        Files.write(file, csv(random, 300, all).getBytes(StandardCharsets.UTF_8));
+        String[] slowLines = csv(random, 20, all).split("(?<=\n)");
+        CountDownLatch fastCompleted = new CountDownLatch(1);
+
+        ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread serverThread = new Thread(() -> {
+            try (SocketChannel client = server.accept()) {
+                //the header and a first instruction, then nothing until the fast source has been drained
+                write(client, slowLines[0] + slowLines[1]);
+                fastCompleted.await();
+                for (int i = 2; i < slowLines.length; i++) {
+                    write(client, slowLines[i]);
+                }
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        serverThread.start();
+        InstructionSource fast = InstructionSource.file(file);
+        List<InstructionSource> sources = Lists.newArrayList(InstructionSource.socket((InetSocketAddress) server.getLocalAddress()), fast);
+
+        IngestionRuntime runtime = new IngestionRuntime.Builder()
+                .withBatchSize(64)
+                .withPoolSize(1)
+                .withSkipHeader(true)
+                .withListener((source, instructionCount, error) -> {
+                    assertNull(error);
+                    if (source == fast) {
+                        fastCompleted.countDown();
+                    }
+                })
+                .build();
+
+        //execute
+        List<String> report = runtime.run(sources);
+
+        //verify
+        serverThread.join();
+        server.close();
+        assertEquals(new ReportService().generateReport(all), report);
+    }
+
+    @Test
+    public void givenFailingSourceWhenRunThenErrorReportedAndOtherSourcesAggregated() throws Exception {
+
+        //setup
+        List<Instruction> all = Lists.newArrayList();
+        Path good = folder.newFile("good.csv").toPath();
+        Path bad = folder.newFile("bad.csv").toPath();
+        Files.write(good, csv(new Random(31), 100, all).getBytes(StandardCharsets.UTF_8));
+        Files.write(bad, (HEADER + "foo,HOLD,0.5,SGP,2016-01-02,2016-01-04,200,100.25\n").getBytes(StandardCharsets.UTF_8));
+        Map<String, Throwable> errors = new ConcurrentHashMap<>();
+
+        IngestionRuntime runtime = new IngestionRuntime.Builder()
+                .withSkipHeader(true)
+                .withListener((source, instructionCount, error) -> {
+                    if (error != null) {
+                        errors.put(source.getName(), error);
+                    }
+                })
+                .build();
+
+        //execute
+        List<String> report = runtime.run(Lists.newArrayList(InstructionSource.file(good), InstructionSource.file(bad)));
+
+        //verify
+        assertEquals(new ReportService().generateReport(all), report);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(bad.toString()) instanceof IOException);
+    }
+
+    @Test
+    public void givenSourceThrowingErrorWhenRunThenReportedAsFailedAndNotRethrown() throws Exception {
+
+        //setup
+        Map<String, Throwable> errors = new ConcurrentHashMap<>();
+        InstructionSource failing = new InstructionSource() {
+
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public ReadableByteChannel open() {
+                throw new AssertionError("not an exception");
+            }
+        };
+
+        IngestionRuntime runtime = new IngestionRuntime.Builder()
+                .withListener((source, instructionCount, error) -> {
+                    if (error != null) {
+                        errors.put(source.getName(), error);
+                    }
+                })
+                .build();
+
+        List<Throwable> uncaught = new CopyOnWriteArrayList<>();
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, error) -> uncaught.add(error));
+
+        //execute
+        try {
+            runtime.run(Lists.newArrayList(failing));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+
+        //verify
+        assertTrue(errors.get("failing") instanceof AssertionError);
+        assertTrue(uncaught.isEmpty());
+    }
+
+    private static void write(SocketChannel client, String text) throws IOException {
+
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            client.write(bytes);
+        }
+    }
+
+    private static String csv(Random random, int count, List<Instruction> all) {
+
+        StringBuilder csv = new StringBuilder(HEADER);
+
+        for (int i = 0; i < count; i++) {
+
+            DateTime instructionDate = new DateTime("2018-06-20").plusDays(random.nextInt(7));
+            Operation operation = random.nextBoolean() ? Operation.BUY : Operation.SELL;
+            String entity = "E" + random.nextInt(30);
+            BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(10_000), 2);
+            long units = 1 + random.nextInt(100);
+
+            all.add(generateInstruction(entity, operation, Currency.GBP, instructionDate, new BigDecimal("1.3"), price, units));
+            csv.append(entity).append(',').append(operation).append(",1.3,GBP,").append(instructionDate.toString("yyyy-MM-dd"))
+                    .append(',').append(instructionDate.toString("yyyy-MM-dd")).append(',').append(units).append(',').append(price).append('\n');
+        }
+
+        return csv.toString();
+    }
+}
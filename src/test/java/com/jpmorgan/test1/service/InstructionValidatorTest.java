@@ -0,0 +1,94 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.model.ValidationCode;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.InstructionValidator}
+ *
+ * @author Vlad Constantinescu
+ */
+public class InstructionValidatorTest {
+
+    @Test
+    public void givenTradeSentAgainWhenValidateThenDuplicate() {
+
+        //setup
+        InstructionValidator validator = new InstructionValidator(100);
+
+        //execute
+        ValidationCode first = validator.validate(builder("T1"));
+        ValidationCode again = validator.validate(builder("T1"));
+        ValidationCode other = validator.validate(builder("T2"));
+
+        //verify
+        assertEquals(ValidationCode.VALID, first);
+        assertEquals(ValidationCode.DUPLICATE, again);
+        assertEquals(ValidationCode.VALID, other);
+        assertEquals(2, validator.getCount(ValidationCode.VALID));
+        assertEquals(1, validator.getCount(ValidationCode.DUPLICATE));
+    }
+
+    @Test
+    public void givenMalformedInstructionWhenBuildThenRejectedAndNotRemembered() {
+
+        //setup
+        InstructionValidator validator = new InstructionValidator(100);
+
+        //execute
+        Instruction rejected = validator.build(builder("T1").withFx(null));
+        Instruction corrected = validator.build(builder("T1"));
+
+        //verify
+        assertNull(rejected);
+        assertNotNull(corrected);
+        assertEquals(1, validator.getCount(ValidationCode.MISSING_FX));
+        assertEquals(1, validator.getCount(ValidationCode.VALID));
+    }
+
+    @Test
+    public void givenMoreTradesThanExpectedThenOnlyRealDuplicatesDropped() {
+
+        //setup
+        InstructionValidator validator = new InstructionValidator(100);
+        List<Instruction> instructions = Lists.newArrayList();
+        for (int i = 0; i < 10_000; i++) {
+            instructions.add(builder("T" + i).build());
+        }
+        instructions.add(builder("T42").build());
+        instructions.add(builder(null).build());
+        instructions.add(builder(null).build());
+
+        //execute
+        List<Instruction> accepted = validator.filter(instructions);
+
+        //verify
+        assertEquals(10_002, accepted.size());
+        assertEquals(1, validator.getCount(ValidationCode.DUPLICATE));
+    }
+
+    private static Instruction.Builder builder(String tradeId) {
+
+        return new Instruction.Builder()
+                .withTradeId(tradeId)
+                .withEntity("foo")
+                .withOperation(Operation.SELL)
+                .withCurrency(Currency.EUR)
+                .withInstructionDate(new DateTime("2018-06-22"))
+                .withUnits(10)
+                .withPrice(BigDecimal.TEN)
+                .withFx(new BigDecimal("1.17"));
+    }
+}
@@ -0,0 +1,168 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.io.ReportSnapshot;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.FxRateTable;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.JournaledReportService}
+ *
+ * @author Vlad Constantinescu
+ */
+public class JournaledReportServiceTest {
+
+    private static final int SEGMENT_SIZE = 70_000;
+    private static final long SNAPSHOT_INTERVAL = 1_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ReportService reportService = new ReportService(NumericMode.FIXED_POINT, 6);
+    private List<Instruction> instructions;
+
+    @Before
+    public void setUp() {
+
+        instructions = new RandomInstructions(37)
+                .withEntities(100)
+                .withCurrencies(Currency.EUR)
+                .withDates(new DateTime("2018-06-18"), 10)
+                .withFx(random -> new BigDecimal("1.17"))
+                .withPrice(random -> BigDecimal.valueOf(random.nextInt(100_000), 2))
+                .next(3_500);
+    }
+
+    @Test
+    public void givenRestartWhenOpenThenOnlyTailReplayedAndReportSameAsBeforeRestart() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+            for (Instruction instruction : instructions) {
+                service.add(instruction);
+            }
+        }
+
+        //execute
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+
+            //verify
+            assertEquals(500, service.getReplayedCount());
+            assertEquals(3_500, service.getInstructionCount());
+            assertEquals(reportService.generateReport(instructions), service.generateReport());
+        }
+    }
+
+    @Test
+    public void givenCurrencyBreakdownWhenRestartThenCurrencyTotalsRestoredFromSnapshot() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+        ReportService currencyService = new ReportService.Builder().withNumericMode(NumericMode.FIXED_POINT).withScale(6).withCurrencyBreakdown().build();
+
+        try (JournaledReportService service = new JournaledReportService(directory, currencyService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+            for (Instruction instruction : instructions) {
+                service.add(instruction);
+            }
+        }
+
+        //execute
+        try (JournaledReportService service = new JournaledReportService(directory, currencyService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+
+            //verify
+            assertEquals(500, service.getReplayedCount());
+            assertEquals(currencyService.generateReport(instructions), service.generateReport());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenReportServiceWithFxRateTableWhenOpenThenException() throws IOException {
+
+        //setup
+        ReportService fxService = new ReportService.Builder().withFxRateTable(new FxRateTable.Builder().build()).build();
+
+        //execute
+        new JournaledReportService(folder.getRoot().toPath(), fxService, SEGMENT_SIZE, SNAPSHOT_INTERVAL);
+    }
+
+    @Test
+    public void givenCorruptedLatestSnapshotWhenOpenThenPreviousSnapshotAndLongerTailUsed() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+            for (Instruction instruction : instructions) {
+                service.add(instruction);
+            }
+        }
+
+        List<Path> snapshots;
+        try (Stream<Path> files = Files.list(directory)) {
+            snapshots = files.filter(path -> path.toString().endsWith(".snap")).sorted().collect(Collectors.toList());
+        }
+        Path latest = snapshots.get(snapshots.size() - 1);
+        byte[] bytes = Files.readAllBytes(latest);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(latest, bytes);
+
+        //execute
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+
+            //verify
+            assertEquals(2, snapshots.size());
+            assertEquals(1_500, service.getReplayedCount());
+            assertEquals(reportService.generateReport(instructions), service.generateReport());
+        }
+    }
+
+    @Test
+    public void givenSnapshotAheadOfJournalWhenOpenThenPreviousSnapshotUsed() throws IOException {
+
+        //setup
+        Path directory = folder.getRoot().toPath();
+
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+            for (Instruction instruction : instructions) {
+                service.add(instruction);
+            }
+        }
+
+        List<Path> snapshots;
+        try (Stream<Path> files = Files.list(directory)) {
+            snapshots = files.filter(path -> path.toString().endsWith(".snap")).sorted().collect(Collectors.toList());
+        }
+        //as after a crash of the machine losing the journal records the latest snapshot covers
+        Path latest = snapshots.get(snapshots.size() - 1);
+        ReportSnapshot snapshot = ReportSnapshot.read(latest, NumericMode.FIXED_POINT, 6);
+        new ReportSnapshot(4_000, snapshot.getDailyAggregates()).write(latest, reportService.getScale());
+
+        //execute
+        try (JournaledReportService service = new JournaledReportService(directory, reportService, SEGMENT_SIZE, SNAPSHOT_INTERVAL)) {
+
+            //verify
+            assertEquals(1_500, service.getReplayedCount());
+            assertEquals(3_500, service.getInstructionCount());
+            assertEquals(reportService.generateReport(instructions), service.generateReport());
+        }
+    }
+}
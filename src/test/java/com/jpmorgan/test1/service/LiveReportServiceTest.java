@@ -0,0 +1,99 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.LiveReportService}
+ *
+ * @author Vlad Constantinescu
+ */
+public class LiveReportServiceTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int PAIRS_PER_PRODUCER = 2_000;
+
+    @Test
+    public void givenConcurrentProducersWhenReportDuringIngestThenSnapshotsConsistentAndFinalReportSameAsSequential() throws Exception {
+
+        //setup
+        ReportService reportService = new ReportService(NumericMode.FIXED_POINT, 6);
+        LiveReportService liveService = new LiveReportService(reportService, PRODUCERS);
+        int day = EpochDays.of(2018, 6, 25);
+        List<Instruction> all = Lists.newArrayList();
+        List<List<List<Instruction>>> pairsByProducer = Lists.newArrayList();
+        Random random = new Random(19);
+
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+
+            List<List<Instruction>> pairs = Lists.newArrayList();
+
+            for (int i = 0; i < PAIRS_PER_PRODUCER; i++) {
+                //a buy and a sell of the same value, added together, so every snapshot must have equal daily totals
+                BigDecimal price = BigDecimal.valueOf(1 + random.nextInt(1_000));
+                List<Instruction> pair = Lists.newArrayList(
+                        generateInstruction("E" + random.nextInt(50), Operation.BUY, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, price, 1),
+                        generateInstruction("E" + random.nextInt(50), Operation.SELL, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, price, 1));
+                pairs.add(pair);
+                all.addAll(pair);
+            }
+
+            pairsByProducer.add(pairs);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = Lists.newArrayList();
+
+        //execute
+        for (List<List<Instruction>> pairs : pairsByProducer) {
+            producers.add(executor.submit(() -> {
+                start.await();
+                pairs.forEach(liveService::addAll);
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        boolean done = false;
+        while (!done) {
+            done = producers.stream().allMatch(Future::isDone);
+
+            //verify
+            DailyAggregate snapshot = liveService.snapshot(day);
+            if (snapshot != null) {
+                assertEquals(snapshot.getIncomingValue(), snapshot.getOutgoingValue());
+            }
+        }
+
+        for (Future<?> producer : producers) {
+            producer.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        assertEquals(reportService.generateReport(all), liveService.generateReport());
+        assertNull(liveService.snapshot(day + 1));
+    }
+}
@@ -0,0 +1,98 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Ranking;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.ParallelReportAggregator}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ParallelReportAggregatorTest {
+
+    private ForkJoinPool pool;
+    private List<Instruction> instructions;
+
+    @Before
+    public void setUp() {
+
+        pool = new ForkJoinPool(4);
+        //few distinct values, so there are a lot of ties in the rankings
+        instructions = new RandomInstructions(7)
+                .withEntities(200)
+                .withCurrencies(Currency.values())
+                .withDates(new DateTime("2018-06-01"), 5)
+                .withFx(random -> BigDecimal.valueOf(1 + random.nextInt(3)))
+                .withPrice(random -> BigDecimal.TEN)
+                .withUnits(random -> 1 + random.nextInt(3))
+                .next(5_000);
+    }
+
+    @After
+    public void tearDown() {
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void givenLargeDaysWhenAggregateInParallelThenAggregatesSameAsSequential() {
+
+        //setup
+        ReportAggregator sequential = new ReportAggregator(NumericMode.FIXED_POINT, 6);
+        sequential.addAll(instructions);
+        //a low threshold so every day is also partitioned by entity
+        ParallelReportAggregator parallel = new ParallelReportAggregator(pool, NumericMode.FIXED_POINT, 6, 100);
+
+        //execute
+        List<DailyAggregate> actual = parallel.aggregate(instructions);
+
+        //verify
+        List<DailyAggregate> expected = sequential.snapshot();
+        assertEquals(expected.size(), actual.size());
+
+        for (int day = 0; day < expected.size(); day++) {
+            assertEquals(expected.get(day).getSettlementDay(), actual.get(day).getSettlementDay());
+            assertEquals(expected.get(day).getIncomingValue(), actual.get(day).getIncomingValue());
+            assertEquals(expected.get(day).getOutgoingValue(), actual.get(day).getOutgoingValue());
+            assertRankingsEqual(expected.get(day).getIncomingRankings(), actual.get(day).getIncomingRankings());
+            assertRankingsEqual(expected.get(day).getOutgoingRankings(), actual.get(day).getOutgoingRankings());
+        }
+    }
+
+    @Test
+    public void givenInstructionsWhenGenerateParallelReportThenReportSameAsSequential() {
+
+        //setup
+        ReportService service = new ReportService();
+
+        //execute
+        List<String> report = service.generateParallelReport(instructions, pool);
+
+        //verify
+        assertEquals(service.generateReport(instructions), report);
+    }
+
+    private static void assertRankingsEqual(List<Ranking> expected, List<Ranking> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.get(rank).getEntity(), actual.get(rank).getEntity());
+            assertEquals(expected.get(rank).getTotalValue(), actual.get(rank).getTotalValue());
+        }
+    }
+}
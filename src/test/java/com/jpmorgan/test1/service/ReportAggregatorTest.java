@@ -0,0 +1,211 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.FxRateTable;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import com.jpmorgan.test1.model.Ranking;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.ReportAggregator}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ReportAggregatorTest {
+
+    private ReportAggregator aggregator;
+    private ReportService service;
+
+    @Before
+    public void setUp() {
+
+        aggregator = new ReportAggregator();
+        service = new ReportService();
+    }
+
+    @Test
+    public void givenInstructionsAddedOneByOneThenReportSameAsForWholeList() {
+
+        //setup
+        List<Instruction> instructions = Lists.newArrayList(
+                generateInstruction("BUY_E", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 100),
+                generateInstruction("SEL_E", Operation.SELL, Currency.USD, new DateTime("2018-06-22"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 200),
+                generateInstruction("BUY_E", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 300));
+
+        //execute
+        instructions.forEach(aggregator::add);
+
+        //verify
+        assertEquals(service.generateReport(instructions), service.generateReport(aggregator));
+    }
+
+    @Test
+    public void givenSnapshotWhenMoreInstructionsAddedThenSnapshotUnchanged() {
+
+        //setup
+        aggregator.add(generateInstruction("BUY_E", Operation.BUY, Currency.USD, new DateTime("2018-06-22"), BigDecimal.ONE, BigDecimal.TEN, 100));
+
+        //execute
+        List<DailyAggregate> snapshot = aggregator.snapshot();
+        aggregator.addAll(Lists.newArrayList(
+                generateInstruction("BUY_E", Operation.BUY, Currency.USD, new DateTime("2018-06-22"), BigDecimal.ONE, BigDecimal.TEN, 100),
+                generateInstruction("SEL_E", Operation.SELL, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, BigDecimal.TEN, 100)));
+
+        //verify
+        assertEquals(1, snapshot.size());
+        assertEquals(0, new BigDecimal("1000").compareTo(snapshot.get(0).getIncomingValue()));
+        assertEquals(0, new BigDecimal("1000").compareTo(snapshot.get(0).getIncomingRankings().get(0).getTotalValue()));
+
+        List<DailyAggregate> current = aggregator.snapshot();
+        assertEquals(2, current.size());
+        assertEquals(0, new BigDecimal("2000").compareTo(current.get(0).getIncomingValue()));
+        assertEquals(0, new BigDecimal("1000").compareTo(current.get(1).getOutgoingValue()));
+    }
+
+    @Test
+    public void givenDailyAggregatesWhenMoreInstructionsAddedThenAggregatesUpdatedInPlace() {
+
+        //setup
+        aggregator.add(generateInstruction("BUY_E", Operation.BUY, Currency.USD, new DateTime("2018-06-22"), BigDecimal.ONE, BigDecimal.TEN, 100));
+
+        //execute
+        List<DailyAggregate> dailyAggregates = aggregator.getDailyAggregates();
+        aggregator.add(generateInstruction("BUY_E", Operation.BUY, Currency.USD, new DateTime("2018-06-22"), BigDecimal.ONE, BigDecimal.TEN, 100));
+
+        //verify
+        assertEquals(1, dailyAggregates.size());
+        assertEquals(0, new BigDecimal("2000").compareTo(dailyAggregates.get(0).getIncomingValue()));
+    }
+
+    @Test
+    public void givenInstructionsOutOfOrderThenSnapshotInChronologicalOrder() {
+
+        //setup
+        String[] dates = {"2018-06-22", "2018-01-02", "2019-03-04", "2018-06-21", "2016-02-29", "2018-06-22"};
+
+        //execute
+        for (String date : dates) {
+            aggregator.add(generateInstruction("E", Operation.BUY, Currency.USD, new DateTime(date), BigDecimal.ONE, BigDecimal.ONE, 1));
+        }
+
+        //verify
+        List<DailyAggregate> snapshot = aggregator.snapshot();
+        assertEquals(5, snapshot.size());
+        assertEquals("2016-02-29", EpochDays.format(snapshot.get(0).getSettlementDay()));
+        assertEquals("2018-01-02", EpochDays.format(snapshot.get(1).getSettlementDay()));
+        assertEquals("2018-06-21", EpochDays.format(snapshot.get(2).getSettlementDay()));
+        assertEquals("2018-06-22", EpochDays.format(snapshot.get(3).getSettlementDay()));
+        assertEquals(0, new BigDecimal("2").compareTo(snapshot.get(3).getIncomingValue()));
+        assertEquals("2019-03-04", EpochDays.format(snapshot.get(4).getSettlementDay()));
+    }
+
+    @Test
+    public void givenRandomInstructionsWhenFixedPointModeThenAggregatesIdenticalToBigDecimalMode() {
+
+        //setup
+        int scale = 6;
+        ReportAggregator fixedPointAggregator = new ReportAggregator(NumericMode.FIXED_POINT, scale);
+        //a few of the prices have more decimals than the scale, and a few of the units overflow the long, both using the BigDecimal fallback
+        RandomInstructions instructions = new RandomInstructions(42)
+                .withCurrencies(Currency.values())
+                .withDates(new DateTime("2018-06-01"), 10)
+                .withFx(random -> BigDecimal.valueOf(random.nextInt(100_000), 4))
+                .withPrice(random -> BigDecimal.valueOf(random.nextInt(1_000_000), random.nextInt(100) == 0 ? 8 : 2))
+                .withUnits(random -> random.nextInt(500) == 0 ? Long.MAX_VALUE / 3 : 1 + random.nextInt(10_000));
+
+        for (int i = 0; i < 10_000; i++) {
+
+            Instruction instruction = instructions.next();
+
+            aggregator.add(instruction);
+            fixedPointAggregator.add(instruction);
+        }
+
+        //execute
+        List<DailyAggregate> expected = aggregator.snapshot();
+        List<DailyAggregate> actual = fixedPointAggregator.snapshot();
+
+        //verify
+        assertEquals(expected.size(), actual.size());
+
+        for (int day = 0; day < expected.size(); day++) {
+            //the fixed-point totals are exact, so they are compared without rounding
+            assertEquals(0, expected.get(day).getIncomingValue().compareTo(actual.get(day).getIncomingValue()));
+            assertEquals(0, expected.get(day).getOutgoingValue().compareTo(actual.get(day).getOutgoingValue()));
+            assertRankingsIdentical(expected.get(day).getIncomingRankings(), actual.get(day).getIncomingRankings());
+            assertRankingsIdentical(expected.get(day).getOutgoingRankings(), actual.get(day).getOutgoingRankings());
+        }
+    }
+
+    private static void assertRankingsIdentical(List<Ranking> expected, List<Ranking> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.get(rank).getEntity(), actual.get(rank).getEntity());
+            assertEquals(0, expected.get(rank).getTotalValue().compareTo(actual.get(rank).getTotalValue()));
+        }
+    }
+
+    @Test
+    public void givenCorrectedFxRatesWhenRevalueThenSameReportAsAggregatingAtCorrectedRates() {
+
+        for (NumericMode numericMode : NumericMode.values()) {
+
+            //setup
+            int firstDay = EpochDays.of(2018, 6, 1);
+            FxRateTable.Builder ratesBuilder = new FxRateTable.Builder();
+            for (Currency currency : Currency.values()) {
+                ratesBuilder.withRate(currency, firstDay - 10, new BigDecimal("1.25"));
+            }
+            ratesBuilder.withRate(Currency.EUR, firstDay + 5, new BigDecimal("1.1712"));
+            FxRateTable rates = ratesBuilder.build();
+            FxRateTable correctedRates = new FxRateTable.Builder(rates)
+                    .withRate(Currency.EUR, firstDay + 5, new BigDecimal("1.17125"))
+                    .withRate(Currency.GBP, firstDay + 12, new BigDecimal("1.3"))
+                    .withRate(Currency.AED, firstDay - 10, new BigDecimal("0.2723"))
+                    .build();
+
+            List<Instruction> instructions = new RandomInstructions(17)
+                    .withCurrencies(Currency.values())
+                    .withDates(new DateTime(2018, 6, 1, 0, 0), 20)
+                    .withPrice(random -> BigDecimal.valueOf(random.nextInt(100_000), 2))
+                    .withUnits(random -> 1 + random.nextInt(1_000))
+                    .next(2_000);
+
+            ReportService service = new ReportService.Builder().withNumericMode(numericMode).withFxRateTable(correctedRates).build();
+            ReportAggregator aggregator = new ReportAggregator(numericMode, FixedPoint.DEFAULT_SCALE, rates);
+
+            //execute
+            aggregator.addAll(instructions.subList(0, 1_000));
+            aggregator.revalue(correctedRates);
+            aggregator.addAll(instructions.subList(1_000, instructions.size()));
+
+            //verify
+            assertEquals(service.generateReport(instructions), service.generateReport(aggregator));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenOwnFxWhenRevalueThenException() {
+
+        //execute
+        aggregator.revalue(new FxRateTable.Builder().build());
+    }
+
+}
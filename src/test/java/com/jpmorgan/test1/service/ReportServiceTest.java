@@ -2,12 +2,18 @@ package com.jpmorgan.test1.service;
 
 import com.google.common.collect.Lists;
 import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.EpochDays;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.FxRateTable;
 import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
 import com.jpmorgan.test1.model.Operation;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -105,4 +111,127 @@ public class ReportServiceTest {
         assertEquals("BUY_E is rank 1 (total 7500.000000)", report.get(6));
         assertEquals("Total outgoing value: 0.000000", report.get(7));
     }
+
+    @Test
+    public void givenInstructionBatchWhenGenerateReportThenReportSameAsForInstructions() {
+
+        //setup
+        List<Instruction> instructions = Lists.newArrayList(
+                generateInstruction("BUY_E", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 100),
+                generateInstruction("SEL_E", Operation.SELL, Currency.USD, new DateTime("2018-06-22"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 200),
+                generateInstruction("BUY_F", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), new BigDecimal("0.22"), new BigDecimal("150.5"), 450),
+                generateInstruction("BUY_E", Operation.BUY, Currency.SGP, new DateTime("2018-06-22"), BigDecimal.ONE, new BigDecimal("0.000000001"), 3));
+
+        InstructionBatch batch = InstructionBatch.allocateDirect(instructions.size(), FixedPoint.DEFAULT_SCALE);
+        instructions.forEach(batch::append);
+
+        //execute
+        List<String> report = service.generateReport(batch);
+
+        //verify
+        assertEquals(service.generateReport(instructions), report);
+    }
+
+    @Test
+    public void givenTopKWhenGenerateReportThenOnlyBestEntitiesRanked() {
+
+        //setup
+        ReportService topService = new ReportService.Builder().withTopK(1).build();
+        Instruction instruction1 = generateInstruction("buy_entity1", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 100);
+        Instruction instruction2 = generateInstruction("buy_entity2", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 200);
+
+        //execute
+        List<String> report = topService.generateReport(Lists.newArrayList(instruction1, instruction2));
+
+        //verify
+        assertEquals(4, report.size());
+        assertEquals("Processing date: 2018-06-24", report.get(0));
+        assertEquals("Total incoming value: 22500.000000", report.get(1));
+        assertEquals("buy_entity2 is rank 1 (total 15000.000000)", report.get(2));
+        assertEquals("Total outgoing value: 0.000000", report.get(3));
+    }
+
+    @Test
+    public void givenApproximateRankingWhenGenerateReportThenHeavyHittersRankedWithErrorBound() {
+
+        //setup
+        ReportService approximateService = new ReportService.Builder().withApproximateRanking(2).build();
+        Instruction instruction1 = generateInstruction("buy_entity1", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 100);
+        Instruction instruction2 = generateInstruction("buy_entity2", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 200);
+        Instruction instruction3 = generateInstruction("buy_entity3", Operation.BUY, Currency.AED, new DateTime("2018-06-23"), BigDecimal.valueOf(1.5f), BigDecimal.valueOf(50), 10);
+
+        //execute
+        List<String> report = approximateService.generateReport(Lists.newArrayList(instruction1, instruction2, instruction3));
+
+        //verify
+        assertEquals(7, report.size());
+        assertEquals("Total incoming value: 23250.000000", report.get(1));
+        assertEquals("Approximate rankings, entity totals overestimated by at most 8250.000000", report.get(2));
+        assertEquals("buy_entity2 is rank 1 (total 15000.000000)", report.get(3));
+        //buy_entity3 took the counter of buy_entity1, and inherited its total
+        assertEquals("buy_entity3 is rank 2 (total 8250.000000)", report.get(4));
+        assertEquals("Total outgoing value: 0.000000", report.get(5));
+        assertEquals("Approximate rankings, entity totals overestimated by at most 0.000000", report.get(6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenApproximateRankingAndFxRateTableWhenBuildThenException() {
+
+        //execute
+        new ReportService.Builder().withApproximateRanking(10).withFxRateTable(new FxRateTable.Builder().build()).build();
+    }
+
+    @Test
+    public void givenCurrencyBreakdownAndReportingCurrencyWhenGenerateReportThenViewsFromSamePass() {
+
+        //setup
+        int day = EpochDays.toEpochDay(new DateTime("2018-06-25"));
+        FxRateTable rates = new FxRateTable.Builder().withRate(Currency.EUR, day, new BigDecimal("1.25")).build();
+        ReportService currencyService = new ReportService.Builder()
+                .withCurrencyBreakdown()
+                .withReportingCurrencies(rates, Currency.EUR)
+                .build();
+        Instruction instruction1 = generateInstruction("buy_entity1", Operation.BUY, Currency.EUR, new DateTime("2018-06-25"), new BigDecimal("1.25"), BigDecimal.valueOf(50), 100);
+        Instruction instruction2 = generateInstruction("buy_entity2", Operation.BUY, Currency.USD, new DateTime("2018-06-25"), BigDecimal.ONE, BigDecimal.valueOf(10), 100);
+
+        //execute
+        List<String> report = currencyService.generateReport(Lists.newArrayList(instruction1, instruction2));
+
+        //verify
+        assertEquals(11, report.size());
+        assertEquals("Total incoming value: 7250.000000", report.get(1));
+        assertEquals("Incoming value by currency: AED 0.000000, EUR 6250.000000, GBP 0.000000, SAR 0.000000, SGP 0.000000, USD 1000.000000", report.get(2));
+        assertEquals("Total incoming value in EUR: 5800.000000", report.get(3));
+        assertEquals("Incoming value in EUR by currency: AED 0.000000, EUR 5000.000000, GBP 0.000000, SAR 0.000000, SGP 0.000000, USD 800.000000", report.get(4));
+        assertEquals("buy_entity1 is rank 1 (total 6250.000000)", report.get(5));
+        assertEquals("Total outgoing value: 0.000000", report.get(7));
+        assertEquals("Total outgoing value in EUR: 0.000000", report.get(9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenReportingCurrencyWithoutRateTableWhenBuildThenException() {
+
+        //execute
+        new ReportService.Builder().withReportingCurrencies(null, Currency.EUR);
+    }
+
+    @Test
+    public void givenInstructionsWhenWriteReportThenSameLinesAsGenerateReport() throws IOException {
+
+        //setup
+        Instruction instruction1 = generateInstruction("buy_entity", Operation.BUY, Currency.AED, new DateTime("2018-06-22"), new BigDecimal("0.2723"), new BigDecimal("100.125"), 3);
+        Instruction instruction2 = generateInstruction("sell_entity", Operation.SELL, Currency.USD, new DateTime("2018-06-23"), BigDecimal.ONE, new BigDecimal("0.0000005"), 1);
+        Instruction instruction3 = generateInstruction(null, Operation.SELL, Currency.USD, new DateTime("2018-06-23"), BigDecimal.ONE, new BigDecimal("12345678901.99"), 1000);
+        List<Instruction> instructions = Lists.newArrayList(instruction1, instruction2, instruction3);
+        StringWriter out = new StringWriter();
+
+        //execute
+        service.writeReport(instructions, out);
+
+        //verify
+        assertEquals(String.join("\n", service.generateReport(instructions)) + "\n", out.toString());
+        assertEquals("Total incoming value: 81.792113", service.generateReport(instructions).get(1));
+        assertEquals("sell_entity is rank 2 (total 0.000001)", service.generateReport(instructions).get(8));
+        assertEquals("null is rank 1 (total 12345678901990.000000)", service.generateReport(instructions).get(7));
+    }
 }
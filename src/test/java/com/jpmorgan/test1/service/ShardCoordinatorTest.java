@@ -0,0 +1,182 @@
+package com.jpmorgan.test1.service;
+
+import com.google.common.collect.Lists;
+import com.jpmorgan.test1.helper.InstructionHelper.RandomInstructions;
+import com.jpmorgan.test1.io.ReportPartial;
+import com.jpmorgan.test1.model.Currency;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Operation;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.jpmorgan.test1.helper.InstructionHelper.generateInstruction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.ShardCoordinator}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ShardCoordinatorTest {
+
+    private static final int PARTITIONS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void givenPartialsDroppedInDirectoryWhenCollectThenSameReportAsSingleNode() throws Exception {
+
+        for (NumericMode numericMode : NumericMode.values()) {
+
+            //setup
+            ReportService reportService = new ReportService(numericMode, 2);
+            List<Instruction> instructions = generateInstructions();
+            Path directory = folder.newFolder().toPath();
+            ShardCoordinator coordinator = new ShardCoordinator(reportService, PARTITIONS);
+
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                ShardWorker worker = new ShardWorker(reportService, partition, PARTITIONS);
+                worker.addAll(instructions);
+                worker.writeTo(directory);
+            }
+
+            //execute
+            coordinator.collect(directory, 10_000);
+
+            //verify
+            assertTrue(coordinator.isComplete());
+            assertEquals(reportService.generateReport(instructions), coordinator.generateReport());
+        }
+    }
+
+    @Test
+    public void givenPartialsSentToSocketWhenCollectThenSameReportAsSingleNode() throws Exception {
+
+        //setup
+        ReportService reportService = new ReportService(NumericMode.FIXED_POINT, 2);
+        List<Instruction> instructions = generateInstructions();
+        ShardCoordinator coordinator = new ShardCoordinator(reportService, PARTITIONS);
+
+        try (ServerSocket server = new ServerSocket(0)) {
+
+            //execute
+            CompletableFuture<Void> collected = CompletableFuture.runAsync(() -> {
+                try {
+                    coordinator.collect(server, 10_000);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            for (int partition = PARTITIONS - 1; partition >= 0; partition--) {
+                ShardWorker worker = new ShardWorker(reportService, partition, PARTITIONS);
+                worker.addAll(instructions);
+                worker.sendTo(new InetSocketAddress("localhost", server.getLocalPort()));
+            }
+
+            collected.get();
+        }
+
+        //verify
+        assertEquals(reportService.generateReport(instructions), coordinator.generateReport());
+    }
+
+    @Test
+    public void givenCurrencyBreakdownWhenCollectThenSameCurrencyTotalsAsSingleNode() throws Exception {
+
+        //setup
+        ReportService reportService = new ReportService.Builder().withNumericMode(NumericMode.FIXED_POINT).withScale(2).withCurrencyBreakdown().build();
+        List<Instruction> instructions = generateInstructions();
+        Path directory = folder.newFolder().toPath();
+        ShardCoordinator coordinator = new ShardCoordinator(reportService, PARTITIONS);
+
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            ShardWorker worker = new ShardWorker(reportService, partition, PARTITIONS);
+            worker.addAll(instructions);
+            worker.writeTo(directory);
+        }
+
+        //execute
+        coordinator.collect(directory, 10_000);
+
+        //verify
+        assertEquals(reportService.generateReport(instructions), coordinator.generateReport());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void givenSamePartitionTwiceWhenAcceptThenException() {
+
+        //setup
+        ShardCoordinator coordinator = new ShardCoordinator(new ReportService(), PARTITIONS);
+        coordinator.accept(new ReportPartial(1, PARTITIONS, Lists.newArrayList()));
+
+        //execute
+        coordinator.accept(new ReportPartial(1, PARTITIONS, Lists.newArrayList()));
+    }
+
+    @Test
+    public void givenMissingPartitionWhenCollectThenTimesOut() throws Exception {
+
+        //setup
+        ReportService reportService = new ReportService();
+        Path directory = folder.newFolder().toPath();
+        ShardCoordinator coordinator = new ShardCoordinator(reportService, PARTITIONS);
+        new ShardWorker(reportService, 0, PARTITIONS).writeTo(directory);
+
+        //execute
+        try {
+            coordinator.collect(directory, 200);
+            throw new AssertionError("The collection should have timed out");
+        } catch (IOException e) {
+
+            //verify
+            assertEquals("Timed out waiting for the partials of partitions {1, 2}", e.getMessage());
+        }
+
+        assertFalse(coordinator.isComplete());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void givenMissingPartitionWhenGenerateReportThenException() {
+
+        //setup
+        ShardCoordinator coordinator = new ShardCoordinator(new ReportService(), PARTITIONS);
+        coordinator.accept(new ReportPartial(0, PARTITIONS, Lists.newArrayList()));
+
+        //execute
+        coordinator.generateReport();
+    }
+
+    /**
+     * @return instructions of many entities, including the null one and totals which don't fit in a long
+     */
+    static List<Instruction> generateInstructions() {
+
+        List<Instruction> instructions = new RandomInstructions(23)
+                .withEntities(60)
+                .withNullEntities(100)
+                .withCurrencies(Currency.values())
+                .withDates(new DateTime(2018, 6, 1, 0, 0), 10)
+                .withFx(random -> BigDecimal.valueOf(random.nextInt(200), 3))
+                .next(2_000);
+
+        instructions.add(generateInstruction("big", Operation.BUY, Currency.USD, new DateTime(2018, 6, 4, 0, 0), BigDecimal.ONE,
+                new BigDecimal("123456789012345678.99"), 1000));
+
+        return instructions;
+    }
+}
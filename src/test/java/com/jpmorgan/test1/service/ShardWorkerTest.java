@@ -0,0 +1,81 @@
+package com.jpmorgan.test1.service;
+
+import com.jpmorgan.test1.io.ReportPartial;
+import com.jpmorgan.test1.model.DailyAggregate;
+import com.jpmorgan.test1.model.FixedPoint;
+import com.jpmorgan.test1.model.Instruction;
+import com.jpmorgan.test1.model.InstructionBatch;
+import com.jpmorgan.test1.model.NumericMode;
+import com.jpmorgan.test1.model.Ranking;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for {@link com.jpmorgan.test1.service.ShardWorker}
+ *
+ * @author Vlad Constantinescu
+ */
+public class ShardWorkerTest {
+
+    private static final int PARTITIONS = 4;
+
+    @Test
+    public void givenWorkersThenEveryInstructionAddedByExactlyOne() {
+
+        //setup
+        List<Instruction> instructions = ShardCoordinatorTest.generateInstructions();
+        int added = 0;
+
+        //execute
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            ShardWorker worker = new ShardWorker(new ReportService(), partition, PARTITIONS);
+            for (Instruction instruction : instructions) {
+                if (worker.add(instruction)) {
+                    added++;
+                    assertEquals(partition, ShardWorker.partitionOf(instruction.getEntity(), PARTITIONS));
+                }
+            }
+        }
+
+        //verify
+        assertEquals(instructions.size(), added);
+    }
+
+    @Test
+    public void givenBatchThenSamePartialAsInstructions() {
+
+        //setup
+        ReportService reportService = new ReportService(NumericMode.FIXED_POINT, FixedPoint.DEFAULT_SCALE);
+        List<Instruction> instructions = ShardCoordinatorTest.generateInstructions();
+        InstructionBatch batch = InstructionBatch.allocate(instructions.size(), FixedPoint.DEFAULT_SCALE);
+        instructions.forEach(batch::append);
+        ShardWorker worker = new ShardWorker(reportService, 1, PARTITIONS);
+        ShardWorker batchWorker = new ShardWorker(reportService, 1, PARTITIONS);
+
+        //execute
+        worker.addAll(instructions);
+        batchWorker.addAll(batch);
+
+        //verify
+        ReportPartial expected = worker.toPartial();
+        ReportPartial actual = batchWorker.toPartial();
+        assertEquals(expected.getDailyAggregates().size(), actual.getDailyAggregates().size());
+
+        for (int i = 0; i < expected.getDailyAggregates().size(); i++) {
+            DailyAggregate expectedDay = expected.getDailyAggregates().get(i);
+            DailyAggregate actualDay = actual.getDailyAggregates().get(i);
+            assertEquals(expectedDay.getSettlementDay(), actualDay.getSettlementDay());
+            List<Ranking> expectedRankings = expectedDay.getIncomingRankings();
+            List<Ranking> actualRankings = actualDay.getIncomingRankings();
+            assertEquals(expectedRankings.size(), actualRankings.size());
+            for (int rank = 0; rank < expectedRankings.size(); rank++) {
+                assertEquals(expectedRankings.get(rank).getEntity(), actualRankings.get(rank).getEntity());
+                assertEquals(0, expectedRankings.get(rank).getTotalValue().compareTo(actualRankings.get(rank).getTotalValue()));
+            }
+            assertEquals(0, expectedDay.getOutgoingValue().compareTo(actualDay.getOutgoingValue()));
+        }
+    }
+}